@@ -48,6 +48,14 @@ public abstract class BinChecker<State> {
         this.s = otherChecker.s;
     }
 
+    /**
+     * Returns the state of this checker. Two checkers for the same invariant
+     * behave identically on any future events iff their states are equal.
+     */
+    public State getState() {
+        return s;
+    }
+
     // ////////////////////////////////////////////////////////////////
 
     /** @return whether or not the new state is an accepting state. */
@@ -40,7 +40,9 @@ import csight.invariants.NeverFollowedBy;
 import csight.mc.MC;
 import csight.mc.MCResult;
 import csight.mc.MCcExample;
+import csight.mc.explicit.ExplicitMC;
 import csight.mc.mcscm.McScM;
+import csight.mc.parallelizer.InvariantCheckScheduler;
 import csight.mc.parallelizer.InvariantTimeoutPair;
 import csight.mc.parallelizer.McScMParallelizer;
 import csight.mc.parallelizer.ParallelizerInput;
@@ -159,6 +161,10 @@ public class CSightMain {
     // CSightMain
     private int numProcesses = -1;
 
+    // Chooses the invariant to check next, and its timeout, when model
+    // checking in parallel. Created in checkInvsRefineGFSMParallel().
+    private InvariantCheckScheduler checkScheduler = null;
+
     /** Prepares a new CSightMain instance based on opts. */
     public CSightMain(CSightOptions opts) throws OptionException {
         this.opts = opts;
@@ -206,7 +212,7 @@ public class CSightMain {
             throw new OptionException(err);
         }
 
-        if (optns.mcPath == null) {
+        if (optns.mcPath == null && !optns.mcType.equals("explicit")) {
             err = "Specify path of the McScM model checker to use for verification:\n\t" + opts.getOptDesc("mcPath");
             throw new OptionException(err);
         }
@@ -234,6 +240,17 @@ public class CSightMain {
             }
         } else if (optns.mcType.equals("mcscm")) {
             mc = new McScM(opts.mcPath);
+        } else if (optns.mcType.equals("explicit")) {
+            if (opts.explicitChannelCapacity <= 0) {
+                err = "Invalid channel capacity for use with the explicit-state model checker: "
+                        + opts.explicitChannelCapacity;
+                throw new OptionException(err);
+            }
+            if (opts.runParallel) {
+                err = "Parallel model checking not supported for the explicit-state model checker";
+                throw new OptionException(err);
+            }
+            mc = new ExplicitMC(opts.explicitChannelCapacity);
         } else {
             err = "Invalid model checker type '" + opts.mcType + "'";
             throw new OptionException(err);
@@ -751,12 +768,18 @@ public class CSightMain {
                 // curInv (only fone for McScM).
                 cfsm.augmentWithInvTracing(curInv);
 
-                mcInputStr = cfsm.toScmString("checking_scm_" + curInv.getConnectorString());
+                // The SCM model is written to McScM as it runs, instead of
+                // being built as a string.
+                mcInputStr = null;
             } else if (mc instanceof Spin) {
                 List<BinaryInvariant> curInvs = Util.newList();
                 curInvs.add(curInv);
                 mcInputStr = cfsm.toPromelaString(curInvs, opts.spinChannelCapacity);
 
+            } else if (mc instanceof ExplicitMC) {
+                // The explicit-state checker explores the (un-augmented) CFSM
+                // directly, without a textual model.
+                mcInputStr = null;
             } else {
                 throw new RuntimeException("Model checker is not properly specified.");
             }
@@ -767,7 +790,13 @@ public class CSightMain {
             logger.info("*******************************************************");
 
             try {
-                mc.verify(mcInputStr, curTimeout);
+                if (mc instanceof McScM) {
+                    ((McScM) mc).verify(cfsm, "checking_scm_" + curInv.getConnectorString(), curTimeout);
+                } else if (mc instanceof ExplicitMC) {
+                    ((ExplicitMC) mc).verify(cfsm, curInv, curTimeout);
+                } else {
+                    mc.verify(mcInputStr, curTimeout);
+                }
             } catch (TimeoutException e) {
                 // The model checker timed out. First, record the timed-out
                 // invariant so that we are not stuck re-checking it.
@@ -899,6 +928,8 @@ public class CSightMain {
             throw new Exception("maxTimeout value must be greater than baseTimeout value");
         }
 
+        checkScheduler = new InvariantCheckScheduler(opts.prioritizeFastInvs, opts.maxTimeout);
+
         /**
          * AtomicInteger to provide mutability for methods to alter the value of
          * the integer. It is not for concurrent access. This counts the number
@@ -922,86 +953,93 @@ public class CSightMain {
         // @see McScMParallelizer for resultsChannel
         final BlockingQueue<ParallelizerResult> resultsChannel = new LinkedBlockingQueue<ParallelizerResult>();
 
-        Thread parallelizer = new Thread(
-                new McScMParallelizer(opts.numParallel, opts.mcPath, taskChannel, resultsChannel));
+        McScMParallelizer mcParallelizer = new McScMParallelizer(opts.numParallel, opts.mcPath, taskChannel,
+                resultsChannel);
+        Thread parallelizer = new Thread(mcParallelizer);
 
         parallelizer.start();
-        parallelizerStartK(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(), totalInvs, taskChannel);
+        try {
+            parallelizerStartK(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(), totalInvs, taskChannel);
 
-        while (true) {
-            assert invsCounter.get() <= totalInvs;
-            assert curInvs.size() <= opts.numParallel;
-            assert maxTimedOutInvs.size() + satisfiedInvs.size() + invsToSatisfy.size() + curInvs.size() == totalInvs;
+            while (true) {
+                assert invsCounter.get() <= totalInvs;
+                assert curInvs.size() <= opts.numParallel;
+                assert maxTimedOutInvs.size() + satisfiedInvs.size() + invsToSatisfy.size() + curInvs.size() == totalInvs;
 
-            ParallelizerResult result = waitForResult(gfsmCounter.get(), resultsChannel);
-            mcCounter++;
+                ParallelizerResult result = waitForResult(gfsmCounter.get(), resultsChannel);
+                mcCounter++;
 
-            logger.info("Obtained result from parallelizer (refinement: " + gfsmCounter + ")");
+                logger.info("Obtained result from parallelizer (refinement: " + gfsmCounter + ")");
+                logger.fine("Parallelizer metrics: " + mcParallelizer.getMetrics() + ", invariants waiting: "
+                        + invsToSatisfy.size());
 
-            if (result.isException()) {
-                logger.severe("Parallelizer encountered exception: " + result.getException().getClass()
-                        + " (refinement: " + result.getRefinementCounter() + ")");
-                parallelizer.interrupt();
-                throw result.getException();
-            }
+                if (result.isException()) {
+                    logger.severe("Parallelizer encountered exception: " + result.getException().getClass()
+                            + " (refinement: " + result.getRefinementCounter() + ")");
+                    throw result.getException();
+                }
 
-            InvariantTimeoutPair resultPair = result.getInvTimeoutPair();
-            // Remove the returned invariant-timeout pair from the current
-            // invariant-timeout pair set.
-            boolean returnedPairCheck = curInvs.remove(resultPair);
-            assert returnedPairCheck;
+                InvariantTimeoutPair resultPair = result.getInvTimeoutPair();
+                // Remove the returned invariant-timeout pair from the current
+                // invariant-timeout pair set.
+                boolean returnedPairCheck = curInvs.remove(resultPair);
+                assert returnedPairCheck;
 
-            if (result.isTimeout()) {
-                processTimeOut(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs, opts.timeoutDelta, opts.maxTimeout,
-                        gfsmCounter.get(), taskChannel, resultPair);
+                if (result.isTimeout()) {
+                    checkScheduler.recordTimeout(resultPair.getInv(), resultPair.getTimeout());
+                    processTimeOut(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs, opts.timeoutDelta,
+                            opts.maxTimeout, gfsmCounter.get(), taskChannel, resultPair);
 
-                // Continue to wait for next result.
-                continue;
-            }
+                    // Continue to wait for next result.
+                    continue;
+                }
 
-            if (result.isInterrupted()) {
-                // Add the invariant back to beginning of queue checking to
-                // check again.
-                invsToSatisfy.add(0, resultPair);
-                parallelizerStartOne(invsToSatisfy, curInvs, pGraph, mcCounter, taskChannel);
+                if (result.isInterrupted()) {
+                    // Add the invariant back to beginning of queue checking to
+                    // check again.
+                    invsToSatisfy.add(0, resultPair);
+                    parallelizerStartOne(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(), taskChannel);
 
-                // Continue to wait for next result.
-                continue;
-            }
+                    // Continue to wait for next result.
+                    continue;
+                }
 
-            assert (result.isVerifyResult());
-            BinaryInvariant resultInv = resultPair.getInv();
+                assert (result.isVerifyResult());
+                BinaryInvariant resultInv = resultPair.getInv();
+                checkScheduler.recordCheck(resultInv, result.getCheckMs());
 
-            logger.info("*******************************************************");
-            logger.info("Finished Checking ... " + resultPair.getInv().toString() + ". Inv " + invsCounter + " / "
-                    + totalInvs + ", refinements so far: " + gfsmCounter + ". Timeout = " + resultPair.getTimeout()
-                    + ".");
-            logger.info("*******************************************************");
+                logger.info("*******************************************************");
+                logger.info("Finished Checking ... " + resultPair.getInv().toString() + ". Inv " + invsCounter + " / "
+                        + totalInvs + ", refinements so far: " + gfsmCounter + ". Timeout = "
+                        + resultPair.getTimeout() + ".");
+                logger.info("*******************************************************");
 
-            MCResult mcResult = result.getMCResult();
+                MCResult mcResult = result.getMCResult();
 
-            logger.info(mcResult.toRawString());
-            logger.info(mcResult.toString());
+                logger.info(mcResult.toRawString());
+                logger.info(mcResult.toString());
 
-            if (mcResult.modelIsSafe()) {
-                if (processSafeModelResult(pGraph, invsToSatisfy, maxTimedOutInvs, satisfiedInvs, curInvs,
-                        gfsmCounter.get(), taskChannel, resultInv, invsCounter)) {
-                    // Every invariant has been satisfied. We are done.
-                    logger.info("Finished checking " + invsCounter + " / " + totalInvs + " invariants.");
-                    parallelizer.interrupt();
+                if (mcResult.modelIsSafe()) {
+                    if (processSafeModelResult(pGraph, invsToSatisfy, maxTimedOutInvs, satisfiedInvs, curInvs,
+                            gfsmCounter.get(), taskChannel, resultInv, invsCounter)) {
+                        // Every invariant has been satisfied. We are done.
+                        logger.info("Finished checking " + invsCounter + " / " + totalInvs + " invariants.");
+                        return mcCounter;
+                    }
+                    // Continue to wait for next result.
+                    continue;
+                }
+
+                if (processUnsafeModelResult(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs, totalInvs,
+                        gfsmCounter, opts.outputPathPrefix, taskChannel, resultsChannel, resultPair, mcResult)) {
                     return mcCounter;
                 }
                 // Continue to wait for next result.
                 continue;
             }
-
-            if (processUnsafeModelResult(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs, totalInvs, gfsmCounter,
-                    opts.outputPathPrefix, taskChannel, resultsChannel, resultPair, mcResult)) {
-                parallelizer.interrupt();
-                return mcCounter;
-            }
-            // Continue to wait for next result.
-            continue;
+        } finally {
+            // Stops the parallelizer, and its model checking processes.
+            parallelizer.interrupt();
         }
     }
 
@@ -1249,7 +1287,7 @@ public class CSightMain {
         // parallelization factor
         int numLeftToCheck = Math.min(opts.numParallel, invsToSatisfy.size());
         for (int i = 0; i < numLeftToCheck; i++) {
-            InvariantTimeoutPair invTimeoutToCheck = invsToSatisfy.remove(0);
+            InvariantTimeoutPair invTimeoutToCheck = checkScheduler.removeNext(invsToSatisfy);
 
             ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, pGraph.getCFSM(opts.minimize));
             inputs.add(input);
@@ -1279,7 +1317,7 @@ public class CSightMain {
 
         List<ParallelizerInput> inputs = new ArrayList<ParallelizerInput>();
 
-        InvariantTimeoutPair invTimeoutToCheck = invsToSatisfy.remove(0);
+        InvariantTimeoutPair invTimeoutToCheck = checkScheduler.removeNext(invsToSatisfy);
 
         ParallelizerInput input = new ParallelizerInput(invTimeoutToCheck, pGraph.getCFSM(opts.minimize));
         inputs.add(input);
@@ -166,13 +166,17 @@ public class CSightOptions extends Options {
     public String mcPath = null;
 
     @Option(
-            value = "Model checker type to use. Must be either 'spin' or 'mcscm'.")
+            value = "Model checker type to use. Must be either 'spin', 'mcscm', or 'explicit' (the in-process explicit-state checker, which needs no mcPath).")
     public String mcType = "mcscm";
 
     @Option(
             value = "Default channel capacity to use when using the spin model checker.")
     public int spinChannelCapacity = 8;
 
+    @Option(
+            value = "Channel capacity to use when using the explicit-state model checker.")
+    public int explicitChannelCapacity = 8;
+
     @Option(
             value = "-p Run model checking processes in parallel. (Only available for McScM)")
     public boolean runParallel = true;
@@ -190,6 +194,15 @@ public class CSightOptions extends Options {
             aliases = { "-pFactor" })
     public int numParallel = Runtime.getRuntime().availableProcessors();
 
+    /**
+     * Whether to order parallel model checking runs by how long the invariants
+     * took to check so far, and to raise their timeouts accordingly. @see
+     * InvariantCheckScheduler
+     */
+    @Option(
+            value = "When model checking in parallel, check the invariants that were fastest to check so far first, and raise timeouts to what earlier checks took.")
+    public boolean prioritizeFastInvs = false;
+
     /**
      * The base timeout that is used to time out invocations of verification
      * (which may run indefinitely).
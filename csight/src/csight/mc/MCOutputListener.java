@@ -0,0 +1,18 @@
+package csight.mc;
+
+/**
+ * Receives the stdout lines of an MCProcess while the process runs, and
+ * decides when the output contains everything that is needed from the
+ * process, such as the verdict of a model checker.
+ */
+public interface MCOutputListener {
+
+    /**
+     * Called with each stdout line of the process, in order, from a thread
+     * that reads the output of the process.
+     *
+     * @return true iff the output is complete, in which case the process is
+     *         stopped
+     */
+    boolean lineRead(String line);
+}
@@ -1,29 +1,109 @@
 package csight.mc;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import csight.util.Util;
 
-/** Represents a system process that hosts the model checker execution. */
+/**
+ * Represents a system process that hosts the model checker execution. The
+ * stdin input is written to the process while its stdout and stderr are
+ * drained concurrently, so that a process with a large input or output cannot
+ * stall on a full pipe. The timeouts of all processes are handled by a single
+ * shared timer thread.
+ */
 public class MCProcess {
 
+    /** Writes the stdin input of a process, as the process consumes it. */
+    public interface InputGenerator {
+        void writeInput(Writer writer) throws IOException;
+    }
+
+    /** Kills processes that time out. Shared by all MCProcess instances. */
+    private static final ScheduledExecutorService killTimer = Executors
+            .newSingleThreadScheduledExecutor(new DaemonThreadFactory(
+                    "MCProcess kill timer"));
+
+    /** Reads the stdout and stderr of running processes. */
+    private static final ExecutorService streamReaders = Executors
+            .newCachedThreadPool(new DaemonThreadFactory(
+                    "MCProcess stream reader"));
+
+    // The states of a process run. A run leaves RUNNING exactly once, through
+    // a compareAndSet by either the thread that runs the process or the timer,
+    // so that a process that terminates is never reported as timed out.
+    private static final int RUNNING = 0;
+    private static final int TERMINATED = 1;
+    private static final int TIMED_OUT = 2;
+
     // The started underlying MC process.
     private Process process = null;
 
     String[] command;
-    String stdinInput;
+    InputGenerator stdinInput;
     File processDir;
     int timeoutSecs;
+    MCOutputListener outputListener;
+
+    // The stdout and stderr lines of the process, set by runProcess.
+    private List<String> stdoutLines = null;
+    private List<String> stderrLines = null;
+
+    // RUNNING, TERMINATED, or TIMED_OUT (when the timer killed the process).
+    private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+    // Whether the process was stopped by the output listener. Set by the
+    // stdout reader thread.
+    private volatile boolean stoppedEarly = false;
 
     public MCProcess(String[] command, String stdinInput, File processDir,
             int timeoutSecs) {
+        this(command, stdinInput, processDir, timeoutSecs, null);
+    }
+
+    /**
+     * @param outputListener
+     *            receives the stdout lines while the process runs, and stops
+     *            the process once the output is complete (may be null)
+     */
+    public MCProcess(String[] command, final String stdinInput,
+            File processDir, int timeoutSecs, MCOutputListener outputListener) {
+        this(command, stdinInput.equals("") ? null : new InputGenerator() {
+            @Override
+            public void writeInput(Writer writer) throws IOException {
+                writer.write(stdinInput);
+            }
+        }, processDir, timeoutSecs, outputListener);
+    }
+
+    /**
+     * @param stdinInput
+     *            generates the stdin input of the process (may be null, for no
+     *            input)
+     * @param outputListener
+     *            receives the stdout lines while the process runs, and stops
+     *            the process once the output is complete (may be null)
+     */
+    public MCProcess(String[] command, InputGenerator stdinInput,
+            File processDir, int timeoutSecs, MCOutputListener outputListener) {
         assert timeoutSecs > 0;
         assert !processDir.equals("");
         assert command.length > 0;
@@ -32,14 +112,16 @@ public class MCProcess {
         this.stdinInput = stdinInput;
         this.processDir = processDir;
         this.timeoutSecs = timeoutSecs;
+        this.outputListener = outputListener;
     }
 
     /**
      * Creates and executes a command in processDir, and passes along an
-     * stdinInput to its stdin (if it's not the empty string). The process will
-     * be forcibly terminated after timeoutSecs -- timeout in seconds to wait
-     * for the process to terminate before killing it.
-     * 
+     * stdinInput to its stdin (if there is one). The process will be forcibly
+     * terminated after timeoutSecs -- timeout in seconds to wait for the
+     * process to terminate before killing it -- or as soon as the output
+     * listener has seen the complete output.
+     *
      * @return the process
      * @throws IOException
      * @throws InterruptedException
@@ -55,115 +137,174 @@ public class MCProcess {
         // Start the process.
         process = pBuilder.start();
 
-        // Write an input to the stdin of the process.
-        if (!stdinInput.equals("")) {
-            OutputStream oStream = process.getOutputStream();
-            oStream.write(stdinInput.getBytes());
-            oStream.close();
-        }
-
         // Timer setup.
-        ProcessKillTimer killTimerThread = new ProcessKillTimer(process,
-                timeoutSecs);
-        Thread t = new Thread(killTimerThread);
-        t.start();
-
-        while (true) {
-            try {
-                // Wait until the verify process terminates.
-                process.waitFor();
-            } catch (InterruptedException e) {
-                // The current thread was interrupted, so stop the process
-                // and throw InterruptedException.
-                killTimerThread.killed = true;
+        ScheduledFuture<?> killTask = killTimer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (hasExited(process)) {
+                    // The process terminated, but runProcess has not noticed
+                    // yet.
+                    state.compareAndSet(RUNNING, TERMINATED);
+                } else if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+                    process.destroy();
+                }
+            }
+        }, timeoutSecs, TimeUnit.SECONDS);
 
-                process.destroy();
-                t.interrupt();
+        Future<List<String>> stdout = streamReaders.submit(new StreamReader(
+                process.getInputStream(), outputListener));
+        Future<List<String>> stderr = streamReaders.submit(new StreamReader(
+                process.getErrorStream(), null));
 
-                throw new InterruptedException("MC Process killed.");
+        try {
+            writeInput();
 
+            // Wait until the verify process terminates.
+            process.waitFor();
+            state.compareAndSet(RUNNING, TERMINATED);
+            stdoutLines = stdout.get();
+            stderrLines = stderr.get();
+        } catch (InterruptedException e) {
+            // The current thread was interrupted, so stop the process
+            // and throw InterruptedException.
+            state.compareAndSet(RUNNING, TERMINATED);
+            process.destroy();
+            throw new InterruptedException("MC Process killed.");
+        } catch (ExecutionException e) {
+            process.destroy();
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
-            break;
+            throw new IOException("Unable to read MC process output.",
+                    e.getCause());
+        } finally {
+            killTask.cancel(false);
         }
 
-        // Clean up the timer thread.
-        if (!killTimerThread.killed) {
-            // The killed flag is false: verify process terminated naturally.
-            // Make sure that the timer thread stops waiting.
-            killTimerThread.killed = true;
-            t.interrupt();
-        } else {
-            // Otherwise: the process had to be killed by the timer thread.
+        if (state.get() == TIMED_OUT && !stoppedEarly) {
+            // The process had to be killed by the timer.
             throw new TimeoutException("MC process timed out.");
         }
     }
 
+    /** Whether process has exited. */
+    private static boolean hasExited(Process process) {
+        try {
+            process.exitValue();
+            return true;
+        } catch (IllegalThreadStateException e) {
+            return false;
+        }
+    }
+
     /**
-     * Reads and caches content from inputStream. Can only be invoked after
-     * runProcess.
-     * 
+     * Writes the input to the stdin of the process, and closes it. If the
+     * process stops reading its input (e.g., because it exited on a syntax
+     * error, or was stopped), then the rest of the input is dropped: the
+     * output of the process reports what happened.
+     */
+    private void writeInput() throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                process.getOutputStream()));
+        try {
+            if (stdinInput != null) {
+                stdinInput.writeInput(writer);
+            }
+            writer.close();
+        } catch (IOException e) {
+            try {
+                process.getOutputStream().close();
+            } catch (IOException e2) {
+                // The pipe is already closed.
+            }
+        }
+    }
+
+    /**
+     * Returns the lines that the process wrote to stdout. Can only be invoked
+     * after runProcess. If the output listener stopped the process, these are
+     * the lines up to the point at which the process was stopped.
+     *
      * @return a list of lines from inputStream.
      * @throws IOException
      */
     public List<String> getInputStreamContent() throws IOException {
         assert process != null;
+        assert stdoutLines != null;
+        return stdoutLines;
+    }
 
-        InputStream inputStream = process.getInputStream();
+    /**
+     * Returns the lines that the process wrote to stderr. Can only be invoked
+     * after runProcess.
+     */
+    public List<String> getErrorStreamContent() {
+        assert process != null;
+        assert stderrLines != null;
+        return stderrLines;
+    }
 
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(inputStream));
+    /** Whether the output listener stopped the process. */
+    public boolean stoppedEarly() {
+        return stoppedEarly;
+    }
 
-        List<String> lines = Util.newList();
-        String line;
+    /**
+     * Reads the lines of a stream of the process until the stream ends, and
+     * passes them to a listener, if any.
+     */
+    private final class StreamReader implements Callable<List<String>> {
+        private final InputStream inputStream;
+        private MCOutputListener listener;
 
-        while ((line = bufferedReader.readLine()) != null) {
-            lines.add(line);
+        StreamReader(InputStream inputStream, MCOutputListener listener) {
+            this.inputStream = inputStream;
+            this.listener = listener;
         }
 
-        return lines;
-    }
-}
+        @Override
+        public List<String> call() throws IOException {
+            BufferedReader bufferedReader = new BufferedReader(
+                    new InputStreamReader(inputStream));
 
-/**
- * A timer thread that kills a specific process after a timeout.
- */
-final class ProcessKillTimer implements Runnable {
+            List<String> lines = Util.newList();
+            String line;
+            try {
+                while ((line = bufferedReader.readLine()) != null) {
+                    lines.add(line);
+                    if (listener != null && listener.lineRead(line)) {
+                        // The output is complete. Stop the process, and read
+                        // what is left of the stream.
+                        listener = null;
+                        stoppedEarly = true;
+                        process.destroy();
+                    }
+                }
+            } catch (IOException e) {
+                // The stream is closed when the process is destroyed.
+                if (state.get() == RUNNING && !stoppedEarly) {
+                    throw e;
+                }
+            } finally {
+                bufferedReader.close();
+            }
+            return lines;
+        }
+    }
 
-    private Process proc;
-    private int timeout;
-    volatile boolean killed = false;
+    /** Creates daemon threads, which do not keep the JVM alive. */
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
 
-    /**
-     * @param p
-     *            the process to be killed after a timeout
-     * @param timeout
-     *            in seconds
-     */
-    ProcessKillTimer(Process p, int timeout) {
-        this.proc = p;
-        this.timeout = timeout;
-    }
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
 
-    @Override
-    public void run() {
-        try {
-            synchronized (this) {
-                // Sleep for timeout seconds and then kill the MC process if it
-                // hasn't been killed yet.
-                wait(timeout * 1000L);
-            }
-        } catch (InterruptedException e) {
-            // This happens when either (1) the main thread calls interrupt(),
-            // which happens if the process p terminated naturally, or (2) we
-            // were interrupted by the JVM or executor service higher up the
-            // stack. Either way, we want to stop the process, possibly a second
-            // time.
-            if (killed == true) {
-                return;
-            }
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
         }
-        // Kill the process and set the flag so we know we killed it.
-        killed = true;
-        proc.destroy();
     }
 }
@@ -0,0 +1,298 @@
+package csight.mc.explicit;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import csight.invariants.BinaryInvariant;
+import csight.invariants.checkers.BinChecker;
+import csight.invariants.checkers.BinChecker.Validity;
+import csight.mc.MC;
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.CFSMState;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+/**
+ * <p>
+ * An explicit-state model checker that runs in-process, instead of as an
+ * external binary. Rather than checking a textual (scm/Promela) encoding of a
+ * CFSM that is augmented with invariant-tracing channels, it explores the
+ * product of the CFSM's FSMs and channels directly, and tracks the invariant
+ * with the invariant's BinChecker.
+ * </p>
+ * <p>
+ * The exploration is breadth-first, so a counter-example is a shortest event
+ * path from an initial configuration to a bad configuration: one in which all
+ * FSMs are in accept states, all channels are empty, and the checker has
+ * failed (i.e., the configurations that are bad states for McScM). Unlike
+ * McScM, the channels are bounded: a send is only enabled if its channel holds
+ * fewer than chanCapacity messages. A model is therefore only safe up to this
+ * capacity, like with Spin. Paths on which the invariant can no longer fail
+ * (i.e., the checker returned PERM_SUCCESS) are not explored further.
+ * </p>
+ */
+public class ExplicitMC extends MC {
+
+    static Logger logger = Logger.getLogger("ExplicitMC");
+
+    /** How often (in explored configurations) to check for a timeout. */
+    private static final int timeoutCheckInterval = 1024;
+
+    /** The maximum number of messages in a channel. */
+    private final int chanCapacity;
+
+    /** The result of the last call to verify. */
+    private MCResult result = null;
+
+    public ExplicitMC(int chanCapacity) {
+        super(null);
+        assert chanCapacity > 0;
+        this.chanCapacity = chanCapacity;
+    }
+
+    /**
+     * The explicit-state checker does not parse a textual model, and is
+     * always run through verify(CFSM, BinaryInvariant, int). CSightMain
+     * refuses the options (e.g., parallel model checking) under which a
+     * textual model would be passed to it, so this is never called.
+     */
+    @Override
+    public void verify(String input, int timeoutSecs) {
+        throw new IllegalStateException(
+                "The explicit-state model checker checks a CFSM directly.");
+    }
+
+    /**
+     * Checks inv in cfsm, which must not be augmented with invariant tracing.
+     * Times out after timeoutSecs. To retrieve the result, call
+     * getVerifyResult.
+     *
+     * @throws InterruptedException
+     *             if the thread is interrupted while checking
+     * @throws TimeoutException
+     *             if the check took longer than timeoutSecs
+     */
+    public void verify(CFSM cfsm, BinaryInvariant inv, int timeoutSecs)
+            throws InterruptedException, TimeoutException {
+        result = null;
+        long deadline = System.currentTimeMillis() + timeoutSecs * 1000L;
+        int numChannels = cfsm.getChannelIds().size();
+
+        // Configurations that have been reached, and those that remain to be
+        // explored, in breadth-first order.
+        Set<Config> visited = Util.newSet();
+        Queue<Config> frontier = new LinkedList<Config>();
+
+        List<List<DistEventType>> emptyQueues = Collections.nCopies(
+                numChannels, Collections.<DistEventType> emptyList());
+        for (CFSMState init : cfsm.getInitStates()) {
+            FSMState[] fsmStates = new FSMState[cfsm.getNumProcesses()];
+            for (int pid = 0; pid < fsmStates.length; pid++) {
+                fsmStates[pid] = init.getFSMState(pid);
+            }
+            Config c = new Config(fsmStates, emptyQueues, inv.newChecker(),
+                    null, null);
+            if (visited.add(c)) {
+                frontier.add(c);
+            }
+        }
+
+        int numExplored = 0;
+        while (!frontier.isEmpty()) {
+            numExplored++;
+            if (numExplored % timeoutCheckInterval == 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException(
+                            "Explicit-state model checking was interrupted.");
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new TimeoutException(
+                            "Explicit-state model checking timed out.");
+                }
+            }
+
+            Config c = frontier.poll();
+            if (c.isBad()) {
+                result = new ExplicitMCResult(cfsm.getChannelIds(),
+                        c.getPath(), numExplored, chanCapacity);
+                return;
+            }
+
+            for (int pid = 0; pid < c.fsmStates.length; pid++) {
+                FSMState s = c.fsmStates[pid];
+                for (DistEventType e : s.getTransitioningEvents()) {
+                    if (!isEnabled(c, e)) {
+                        continue;
+                    }
+                    BinChecker<?> nextChecker = c.checker.getClone();
+                    if (nextChecker.transition(e) == Validity.PERM_SUCCESS) {
+                        // The invariant holds on all extensions of this path.
+                        continue;
+                    }
+                    List<List<DistEventType>> nextQueues = getNextQueues(c,
+                            e);
+                    for (FSMState next : s.getNextStates(e)) {
+                        FSMState[] nextStates = c.fsmStates.clone();
+                        nextStates[pid] = next;
+                        Config nextC = new Config(nextStates, nextQueues,
+                                nextChecker, c, e);
+                        if (visited.add(nextC)) {
+                            frontier.add(nextC);
+                        }
+                    }
+                }
+            }
+        }
+        result = new ExplicitMCResult(cfsm.getChannelIds(), null, numExplored,
+                chanCapacity);
+    }
+
+    /**
+     * Returns the result of the last verify call. The cids are ignored, since
+     * the counter-example is made up of the CFSM's events.
+     */
+    @Override
+    public MCResult getVerifyResult(List<ChannelId> cids) {
+        assert result != null;
+        logger.info("Explicit-state model checker returned: "
+                + result.toRawString());
+        return result;
+    }
+
+    /**
+     * Whether e can be executed in configuration c: a send requires room in
+     * its channel, and a receive requires its message at the head of its
+     * channel.
+     */
+    private boolean isEnabled(Config c, DistEventType e) {
+        if (e.isLocalEvent()) {
+            return true;
+        }
+        assert !e.isSynthSendEvent();
+        List<DistEventType> queue = c.queues.get(e.getChannelId().getScmId());
+        if (e.isSendEvent()) {
+            return queue.size() < chanCapacity;
+        }
+        assert e.isRecvEvent();
+        return !queue.isEmpty() && queue.get(0).getEType().equals(e.getEType());
+    }
+
+    /**
+     * Returns the channel contents after executing e in c. Only the modified
+     * queue is copied.
+     */
+    private static List<List<DistEventType>> getNextQueues(Config c,
+            DistEventType e) {
+        if (e.isLocalEvent()) {
+            return c.queues;
+        }
+        int scmId = e.getChannelId().getScmId();
+        List<DistEventType> queue = c.queues.get(scmId);
+        List<DistEventType> nextQueue;
+        if (e.isSendEvent()) {
+            nextQueue = Util.newList(queue.size() + 1);
+            nextQueue.addAll(queue);
+            nextQueue.add(e);
+        } else {
+            nextQueue = Util.newList(queue.subList(1, queue.size()));
+        }
+        List<List<DistEventType>> nextQueues = Util.newList(c.queues);
+        nextQueues.set(scmId, Collections.unmodifiableList(nextQueue));
+        return Collections.unmodifiableList(nextQueues);
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * A configuration of the CFSM product: the state of each FSM, the contents
+     * of each channel, and the state of the invariant checker. A configuration
+     * also records how it was first reached, which is not part of its
+     * identity.
+     */
+    private static final class Config {
+        final FSMState[] fsmStates;
+        final List<List<DistEventType>> queues;
+        final BinChecker<?> checker;
+        final Config parent;
+        final DistEventType event;
+        final int hash;
+
+        Config(FSMState[] fsmStates, List<List<DistEventType>> queues,
+                BinChecker<?> checker, Config parent, DistEventType event) {
+            this.fsmStates = fsmStates;
+            this.queues = queues;
+            this.checker = checker;
+            this.parent = parent;
+            this.event = event;
+            int h = Arrays.hashCode(fsmStates);
+            h = 31 * h + queues.hashCode();
+            h = 31 * h + checker.getState().hashCode();
+            this.hash = h;
+        }
+
+        /**
+         * Whether this is a bad configuration for the invariant: all FSMs
+         * accept, all channels are empty, and the invariant is violated.
+         */
+        boolean isBad() {
+            if (!checker.isFail()) {
+                return false;
+            }
+            for (FSMState s : fsmStates) {
+                if (!s.isAccept()) {
+                    return false;
+                }
+            }
+            for (List<DistEventType> queue : queues) {
+                if (!queue.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Returns the events on the path to this configuration. */
+        MCcExample getPath() {
+            List<DistEventType> events = Util.newList();
+            for (Config c = this; c.parent != null; c = c.parent) {
+                events.add(c.event);
+            }
+            Collections.reverse(events);
+            MCcExample cExample = new MCcExample();
+            for (DistEventType e : events) {
+                cExample.addScmEventStrToPath(e);
+            }
+            return cExample;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Config)) {
+                return false;
+            }
+            Config c = (Config) other;
+            return hash == c.hash && Arrays.equals(fsmStates, c.fsmStates)
+                    && queues.equals(c.queues)
+                    && checker.getState().equals(c.checker.getState());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package csight.mc.explicit;
+
+import java.util.List;
+
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+
+/**
+ * The result of a run of the explicit-state model checker. Since the checker
+ * runs in-process, there is no output to parse: the raw lines only summarize
+ * the run, for logging.
+ */
+public class ExplicitMCResult extends MCResult {
+
+    /**
+     * @param cExample
+     *            The counter-example, or null if the model is safe.
+     */
+    public ExplicitMCResult(List<ChannelId> cids, MCcExample cExample,
+            int numExplored, int chanCapacity) {
+        super(summaryLines(cExample, numExplored, chanCapacity), cids);
+        this.cExample = cExample;
+        this.modelIsSafe = (cExample == null);
+    }
+
+    private static List<String> summaryLines(MCcExample cExample,
+            int numExplored, int chanCapacity) {
+        List<String> lines = Util.newList();
+        lines.add("Explored " + numExplored
+                + " configurations with channel capacity " + chanCapacity
+                + ".");
+        if (cExample == null) {
+            lines.add("Result: Model is safe.");
+        } else {
+            lines.add("Result: Model is unsafe.");
+        }
+        return lines;
+    }
+}
@@ -2,6 +2,7 @@ package csight.mc.mcscm;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
@@ -9,6 +10,7 @@ import java.util.logging.Logger;
 import csight.mc.MC;
 import csight.mc.MCProcess;
 import csight.mc.MCResult;
+import csight.model.fifosys.cfsm.CFSM;
 
 import synoptic.model.channelid.ChannelId;
 
@@ -35,7 +37,35 @@ public class McScM extends MC {
         File currentPath = new java.io.File(".");
 
         mcProcess = new MCProcess(new String[] { mcPath, "-no-validation" },
-                scmInput, currentPath, timeoutSecs);
+                scmInput, currentPath, timeoutSecs,
+                McScMResult.newOutputListener());
+        mcProcess.runProcess();
+    }
+
+    /**
+     * Runs the verify commands with the SCM representation of cfsm as input.
+     * The representation is written to McScM as McScM reads it, instead of
+     * being built as a string first.
+     *
+     * @param cfsm
+     * @param cfsmName
+     *            the name of the model in the SCM representation
+     * @param timeoutSecs
+     * @throws InterruptedException
+     * @throws IOException
+     * @throws TimeoutException
+     */
+    public void verify(final CFSM cfsm, final String cfsmName, int timeoutSecs)
+            throws IOException, InterruptedException, TimeoutException {
+        File currentPath = new java.io.File(".");
+
+        mcProcess = new MCProcess(new String[] { mcPath, "-no-validation" },
+                new MCProcess.InputGenerator() {
+                    @Override
+                    public void writeInput(Writer writer) throws IOException {
+                        cfsm.writeScm(writer, cfsmName);
+                    }
+                }, currentPath, timeoutSecs, McScMResult.newOutputListener());
         mcProcess.runProcess();
     }
 
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import csight.mc.MCOutputListener;
 import csight.mc.MCResult;
 import csight.mc.MCSyntaxException;
 import csight.mc.MCcExample;
@@ -38,6 +39,20 @@ public class McScMResult extends MCResult {
         parseVerifyOutput(verifyRawLines);
     }
 
+    /**
+     * Returns a listener that detects when the verify output is complete: once
+     * the model is found safe, or has a syntax error. The counter-example of an
+     * unsafe model follows its verdict, and ends with the output.
+     */
+    public static MCOutputListener newOutputListener() {
+        return new MCOutputListener() {
+            @Override
+            public boolean lineRead(String line) {
+                return line.matches(safeRe) || line.matches(syntaxErrRe);
+            }
+        };
+    }
+
     // //////////////////////////////////////////////////////////////////
 
     private void parseVerifyOutput(List<String> lines)
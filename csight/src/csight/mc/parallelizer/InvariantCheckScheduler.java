@@ -0,0 +1,137 @@
+package csight.mc.parallelizer;
+
+import java.util.List;
+import java.util.Map;
+
+import csight.invariants.BinaryInvariant;
+import csight.util.Util;
+
+/**
+ * <p>
+ * Chooses which invariant CSightMain sends to the McScMParallelizer next, and
+ * with what timeout. The scheduler keeps a history of how long each invariant
+ * took to check. Checks are not independent across refinements, but an
+ * invariant that was slow to check in one GFSM tends to be slow in the refined
+ * GFSM as well.
+ * </p>
+ * <p>
+ * With prioritization, the scheduler checks the invariants with the shortest
+ * expected check time first, where invariants that have not been checked yet
+ * have an expected check time of 0. It also raises the timeout of an invariant
+ * to what its history suggests it needs, so that we do not re-run checks that
+ * are known to time out. Without prioritization, invariants are checked in the
+ * order of the list, which puts the invariant of the last counter-example
+ * first, with the timeouts that CSightMain assigned them (which grow linearly
+ * on each timeout). This order tends to require fewer model checking runs
+ * overall, so prioritization is off by default.
+ * </p>
+ * <p>
+ * This class is not thread-safe, and is only used by CSightMain.
+ * </p>
+ */
+public class InvariantCheckScheduler {
+
+    /**
+     * The weight of the most recent check time in the expected check time of
+     * an invariant.
+     */
+    private static final double recentWeight = 0.5;
+
+    /** The factor by which a timeout exceeds the expected check time. */
+    private static final double timeoutSlack = 1.5;
+
+    /**
+     * Whether to check the invariants with the shortest check time first, and
+     * adapt their timeouts.
+     */
+    private final boolean prioritize;
+
+    /** The maximum timeout value, in seconds. */
+    private final int maxTimeout;
+
+    /**
+     * The expected check time of each invariant that has been checked, in
+     * milliseconds. This is a moving average over the check times of the
+     * invariant.
+     */
+    private final Map<BinaryInvariant, Double> expectedMs;
+
+    public InvariantCheckScheduler(boolean prioritize, int maxTimeout) {
+        this.prioritize = prioritize;
+        this.maxTimeout = maxTimeout;
+        this.expectedMs = Util.newMap();
+    }
+
+    /**
+     * Removes the invariant to check next from invsToSatisfy, and returns it
+     * with the timeout to check it with.
+     */
+    public InvariantTimeoutPair removeNext(
+            List<InvariantTimeoutPair> invsToSatisfy) {
+        assert !invsToSatisfy.isEmpty();
+        if (!prioritize) {
+            return invsToSatisfy.remove(0);
+        }
+
+        // The first pair with the minimum expected check time.
+        int next = 0;
+        double nextMs = getExpectedMs(invsToSatisfy.get(0).getInv());
+        for (int i = 1; i < invsToSatisfy.size(); i++) {
+            double ms = getExpectedMs(invsToSatisfy.get(i).getInv());
+            if (ms < nextMs) {
+                next = i;
+                nextMs = ms;
+            }
+        }
+        return adaptTimeout(invsToSatisfy.remove(next));
+    }
+
+    /**
+     * Returns pair with its timeout raised to timeoutSlack times the expected
+     * check time of its invariant, up to maxTimeout. The timeout is never
+     * lowered.
+     */
+    public InvariantTimeoutPair adaptTimeout(InvariantTimeoutPair pair) {
+        double ms = getExpectedMs(pair.getInv());
+        int timeout = (int) Math.ceil(timeoutSlack * ms / 1000);
+        timeout = Math.min(maxTimeout, timeout);
+        if (timeout <= pair.getTimeout()) {
+            return pair;
+        }
+        return new InvariantTimeoutPair(pair.getInv(), timeout);
+    }
+
+    /**
+     * Records a check of inv that completed in checkMs milliseconds.
+     */
+    public void recordCheck(BinaryInvariant inv, long checkMs) {
+        Double prevMs = expectedMs.get(inv);
+        if (prevMs == null) {
+            expectedMs.put(inv, (double) checkMs);
+        } else {
+            expectedMs.put(inv, recentWeight * checkMs + (1 - recentWeight)
+                    * prevMs);
+        }
+    }
+
+    /**
+     * Records a check of inv that timed out after timeoutSecs. The check would
+     * have taken at least this long, so inv is not expected to take less.
+     */
+    public void recordTimeout(BinaryInvariant inv, int timeoutSecs) {
+        double timeoutMs = timeoutSecs * 1000.0;
+        Double prevMs = expectedMs.get(inv);
+        if (prevMs == null || prevMs < timeoutMs) {
+            expectedMs.put(inv, timeoutMs);
+        }
+    }
+
+    /**
+     * Returns the expected check time of inv in milliseconds, or 0 if inv has
+     * not been checked yet.
+     */
+    public double getExpectedMs(BinaryInvariant inv) {
+        Double ms = expectedMs.get(inv);
+        return (ms == null) ? 0 : ms;
+    }
+}
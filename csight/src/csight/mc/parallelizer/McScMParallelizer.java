@@ -1,16 +1,24 @@
 package csight.mc.parallelizer;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
 import csight.mc.mcscm.McScM;
 import csight.mc.parallelizer.ParallelizerTask.ParallelizerCommands;
 import csight.model.fifosys.cfsm.CFSM;
+import csight.util.Util;
 
 /**
  * <p>
@@ -51,6 +59,16 @@ import csight.model.fifosys.cfsm.CFSM;
  * MCResult class, and the refinement counter to prevent CSightMain from using
  * out-dated results. ParallelizerResult can also pass exceptions to CSightMain
  * using this queue.
+ * </p>
+ * <p>
+ * The model checking processes run on a pool of numParallel worker threads,
+ * which is reused across refinements: STOP_ALL cancels the running checks,
+ * rather than replacing the pool, and waits until they have finished (and
+ * their McScM processes are destroyed) before it takes the next task. So the
+ * checks of a new refinement never wait for a worker thread that is still busy
+ * with a cancelled check. The parallelizer also keeps metrics of the pool,
+ * such as its queue depth and utilization, to help choose numParallel.
+ * </p>
  */
 public class McScMParallelizer implements Runnable {
 
@@ -90,6 +108,8 @@ public class McScMParallelizer implements Runnable {
     private final int numParallel;
 
     private final BlockingQueue<ParallelizerTask> taskChannel;
+
+    /** Must be unbounded, so that writing a result never blocks or fails. */
     private final BlockingQueue<ParallelizerResult> resultsChannel;
 
     /** The location of McScM. */
@@ -97,11 +117,34 @@ public class McScMParallelizer implements Runnable {
     protected final Logger logger;
 
     /**
-     * Executes the model checking processes concurrently in a fixed thread pool
-     * size. ExecutorService will handle starting and terminating of threads for
-     * us.
+     * Executes the model checking processes concurrently in a fixed size
+     * thread pool. The worker threads are kept for the lifetime of the
+     * parallelizer.
      */
-    private ExecutorService eService;
+    private final ThreadPoolExecutor eService;
+
+    /**
+     * The model checking processes started for the current refinementCount,
+     * which STOP_ALL cancels. Only accessed by the parallelizer thread.
+     */
+    private final List<Check> curChecks;
+
+    // Metrics of the worker pool, which are updated by the worker threads.
+
+    /** When the parallelizer was created, in nanoseconds. */
+    private final long startNanos;
+
+    /** The number of model checking processes that have completed. */
+    private final AtomicInteger numChecks;
+
+    /** The total time that worker threads spent model checking. */
+    private final AtomicLong busyNanos;
+
+    /** The total time that checks waited for a worker thread. */
+    private final AtomicLong queueWaitNanos;
+
+    /** The largest number of checks that waited for a worker thread. */
+    private final AtomicInteger maxQueueDepth;
 
     /**
      * Creates a new Parallelizer to run in a thread.
@@ -123,7 +166,15 @@ public class McScMParallelizer implements Runnable {
         resultsLock = new ReentrantReadWriteLock();
 
         logger = Logger.getLogger("McScM Parallelizer");
-        eService = Executors.newFixedThreadPool(numParallel);
+        eService = new ThreadPoolExecutor(numParallel, numParallel, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        curChecks = Util.newList();
+
+        startNanos = System.nanoTime();
+        numChecks = new AtomicInteger(0);
+        busyNanos = new AtomicLong(0);
+        queueWaitNanos = new AtomicLong(0);
+        maxQueueDepth = new AtomicInteger(0);
     }
 
     @Override
@@ -150,17 +201,10 @@ public class McScMParallelizer implements Runnable {
                 }
             }
         } catch (InterruptedException e) {
-            boolean success;
-            do {
-                // Result may occasionally fail to enqueue into the results
-                // channel, so attempts are made until the result is
-                // successfully written into the queue. If a limit of how
-                // many attempts are introduced, we need to introduce a
-                // timeout in CSightMain.waitForResult() as there may be no
-                // result returned through the queue.
-                success = writeResult(ParallelizerResult.exceptionResult(e));
-            } while (!success);
-
+            writeResult(ParallelizerResult.exceptionResult(e));
+        } finally {
+            eService.shutdownNow();
+            logger.info("McScM Parallelizer has stopped. " + getMetrics());
         }
     }
 
@@ -185,17 +229,34 @@ public class McScMParallelizer implements Runnable {
         final CFSM cfsm = input.cfsm;
         final InvariantTimeoutPair invTimeoutPair = input.invTimeoutPair;
 
+        final long submitNanos = System.nanoTime();
+        final Check check = new Check();
+
         Runnable runnable = new Runnable() {
 
             @Override
             public void run() {
+                if (!check.started.compareAndSet(false, true)) {
+                    // STOP_ALL cancelled the check before it started.
+                    return;
+                }
+                try {
+                    check();
+                } finally {
+                    check.finished.countDown();
+                }
+            }
+
+            private void check() {
                 ParallelizerResult result;
 
+                long checkStartNanos = System.nanoTime();
+                queueWaitNanos.addAndGet(checkStartNanos - submitNanos);
                 try {
                     cfsm.augmentWithInvTracing(invTimeoutPair.getInv());
 
-                    String mcInputStr = cfsm.toScmString("checking_scm_"
-                            + invTimeoutPair.getInv().getConnectorString());
+                    String cfsmName = "checking_scm_"
+                            + invTimeoutPair.getInv().getConnectorString();
 
                     logger.fine("*******************************************************");
                     logger.fine("Checking ... "
@@ -207,37 +268,31 @@ public class McScMParallelizer implements Runnable {
 
                     McScM mcscm = new McScM(mcPath);
 
-                    mcscm.verify(mcInputStr, invTimeoutPair.getTimeout());
+                    mcscm.verify(cfsm, cfsmName, invTimeoutPair.getTimeout());
                     result = ParallelizerResult.verificationResult(
                             invTimeoutPair,
                             mcscm.getVerifyResult(cfsm.getChannelIds()),
-                            refinementCounter);
+                            refinementCounter, getCheckMs(checkStartNanos));
 
                 } catch (TimeoutException e) {
                     // Model checking timed out.
                     result = ParallelizerResult.timeOutResult(invTimeoutPair,
-                            refinementCounter);
+                            refinementCounter, getCheckMs(checkStartNanos));
 
                 } catch (InterruptedException e) {
                     // Model checking process was interrupted.
                     result = ParallelizerResult.interruptedResult(
-                            invTimeoutPair, refinementCounter);
+                            invTimeoutPair, refinementCounter,
+                            getCheckMs(checkStartNanos));
                 } catch (Exception e) {
                     // Exception during model checking. Send it to CSightMain.
                     result = ParallelizerResult.exceptionResult(e,
                             refinementCounter);
                 }
 
-                boolean success;
-                do {
-                    // Result may occasionally fail to enqueue into the results
-                    // channel, so attempts are made until the result is
-                    // successfully written into the queue. If a limit of how
-                    // many attempts are introduced, we need to introduce a
-                    // timeout in CSightMain.waitForResult() as there may be no
-                    // result returned through the queue.
-                    success = McScMParallelizer.this.writeResult(result);
-                } while (!success);
+                busyNanos.addAndGet(System.nanoTime() - checkStartNanos);
+                numChecks.incrementAndGet();
+                McScMParallelizer.this.writeResult(result);
             }
 
         };
@@ -245,9 +300,16 @@ public class McScMParallelizer implements Runnable {
         try {
             // Gets a write lock to block writeResult(). @see resultsLock
             resultsLock.writeLock().lockInterruptibly();
-            eService.submit(runnable);
+            removeDoneChecks();
+            check.future = eService.submit(runnable);
+            curChecks.add(check);
             numRunning++;
 
+            int queueDepth = eService.getQueue().size();
+            if (queueDepth > maxQueueDepth.get()) {
+                maxQueueDepth.set(queueDepth);
+            }
+
             assert (numRunning >= 0);
             assert (numRunning <= numParallel);
 
@@ -258,25 +320,69 @@ public class McScMParallelizer implements Runnable {
     }
 
     /**
-     * Stops all model checking processes and prepares for new tasks. This
-     * method will always run non-concurrently with itself, and startOne()
+     * Stops all model checking processes and prepares for new tasks. Returns
+     * once the stopped processes have finished, so that their worker threads
+     * are free for the next tasks. This method will always run
+     * non-concurrently with itself, and startOne()
      * 
      * @param refinementCounter
      * @throws InterruptedException
      */
     private void stopAll(int refinementCounter) throws InterruptedException {
         logger.info("Stopping all model checking processes...");
-        eService.shutdownNow();
 
+        List<Check> stopped = Util.newList();
         try {
             // Gets a write lock to block writeResult(). @see resultsLock
             resultsLock.writeLock().lockInterruptibly();
+            // Interrupts the running checks, which destroys their McScM
+            // processes, and removes the queued checks from the pool. The
+            // results of interrupted checks are out-dated, and will be
+            // discarded by writeResult().
+            for (Check check : curChecks) {
+                if (check.started.compareAndSet(false, true)) {
+                    // The check will not run.
+                    check.future.cancel(false);
+                } else {
+                    check.future.cancel(true);
+                    stopped.add(check);
+                }
+            }
+            curChecks.clear();
+            eService.purge();
             refinementCount = refinementCounter;
-            eService = Executors.newFixedThreadPool(numParallel);
             numRunning = 0;
         } finally {
             resultsLock.writeLock().unlock();
         }
+
+        // Waits for the interrupted checks to finish. This must not hold the
+        // write lock, since a finishing check calls writeResult().
+        for (Check check : stopped) {
+            check.finished.await();
+        }
+    }
+
+    /** Removes the completed checks from curChecks. */
+    private void removeDoneChecks() {
+        Iterator<Check> iter = curChecks.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().future.isDone()) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * A model checking process submitted to the worker pool. Either the
+     * worker thread or stopAll() claims the check, by setting started: a check
+     * that stopAll() claims never runs, and stopAll() waits for a check that
+     * the worker thread claims to finish.
+     */
+    private static final class Check {
+        final AtomicBoolean started = new AtomicBoolean(false);
+        final CountDownLatch finished = new CountDownLatch(1);
+        Future<?> future;
     }
 
     /**
@@ -317,17 +423,16 @@ public class McScMParallelizer implements Runnable {
     /**
      * Writes a ParallelizerResult to the results channel if the result is not
      * out-dated, and decrement numRunning to mark termination of a model
-     * checking process.
+     * checking process. The lock is acquired uninterruptibly, since the
+     * interrupt status of a cancelled check may still be set.
      * 
      * @param result
-     * @return False iff exception occurred when writing to results Channel,
-     *         else true
      */
-    protected boolean writeResult(ParallelizerResult result) {
+    protected void writeResult(ParallelizerResult result) {
+        // Gets a read lock to block startOne() and stopAll(). @see
+        // resultsLock
+        resultsLock.readLock().lock();
         try {
-            // Gets a write lock to block startOne() and stopAll(). @see
-            // resultsLock
-            resultsLock.readLock().lockInterruptibly();
             /**
              * Java's ExecutorService.shutDownNow() does not guarantee
              * termination of threads, causing race condition. No results should
@@ -342,24 +447,83 @@ public class McScMParallelizer implements Runnable {
                     || refinementCount != result.getRefinementCounter()) {
                 // Model checking for this refinement already stopped. Don't
                 // return any more results and don't decrement numRunning.
-                return true;
+                return;
             }
 
             logger.fine("Parallelizer returned a result. Refinement: "
                     + result.getRefinementCounter());
-            resultsChannel.put(result);
+            boolean written = resultsChannel.offer(result);
+            assert written;
             numRunning--;
 
             assert (numRunning >= 0);
-
-            return true;
-        } catch (InterruptedException e) {
-            // BlockingQueue.put() may throw InterruptedException occasionally.
-            logger.info("Parallelizer failed to enqueue result.");
-
-            return false;
         } finally {
             resultsLock.readLock().unlock();
         }
     }
+
+    private static long getCheckMs(long checkStartNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                - checkStartNanos);
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Metrics
+
+    /**
+     * Returns the number of model checking processes that are waiting for a
+     * worker thread.
+     */
+    public int getQueueDepth() {
+        return eService.getQueue().size();
+    }
+
+    /** Returns the largest queue depth so far. */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /** Returns the number of worker threads that are model checking. */
+    public int getNumActive() {
+        return eService.getActiveCount();
+    }
+
+    /** Returns the number of model checking processes that have completed. */
+    public int getNumChecks() {
+        return numChecks.get();
+    }
+
+    /**
+     * Returns the fraction of the available worker time, since the
+     * parallelizer was created, that was spent model checking.
+     */
+    public double getUtilization() {
+        long elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (double) busyNanos.get() / (elapsedNanos * numParallel);
+    }
+
+    /**
+     * Returns the mean time in milliseconds that a model checking process
+     * waited for a worker thread.
+     */
+    public double getMeanQueueWaitMs() {
+        int n = numChecks.get();
+        if (n == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMicros(queueWaitNanos.get()) / 1000.0
+                / n;
+    }
+
+    /** Returns a summary of the metrics of the worker pool. */
+    public String getMetrics() {
+        return String.format(
+                "Checks: %d, utilization: %.1f%% of %d workers, "
+                        + "queue depth: %d (max %d), mean queue wait: %.1fms",
+                getNumChecks(), 100 * getUtilization(), numParallel,
+                getQueueDepth(), getMaxQueueDepth(), getMeanQueueWaitMs());
+    }
 }
@@ -46,23 +46,32 @@ public class ParallelizerResult {
      */
     private final int refinementCounter;
 
+    /**
+     * The time in milliseconds that the model checking run took, not counting
+     * the time it waited for a worker thread.
+     */
+    private final long checkMs;
+
     /**
      * Builds a timeout ParallelizerResult for invariant
      * 
      * @param invTimeoutPair
      * @param refinementCounter
+     * @param checkMs
      * @return
      */
     protected static ParallelizerResult timeOutResult(
-            InvariantTimeoutPair invTimeoutPair, int refinementCounter) {
+            InvariantTimeoutPair invTimeoutPair, int refinementCounter,
+            long checkMs) {
         return new ParallelizerResult(invTimeoutPair, null, true, false, false,
-                null, refinementCounter);
+                null, refinementCounter, checkMs);
     }
 
     public static ParallelizerResult interruptedResult(
-            InvariantTimeoutPair invTimeoutPair, int refinementCounter) {
+            InvariantTimeoutPair invTimeoutPair, int refinementCounter,
+            long checkMs) {
         return new ParallelizerResult(invTimeoutPair, null, false, true, false,
-                null, refinementCounter);
+                null, refinementCounter, checkMs);
     }
 
     /**
@@ -71,13 +80,14 @@ public class ParallelizerResult {
      * @param invTimeoutPair
      * @param mcResult
      * @param refinementCounter
+     * @param checkMs
      * @return
      */
     protected static ParallelizerResult verificationResult(
             InvariantTimeoutPair invTimeoutPair, MCResult mcResult,
-            int refinementCounter) {
+            int refinementCounter, long checkMs) {
         return new ParallelizerResult(invTimeoutPair, mcResult, false, false,
-                false, null, refinementCounter);
+                false, null, refinementCounter, checkMs);
     }
 
     /**
@@ -90,7 +100,7 @@ public class ParallelizerResult {
     protected static ParallelizerResult exceptionResult(Exception e,
             int refinementCounter) {
         return new ParallelizerResult(null, null, false, false, true, e,
-                refinementCounter);
+                refinementCounter, 0);
     }
 
     /**
@@ -100,7 +110,8 @@ public class ParallelizerResult {
      * @return
      */
     protected static ParallelizerResult exceptionResult(Exception e) {
-        return new ParallelizerResult(null, null, false, false, true, e, -1);
+        return new ParallelizerResult(null, null, false, false, true, e, -1,
+                0);
     }
 
     /**
@@ -113,10 +124,12 @@ public class ParallelizerResult {
      * @param isException
      * @param e
      * @param refinementCounter
+     * @param checkMs
      */
     private ParallelizerResult(InvariantTimeoutPair invTimeoutPair,
             MCResult mcResult, boolean isTimeout, boolean isInterrupted,
-            boolean isException, Exception e, int refinementCounter) {
+            boolean isException, Exception e, int refinementCounter,
+            long checkMs) {
         this.invTimeoutPair = invTimeoutPair;
         this.mcResult = mcResult;
         this.isTimeout = isTimeout;
@@ -124,6 +137,7 @@ public class ParallelizerResult {
         this.isException = isException;
         this.e = e;
         this.refinementCounter = refinementCounter;
+        this.checkMs = checkMs;
     }
 
     public InvariantTimeoutPair getInvTimeoutPair() {
@@ -158,4 +172,8 @@ public class ParallelizerResult {
         return refinementCounter;
     }
 
+    public long getCheckMs() {
+        return checkMs;
+    }
+
 }
\ No newline at end of file
@@ -175,7 +175,8 @@ public class Spin extends MC {
         String[] command = new String[] { panExec, "-q", "-m250", "-n", "-N",
                 "never_" + invNum, "-t" + invNum + ".trail" };
 
-        mcProcess = new MCProcess(command, "", currentPath, timeoutSecs);
+        mcProcess = new MCProcess(command, "", currentPath, timeoutSecs,
+                SpinResult.newOutputListener());
 
         mcProcess.runProcess();
         // Save results from running Spin.
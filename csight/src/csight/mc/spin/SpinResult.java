@@ -7,6 +7,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import csight.mc.MCOutputListener;
 import csight.mc.MCProcess;
 import csight.mc.MCResult;
 import csight.mc.MCcExample;
@@ -48,6 +49,20 @@ public class SpinResult extends MCResult {
         parseVerifyOutput(verifyRawLines);
     }
 
+    /**
+     * Returns a listener that detects when the output of pan is complete: once
+     * it reports that the model is safe, or that it wrote a trail file. The
+     * statistics that pan reports after that are not used.
+     */
+    public static MCOutputListener newOutputListener() {
+        return new MCOutputListener() {
+            @Override
+            public boolean lineRead(String line) {
+                return line.matches(unsafeRe) || line.matches(safeRe);
+            }
+        };
+    }
+
     /**
      * Parses the verification output for the safety of the model and calls
      * parseCounterExample if the model is unsafe.
@@ -1,5 +1,8 @@
 package csight.model.fifosys.cfsm;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -24,6 +27,7 @@ import csight.util.Util;
 
 import synoptic.model.channelid.ChannelId;
 import synoptic.model.event.DistEventType;
+import synoptic.util.InternalSynopticException;
 
 /**
  * <p>
@@ -464,9 +468,25 @@ public class CFSM extends FifoSys<CFSMState, DistEventType> {
      * was augmented with any invariants.
      */
     public String toScmString(String cfsmName) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeScm(writer, cfsmName);
+        } catch (IOException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes the SCM representation of this CFSM (see toScmString) to writer,
+     * one FSM state or bad state at a time, so that the representation of a
+     * large CFSM is never held in memory as a whole (e.g., when it is piped to
+     * McScM).
+     */
+    public void writeScm(Writer writer, String cfsmName) throws IOException {
         assert unSpecifiedPids == 0;
 
-        String ret = "scm " + cfsmName + ":\n\n";
+        writer.write("scm " + cfsmName + ":\n\n");
 
         // Channels:
         // Add a special channel for handling local events, represented as
@@ -481,40 +501,38 @@ public class CFSM extends FifoSys<CFSMState, DistEventType> {
                     .get(localEventsChIndex);
         }
 
-        ret += "nb_channels = " + channelIds.size() + " ;\n";
-        ret += "/*\n";
+        writer.write("nb_channels = " + channelIds.size() + " ;\n");
+        writer.write("/*\n");
         for (int i = 0; i < channelIds.size(); i++) {
-            ret += "channel " + Integer.toString(i) + " : "
-                    + channelIds.get(i).toString() + "\n";
+            writer.write("channel " + Integer.toString(i) + " : "
+                    + channelIds.get(i).toString() + "\n");
         }
-        ret += "*/\n\n";
+        writer.write("*/\n\n");
 
         // Whether or not any channels are lossy:
         // TODO: add lossy field to ChannelId and list all channel ids that
         // are lossy here.
 
         // Parameters/Alphabet:
-        ret += "parameters :\n";
-        ret += alphabet.toScmParametersString();
-        ret += "\n";
+        writer.write("parameters :\n");
+        writer.write(alphabet.toScmParametersString());
+        writer.write("\n");
 
         // FSMS:
         for (int pid = 0; pid < numProcesses; pid++) {
             FSM f = fsms.get(pid);
-            ret += "automaton p" + Integer.toString(pid) + " :\n";
-            ret += f.toScmString(localChId);
-            ret += "\n";
+            writer.write("automaton p" + Integer.toString(pid) + " :\n");
+            f.writeScm(writer, localChId);
+            writer.write("\n");
         }
 
         // Bad states:
         if (!invs.isEmpty()) {
-            ret += "\nbad_states:\n";
+            writer.write("\nbad_states:\n");
             for (BadState b : getBadStates()) {
-                ret += b.toScmString() + "\n";
+                writer.write(b.toScmString() + "\n");
             }
         }
-
-        return ret;
     }
 
     // //////////////////////////////////////////////////////////////////
@@ -1,5 +1,8 @@
 package csight.model.fifosys.cfsm.fsm;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -19,6 +22,7 @@ import dk.brics.automaton.State;
 import dk.brics.automaton.Transition;
 
 import synoptic.model.event.DistEventType;
+import synoptic.util.InternalSynopticException;
 
 /**
  * This class models FSMs that make up a CFSM. A few key characteristics:
@@ -303,26 +307,38 @@ public class FSM extends AbsFSM<FSMState, DistEventType> {
      * ordering.
      */
     public String toScmString(LocalEventsChannelId localEventsChId) {
-        assert !initStates.isEmpty();
+        StringWriter writer = new StringWriter();
+        try {
+            writeScm(writer, localEventsChId);
+        } catch (IOException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return writer.toString();
+    }
 
-        String ret;
+    /**
+     * Writes the SCM representation of this FSM (see toScmString) to writer,
+     * one state at a time.
+     */
+    public void writeScm(Writer writer, LocalEventsChannelId localEventsChId)
+            throws IOException {
+        assert !initStates.isEmpty();
 
-        ret = null;
+        String initial = null;
         for (FSMState s : initStates) {
-            if (ret == null) {
-                ret = "initial : " + s.getStateId();
+            if (initial == null) {
+                initial = "initial : " + s.getStateId();
             } else {
-                ret += " , " + s.getStateId();
+                initial += " , " + s.getStateId();
             }
         }
-        ret += "\n";
+        writer.write(initial);
+        writer.write("\n");
 
         for (FSMState s : states) {
-            ret += s.toScmString(localEventsChId);
-            ret += "\n\n";
+            writer.write(s.toScmString(localEventsChId));
+            writer.write("\n\n");
         }
-
-        return ret;
     }
 
     /**
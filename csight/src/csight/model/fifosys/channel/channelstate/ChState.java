@@ -1,27 +1,25 @@
 package csight.model.fifosys.channel.channelstate;
 
-import java.util.ArrayList;
 import java.util.List;
 
-import csight.util.Util;
-
 import synoptic.model.channelid.ChannelId;
 import synoptic.model.event.IDistEventType;
 
 /**
  * The ChannelState maintains the queue state for a channel, identified by a
- * specific channel id.
+ * specific channel id. The queue is a PersistentQueue, so a clone shares the
+ * queue with the original ChannelState, and takes O(1) time.
  */
 public class ChState<TxnEType extends IDistEventType> implements Cloneable {
 
     private final ChannelId chId;
-    private final List<TxnEType> queue;
+    private PersistentQueue<TxnEType> queue;
 
     public ChState(ChannelId chId) {
-        this(chId, Util.<TxnEType> newList());
+        this(chId, PersistentQueue.<TxnEType> empty());
     }
 
-    private ChState(ChannelId chId, List<TxnEType> queue) {
+    private ChState(ChannelId chId, PersistentQueue<TxnEType> queue) {
         assert chId != null;
         assert queue != null;
 
@@ -71,13 +69,11 @@ public class ChState<TxnEType extends IDistEventType> implements Cloneable {
      * Returns a copy of this ChannelState.
      */
     @Override
-    @SuppressWarnings("unchecked")
     public ChState<TxnEType> clone() {
-        // Since ChannelId is immutable and Event is immutable all we need to do
-        // is make sure to clone the ArrayList that maintains events to produce
-        // a new independent deep-copy of ChannelState.
-        return new ChState<TxnEType>(chId,
-                (List<TxnEType>) ((ArrayList<TxnEType>) queue).clone());
+        // Since ChannelId, Event, and the queue are immutable, the clone can
+        // share them with this ChannelState: enqueue and dequeue replace the
+        // queue of a ChannelState, rather than modify it.
+        return new ChState<TxnEType>(chId, queue);
     }
 
     // //////////////////////////////////////////////////////////////////
@@ -87,17 +83,23 @@ public class ChState<TxnEType extends IDistEventType> implements Cloneable {
         assert e.isSendEvent();
         assert e.getChannelId().equals(chId);
 
-        queue.add(e);
+        queue = queue.enqueue(e);
     }
 
     /** Removes and returns the event at the top of the queue. */
     public TxnEType dequeue() {
-        return queue.remove(0);
+        TxnEType e = peek();
+        queue = queue.dequeue();
+        return e;
     }
 
     /** Returns the event at the top of the queue, without removing it. */
     public TxnEType peek() {
-        return queue.get(0);
+        if (queue.isEmpty()) {
+            throw new IndexOutOfBoundsException("Channel " + chId
+                    + " is empty.");
+        }
+        return queue.peek();
     }
 
     /** Returns the number of events in the queue. */
@@ -113,8 +115,9 @@ public class ChState<TxnEType extends IDistEventType> implements Cloneable {
     public ChannelId getChannelId() {
         return chId;
     }
-    
-    public List<TxnEType> getQueue(){
-    	return queue;
+
+    /** Returns a new list with the events in the queue, in order. */
+    public List<TxnEType> getQueue() {
+        return queue.toList();
     }
 }
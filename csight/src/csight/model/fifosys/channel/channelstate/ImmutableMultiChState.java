@@ -1,27 +1,42 @@
 package csight.model.fifosys.channel.channelstate;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 import csight.util.Util;
+import csight.util.WeakInterner;
 
 import synoptic.model.channelid.ChannelId;
 import synoptic.model.event.DistEventType;
 
 /**
+ * <p>
  * Represents the state of a set of channels that are part of a FIFO system.
  * This state _cannot_ be mutated, or modified. An instance of this state is
  * finalized at construction. Moreover, the only way to create an instance is
  * through static methods that perform instance caching and return a previously
- * created instance, if one already exists.
+ * created instance, if one already exists. The cache only holds instances that
+ * are in use, and may be used from multiple threads.
+ * </p>
+ * <p>
+ * The queues of the channels are persistent, so the next state of a state
+ * shares the unchanged channel states and the unchanged parts of the changed
+ * queue with it.
+ * </p>
  */
 public class ImmutableMultiChState extends AbsMultiChState<DistEventType> {
 
-    // Global cache of channel states already created.
-    private static final Map<List<ChState<DistEventType>>, ImmutableMultiChState> chCache;
+    // Global cache of channel states already created, from which unused
+    // instances are dropped.
+    private static final WeakInterner<ImmutableMultiChState> chCache;
 
     static {
-        chCache = Util.newMap();
+        chCache = new WeakInterner<ImmutableMultiChState>();
+    }
+
+    /** Returns the number of cached instances. Used by tests. */
+    static int getNumCached() {
+        return chCache.size();
     }
 
     /**
@@ -43,28 +58,35 @@ public class ImmutableMultiChState extends AbsMultiChState<DistEventType> {
      */
     public static ImmutableMultiChState fromChannelStates(
             List<ChState<DistEventType>> chStates) {
-        ImmutableMultiChState ret;
-
-        if (chCache.containsKey(chStates)) {
-            ret = chCache.get(chStates);
-        } else {
-            ret = new ImmutableMultiChState(chStates);
-            chCache.put(chStates, ret);
+        // The channel states of the caller may be modified later, so the new
+        // instance keeps clones, which share the queues of chStates.
+        List<ChState<DistEventType>> clones = Util.newList(chStates.size());
+        for (ChState<DistEventType> s : chStates) {
+            clones.add(s.clone());
         }
-        return ret;
+        return chCache.intern(new ImmutableMultiChState(clones));
     }
 
     // //////////////////////////////////////////////////////////////////
 
+    // Cached, since the channel states of this instance never change.
+    private final int hash;
+
+    /**
+     * @param chStates
+     *            channel states that are owned by the new instance, and are
+     *            never modified
+     */
     private ImmutableMultiChState(List<ChState<DistEventType>> chStates) {
-        super(chStates);
+        super(Collections.unmodifiableList(chStates));
+        this.hash = super.hashCode();
     }
 
     // //////////////////////////////////////////////////////////////////
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return hash;
     }
 
     @Override
@@ -88,7 +110,8 @@ public class ImmutableMultiChState extends AbsMultiChState<DistEventType> {
         }
 
         // Keep this.channelStates, except for the one that will be modified (at
-        // the index indicated by the event) -- this ChannelState is cloned.
+        // the index indicated by the event) -- this ChannelState is cloned,
+        // which shares its queue, and takes O(1) time.
         List<ChState<DistEventType>> states = Util.newList(channelStates);
         int scmId = e.getChannelId().getScmId();
         ChState<DistEventType> newState = states.get(scmId).clone();
@@ -109,7 +132,7 @@ public class ImmutableMultiChState extends AbsMultiChState<DistEventType> {
             assert false : "A non-local event is not a send or a receive event.";
         }
 
-        return ImmutableMultiChState.fromChannelStates(states);
+        return chCache.intern(new ImmutableMultiChState(states));
     }
 
 }
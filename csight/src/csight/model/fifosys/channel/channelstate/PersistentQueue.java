@@ -0,0 +1,298 @@
+package csight.model.fifosys.channel.channelstate;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import csight.util.Util;
+
+/**
+ * <p>
+ * An immutable FIFO queue. Enqueue and dequeue return a new queue that shares
+ * its structure with the old queue, instead of copying it, and both take O(1)
+ * time in the worst case. This also holds when several queues are derived from
+ * the same queue, as channel states are.
+ * </p>
+ * <p>
+ * The queue is Okasaki's real-time queue: a lazily evaluated front list holds
+ * the head of the queue in order, and a rear list holds the tail of the queue
+ * in reverse order. Elements are enqueued onto the rear list, and dequeued from
+ * the front list. Once the rear list grows longer than the front list, the
+ * front list is replaced by a lazy rotation that appends the reversed rear list
+ * to it. Every operation then evaluates one more element of the rotation (the
+ * schedule), so the rotation is done before the next one starts. Evaluated
+ * elements are memoized, and are shared by all the queues that contain them.
+ * Iterating over a queue takes O(size) time. The rear list is reversed when
+ * the queue is first iterated over, and kept for the later iterations.
+ * </p>
+ * <p>
+ * The hash code of a queue is maintained incrementally, and is the same as the
+ * hash code of a java.util.List with the elements of the queue.
+ * </p>
+ */
+public final class PersistentQueue<E> implements Iterable<E> {
+
+    // The multiplicative inverse of 31 modulo 2^32, which undoes the factor
+    // of 31 of the head element in the hash code when it is dequeued.
+    private static final int INV_31 = 0xbdef7bdf;
+
+    @SuppressWarnings("rawtypes")
+    private static final PersistentQueue EMPTY = new PersistentQueue<Object>(
+            null, null, 0, null, 0, 0, 1);
+
+    /** An immutable node of a singly-linked list. */
+    private static final class Node<E> {
+        final E elem;
+        final Node<E> next;
+
+        Node(E elem, Node<E> next) {
+            this.elem = elem;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A node of a lazily evaluated list, which is never empty (the empty list
+     * is null). A node is either evaluated, or the suspended rotation of a
+     * front list, a rear list that is one element longer, and an evaluated
+     * accumulator, which evaluates to front ++ reverse(rear) ++ acc.
+     */
+    private static final class LazyNode<E> {
+        private E elem;
+        private LazyNode<E> next;
+
+        // The suspended rotation, or null once the node is evaluated.
+        private LazyNode<E> rotFront;
+        private Node<E> rotRear;
+        private LazyNode<E> rotAcc;
+
+        LazyNode(E elem, LazyNode<E> next) {
+            this.elem = elem;
+            this.next = next;
+        }
+
+        LazyNode(LazyNode<E> front, Node<E> rear, LazyNode<E> acc) {
+            assert rear != null;
+            this.rotFront = front;
+            this.rotRear = rear;
+            this.rotAcc = acc;
+        }
+
+        synchronized E elem() {
+            evaluate();
+            return elem;
+        }
+
+        synchronized LazyNode<E> next() {
+            evaluate();
+            return next;
+        }
+
+        /**
+         * Evaluates one step of the rotation. The schedule evaluates the front
+         * list of a rotation before the rotation starts, so this takes O(1)
+         * time.
+         */
+        private void evaluate() {
+            if (rotRear == null) {
+                return;
+            }
+            LazyNode<E> acc = new LazyNode<E>(rotRear.elem, rotAcc);
+            if (rotFront == null) {
+                assert rotRear.next == null;
+                elem = acc.elem;
+                next = acc.next;
+            } else {
+                elem = rotFront.elem();
+                next = new LazyNode<E>(rotFront.next(), rotRear.next, acc);
+            }
+            rotFront = null;
+            rotRear = null;
+            rotAcc = null;
+        }
+    }
+
+    private final LazyNode<E> front;
+    private final Node<E> rear;
+    private final int rearSize;
+    // The unevaluated suffix of front, whose length is the length of front
+    // minus rearSize.
+    private final LazyNode<E> schedule;
+    private final int size;
+
+    // sum(e_i * 31^(size - 1 - i)) over the elements e_i of the queue.
+    private final int elemsHash;
+    // 31^size, so that the hash code is elemsHash + pow, as for a List.
+    private final int pow;
+
+    // The elements of the rear list in order, which are computed when the
+    // queue is first iterated over.
+    private volatile Object[] rearElems = null;
+
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentQueue<E> empty() {
+        return EMPTY;
+    }
+
+    private PersistentQueue(LazyNode<E> front, Node<E> rear, int rearSize,
+            LazyNode<E> schedule, int size, int elemsHash, int pow) {
+        assert (front == null) == (size == 0);
+        assert rearSize <= size - rearSize;
+
+        this.front = front;
+        this.rear = rear;
+        this.rearSize = rearSize;
+        this.schedule = schedule;
+        this.size = size;
+        this.elemsHash = elemsHash;
+        this.pow = pow;
+    }
+
+    /**
+     * Returns a queue with the given lists, which evaluates one element of the
+     * schedule, or starts a rotation if the schedule is done (i.e., when the
+     * rear list is one element longer than the front list).
+     */
+    private static <E> PersistentQueue<E> exec(LazyNode<E> front,
+            Node<E> rear, int rearSize, LazyNode<E> schedule, int size,
+            int elemsHash, int pow) {
+        if (schedule != null) {
+            return new PersistentQueue<E>(front, rear, rearSize,
+                    schedule.next(), size, elemsHash, pow);
+        }
+        LazyNode<E> rotated = new LazyNode<E>(front, rear, null);
+        return new PersistentQueue<E>(rotated, null, 0, rotated, size,
+                elemsHash, pow);
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /** Returns a queue with e added to the back of this queue. */
+    public PersistentQueue<E> enqueue(E e) {
+        assert e != null;
+
+        return exec(front, new Node<E>(e, rear), rearSize + 1, schedule,
+                size + 1, 31 * elemsHash + e.hashCode(), 31 * pow);
+    }
+
+    /** Returns a queue with the element at the top of this queue removed. */
+    public PersistentQueue<E> dequeue() {
+        if (front == null) {
+            throw new NoSuchElementException("Dequeue from an empty queue.");
+        }
+
+        int newPow = pow * INV_31;
+        int newHash = elemsHash - front.elem().hashCode() * newPow;
+        return exec(front.next(), rear, rearSize, schedule, size - 1, newHash,
+                newPow);
+    }
+
+    /** Returns the element at the top of the queue. */
+    public E peek() {
+        if (front == null) {
+            throw new NoSuchElementException("Peek into an empty queue.");
+        }
+        return front.elem();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns a new list with the elements of the queue, in order. */
+    public List<E> toList() {
+        List<E> ret = Util.newList(size);
+        for (E e : this) {
+            ret.add(e);
+        }
+        return ret;
+    }
+
+    /** Returns the elements of the rear list in order. */
+    private Object[] getRearElems() {
+        Object[] ret = rearElems;
+        if (ret == null) {
+            ret = new Object[rearSize];
+            int i = rearSize;
+            for (Node<E> n = rear; n != null; n = n.next) {
+                ret[--i] = n.elem;
+            }
+            rearElems = ret;
+        }
+        return ret;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    @Override
+    public Iterator<E> iterator() {
+        final Object[] rearElemsInOrder = getRearElems();
+        return new Iterator<E>() {
+            LazyNode<E> cur = front;
+            // The index of the next rear element, once front is done.
+            int rearIndex = 0;
+
+            @Override
+            public boolean hasNext() {
+                return cur != null || rearIndex < rearElemsInOrder.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public E next() {
+                if (cur != null) {
+                    E e = cur.elem();
+                    cur = cur.next();
+                    return e;
+                }
+                if (rearIndex < rearElemsInOrder.length) {
+                    return (E) rearElemsInOrder[rearIndex++];
+                }
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return elemsHash + pow;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (other == null) {
+            return false;
+        }
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PersistentQueue)) {
+            return false;
+        }
+        PersistentQueue<?> q = (PersistentQueue<?>) other;
+        if (q.size != size || q.hashCode() != hashCode()) {
+            return false;
+        }
+        Iterator<?> it = q.iterator();
+        for (E e : this) {
+            if (!e.equals(it.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,11 +1,10 @@
 package csight.model.fifosys.gfsm.observed;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import csight.model.fifosys.AbsMultiFSMState;
-import csight.util.Util;
+import csight.util.WeakInterner;
 
 import synoptic.model.event.DistEventType;
 
@@ -20,10 +19,12 @@ public class ObsMultFSMState extends
     // IDs.
     protected List<ObsFSMState> fsmStates;
 
-    private static final Map<List<ObsFSMState>, ObsMultFSMState> cache;
+    // Global cache of the instances in use, which are dropped from the cache
+    // once they are no longer used.
+    private static final WeakInterner<ObsMultFSMState> cache;
 
     static {
-        cache = Util.newMap();
+        cache = new WeakInterner<ObsMultFSMState>();
     }
 
     // Used by tests and DynopticMain to clear the states cache.
@@ -32,13 +33,7 @@ public class ObsMultFSMState extends
     }
 
     public static ObsMultFSMState getMultiFSMState(List<ObsFSMState> states) {
-        if (cache.containsKey(states)) {
-            return cache.get(states);
-        }
-
-        ObsMultFSMState mstate = new ObsMultFSMState(states);
-        cache.put(states, mstate);
-        return mstate;
+        return cache.intern(new ObsMultFSMState(states));
     }
 
     private ObsMultFSMState(List<ObsFSMState> fsmStates) {
@@ -1,7 +1,10 @@
 package csight.model.fifosys.gfsm.observed.fifosys;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -405,83 +408,141 @@ public class ObsFifoSys extends FifoSys<ObsFifoSysState, DistEventType> {
      * and not the complete path -- once we find a violation, we percolate up
      * until we see that there is a stitching edge (with a different trace id),
      * (3) we only care about the three basic invariant types.
+     * All of the invariants are checked in a single depth-first traversal,
+     * which carries a checker for each invariant that is still live on the
+     * current path. An invariant is retired from a path once its checker
+     * permanently succeeds, and from the traversal once it is found to fail.
+     * Each invariant visits a state at most once, so the set of visited states
+     * is tracked per invariant.
      * 
      * @param minedInvs
      */
     public Set<BinaryInvariant> findInvalidatedInvariants(
             List<BinaryInvariant> minedInvs) {
-        // The set of invariants that do _not_ hold, which we will return.
-        Set<BinaryInvariant> ret = Util.newSet();
+        int numInvs = minedInvs.size();
 
-        // Visited keeps track of which states have been visited during
-        // invariant checking.
-        Set<ObsFifoSysState> visited = Util.newSet();
-
-        ObsFifoSysState initS = this.getInitState();
-        for (BinaryInvariant inv : minedInvs) {
-            logger.info("-> Checking " + inv.toString() + " for invalidation.");
-            BinChecker<?> invChecker = inv.newChecker();
-            if (!checkInvariant(invChecker, initS, visited)) {
-                logger.info("--> INVALID.");
-                ret.add(inv);
-            }
-            visited.clear();
-        }
-        return ret;
-    }
+        // Indices of the invariants that do _not_ hold.
+        BitSet invalid = new BitSet(numInvs);
 
-    /**
-     * Runs the invChecker over this instance of observed fifo sys to check if
-     * it satisfied the corresponding invariant.
-     */
-    private <State> boolean checkInvariant(BinChecker<State> invChecker,
-            ObsFifoSysState curState, Set<ObsFifoSysState> visited) {
-        // Don't re-visit states.
-        if (visited.contains(curState)) {
-            // If we visited this state before and return false, then we would
-            // have not returned to this state. Therefore, the invariant is
-            // valid for this state and for all the branches below it.
-            return true;
-        }
-        visited.add(curState);
+        // Keeps track of the invariants that have visited each state.
+        Map<ObsFifoSysState, BitSet> visited = Util.newMap();
 
-        if (curState.isAccept()) {
-            // Return whether or not the invariant holds.
-            if (invChecker.isFail()) {
-                return false;
-            }
-            // Note: even though curState may be accepting, there may be more
-            // transitions from this state that we need to explore.
+        // The traversal stack. The traversal is iterative, so that the depth
+        // of the ObsFifoSys is not limited by the call stack.
+        Deque<InvCheckFrame> stack = new ArrayDeque<InvCheckFrame>();
+
+        int[] allInvs = new int[numInvs];
+        BinChecker<?>[] initCheckers = new BinChecker<?>[numInvs];
+        for (int i = 0; i < numInvs; i++) {
+            logger.info("-> Checking " + minedInvs.get(i).toString()
+                    + " for invalidation.");
+            allInvs[i] = i;
+            initCheckers[i] = minedInvs.get(i).newChecker();
         }
+        stack.push(new InvCheckFrame(this.getInitState(), allInvs,
+                initCheckers, numInvs));
 
-        Set<DistEventType> nextEvents = curState.getTransitioningEvents();
+        while (!stack.isEmpty()) {
+            InvCheckFrame frame = stack.pop();
+            ObsFifoSysState curState = frame.state;
 
-        // Create a copy of the checker state to use if we have more than
-        // sub-branch to explore.
-        BinChecker<State> clonedOrig = null;
-        if (nextEvents.size() > 1) {
-            clonedOrig = invChecker.getClone();
-        }
+            BitSet curVisited = visited.get(curState);
+            if (curVisited == null) {
+                curVisited = new BitSet(numInvs);
+                visited.put(curState, curVisited);
+            }
 
-        for (DistEventType e : nextEvents) {
-            Validity mcResult = invChecker.transition(e);
-            if (mcResult == Validity.PERM_FAIL) {
-                return false;
-            } else if (mcResult == Validity.PERM_SUCCESS) {
-                // The e sub-branch checks out, move on to other sub-branches.
-                continue;
+            // Filter out the invariants that have already failed, or that
+            // have visited this state before. If we visited this state before
+            // and did not find a violation, then the invariant is valid for
+            // this state and for all the branches below it.
+            int numLive = 0;
+            for (int j = 0; j < frame.size; j++) {
+                int inv = frame.invs[j];
+                if (invalid.get(inv) || curVisited.get(inv)) {
+                    continue;
+                }
+                curVisited.set(inv);
+
+                // Note: even though curState may be accepting, there may be
+                // more transitions from this state that we need to explore.
+                if (curState.isAccept() && frame.checkers[j].isFail()) {
+                    invalid.set(inv);
+                    continue;
+                }
+                frame.invs[numLive] = inv;
+                frame.checkers[numLive] = frame.checkers[j];
+                numLive++;
             }
-            if (!checkInvariant(invChecker, curState.getNextState(e), visited)) {
-                return false;
+            if (numLive == 0) {
+                continue;
             }
 
-            // Update the copy of the invChecker with state from the original.
-            if (clonedOrig != null) {
-                invChecker.inheritState(clonedOrig);
+            // Push the sub-branches in reverse, so that they are explored in
+            // the order of the transitioning events. All sub-branches but the
+            // first one take clones of the checkers; the first one is
+            // transitioned last, and takes the checkers themselves.
+            List<DistEventType> nextEvents = Util.newList(curState
+                    .getTransitioningEvents());
+            for (int k = nextEvents.size() - 1; k >= 0; k--) {
+                DistEventType e = nextEvents.get(k);
+                boolean clone = (k != 0);
+                int[] nextInvs = new int[numLive];
+                BinChecker<?>[] nextCheckers = new BinChecker<?>[numLive];
+                int nextSize = 0;
+                for (int j = 0; j < numLive; j++) {
+                    int inv = frame.invs[j];
+                    if (invalid.get(inv)) {
+                        continue;
+                    }
+                    BinChecker<?> invChecker = clone ? frame.checkers[j]
+                            .getClone() : frame.checkers[j];
+                    Validity mcResult = invChecker.transition(e);
+                    if (mcResult == Validity.PERM_FAIL) {
+                        invalid.set(inv);
+                        continue;
+                    } else if (mcResult == Validity.PERM_SUCCESS) {
+                        // The e sub-branch checks out for this invariant.
+                        continue;
+                    }
+                    nextInvs[nextSize] = inv;
+                    nextCheckers[nextSize] = invChecker;
+                    nextSize++;
+                }
+                if (nextSize != 0) {
+                    stack.push(new InvCheckFrame(curState.getNextState(e),
+                            nextInvs, nextCheckers, nextSize));
+                }
             }
         }
-        // If we got here then all of the sub-branches we've explored above
-        // returned true, so the invariant holds in this sub-tree.
-        return true;
+
+        // The set of invariants that do _not_ hold, which we will return.
+        Set<BinaryInvariant> ret = Util.newSet();
+        for (int i = invalid.nextSetBit(0); i >= 0; i = invalid
+                .nextSetBit(i + 1)) {
+            logger.info("--> INVALID: " + minedInvs.get(i).toString());
+            ret.add(minedInvs.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * A state to explore in findInvalidatedInvariants, along with the indices
+     * of the invariants that are live on the path to the state, and their
+     * checkers. Only the first size entries of the arrays are used.
+     */
+    private static final class InvCheckFrame {
+        final ObsFifoSysState state;
+        final int[] invs;
+        final BinChecker<?>[] checkers;
+        final int size;
+
+        InvCheckFrame(ObsFifoSysState state, int[] invs,
+                BinChecker<?>[] checkers, int size) {
+            this.state = state;
+            this.invs = invs;
+            this.checkers = checkers;
+            this.size = size;
+        }
     }
 }
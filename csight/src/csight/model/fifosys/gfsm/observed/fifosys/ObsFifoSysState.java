@@ -1,9 +1,11 @@
 package csight.model.fifosys.gfsm.observed.fifosys;
 
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.logging.Logger;
 
 import csight.main.CSightMain;
@@ -44,19 +46,24 @@ public class ObsFifoSysState extends
 
     // A global cache of previously created ObsFifoSysState instances. This is
     // an optimization to forego duplicating identical fifo states that might be
-    // created because of different interleavings of concurrent events.
-    private static final Map<ObsMultFSMState, ObsFifoSysState> fifoSysStatesMap;
+    // created because of different interleavings of concurrent events. The
+    // cache only holds weak references to the instances, and drops them once
+    // they are no longer used (the key of an instance is its fsmStates, which
+    // the instance refers to, so the value must not refer to it strongly).
+    private static final Map<ObsMultFSMState, WeakReference<ObsFifoSysState>>
+            fifoSysStatesMap;
 
     // The stateId value to give to the next ObsFifoSysState instance.
     private static int nextFifoSysStateId;
 
     static {
-        fifoSysStatesMap = Util.newMap();
+        fifoSysStatesMap =
+                new WeakHashMap<ObsMultFSMState, WeakReference<ObsFifoSysState>>();
         nextFifoSysStateId = 0;
     }
 
     // Used by tests and DynopticMain to clear the states cache.
-    public static void clearCache() {
+    public static synchronized void clearCache() {
         fifoSysStatesMap.clear();
     }
 
@@ -72,15 +79,16 @@ public class ObsFifoSysState extends
      * @param nextChannelStates
      * @return
      */
-    public static ObsFifoSysState getFifoSysState(ObsMultFSMState fsmStates,
-            ImmutableMultiChState channelStates) {
+    public static synchronized ObsFifoSysState getFifoSysState(
+            ObsMultFSMState fsmStates, ImmutableMultiChState channelStates) {
         assert fsmStates != null;
         assert channelStates != null;
 
         // Check if we've already created a fifo sys state with this
-        // MultiFSMState.
-        if (fifoSysStatesMap.containsKey(fsmStates)) {
-            ObsFifoSysState ret = fifoSysStatesMap.get(fsmStates);
+        // MultiFSMState, which is still in use.
+        WeakReference<ObsFifoSysState> ref = fifoSysStatesMap.get(fsmStates);
+        ObsFifoSysState ret = (ref == null) ? null : ref.get();
+        if (ret != null) {
             // Check that the returned state has the expected channels state.
             if (!ret.getChannelStates().equals(channelStates)) {
                 assert ret.getChannelStates().equals(channelStates);
@@ -89,10 +97,10 @@ public class ObsFifoSysState extends
             return ret;
         }
 
-        ObsFifoSysState ret = new ObsFifoSysState(fsmStates, channelStates,
-                nextFifoSysStateId);
+        ret = new ObsFifoSysState(fsmStates, channelStates, nextFifoSysStateId);
         nextFifoSysStateId += 1;
-        fifoSysStatesMap.put(fsmStates, ret);
+        fifoSysStatesMap.put(fsmStates,
+                new WeakReference<ObsFifoSysState>(ret));
         return ret;
     }
 
@@ -0,0 +1,118 @@
+package csight.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * A thread-safe intern table, which maps each value to a canonical instance
+ * that is equal to it. The table only holds weak references to the canonical
+ * instances, so an instance is dropped from the table once it is no longer
+ * used elsewhere, and the table stays as large as the set of live instances.
+ * </p>
+ * <p>
+ * Interned values must be immutable, with hashCode and equals based on their
+ * contents.
+ * </p>
+ */
+public class WeakInterner<T> {
+
+    /**
+     * A weak reference to an interned instance, which is the key and the
+     * value of its entry in the table. The hash code of the instance is kept,
+     * so that the entry can be removed after the instance is collected.
+     */
+    private static final class WeakKey<T> extends WeakReference<T> {
+        private final int hash;
+
+        WeakKey(T referent, ReferenceQueue<T> queue) {
+            super(referent, queue);
+            this.hash = referent.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakKey)) {
+                return false;
+            }
+            WeakKey<?> k = (WeakKey<?>) other;
+            if (k.hash != hash) {
+                return false;
+            }
+            // A collected instance is only equal to its own key.
+            Object referent = get();
+            return referent != null && referent.equals(k.get());
+        }
+    }
+
+    private final ConcurrentMap<WeakKey<T>, WeakKey<T>> table;
+
+    // Receives the keys of collected instances.
+    private final ReferenceQueue<T> collected;
+
+    public WeakInterner() {
+        this.table = new ConcurrentHashMap<WeakKey<T>, WeakKey<T>>();
+        this.collected = new ReferenceQueue<T>();
+    }
+
+    /**
+     * Returns the canonical instance that equals value. If there is none,
+     * value becomes the canonical instance and is returned.
+     */
+    public T intern(T value) {
+        assert value != null;
+
+        removeCollected();
+        WeakKey<T> key = new WeakKey<T>(value, collected);
+        while (true) {
+            WeakKey<T> existing = table.putIfAbsent(key, key);
+            if (existing == null) {
+                return value;
+            }
+            T ret = existing.get();
+            if (ret != null) {
+                // The key of value is not in the table, and must not be
+                // enqueued as collected.
+                key.clear();
+                return ret;
+            }
+            // The existing instance was collected before its key was removed,
+            // so remove the key and try again.
+            table.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Returns the number of interned instances. This includes instances that
+     * were collected, but that are not removed from the table yet.
+     */
+    public int size() {
+        removeCollected();
+        return table.size();
+    }
+
+    /** Removes all instances from the table. */
+    public void clear() {
+        table.clear();
+        removeCollected();
+    }
+
+    /** Removes the keys of collected instances from the table. */
+    private void removeCollected() {
+        Reference<? extends T> ref;
+        while ((ref = collected.poll()) != null) {
+            table.remove(ref);
+        }
+    }
+}
@@ -73,6 +73,16 @@ public class CSightMainTests extends CSightTest {
         return args;
     }
 
+    public List<String> getExplicitArgsStr() throws Exception {
+        List<String> args = Util.newList();
+        args.addAll(getSequentialArgs());
+        args.add("--mcType");
+        args.add("explicit");
+        args.add("-o");
+        args.add("test-output" + File.separator + "test-explicit");
+        return args;
+    }
+
     public List<String> getParallelArgs() throws Exception {
         List<String> args = Util.newList();
         args.add("-p");
@@ -95,6 +105,16 @@ public class CSightMainTests extends CSightTest {
         dyn = new CSightMain(opts);
     }
 
+    @Test(expected = OptionException.class)
+    public void explicitParallel() throws Exception {
+        List<String> args = getExplicitArgsStr();
+        args.addAll(getParallelArgs());
+        args.add("-q");
+        args.add("M:0->1");
+        opts = new CSightOptions(args.toArray(new String[0]));
+        dyn = new CSightMain(opts);
+    }
+
     @Test(expected = OptionException.class)
     public void missingLogFiles() throws Exception {
         List<String> args = getBasicArgsStr();
@@ -300,6 +320,14 @@ public class CSightMainTests extends CSightTest {
         runDynFromFileArgs(args);
     }
 
+    @Test
+    public void runExplicitABPSuccess() throws Exception {
+        List<String> args = getExplicitArgsStr();
+        args.addAll(getABPArgs());
+        args.add("../traces/AlternatingBitProtocol/trace_po_sr_simple.txt");
+        runDynFromFileArgs(args);
+    }
+
     @Test
     public void runABPSuccessParallel() throws Exception {
         List<String> args = getBasicArgsStr();
@@ -334,6 +362,14 @@ public class CSightMainTests extends CSightTest {
         runDynFromFileArgs(args);
     }
 
+    @Test
+    public void runExplicitABPTwoTerminalSuccess() throws Exception {
+        List<String> args = getExplicitArgsStr();
+        args.addAll(getABPArgs());
+        args.add("../traces/AlternatingBitProtocol/trace_po_sr_no_timeout.txt");
+        runDynFromFileArgs(args);
+    }
+
     @Test
     public void runABPTwoTerminalSuccessParallel() throws Exception {
         List<String> args = getBasicArgsStr();
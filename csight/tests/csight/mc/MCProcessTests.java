@@ -0,0 +1,139 @@
+package csight.mc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.mc.mcscm.Os;
+
+/**
+ * Tests for running processes with MCProcess. These use standard Unix
+ * commands, and are skipped on Windows.
+ */
+public class MCProcessTests extends CSightTest {
+
+    File currentPath;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Assume.assumeTrue(!Os.isWindows());
+        currentPath = new File(".");
+    }
+
+    private MCProcess shProcess(String script, int timeoutSecs,
+            MCOutputListener listener) {
+        return new MCProcess(new String[] { "sh", "-c", script }, "",
+                currentPath, timeoutSecs, listener);
+    }
+
+    /**
+     * Checks that an output that is larger than a pipe buffer does not stall
+     * the process.
+     */
+    @Test
+    public void largeOutput() throws Exception {
+        MCProcess p = shProcess(
+                "i=0; while [ $i -lt 20000 ]; do echo \"line $i\"; "
+                        + "echo \"err $i\" 1>&2; i=$((i+1)); done", 20, null);
+        p.runProcess();
+
+        List<String> lines = p.getInputStreamContent();
+        assertEquals(20000, lines.size());
+        assertEquals("line 19999", lines.get(19999));
+        assertEquals(20000, p.getErrorStreamContent().size());
+        assertFalse(p.stoppedEarly());
+    }
+
+    /**
+     * Checks that a generated input is streamed to the process while its
+     * output is read.
+     */
+    @Test
+    public void streamedInput() throws Exception {
+        final int numLines = 100000;
+        MCProcess p = new MCProcess(new String[] { "cat" },
+                new MCProcess.InputGenerator() {
+                    @Override
+                    public void writeInput(Writer writer) throws IOException {
+                        for (int i = 0; i < numLines; i++) {
+                            writer.write("line " + i + "\n");
+                        }
+                    }
+                }, currentPath, 20, null);
+        p.runProcess();
+
+        List<String> lines = p.getInputStreamContent();
+        assertEquals(numLines, lines.size());
+        assertEquals("line " + (numLines - 1), lines.get(numLines - 1));
+    }
+
+    /**
+     * Checks that the process is stopped once the listener has seen the
+     * complete output.
+     */
+    @Test
+    public void stopEarly() throws Exception {
+        MCProcess p = shProcess("echo start; echo verdict; exec sleep 30", 20,
+                new MCOutputListener() {
+                    @Override
+                    public boolean lineRead(String line) {
+                        return line.equals("verdict");
+                    }
+                });
+        long startTime = System.currentTimeMillis();
+        p.runProcess();
+        assertTrue(System.currentTimeMillis() - startTime < 10000);
+
+        List<String> lines = p.getInputStreamContent();
+        assertEquals(2, lines.size());
+        assertEquals("verdict", lines.get(1));
+        assertTrue(p.stoppedEarly());
+    }
+
+    /**
+     * Checks that a process that exits before the timeout is not reported as
+     * timed out, even if the timer fires before runProcess notices the exit.
+     */
+    @Test
+    public void exitedBeforeTimeout() throws Exception {
+        MCProcess p = new MCProcess(new String[] { "true" },
+                new MCProcess.InputGenerator() {
+                    @Override
+                    public void writeInput(Writer writer) throws IOException {
+                        // Still writing when the timer fires.
+                        try {
+                            Thread.sleep(2000);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                        writer.write("ignored\n");
+                    }
+                }, currentPath, 1, null);
+        p.runProcess();
+        assertTrue(p.getInputStreamContent().isEmpty());
+    }
+
+    @Test
+    public void timeout() throws Exception {
+        MCProcess p = shProcess("echo start; exec sleep 30", 1, null);
+        try {
+            p.runProcess();
+            fail("Expected a TimeoutException.");
+        } catch (TimeoutException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package csight.mc.parallelizer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.NeverFollowedBy;
+import csight.util.Util;
+
+import synoptic.model.event.DistEventType;
+
+public class InvariantCheckSchedulerTests extends CSightTest {
+
+    BinaryInvariant inv1, inv2, inv3;
+    List<InvariantTimeoutPair> invsToSatisfy;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        DistEventType a = DistEventType.LocalEvent("a", 0);
+        DistEventType b = DistEventType.LocalEvent("b", 1);
+        inv1 = new AlwaysFollowedBy(a, b);
+        inv2 = new NeverFollowedBy(a, b);
+        inv3 = new AlwaysPrecedes(a, b);
+
+        invsToSatisfy = Util.newList();
+        invsToSatisfy.add(new InvariantTimeoutPair(inv1, 20));
+        invsToSatisfy.add(new InvariantTimeoutPair(inv2, 20));
+        invsToSatisfy.add(new InvariantTimeoutPair(inv3, 20));
+    }
+
+    /**
+     * Without prioritization, invariants are checked in order, with their
+     * timeouts unchanged.
+     */
+    @Test
+    public void inOrder() {
+        InvariantCheckScheduler scheduler = new InvariantCheckScheduler(
+                false, 60);
+        scheduler.recordCheck(inv1, 50000);
+        scheduler.recordCheck(inv2, 10);
+
+        InvariantTimeoutPair first = invsToSatisfy.get(0);
+        InvariantTimeoutPair next = scheduler.removeNext(invsToSatisfy);
+        assertSame(first, next);
+        assertEquals(20, next.getTimeout());
+        assertEquals(inv2, scheduler.removeNext(invsToSatisfy).getInv());
+        assertEquals(inv3, scheduler.removeNext(invsToSatisfy).getInv());
+        assertTrue(invsToSatisfy.isEmpty());
+    }
+
+    /**
+     * Invariants that have not been checked go first, then the invariants
+     * with the shortest expected check time.
+     */
+    @Test
+    public void shortestExpectedFirst() {
+        InvariantCheckScheduler scheduler = new InvariantCheckScheduler(true,
+                60);
+        scheduler.recordCheck(inv1, 5000);
+        scheduler.recordTimeout(inv2, 20);
+
+        assertEquals(inv3, scheduler.removeNext(invsToSatisfy).getInv());
+        assertEquals(inv1, scheduler.removeNext(invsToSatisfy).getInv());
+        assertEquals(inv2, scheduler.removeNext(invsToSatisfy).getInv());
+        assertTrue(invsToSatisfy.isEmpty());
+    }
+
+    /**
+     * Timeouts are raised to what past checks took, up to the maximum
+     * timeout, and never lowered.
+     */
+    @Test
+    public void adaptTimeouts() {
+        InvariantCheckScheduler scheduler = new InvariantCheckScheduler(true,
+                60);
+
+        // A check that is expected to be fast keeps its timeout.
+        scheduler.recordCheck(inv1, 1000);
+        InvariantTimeoutPair pair = new InvariantTimeoutPair(inv1, 20);
+        assertSame(pair, scheduler.adaptTimeout(pair));
+
+        // The expected check time is a moving average: (1000 + 39000) / 2.
+        scheduler.recordCheck(inv1, 39000);
+        assertEquals(20000.0, scheduler.getExpectedMs(inv1), 0.001);
+        assertEquals(30, scheduler.adaptTimeout(pair).getTimeout());
+
+        // A timed out check takes at least its timeout.
+        scheduler.recordTimeout(inv2, 30);
+        assertEquals(30000.0, scheduler.getExpectedMs(inv2), 0.001);
+        pair = new InvariantTimeoutPair(inv2, 40);
+        assertEquals(45, scheduler.adaptTimeout(pair).getTimeout());
+
+        scheduler.recordTimeout(inv2, 50);
+        assertEquals(60, scheduler.adaptTimeout(pair).getTimeout());
+    }
+}
@@ -0,0 +1,115 @@
+package csight.model.fifosys.cfsm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.NeverFollowedBy;
+import csight.mc.MCResult;
+import csight.mc.explicit.ExplicitMC;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+public class ExplicitMCCFSMTests extends CFSMTesting {
+
+    ExplicitMC mc;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mc = new ExplicitMC(8);
+    }
+
+    public MCResult verify(CFSM c, BinaryInvariant inv) throws Exception {
+        mc.verify(c, inv, 60);
+        MCResult result = mc.getVerifyResult(c.getChannelIds());
+        return result;
+    }
+
+    @Test
+    public void verifyAFby() throws Exception {
+        AlwaysFollowedBy inv = new AlwaysFollowedBy(p0Sm, p1Rm);
+        MCResult result = verify(cfsm, inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyNFby() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p1Rm);
+        MCResult result = verify(cfsm, inv);
+        assertTrue(!result.modelIsSafe());
+
+        // The shortest counter-example sends and then receives m.
+        List<DistEventType> expected = Util.newList();
+        expected.add(p0Sm);
+        expected.add(p1Rm);
+        assertEquals(expected, result.getCExample().getEvents());
+    }
+
+    @Test
+    public void verifyAP() throws Exception {
+        AlwaysPrecedes inv = new AlwaysPrecedes(p0Sm, p1Rm);
+        MCResult result = verify(cfsm, inv);
+        assertTrue(result.getCExample() == null);
+    }
+
+    /**
+     * Checks that a violation that requires more messages in a channel than
+     * its capacity is not found.
+     */
+    @Test
+    public void verifyChannelCapacity() throws Exception {
+        // pid 0: sends m twice, executes e, then terminates.
+        FSMState s0 = new FSMState(false, true, 0, 0);
+        FSMState s1 = new FSMState(false, false, 0, 1);
+        FSMState s2 = new FSMState(false, false, 0, 2);
+        FSMState s3 = new FSMState(true, false, 0, 3);
+        s0.addTransition(p0Sm, s1);
+        s1.addTransition(p0Sm, s2);
+        s2.addTransition(p0Le, s3);
+        Set<FSMState> states0 = Util.newSet();
+        states0.add(s0);
+        states0.add(s1);
+        states0.add(s2);
+        states0.add(s3);
+
+        // pid 1: receives m twice, then terminates.
+        FSMState r0 = new FSMState(false, true, 1, 0);
+        FSMState r1 = new FSMState(false, false, 1, 1);
+        FSMState r2 = new FSMState(true, false, 1, 2);
+        r0.addTransition(p1Rm, r1);
+        r1.addTransition(p1Rm, r2);
+        Set<FSMState> states1 = Util.newSet();
+        states1.add(r0);
+        states1.add(r1);
+        states1.add(r2);
+
+        List<ChannelId> cids = Util.newList(1);
+        cids.add(cid);
+        CFSM c = new CFSM(2, cids);
+        c.addFSM(new FSM(0, s0, s3, states0, 4));
+        c.addFSM(new FSM(1, r0, r2, states1, 3));
+
+        // Violated only if both messages are sent (and e executes) before the
+        // first receive.
+        AlwaysPrecedes inv = new AlwaysPrecedes(p1Rm, p0Le);
+        mc = new ExplicitMC(1);
+        assertTrue(verify(c, inv).getCExample() == null);
+
+        mc = new ExplicitMC(2);
+        MCResult result = verify(c, inv);
+        assertTrue(result.getCExample() != null);
+    }
+}
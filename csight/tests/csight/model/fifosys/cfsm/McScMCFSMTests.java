@@ -30,10 +30,8 @@ public class McScMCFSMTests extends CFSMTesting {
 
     public MCResult verifyAndPrint() throws IOException, InterruptedException,
             TimeoutException {
-        String cStr = cfsm.toScmString("test");
-
-        mcscm.verify(cStr, 60);
-        logger.info(cStr);
+        mcscm.verify(cfsm, "test", 60);
+        logger.info(cfsm.toScmString("test"));
 
         MCResult result = mcscm.getVerifyResult(cfsm.getChannelIds());
         // logger.info(result.toRawString());
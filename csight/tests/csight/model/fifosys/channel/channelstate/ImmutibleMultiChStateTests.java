@@ -1,9 +1,14 @@
 package csight.model.fifosys.channel.channelstate;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -106,4 +111,91 @@ public class ImmutibleMultiChStateTests extends CSightTest {
         mc4 = mc4.getNextChState(localE);
         assertTrue(mc4 == mc3);
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks that the channel states passed to fromChannelStates can be
+     * modified without changing the returned instance.
+     */
+    @Test
+    public void fromChannelStatesCopies() {
+        DistEventType sendE = DistEventType.SendEvent("e", cid1);
+        chStates.get(0).enqueue(sendE);
+        mc = ImmutableMultiChState.fromChannelStates(chStates);
+        String mcStr = mc.toString();
+
+        chStates.get(0).dequeue();
+        assertEquals(mcStr, mc.toString());
+        assertTrue(mc != ImmutableMultiChState.fromChannelStates(chStates));
+    }
+
+    /**
+     * Checks that parallel threads creating the same states get the same
+     * instances.
+     */
+    @Test
+    public void concurrentInterning() throws Exception {
+        final int numStates = 200;
+        final DistEventType sendE = DistEventType.SendEvent("e", cid1);
+        Callable<List<ImmutableMultiChState>> createStates;
+        createStates = new Callable<List<ImmutableMultiChState>>() {
+            @Override
+            public List<ImmutableMultiChState> call() {
+                List<ImmutableMultiChState> states = Util.newList(numStates);
+                ImmutableMultiChState s = ImmutableMultiChState
+                        .fromChannelIds(cids);
+                for (int i = 0; i < numStates; i++) {
+                    s = s.getNextChState(sendE);
+                    states.add(s);
+                }
+                return states;
+            }
+        };
+
+        int numThreads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<List<ImmutableMultiChState>>> results = Util.newList();
+            for (int i = 0; i < numThreads; i++) {
+                results.add(pool.submit(createStates));
+            }
+            List<ImmutableMultiChState> states = results.get(0).get();
+            for (Future<List<ImmutableMultiChState>> result : results) {
+                List<ImmutableMultiChState> states2 = result.get();
+                for (int i = 0; i < numStates; i++) {
+                    assertTrue(states.get(i) == states2.get(i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Checks that the cache drops the states that are no longer used.
+     */
+    @Test
+    public void unusedStatesAreDropped() throws Exception {
+        DistEventType sendE = DistEventType.SendEvent("e", cid1);
+        DistEventType recvE = DistEventType.RecvEvent("e", cid1);
+        mc = ImmutableMultiChState.fromChannelIds(cids);
+        int numCached = ImmutableMultiChState.getNumCached();
+
+        // Each state is only used to create the next one.
+        mc2 = mc;
+        for (int i = 0; i < 10000; i++) {
+            mc2 = mc2.getNextChState(sendE);
+        }
+        for (int i = 0; i < 10000; i++) {
+            mc2 = mc2.getNextChState(recvE);
+        }
+        assertTrue(mc2 == mc);
+
+        // Collection is up to the JVM, so allow a few attempts.
+        for (int i = 0; i < 50
+                && ImmutableMultiChState.getNumCached() > numCached + 1000; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertTrue(ImmutableMultiChState.getNumCached() <= numCached + 1000);
+    }
+}
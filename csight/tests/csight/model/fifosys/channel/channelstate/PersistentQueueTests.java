@@ -0,0 +1,132 @@
+package csight.model.fifosys.channel.channelstate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.util.Util;
+
+public class PersistentQueueTests extends CSightTest {
+
+    @Test
+    public void empty() {
+        PersistentQueue<String> q = PersistentQueue.empty();
+        assertTrue(q.isEmpty());
+        assertEquals(0, q.size());
+        assertEquals(Util.newList().hashCode(), q.hashCode());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void emptyDequeue() {
+        PersistentQueue.<String> empty().dequeue();
+    }
+
+    @Test
+    public void enqueueDequeue() {
+        PersistentQueue<String> q = PersistentQueue.empty();
+        q = q.enqueue("a").enqueue("b").enqueue("c");
+        assertEquals(3, q.size());
+        assertEquals("a", q.peek());
+
+        q = q.dequeue();
+        assertEquals("b", q.peek());
+        q = q.enqueue("d");
+        assertEquals(3, q.size());
+
+        List<String> expected = Util.newList();
+        expected.add("b");
+        expected.add("c");
+        expected.add("d");
+        assertEquals(expected, q.toList());
+        assertEquals(expected.hashCode(), q.hashCode());
+    }
+
+    /**
+     * Checks that a queue is not changed by the operations on the queues that
+     * are derived from it.
+     */
+    @Test
+    public void persistence() {
+        PersistentQueue<String> q = PersistentQueue.<String> empty()
+                .enqueue("a").enqueue("b");
+        PersistentQueue<String> q2 = q.dequeue().enqueue("c");
+        PersistentQueue<String> q3 = q.enqueue("d");
+
+        assertEquals("[a, b]", q.toString());
+        assertEquals("[b, c]", q2.toString());
+        assertEquals("[a, b, d]", q3.toString());
+    }
+
+    /**
+     * Checks that equal queues are equal and have equal hash codes, whatever
+     * sequence of operations created them.
+     */
+    @Test
+    public void equality() {
+        PersistentQueue<String> q = PersistentQueue.<String> empty()
+                .enqueue("x").enqueue("a").enqueue("b").dequeue();
+        PersistentQueue<String> q2 = PersistentQueue.<String> empty()
+                .enqueue("a").enqueue("b");
+        assertEquals(q, q2);
+        assertEquals(q.hashCode(), q2.hashCode());
+
+        assertFalse(q.equals(q2.enqueue("c")));
+        assertFalse(q.equals(q2.dequeue()));
+        assertFalse(q.equals(null));
+    }
+
+    /**
+     * Checks queues that are derived from the same queue in different ways,
+     * which share its lazily evaluated elements.
+     */
+    @Test
+    public void sharedDerivations() {
+        PersistentQueue<Integer> q = PersistentQueue.empty();
+        List<Integer> list = Util.newList();
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+            q = q.enqueue(i);
+        }
+
+        for (int k = 0; k < 10; k++) {
+            PersistentQueue<Integer> q2 = q;
+            List<Integer> list2 = Util.newList(list);
+            for (int i = 0; i < 50 + k; i++) {
+                q2 = q2.dequeue();
+                list2.remove(0);
+            }
+            q2 = q2.enqueue(-k);
+            list2.add(-k);
+            assertEquals(list2, q2.toList());
+            // Iterating again gives the same elements.
+            assertEquals(list2, q2.toList());
+            assertEquals(list2.hashCode(), q2.hashCode());
+        }
+        assertEquals(list, q.toList());
+    }
+
+    /** Compares the queue to a list over a long sequence of operations. */
+    @Test
+    public void matchesList() {
+        PersistentQueue<Integer> q = PersistentQueue.empty();
+        List<Integer> list = Util.newList();
+        for (int i = 0; i < 10000; i++) {
+            if (i % 3 == 2) {
+                assertEquals(list.remove(0), q.peek());
+                q = q.dequeue();
+            } else {
+                list.add(i);
+                q = q.enqueue(i);
+            }
+            assertEquals(list.size(), q.size());
+            assertEquals(list.hashCode(), q.hashCode());
+        }
+        assertEquals(list, q.toList());
+    }
+}
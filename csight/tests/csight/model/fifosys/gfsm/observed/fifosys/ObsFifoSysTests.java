@@ -0,0 +1,122 @@
+package csight.model.fifosys.gfsm.observed.fifosys;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.NeverFollowedBy;
+import csight.model.fifosys.channel.channelstate.ImmutableMultiChState;
+import csight.model.fifosys.gfsm.observed.ObsDistEventType;
+import csight.model.fifosys.gfsm.observed.ObsFSMState;
+import csight.model.fifosys.gfsm.observed.ObsMultFSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+public class ObsFifoSysTests extends CSightTest {
+
+    // Empty channeldIds list -- no queues.
+    List<ChannelId> cids;
+    ImmutableMultiChState chState;
+
+    DistEventType a, b, c;
+
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        cids = Util.newList();
+        chState = ImmutableMultiChState.fromChannelIds(cids);
+        a = DistEventType.LocalEvent("a", 0);
+        b = DistEventType.LocalEvent("b", 0);
+        c = DistEventType.LocalEvent("c", 0);
+    }
+
+    /** Returns a new state of a single process, with a unique name. */
+    private ObsFifoSysState newState(String name, boolean isInit,
+            boolean isTerm) {
+        List<ObsFSMState> P = Util.newList(1);
+        P.add(ObsFSMState.namedObsFSMState(0, testName.getMethodName() + name,
+                isInit, isTerm));
+        return ObsFifoSysState.getFifoSysState(
+                ObsMultFSMState.getMultiFSMState(P), chState);
+    }
+
+    /**
+     * Checks invariants against a fifo system with two paths from the initial
+     * state to the terminal state: a,b and c,b.
+     */
+    @Test
+    public void findInvalidatedInvariants() {
+        ObsFifoSysState Si = newState("i", true, false);
+        ObsFifoSysState S1 = newState("1", false, false);
+        ObsFifoSysState S2 = newState("2", false, false);
+        ObsFifoSysState St = newState("t", false, true);
+
+        Si.addTransition(new ObsDistEventType(a, 0), S1);
+        Si.addTransition(new ObsDistEventType(c, 1), S2);
+        S1.addTransition(new ObsDistEventType(b, 0), St);
+        S2.addTransition(new ObsDistEventType(b, 1), St);
+
+        Set<ObsFifoSysState> states = Util.newSet();
+        states.add(Si);
+        states.add(S1);
+        states.add(S2);
+        states.add(St);
+        ObsFifoSys trace = new ObsFifoSys(cids, Si, St, states);
+
+        List<BinaryInvariant> invs = Util.newList();
+        invs.add(new AlwaysFollowedBy(a, b));
+        invs.add(new NeverFollowedBy(b, a));
+        invs.add(new NeverFollowedBy(a, b));
+        invs.add(new AlwaysPrecedes(a, b));
+        invs.add(new AlwaysPrecedes(c, b));
+
+        Set<BinaryInvariant> expected = Util.newSet();
+        expected.add(invs.get(2));
+        expected.add(invs.get(3));
+        expected.add(invs.get(4));
+        assertEquals(expected, trace.findInvalidatedInvariants(invs));
+    }
+
+    /**
+     * Checks invariants against a long chain of states, which must not be
+     * limited by the depth of the call stack.
+     */
+    @Test
+    public void findInvalidatedInvariantsLongTrace() {
+        int length = 100000;
+        Set<ObsFifoSysState> states = Util.newSet();
+        ObsFifoSysState Si = newState("0", true, false);
+        states.add(Si);
+        ObsFifoSysState prev = Si;
+        for (int i = 1; i <= length; i++) {
+            ObsFifoSysState next = newState(Integer.toString(i), false,
+                    i == length);
+            DistEventType e = (i % 2 == 1) ? a : b;
+            prev.addTransition(new ObsDistEventType(e, 0), next);
+            states.add(next);
+            prev = next;
+        }
+        ObsFifoSys trace = new ObsFifoSys(cids, Si, prev, states);
+
+        List<BinaryInvariant> invs = Util.newList();
+        invs.add(new AlwaysFollowedBy(a, b));
+        invs.add(new AlwaysPrecedes(a, b));
+        invs.add(new NeverFollowedBy(b, a));
+        invs.add(new AlwaysFollowedBy(b, c));
+
+        Set<BinaryInvariant> expected = Util.newSet();
+        expected.add(invs.get(2));
+        expected.add(invs.get(3));
+        assertEquals(expected, trace.findInvalidatedInvariants(invs));
+    }
+}
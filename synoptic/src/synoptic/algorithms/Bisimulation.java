@@ -12,14 +12,22 @@ package synoptic.algorithms;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import synoptic.algorithms.graphops.IOperation;
@@ -28,15 +36,20 @@ import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.model.event.EventType;
 import synoptic.model.interfaces.ITransition;
+import synoptic.util.DaemonThreadFactory;
 import synoptic.util.InternalSynopticException;
 
 /**
@@ -74,6 +87,7 @@ public class Bisimulation {
         TimedTask refinement = PerformanceMetrics.createTask("refinement",
                 false);
         AbstractMain main = AbstractMain.getInstance();
+        Partition.setCountTransitionCacheLookups(main.options.doBenchmarking);
         if (main.options.dumpIntermediateStages) {
             main.exportNonInitialGraph(
                     main.getIntermediateDumpFilename("r", 0), pGraph);
@@ -88,10 +102,21 @@ public class Bisimulation {
 
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
+        // The partitions split during the last round of refinement. Used to
+        // limit the invariants that are re-checked in incremental mode.
+        Set<Partition> splitPartitions = new LinkedHashSet<Partition>();
+
         while (true) {
             // Recompute the counter-examples for the unsatisfied invariants.
-            counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            if (main.options.incrementalRefinement
+                    && counterExampleTraces != null) {
+                counterExampleTraces = recomputeCounterExamples(pGraph,
+                        unsatisfiedInvariants, counterExampleTraces,
+                        splitPartitions);
+            } else {
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            }
             logger.fine("Counter-examples: " + counterExampleTraces);
 
             if (counterExampleTraces == null
@@ -125,7 +150,7 @@ public class Bisimulation {
             // Perform the splitting.
             prevNumSplitSteps = numSplitSteps;
             numSplitSteps = performSplits(numSplitSteps, pGraph,
-                    counterExampleTraces);
+                    counterExampleTraces, splitPartitions);
 
             if (numSplitSteps == prevNumSplitSteps) {
                 // No splits were performed, which means that we could not
@@ -148,6 +173,7 @@ public class Bisimulation {
         }
 
         PerformanceMetrics.get().record("numOfSplitSteps", numSplitSteps);
+        Partition.recordTransitionCacheMetrics();
         refinement.stop();
     }
 
@@ -168,6 +194,32 @@ public class Bisimulation {
      */
     public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
             List<CExamplePath<Partition>> counterExampleTraces) {
+        return performSplits(numSplitSteps, pGraph, counterExampleTraces, null);
+    }
+
+    /**
+     * Same as {@code performSplits} above, but additionally records the
+     * partitions that were split in splitPartitions.
+     * 
+     * @param numSplitSteps
+     *            The number of split steps made so far.
+     * @param pGraph
+     *            The graph, whose partitions we will split.
+     * @param counterExampleTraces
+     *            A list of counter-example traces that we attempt to eliminate
+     *            by splitting.
+     * @param splitPartitions
+     *            If not null, this set is cleared and then populated with the
+     *            partitions that were split.
+     * @return The updated numSplitSteps count.
+     */
+    public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            Set<Partition> splitPartitions) {
+
+        if (splitPartitions != null) {
+            splitPartitions.clear();
+        }
 
         // Stores all splits that cause an invariant to be satisfied, indexed by
         // partition to which they are applied.
@@ -193,7 +245,7 @@ public class Bisimulation {
 
         // Contains the first valid split, which will be performed if no other
         // split (that would resolve an invariant) is available.
-        IOperation arbitrarySplit;
+        PartitionSplit arbitrarySplit;
 
         arbitrarySplit = getInvSatisfyingSplits(counterExampleTraces, pGraph,
                 splitsToDoByPartition, newlySatisfiedInvariants);
@@ -210,12 +262,18 @@ public class Bisimulation {
             // + arbitrarySplit;
 
             pGraph.apply(arbitrarySplit);
+            if (splitPartitions != null) {
+                splitPartitions.add(arbitrarySplit.getPartition());
+            }
 
         } else {
             // We have splits that resolve invariants, perform all of them.
             // int i = 0;
             for (PartitionMultiSplit split : splitsToDoByPartition.values()) {
                 pGraph.apply(split);
+                if (splitPartitions != null) {
+                    splitPartitions.add(split.getPartition());
+                }
                 // logger.fine("split[" + numSplitSteps + "." + i + "] : " +
                 // split);
                 // i++;
@@ -245,7 +303,10 @@ public class Bisimulation {
      */
     public static void mergePartitions(PartitionGraph pGraph) {
         TemporalInvariantSet invariants = pGraph.getInvariants();
+        Partition.setCountTransitionCacheLookups(AbstractMain.getInstance()
+                .options.doBenchmarking);
         mergePartitions(pGraph, invariants, 1);
+        Partition.recordTransitionCacheMetrics();
     }
 
     /**************************************************************************/
@@ -527,6 +588,123 @@ public class Bisimulation {
         return candidateSplits;
     }
 
+    /**
+     * Recomputes the counter-examples for unsatisfiedInvariants after a round
+     * of splitting. A split only removes paths from pGraph, and the transitions
+     * between two partitions that were not split remain unchanged. Therefore, a
+     * previous counter-example that does not pass through any of the
+     * splitPartitions is still a counter-example and is reused. The model
+     * checker is only re-run for the remaining invariants. <br />
+     * <br />
+     * With performExtraChecks enabled the result is compared against a full
+     * recomputation of the counter-examples.
+     * 
+     * @param pGraph
+     *            The graph after the splits were applied.
+     * @param unsatisfiedInvariants
+     *            The invariants that were unsatisfied before the splits.
+     * @param prevCounterExamples
+     *            The counter-examples for unsatisfiedInvariants computed
+     *            before the splits.
+     * @param splitPartitions
+     *            The partitions that were split.
+     * @return a list of counter-examples sorted by path length, or null if all
+     *         invariants are satisfied
+     */
+    private static List<CExamplePath<Partition>> recomputeCounterExamples(
+            PartitionGraph pGraph,
+            Set<ITemporalInvariant> unsatisfiedInvariants,
+            List<CExamplePath<Partition>> prevCounterExamples,
+            Set<Partition> splitPartitions) {
+        TimedTask recompute = PerformanceMetrics.createTask(
+                "recomputeCounterExamples", false);
+
+        Map<ITemporalInvariant, CExamplePath<Partition>> prevCExamples = new HashMap<ITemporalInvariant, CExamplePath<Partition>>();
+        for (CExamplePath<Partition> cExample : prevCounterExamples) {
+            prevCExamples.put(cExample.invariant, cExample);
+        }
+
+        // Re-check all the invariants whose counter-examples were affected
+        // by the splits as one set, so that they can be checked in parallel.
+        Set<ITemporalInvariant> recheckInvariants = new LinkedHashSet<ITemporalInvariant>();
+        for (ITemporalInvariant inv : unsatisfiedInvariants) {
+            CExamplePath<Partition> prevCExample = prevCExamples.get(inv);
+            if (prevCExample == null
+                    || !Collections.disjoint(prevCExample.path,
+                            splitPartitions)) {
+                recheckInvariants.add(inv);
+            }
+        }
+        Map<ITemporalInvariant, CExamplePath<Partition>> recheckedCExamples = new HashMap<ITemporalInvariant, CExamplePath<Partition>>();
+        if (!recheckInvariants.isEmpty()) {
+            List<CExamplePath<Partition>> recheckedPaths = new TemporalInvariantSet(
+                    recheckInvariants).getAllCounterExamples(pGraph);
+            if (recheckedPaths != null) {
+                for (CExamplePath<Partition> path : recheckedPaths) {
+                    recheckedCExamples.put(path.invariant, path);
+                }
+            }
+        }
+
+        List<CExamplePath<Partition>> paths = new ArrayList<CExamplePath<Partition>>();
+        for (ITemporalInvariant inv : unsatisfiedInvariants) {
+            CExamplePath<Partition> path;
+            if (recheckInvariants.contains(inv)) {
+                path = recheckedCExamples.get(inv);
+            } else {
+                path = prevCExamples.get(inv);
+            }
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+
+        PerformanceMetrics.get().record("numReusedCounterExamples",
+                unsatisfiedInvariants.size() - recheckInvariants.size());
+        PerformanceMetrics.get().record("numRecheckedInvariants",
+                recheckInvariants.size());
+
+        Collections.sort(paths, new Comparator<CExamplePath<Partition>>() {
+            @Override
+            public int compare(CExamplePath<Partition> o1,
+                    CExamplePath<Partition> o2) {
+                return Integer.valueOf(o1.path.size()).compareTo(
+                        o2.path.size());
+            }
+        });
+        recompute.stop();
+
+        if (AbstractMain.getInstance().options.performExtraChecks) {
+            // The incremental and the full recomputation must agree on the
+            // set of unsatisfied invariants (though not necessarily on the
+            // counter-example paths).
+            Set<ITemporalInvariant> incrementalInvs = new LinkedHashSet<ITemporalInvariant>();
+            for (CExamplePath<Partition> path : paths) {
+                incrementalInvs.add(path.invariant);
+            }
+            Set<ITemporalInvariant> fullInvs = new LinkedHashSet<ITemporalInvariant>();
+            List<CExamplePath<Partition>> fullPaths = new TemporalInvariantSet(
+                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            if (fullPaths != null) {
+                for (CExamplePath<Partition> path : fullPaths) {
+                    fullInvs.add(path.invariant);
+                }
+            }
+            if (!incrementalInvs.equals(fullInvs)) {
+                throw new InternalSynopticException(
+                        "Incremental counter-example recomputation found unsatisfied invariants "
+                                + incrementalInvs
+                                + " but full recomputation found "
+                                + fullInvs);
+            }
+        }
+
+        if (paths.size() == 0) {
+            return null;
+        }
+        return paths;
+    }
+
     /**
      * Performs the splitOp on the pGraph to see whether or not the resulting
      * graph has no other counter-examples for the invariant inv (i.e. whether
@@ -609,14 +787,53 @@ public class Bisimulation {
      *         splitsToDoByPartition is empty and there are no splits that lead
      *         to new invariant satisfaction.
      */
-    private static IOperation getInvSatisfyingSplits(
+    private static PartitionSplit getInvSatisfyingSplits(
             List<CExamplePath<Partition>> counterexampleTraces,
             PartitionGraph pGraph,
             HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
             Set<ITemporalInvariant> newlySatisfiedInvariants) {
 
-        IOperation arbitrarySplit = null;
         AbstractMain main = AbstractMain.getInstance();
+        if (main.options.splitEvaluationThreads <= 1) {
+            return getInvSatisfyingSplits(counterexampleTraces, pGraph,
+                    splitsToDoByPartition, newlySatisfiedInvariants, null);
+        }
+
+        // With more than one evaluation thread, the candidate splits of an
+        // unconstrained invariant are model checked concurrently, on overlays
+        // of pGraph (see findSatisfyingSplit). The pool only lives for this
+        // refinement round.
+        ExecutorService pool = Executors.newFixedThreadPool(
+                main.options.splitEvaluationThreads, new DaemonThreadFactory(
+                        "split-evaluator-"));
+        try {
+            return getInvSatisfyingSplits(counterexampleTraces, pGraph,
+                    splitsToDoByPartition, newlySatisfiedInvariants, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Implements getInvSatisfyingSplits, evaluating the candidate splits of
+     * unconstrained invariants on pool, or sequentially if pool is null.
+     */
+    private static PartitionSplit getInvSatisfyingSplits(
+            List<CExamplePath<Partition>> counterexampleTraces,
+            PartitionGraph pGraph,
+            HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
+            Set<ITemporalInvariant> newlySatisfiedInvariants,
+            ExecutorService pool) {
+
+        AbstractMain main = AbstractMain.getInstance();
+
+        // Whether the cache of adjacent nodes of pGraph is populated, so that
+        // the evaluation threads only ever read pGraph. Applying and rewinding
+        // a split on pGraph invalidates the cache.
+        boolean adjacencyCached = false;
+        int numEvaluatedOnOverlays = 0;
+
+        PartitionSplit arbitrarySplit = null;
 
         // TODO: we are considering counter-example traces in an arbitrary
         // order. This heuristic should be turned into a customizable strategy.
@@ -649,6 +866,24 @@ public class Bisimulation {
                 arbitrarySplit = candidateSplits.get(0);
             }
 
+            if (pool != null && !(inv instanceof TempConstrainedInvariant<?>)) {
+                if (!adjacencyCached) {
+                    pGraph.cacheAllAdjacentNodes();
+                    adjacencyCached = true;
+                }
+                numEvaluatedOnOverlays += candidateSplits.size();
+                PartitionMultiSplit splitOp = findSatisfyingSplit(inv, pGraph,
+                        candidateSplits, pool);
+                // findSatisfyingSplit replays the checked splits on pGraph.
+                adjacencyCached = false;
+                if (splitOp != null) {
+                    recordSplit(splitsToDoByPartition, splitOp);
+                    newlySatisfiedInvariants.add(inv);
+                }
+                continue;
+            }
+            adjacencyCached = false;
+
             // A split that satisfies the invariant locally (within the subgraph
             // where the violation was found) but not globally (in the entire
             // partition graph). Only applied if a globally-satisfying split is
@@ -757,9 +992,142 @@ public class Bisimulation {
                 }
             }
         }
+        if (pool != null) {
+            PerformanceMetrics.get().record("numSplitsEvaluatedOnOverlays",
+                    numEvaluatedOnOverlays);
+        }
         return arbitrarySplit;
     }
 
+    /**
+     * Returns the first split in candidateSplits that makes pGraph satisfy the
+     * unconstrained invariant inv, or null if there is no such split. The
+     * splits are model checked concurrently by the threads of pool, on
+     * overlays of pGraph, which is only read. Once a split is found to satisfy
+     * inv, the checks of the splits that follow it are skipped. The result is
+     * the same as that of checking the splits one by one, in order, so it does
+     * not depend on the number of threads or on their scheduling.
+     * <p>
+     * Applying and rewinding a split moves the events of the split partition
+     * to the back of the partition, which changes the order in which later
+     * counter-examples are found. So, once the search is done, the splits that
+     * the sequential search would have checked are applied to pGraph and
+     * rewound, in order, which leaves pGraph (and its adjacency cache) as the
+     * sequential search would have left it.
+     * </p>
+     */
+    private static PartitionMultiSplit findSatisfyingSplit(
+            final ITemporalInvariant inv, final PartitionGraph pGraph,
+            List<PartitionSplit> candidateSplits, ExecutorService pool) {
+        AbstractMain main = AbstractMain.getInstance();
+        // The threads must only read pGraph and its partitions.
+        assert pGraph.allAdjacentNodesCached();
+
+        final List<PartitionMultiSplit> splitOps = new ArrayList<PartitionMultiSplit>();
+        for (PartitionSplit candidateSplit : candidateSplits) {
+            if (main.options.performExtraChecks) {
+                // getSplits() should never generate invalid splits.
+                if (!candidateSplit.isValid()) {
+                    throw new InternalSynopticException(
+                            "getSplits() generated an invalid split.");
+                }
+            }
+            splitOps.add(new PartitionMultiSplit(candidateSplit));
+        }
+
+        // The smallest index of a split that is known to satisfy inv. The
+        // splits with larger indices do not need to be checked.
+        final AtomicInteger firstSatisfying = new AtomicInteger(
+                Integer.MAX_VALUE);
+
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int j = 0; j < splitOps.size(); j++) {
+            final int index = j;
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    if (index > firstSatisfying.get()) {
+                        return null;
+                    }
+                    PartitionGraphOverlay overlay = new PartitionGraphOverlay(
+                            pGraph, splitOps.get(index));
+                    if (FsmModelChecker.getCounterExample(
+                            (BinaryInvariant) inv, overlay) == null) {
+                        int first = firstSatisfying.get();
+                        while (index < first
+                                && !firstSatisfying.compareAndSet(first, index)) {
+                            first = firstSatisfying.get();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // Wait for every check, including after a failure, so that no thread
+        // reads pGraph once this returns.
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                throw InternalSynopticException.wrap(e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    // Skip the checks that have not started yet.
+                    firstSatisfying.set(-1);
+                    if (e.getCause() instanceof RuntimeException) {
+                        failure = (RuntimeException) e.getCause();
+                    } else {
+                        failure = InternalSynopticException.wrap(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+
+        // The split operations are created anew for the replay, since the
+        // order of their event sets depends on the order of the events in the
+        // partition when they are created.
+        int first = firstSatisfying.get();
+        int numChecked = (first == Integer.MAX_VALUE) ? splitOps.size()
+                : first + 1;
+        PartitionMultiSplit splitOp = null;
+        for (int j = 0; j < numChecked; j++) {
+            splitOp = new PartitionMultiSplit(candidateSplits.get(j));
+            if (j == first && main.options.performExtraChecks) {
+                if (!splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
+                    throw new InternalSynopticException("Split satisfies invariant "
+                            + inv + " on an overlay, but not on the graph: "
+                            + splitOp);
+                }
+            } else {
+                pGraph.apply(pGraph.apply(splitOp));
+            }
+        }
+        return (first == Integer.MAX_VALUE) ? null : splitOp;
+    }
+
+    /**
+     * Records splitOp in splitsToDoByPartition, incorporating it into the split
+     * already recorded for the same partition, if any.
+     */
+    private static void recordSplit(
+            HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
+            PartitionMultiSplit splitOp) {
+        Partition partitionBeingSplit = splitOp.getPartition();
+        if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
+            splitsToDoByPartition.get(partitionBeingSplit).incorporate(splitOp);
+            logger.fine("Incorporating new split by partition: "
+                    + splitOp.toString());
+        } else {
+            splitsToDoByPartition.put(partitionBeingSplit, splitOp);
+            logger.fine("New split by partition: " + splitOp.toString());
+        }
+    }
+
     /**
      * This is basically the k-Tails algorithm except that it respects
      * invariants -- if any are violated during a merge, the particular merge is
@@ -782,6 +1150,16 @@ public class Bisimulation {
         Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
 
         AbstractMain syn = AbstractMain.getInstance();
+        if (syn.options.incrementalCoarsening) {
+            mergePartitionsIncrementally(pGraph, mergeBlacklist, invariants, k);
+            if (syn.options.dumpIntermediateStages) {
+                syn.exportNonInitialGraph(
+                        syn.getIntermediateDumpFilename("c", outerItters),
+                        pGraph);
+            }
+            return;
+        }
+
         while (true) {
             if (syn.options.dumpIntermediateStages) {
                 syn.exportNonInitialGraph(
@@ -849,8 +1227,10 @@ public class Bisimulation {
                     continue;
                 }
 
-                Set<Partition> parts = new LinkedHashSet<Partition>();
-                parts.addAll(pGraph.getNodes());
+                Set<Partition> parts = null;
+                if (AbstractMain.getInstance().options.performExtraChecks) {
+                    parts = new LinkedHashSet<Partition>(pGraph.getNodes());
+                }
                 IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
                         q));
 
@@ -874,19 +1254,8 @@ public class Bisimulation {
                     // Undo the merge.
                     pGraph.apply(rewindOperation);
 
-                    if (AbstractMain.getInstance().options.performExtraChecks) {
-                        pGraph.checkSanity();
-                    }
-
-                    // We cannot change the partition sets because we are
-                    // iterating over the partitions. Therefore, check that
-                    // the resulting partition set is the same as the
-                    // original partition set.
-                    if (!(parts.containsAll(pGraph.getNodes()) && pGraph
-                            .getNodes().containsAll(parts))) {
-                        throw new InternalSynopticException(
-                                "partition set changed due to rewind: "
-                                        + rewindOperation);
+                    if (parts != null) {
+                        checkRewind(pGraph, parts, rewindOperation);
                     }
 
                 } else {
@@ -900,4 +1269,153 @@ public class Bisimulation {
         // Unable to find any k-equivalent partitions; we're done.
         return false;
     }
+
+    /**
+     * Checks the sanity of pGraph after a rejected merge has been undone by
+     * rewindOperation. We cannot change the partition sets because we are
+     * iterating over the partitions. Therefore, check that the resulting
+     * partition set is the same as the original partition set, parts.
+     */
+    private static void checkRewind(PartitionGraph pGraph, Set<Partition> parts,
+            IOperation rewindOperation) {
+        pGraph.checkSanity();
+        if (!(parts.containsAll(pGraph.getNodes()) && pGraph.getNodes()
+                .containsAll(parts))) {
+            throw new InternalSynopticException(
+                    "partition set changed due to rewind: " + rewindOperation);
+        }
+    }
+
+    /**
+     * Merges k-equivalent partitions while respecting invariants, like
+     * repeated calls to mergePartitions(pGraph, mergeBlacklist, invariants,
+     * k), but without restarting the search after each accepted merge: <br/>
+     * - Partitions are grouped into candidate classes by their k-tail
+     * signatures (which include their event types), so only k-equivalent
+     * pairs are ever tried. <br/>
+     * - A work queue holds the partitions whose candidates remain to be
+     * tried. After an accepted merge, only the partitions whose signatures
+     * the merge changed are queued again (see KTailSignatureCache). <br/>
+     * - Invariants whose predicates include the type of the merged partitions
+     * are checked first, since they are the most likely to be violated. <br/>
+     * As with mergePartitions, pairs whose merge violated an invariant are
+     * kept in mergeBlacklist, and coarsening ends once no k-equivalent pair
+     * remains that is not blacklisted.
+     */
+    private static void mergePartitionsIncrementally(PartitionGraph pGraph,
+            Map<Partition, Set<Partition>> mergeBlacklist,
+            TemporalInvariantSet invariants, int k) {
+        boolean extraChecks = AbstractMain.getInstance().options.performExtraChecks;
+        KTailSignatureCache signatures = new KTailSignatureCache(k);
+
+        // The candidate classes, and the signature under which each partition
+        // is currently filed. A partition whose signature was changed by a
+        // merge stays in its old class until it is taken off the queue.
+        Map<Set<List<EventType>>, Set<Partition>> classes = new LinkedHashMap<Set<List<EventType>>, Set<Partition>>();
+        Map<Partition, Set<List<EventType>>> classOf = new LinkedHashMap<Partition, Set<List<EventType>>>();
+
+        Set<Partition> queue = new LinkedHashSet<Partition>(pGraph.getNodes());
+        for (Partition p : queue) {
+            fileCandidate(p, signatures, classes, classOf);
+        }
+
+        while (!queue.isEmpty()) {
+            Iterator<Partition> queueIter = queue.iterator();
+            Partition p = queueIter.next();
+            queueIter.remove();
+
+            Set<List<EventType>> signature = fileCandidate(p, signatures,
+                    classes, classOf);
+            for (Partition q : new ArrayList<Partition>(classes.get(signature))) {
+                if (p == q) {
+                    continue;
+                }
+                // q may still be filed under a signature that a merge changed.
+                if (!signatures.getSignature(q).equals(signature)) {
+                    continue;
+                }
+                if ((mergeBlacklist.containsKey(p) && mergeBlacklist.get(p)
+                        .contains(q))
+                        || (mergeBlacklist.containsKey(q) && mergeBlacklist
+                                .get(q).contains(p))) {
+                    continue;
+                }
+
+                logger.fine("Attempting to merge: " + p + " + " + q);
+                Set<Partition> parts = null;
+                if (extraChecks) {
+                    parts = new LinkedHashSet<Partition>(pGraph.getNodes());
+                }
+                IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
+                        q));
+
+                CExamplePath<Partition> cExample = null;
+                if (invariants != null) {
+                    cExample = invariants.getFirstCounterExample(pGraph,
+                            p.getEType());
+                }
+
+                if (cExample != null) {
+                    logger.fine("Merge violates invariant: "
+                            + cExample.toString());
+                    if (!mergeBlacklist.containsKey(p)) {
+                        mergeBlacklist.put(p, new LinkedHashSet<Partition>());
+                    }
+                    mergeBlacklist.get(p).add(q);
+
+                    // Undo the merge.
+                    pGraph.apply(rewindOperation);
+                    if (parts != null) {
+                        checkRewind(pGraph, parts, rewindOperation);
+                    }
+                    continue;
+                }
+
+                logger.fine("Merge of partitions " + p.getEType()
+                        + " nodes maintains invs, accepted.");
+                queue.remove(q);
+                classes.get(classOf.remove(q)).remove(q);
+                // Queue p, and all partitions whose signatures changed, to try
+                // their (new) candidates.
+                queue.add(p);
+                for (Partition changed : signatures.merged(p, q)) {
+                    if (changed != q) {
+                        queue.add(changed);
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Files p in the candidate class of its current signature, moving it out
+     * of the class it was previously filed in, if that differs. Returns p's
+     * signature.
+     */
+    private static Set<List<EventType>> fileCandidate(Partition p,
+            KTailSignatureCache signatures,
+            Map<Set<List<EventType>>, Set<Partition>> classes,
+            Map<Partition, Set<List<EventType>>> classOf) {
+        Set<List<EventType>> signature = signatures.getSignature(p);
+        Set<List<EventType>> filed = classOf.get(p);
+        if (filed != null) {
+            if (filed.equals(signature)) {
+                return filed;
+            }
+            Set<Partition> oldClass = classes.get(filed);
+            oldClass.remove(p);
+            if (oldClass.isEmpty()) {
+                classes.remove(filed);
+            }
+        }
+        Set<Partition> cls = classes.get(signature);
+        if (cls == null) {
+            cls = new LinkedHashSet<Partition>();
+            classes.put(signature, cls);
+        }
+        cls.add(p);
+        classOf.put(p, signature);
+        return signature;
+    }
 }
@@ -0,0 +1,171 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * A transitive closure of a trace graph that represents the nodes reachable
+ * from a node as a BitSet, instead of as a set of nodes. Since events are only
+ * ever reachable from events of the same trace, each trace is closed
+ * separately: the nodes of a trace are given dense ids in a topological order
+ * of the trace, and the reachability bitsets of a trace are indexed by these
+ * ids. The closure therefore takes (at most) one bit, rather than one object
+ * reference, per pair of events in the same trace. <br/>
+ * <br/>
+ * The closure is built in reverse topological order (see
+ * TopologicalSort.sortNodes), so the bitset of a node is the union of the
+ * bitsets of its children, which are complete by then. Like the other
+ * closures, it considers the transitions with exactly the closure's relations,
+ * and ignores initial/terminal events. <br/>
+ * <br/>
+ * The closure cannot be modified after it is built. getTC() materializes the
+ * reachability map of the closure, and should only be used for small graphs.
+ */
+public class BitSetTransitiveClosure extends TransitiveClosure {
+    /** The id of each (non-special) node in its trace. */
+    private final Map<EventNode, Integer> ids = new HashMap<EventNode, Integer>();
+
+    /** The nodes of the trace of each node, indexed by id. */
+    private final Map<EventNode, EventNode[]> traceNodes = new HashMap<EventNode, EventNode[]>();
+
+    /** The ids of the nodes reachable from each node. */
+    private final Map<EventNode, BitSet> reachable = new LinkedHashMap<EventNode, BitSet>();
+
+    /** Whether getTC() has materialized the closure in tc. */
+    private boolean materialized = false;
+
+    /**
+     * Builds the transitive closure of g for relations.
+     */
+    public BitSetTransitiveClosure(TraceGraph<?> g, Set<String> relations) {
+        super(relations);
+        Map<Integer, List<EventNode>> traces = new LinkedHashMap<Integer, List<EventNode>>();
+        for (EventNode node : g.getNodes()) {
+            if (node.getEType().isSpecialEventType()) {
+                continue;
+            }
+            List<EventNode> trace = traces.get(node.getTraceID());
+            if (trace == null) {
+                trace = new ArrayList<EventNode>();
+                traces.put(node.getTraceID(), trace);
+            }
+            trace.add(node);
+        }
+        for (List<EventNode> nodes : traces.values()) {
+            closeTrace(nodes, relations);
+        }
+    }
+
+    /**
+     * Builds the transitive closure for relations of a single trace, given the
+     * (non-special) nodes of the trace.
+     */
+    public BitSetTransitiveClosure(Collection<EventNode> traceNodes,
+            Set<String> relations) {
+        super(relations);
+        closeTrace(traceNodes, relations);
+    }
+
+    /**
+     * Computes the closure of the (non-special) nodes of a trace.
+     */
+    private void closeTrace(Collection<EventNode> nodes, Set<String> relations) {
+        List<EventNode> order = TopologicalSort.sortNodes(nodes, relations);
+        if (order == null) {
+            throw new InternalSynopticException(
+                    "Cannot compute the transitive closure of a cyclic trace.");
+        }
+
+        EventNode[] traceArray = order.toArray(new EventNode[order.size()]);
+        for (int id = 0; id < traceArray.length; id++) {
+            ids.put(traceArray[id], id);
+            traceNodes.put(traceArray[id], traceArray);
+        }
+
+        // Children follow their parents in the order, so in reverse order the
+        // bitsets of all children of a node are complete when it is reached.
+        for (int id = traceArray.length - 1; id >= 0; id--) {
+            EventNode node = traceArray[id];
+            BitSet bits = null;
+            for (ITransition<EventNode> t : node
+                    .getTransitionsWithExactRelations(relations)) {
+                Integer childId = ids.get(t.getTarget());
+                if (childId == null) {
+                    // A special node, which the closure ignores.
+                    continue;
+                }
+                if (bits == null) {
+                    bits = new BitSet(traceArray.length);
+                }
+                bits.set(childId);
+                BitSet childBits = reachable.get(t.getTarget());
+                if (childBits != null) {
+                    bits.or(childBits);
+                }
+            }
+            if (bits != null) {
+                reachable.put(node, bits);
+            }
+        }
+    }
+
+    @Override
+    public boolean isReachable(EventNode m, EventNode n) {
+        BitSet bits = reachable.get(m);
+        if (bits == null || traceNodes.get(n) != traceNodes.get(m)) {
+            return false;
+        }
+        return bits.get(ids.get(n));
+    }
+
+    @Override
+    public Set<EventNode> getReachableNodes(EventNode source) {
+        BitSet bits = reachable.get(source);
+        if (bits == null) {
+            return null;
+        }
+        EventNode[] traceArray = traceNodes.get(source);
+        Set<EventNode> nodes = new LinkedHashSet<EventNode>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            nodes.add(traceArray[id]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Materializes the closure as a reachability map. This takes one object
+     * reference per pair of nodes in the closure.
+     */
+    @Override
+    public Map<EventNode, Set<EventNode>> getTC() {
+        if (!materialized) {
+            for (EventNode source : reachable.keySet()) {
+                tc.put(source, getReachableNodes(source));
+            }
+            materialized = true;
+        }
+        return tc;
+    }
+
+    @Override
+    public void mergeReachables(EventNode from, EventNode into) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void recordTransitiveReachability(EventNode m, EventNode n) {
+        throw new UnsupportedOperationException();
+    }
+}
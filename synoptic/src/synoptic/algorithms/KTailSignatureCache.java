@@ -0,0 +1,147 @@
+package synoptic.algorithms;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.PartitionMultiMerge;
+import synoptic.model.Partition;
+import synoptic.model.event.EventType;
+
+/**
+ * Caches the k-tail signatures of partitions -- the set of strings of length
+ * <= k that can be constructed by starting at a partition (see
+ * KTails.getNodeKStrings). Two partitions are k-equivalent iff their
+ * signatures are equal, so signatures can be used as hash keys to group
+ * k-equivalent partitions. <br/>
+ * <br/>
+ * The signature of a partition depends on the partitions that are reachable
+ * from it in fewer than k steps. The cache records these dependencies, so
+ * that after a PartitionMultiMerge is applied to the graph, merged() drops
+ * exactly the signatures that the merge may have changed. The cache is only
+ * valid as long as every change to the graph is such a reported merge.
+ */
+public class KTailSignatureCache {
+    private final int k;
+
+    /** The cached signature of each partition. */
+    private final Map<Partition, Set<List<EventType>>> signatures;
+
+    /**
+     * Maps a partition to the partitions whose cached signatures were
+     * computed by walking through it.
+     */
+    private final Map<Partition, Set<Partition>> dependents;
+
+    public KTailSignatureCache(int k) {
+        assert (k > 0);
+        this.k = k;
+        this.signatures = new LinkedHashMap<Partition, Set<List<EventType>>>();
+        this.dependents = new LinkedHashMap<Partition, Set<Partition>>();
+    }
+
+    /**
+     * Returns the k-tail signature of p, computing it if it is not cached.
+     */
+    public Set<List<EventType>> getSignature(Partition p) {
+        Set<List<EventType>> signature = signatures.get(p);
+        if (signature == null) {
+            signature = KTails.getNodeKStrings(p, k);
+            signatures.put(p, signature);
+            recordDependencies(p);
+        }
+        return signature;
+    }
+
+    /**
+     * Returns whether p's signature is currently cached.
+     */
+    public boolean isCached(Partition p) {
+        return signatures.containsKey(p);
+    }
+
+    /**
+     * Drops the signatures that may have been changed by merge, which must
+     * have just been applied to the graph: the signatures of the merged
+     * partitions, and of all partitions whose signature was computed by
+     * walking through the merged partitions. Returns the partitions whose
+     * signatures were dropped.
+     */
+    public Set<Partition> merged(PartitionMultiMerge merge) {
+        return merged(merge.getRetainedPartition(),
+                merge.getPartitionsToMerge());
+    }
+
+    /**
+     * Like merged(PartitionMultiMerge), for a merge of the removed partitions
+     * into retained.
+     */
+    public Set<Partition> merged(Partition retained,
+            Collection<Partition> removed) {
+        Set<Partition> dropped = new LinkedHashSet<Partition>();
+        invalidate(retained, dropped);
+        for (Partition p : removed) {
+            invalidate(p, dropped);
+        }
+        return dropped;
+    }
+
+    /**
+     * Like merged(PartitionMultiMerge), for a merge of removed into retained.
+     */
+    public Set<Partition> merged(Partition retained, Partition removed) {
+        return merged(retained, Collections.singletonList(removed));
+    }
+
+    /**
+     * Records p as a dependent of every partition that is reachable from p in
+     * fewer than k steps.
+     */
+    private void recordDependencies(Partition p) {
+        Set<Partition> visited = new LinkedHashSet<Partition>();
+        Set<Partition> frontier = new LinkedHashSet<Partition>();
+        frontier.add(p);
+        for (int depth = 0; depth < k && !frontier.isEmpty(); depth++) {
+            Set<Partition> next = new LinkedHashSet<Partition>();
+            for (Partition node : frontier) {
+                if (!visited.add(node)) {
+                    continue;
+                }
+                if (depth + 1 < k) {
+                    next.addAll(node.getAllSuccessors());
+                }
+            }
+            frontier = next;
+        }
+
+        for (Partition node : visited) {
+            Set<Partition> nodeDependents = dependents.get(node);
+            if (nodeDependents == null) {
+                nodeDependents = new LinkedHashSet<Partition>();
+                dependents.put(node, nodeDependents);
+            }
+            nodeDependents.add(p);
+        }
+    }
+
+    /**
+     * Drops the signatures of p's dependents (which include p itself, if its
+     * signature is cached), and adds the partitions whose signatures were
+     * dropped to dropped.
+     */
+    private void invalidate(Partition p, Set<Partition> dropped) {
+        Set<Partition> pDependents = dependents.remove(p);
+        if (pDependents == null) {
+            return;
+        }
+        for (Partition dependent : pDependents) {
+            if (signatures.remove(dependent) != null) {
+                dropped.add(dependent);
+            }
+        }
+    }
+}
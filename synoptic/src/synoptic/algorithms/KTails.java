@@ -40,103 +40,43 @@ public class KTails {
     }
 
     /**
-     * Finds and executes all possible k-equivalent merges in pGraph.
+     * Finds and executes all possible k-equivalent merges in pGraph. The
+     * partitions are grouped by their k-tail signatures in a single pass, and
+     * each group of k-equivalent partitions is merged into its first
+     * partition. All signatures are computed before the first merge, so no
+     * signature needs to be updated after a merge.
      */
     private static void kTails(PartitionGraph pGraph, int k) {
         // Note: at k == 0, all "states" should be considered equal, but an
         // event-based model cannot express this, thus the assert.
         assert (k > 0);
 
-        // Keeps track of the merges that we want to perform.
-        Set<PartitionMultiMerge> merges = new LinkedHashSet<PartitionMultiMerge>();
+        // Maps a k-tail signature (the set of strings of length <= k
+        // reachable from a partition) to the partitions with that signature,
+        // in the order of pGraph.getNodes().
+        Map<Set<List<EventType>>, List<Partition>> buckets = new LinkedHashMap<Set<List<EventType>>, List<Partition>>();
 
-        // List of all partitions -- needed for ordering partitions in the loops
-        // below.
-        List<Partition> partitions = new ArrayList<Partition>(pGraph.getNodes());
-
-        // Partitions that belong to a merge.
-        List<Partition> mergedPartitions = new ArrayList<Partition>();
-
-        // Maps a partition to the set of strings of length <= k reachable from
-        // the partition.
-        // TODO: this is inefficient, ideally we would Map sets of strings to
-        // partitions with those sets!
-        Map<Partition, Set<List<EventType>>> kStringsMap = new LinkedHashMap<Partition, Set<List<EventType>>>();
-
-        // int remaining = partitions.size();
-        // Build the kStringsMap
-        logger.fine("Pre-computing [node -> ktail set] map");
-        for (Partition P : partitions) {
-            // logger.info("Remaining kTails pre-mining = " + remaining);
-            // remaining -= 1;
-
-            Set<List<EventType>> ret = getNodeKStrings(P, k);
-            kStringsMap.put(P, ret);
-        }
-
-        logger.fine("Pre-computed map: " + kStringsMap.toString());
-
-        // remaining = partitions.size();
         logger.fine("Finding sets of nodes that are k-equivalent.");
-        for (int i = 0; i < partitions.size(); i++) {
-            // logger.info("Remaining kTails n^2 checking = " + remaining);
-            // remaining -= 1;
-            Partition Pi = partitions.get(i);
-
-            // Skip partition Pi if it has already been merged previously.
-            // Since k-equivalence is transitive, this merge already contains
-            // all the k-equivalent partitions.
-            if (mergedPartitions.contains(Pi)) {
-                continue;
-            }
-
-            // m will track all partitions to be merged with Pi.
-            PartitionMultiMerge m = null;
-
-            Set<List<EventType>> PiKStrings = kStringsMap.get(Pi);
-
-            // Can't merge a partition with itself. So skip i=j. Also, merging
-            // is commutative so if we've tried merge(p1,p2), then we don't have
-            // to try/check merge(p2,p1). So skip j < i.
-            for (int j = i + 1; j < partitions.size(); j++) {
-                Partition Pj = partitions.get(j);
-                // If we merged p1 and p2 previously, and now we are merging
-                // p2 and p3, then p3 _must_ be in the p1+p2 partition, since we
-                // must have already compared the ktails of p1 and p3
-                // previously.
-                if (mergedPartitions.contains(Pj)) {
-                    continue;
-                }
-
-                Set<List<EventType>> PjKStrings = kStringsMap.get(Pj);
-                if (!PiKStrings.equals(PjKStrings)) {
-                    continue;
-                }
-
-                logger.fine("Merging " + Pi + " and " + Pj);
-
-                if (m == null) {
-                    List<Partition> list = new ArrayList<Partition>();
-                    list.add(Pj);
-                    m = new PartitionMultiMerge(Pi, list);
-                    merges.add(m);
-                } else {
-                    m.addToMerge(Pj);
-                }
-
-                // We don't need to add Pi to mergedPartitions, since we
-                // will never come back to it in the check above.
-                mergedPartitions.add(Pj);
+        for (Partition P : new ArrayList<Partition>(pGraph.getNodes())) {
+            Set<List<EventType>> signature = getNodeKStrings(P, k);
+            List<Partition> bucket = buckets.get(signature);
+            if (bucket == null) {
+                bucket = new ArrayList<Partition>();
+                buckets.put(signature, bucket);
             }
+            bucket.add(P);
         }
 
         logger.fine("Applying merges.");
-        for (PartitionMultiMerge merge : merges) {
+        for (List<Partition> bucket : buckets.values()) {
+            if (bucket.size() < 2) {
+                continue;
+            }
+            logger.fine("Merging " + bucket);
+            PartitionMultiMerge merge = new PartitionMultiMerge(bucket.get(0),
+                    new ArrayList<Partition>(bucket.subList(1, bucket.size())));
             pGraph.apply(merge);
         }
-
-        return;
-
     }
 
     static public <NodeType extends INode<NodeType>> boolean kEquals(
@@ -167,7 +107,7 @@ public class KTails {
      * @param P
      * @return
      */
-    private static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStrings(
+    static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStrings(
             NodeType P, int k) {
         assert (k >= 0);
 
@@ -1,9 +1,12 @@
 package synoptic.algorithms;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
 
@@ -79,6 +82,57 @@ public class TopologicalSort<NodeType extends INode<NodeType>> {
         return true;
     }
 
+    /**
+     * Returns nodes in a topological order of the subgraph that they induce,
+     * considering only the transitions with exactly the given relations. Uses
+     * Kahn's algorithm, which takes time linear in the size of the subgraph,
+     * and keeps nodes that are not ordered with respect to each other in the
+     * iteration order of nodes.
+     * 
+     * @return the sorted nodes, or null if the subgraph has a cycle
+     */
+    public static <T extends INode<T>> List<T> sortNodes(Collection<T> nodes,
+            Set<String> relations) {
+        Map<T, Integer> numIncoming = new LinkedHashMap<T, Integer>();
+        for (T node : nodes) {
+            numIncoming.put(node, 0);
+        }
+        for (T node : nodes) {
+            for (ITransition<T> t : node
+                    .getTransitionsWithExactRelations(relations)) {
+                Integer n = numIncoming.get(t.getTarget());
+                if (n != null) {
+                    numIncoming.put(t.getTarget(), n + 1);
+                }
+            }
+        }
+
+        List<T> sorted = new ArrayList<T>(nodes.size());
+        for (Map.Entry<T, Integer> entry : numIncoming.entrySet()) {
+            if (entry.getValue() == 0) {
+                sorted.add(entry.getKey());
+            }
+        }
+        // Nodes are appended to sorted once all their predecessors have been.
+        for (int i = 0; i < sorted.size(); i++) {
+            for (ITransition<T> t : sorted.get(i)
+                    .getTransitionsWithExactRelations(relations)) {
+                Integer n = numIncoming.get(t.getTarget());
+                if (n != null) {
+                    numIncoming.put(t.getTarget(), n - 1);
+                    if (n == 1) {
+                        sorted.add(t.getTarget());
+                    }
+                }
+            }
+        }
+
+        if (sorted.size() != numIncoming.size()) {
+            return null;
+        }
+        return sorted;
+    }
+
     public static <T extends INode<T>> Set<T> getSourceNodes(IGraph<T> graph) {
         Set<T> sources = new LinkedHashSet<T>(graph.getNodes());
         for (T node : graph.getNodes()) {
@@ -28,6 +28,14 @@ public class PartitionMultiMerge implements IOperation {
         this.partitionsToMerge = partitionsToMerge;
     }
 
+    public Partition getRetainedPartition() {
+        return retainedPartition;
+    }
+
+    public List<Partition> getPartitionsToMerge() {
+        return partitionsToMerge;
+    }
+
     public void addToMerge(Partition p) {
         assert !this.partitionsToMerge.contains(p);
 
@@ -40,17 +48,8 @@ public class PartitionMultiMerge implements IOperation {
             retainedPartition.addEventNodes(removed.getEventNodes());
             removed.removeAllEventNodes();
             g.removePartition(removed);
-
-            // //////////////
-            // Invalidate the appropriate elements in the graph's
-            // transitionCache
-
-            g.clearNodeAdjacentsCache(removed);
-            // //////////////
         }
 
-        g.removeFromCache(retainedPartition);
-
         // TODO: Provide undo
         return null;
     }
@@ -1,8 +1,10 @@
 package synoptic.algorithms.graphops;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import synoptic.main.AbstractMain;
@@ -50,17 +52,8 @@ public class PartitionMultiSplit implements IOperation {
             partition.removeEventNodes(set);
             newPartition.addEventNodes(set);
             g.add(newPartition);
-
-            g.clearNodeAdjacentsCache(newPartition);
         }
 
-        // //////////////
-        // Invalidate the appropriate elements in the graph's transitionCache
-
-        g.clearNodeAdjacentsCache(partition);
-
-        // //////////////
-
         if (AbstractMain.getInstance().options.performExtraChecks) {
             g.checkSanity();
         }
@@ -121,6 +114,15 @@ public class PartitionMultiSplit implements IOperation {
         return partition;
     }
 
+    /**
+     * Returns the sets of events that the partition will be split into. The
+     * first set remains in the partition, and each of the other sets becomes
+     * a new partition.
+     */
+    public List<Set<EventNode>> getPartitioning() {
+        return Collections.unmodifiableList(partitioning);
+    }
+
     /**
      * Incorporates a partition multi split.
      * 
@@ -70,14 +70,6 @@ public class PartitionSplit implements IOperation {
         partitionToSplit.removeEventNodes(getSplitEvents());
         g.add(newPartition);
 
-        // //////////////
-        // Invalidate the appropriate elements in the graph's transitionCache
-
-        g.clearNodeAdjacentsCache(partitionToSplit);
-        g.clearNodeAdjacentsCache(newPartition);
-
-        // //////////////
-
         return new PartitionMerge(partitionToSplit, newPartition);
     }
 
@@ -12,6 +12,11 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,8 +24,12 @@ import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.main.AbstractMain;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.util.DaemonThreadFactory;
+import synoptic.util.InternalSynopticException;
 
 /**
  * Maintains a set of temporal invariants.
@@ -159,12 +168,17 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         try {
             List<CExamplePath<T>> paths = null;
 
-            paths = new ArrayList<CExamplePath<T>>();
-            for (ITemporalInvariant tinv : invariants) {
-                CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                        (BinaryInvariant) tinv, graph);
-                if (path != null) {
-                    paths.add(path);
+            int numThreads = main.options.modelCheckingThreads;
+            if (numThreads > 1 && invariants.size() > 1) {
+                paths = getAllCounterExamplesInParallel(graph, numThreads);
+            } else {
+                paths = new ArrayList<CExamplePath<T>>();
+                for (ITemporalInvariant tinv : invariants) {
+                    CExamplePath<T> path = FsmModelChecker.getCounterExample(
+                            (BinaryInvariant) tinv, graph);
+                    if (path != null) {
+                        paths.add(path);
+                    }
                 }
             }
 
@@ -190,6 +204,64 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         }
     }
 
+    /**
+     * Checks each invariant in this set in a separate task on a pool of
+     * checker threads, which is shut down once the check ends. The returned counter-examples are in the iteration
+     * order of the invariants, which is the order produced by the sequential
+     * checker, and therefore does not depend on the thread scheduling.
+     * 
+     * @param graph
+     *            the graph within which the violating paths must be found
+     * @param numThreads
+     *            the number of checker threads to use
+     * @return a list of violating paths, possibly empty
+     */
+    private <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamplesInParallel(
+            final IGraph<T> graph, int numThreads) {
+        // A PartitionGraph lazily caches adjacent nodes. Populate the cache on
+        // this thread so that the checker threads only ever read it.
+        if (graph instanceof PartitionGraph) {
+            ((PartitionGraph) graph).cacheAllAdjacentNodes();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads,
+                new DaemonThreadFactory("invariant-checker-"));
+        List<Future<CExamplePath<T>>> futures = new ArrayList<Future<CExamplePath<T>>>(
+                invariants.size());
+        List<CExamplePath<T>> paths = new ArrayList<CExamplePath<T>>();
+        try {
+            for (final ITemporalInvariant tinv : invariants) {
+                futures.add(pool.submit(new Callable<CExamplePath<T>>() {
+                    @Override
+                    public CExamplePath<T> call() {
+                        return FsmModelChecker.getCounterExample(
+                                (BinaryInvariant) tinv, graph);
+                    }
+                }));
+            }
+
+            for (Future<CExamplePath<T>> future : futures) {
+                CExamplePath<T> path = future.get();
+                if (path != null) {
+                    paths.add(path);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw InternalSynopticException.wrap(e);
+        } catch (ExecutionException e) {
+            for (Future<CExamplePath<T>> future : futures) {
+                future.cancel(true);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw InternalSynopticException.wrap(e);
+        } finally {
+            pool.shutdownNow();
+        }
+        return paths;
+    }
+
     /**
      * Returns the first counter-example encountered in the graph g. The order
      * of exploration is unspecified.
@@ -218,6 +290,44 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         }
     }
 
+    /**
+     * Like getFirstCounterExample(g), but checks the invariants whose
+     * predicates include eType before the other invariants. After a change to
+     * g that involves partitions of type eType (such as a merge), these are
+     * the invariants that are most likely to be violated, so checking them
+     * first finds counter-examples sooner. The other invariants may still be
+     * violated, and are checked if no counter-example is found.
+     * 
+     * @param g
+     *            the graph to check
+     * @param eType
+     *            the event type of the invariants to check first
+     * @return null if no violation is found, the counter-example path otherwise
+     */
+    public <T extends INode<T>> CExamplePath<T> getFirstCounterExample(
+            IGraph<T> g, EventType eType) {
+        TimedTask violations = PerformanceMetrics.createTask(
+                "getFirstCounterExample", false);
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                boolean involved = (pass == 0);
+                for (ITemporalInvariant tinv : invariants) {
+                    if (tinv.getPredicates().contains(eType) != involved) {
+                        continue;
+                    }
+                    CExamplePath<T> path = FsmModelChecker.getCounterExample(
+                            (BinaryInvariant) tinv, g);
+                    if (path != null) {
+                        return path;
+                    }
+                }
+            }
+            return null;
+        } finally {
+            violations.stop();
+        }
+    }
+
     /**
      * Tests whether two invariant sets are equivalent.
      * 
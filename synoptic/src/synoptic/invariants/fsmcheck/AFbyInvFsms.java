@@ -31,6 +31,15 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 2);
     }
 
+    private AFbyInvFsms(AFbyInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public AFbyInvFsms<T> copy() {
+        return new AFbyInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(1).isEmpty();
@@ -60,19 +69,21 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
     public void transition(T input) {
         BitSet isA = getInputInvariantsDependencies(0, input);
         BitSet isB = getInputInvariantsDependencies(1, input);
-        BitSet neither = nor(isA, isB, count);
         BitSet s1 = sets.get(0);
         BitSet s2 = sets.get(1);
 
         /*
          * neither = !(isA | isB) (simultaneous assignment - order not
          * significant) s1 = (s1 & neither) | isB s2 = (s2 & neither) | isA
+         * 
+         * Since isB is or-ed into s1 afterwards, masking s1 with !isA suffices
+         * (and symmetrically for s2), which avoids computing neither.
          */
 
-        s1.and(neither);
+        s1.andNot(isA);
         s1.or(isB);
 
-        s2.and(neither);
+        s2.andNot(isB);
         s2.or(isA);
     }
 }
@@ -32,6 +32,15 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    private APInvFsms(APInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public APInvFsms<T> copy() {
+        return new APInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(2).isEmpty();
@@ -49,8 +58,9 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void setInitial(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
+        // Inputs cloned so that the states do not alias the input mapping.
+        BitSet isA = getInputCopy(0, input);
+        BitSet isB = getInputCopy(1, input);
         BitSet neither = nor(isA, isB, count);
         sets.set(0, neither);
         sets.set(1, isA);
@@ -59,10 +69,8 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void transition(T input) {
-        // Inputs cloned so that they can be mutated.
-        BitSet isA = getInputCopy(0, input);
-        BitSet isB = getInputCopy(1, input);
-        BitSet neither = nor(isA, isB, count);
+        BitSet isA = getInputInvariantsDependencies(0, input);
+        BitSet isB = getInputInvariantsDependencies(1, input);
         BitSet s1 = sets.get(0);
         BitSet s2 = sets.get(1);
         BitSet s3 = sets.get(2);
@@ -72,12 +80,17 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
          * = s1 & n s2 = s2 | (s1 & isA) s3 = s3 | (s1 & isB)
          */
 
-        isA.and(s1); // isA = s1 & isA
-        s2.or(isA); // s2 = s2 | (s1 & isA)
+        BitSet t = scratch();
+        t.or(s1);
+        t.and(isA); // t = s1 & isA
+        s2.or(t); // s2 = s2 | (s1 & isA)
 
-        isB.and(s1); // isB = s1 & isA
-        s3.or(isB); // s3 = s3 | (s1 & isB)
+        t.clear();
+        t.or(s1);
+        t.and(isB); // t = s1 & isB
+        s3.or(t); // s3 = s3 | (s1 & isB)
 
-        s1.and(neither);
+        s1.andNot(isA);
+        s1.andNot(isB); // s1 = s1 & n
     }
 }
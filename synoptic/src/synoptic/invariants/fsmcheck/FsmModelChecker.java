@@ -2,6 +2,7 @@ package synoptic.invariants.fsmcheck;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -21,6 +22,7 @@ import synoptic.invariants.constraints.IThresholdConstraint;
 import synoptic.invariants.constraints.LowerBoundConstraint;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 
@@ -62,6 +64,10 @@ public class FsmModelChecker {
             states.put(node, initial.copy());
         }
 
+        // Holds the transitioned states for each edge, when the state set type
+        // supports being overwritten in place.
+        StateSet scratch = initial.copy();
+
         // Add initial node to the worklist.
         Node node = graph.getDummyInitialNode();
         workList.add(node);
@@ -82,7 +88,8 @@ public class FsmModelChecker {
             // Process all the nodes that are adjacent to the current node.
             for (Node target : graph.getAdjacentNodes(node)) {
                 StateSet oldTargetStates = states.get(target);
-                StateSet updatesToTargetStates = current.copy();
+                StateSet updatesToTargetStates = copyForTransition(current,
+                        scratch);
                 updatesToTargetStates.transition(target);
 
                 // Evaluate isSubset _before_ the merge.
@@ -106,11 +113,158 @@ public class FsmModelChecker {
         return states;
     }
 
+    /**
+     * A variant of runChecker that assigns each node of the graph a dense
+     * integer index and keeps the per-node states, the adjacency lists, and
+     * the worklist in arrays. Worklist membership is tracked in a BitSet, which
+     * makes the fixpoint loop linear in the number of edges traversed. Nodes
+     * are processed in the same order as in runChecker, so both yield the same
+     * result.
+     * 
+     * @param <StateSet>
+     *            The type of StateSet we are propagating.
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     * @return The associations between node and stateset.
+     */
+    @SuppressWarnings("unchecked")
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runDenseChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            boolean earlyExit) {
+
+        // Assign each node an index, in the iteration order of the graph.
+        Set<Node> nodeSet = graph.getNodes();
+        int numNodes = nodeSet.size();
+        Object[] nodes = new Object[numNodes];
+        Map<Node, Integer> nodeIndices = new HashMap<Node, Integer>(
+                numNodes * 2);
+        int i = 0;
+        for (Node node : nodeSet) {
+            nodes[i] = node;
+            nodeIndices.put(node, i);
+            i++;
+        }
+
+        // Translate the adjacency lists to indices.
+        int[][] adjacent = new int[numNodes][];
+        for (i = 0; i < numNodes; i++) {
+            Set<Node> targets = graph.getAdjacentNodes((Node) nodes[i]);
+            adjacent[i] = new int[targets.size()];
+            int j = 0;
+            for (Node target : targets) {
+                adjacent[i][j++] = nodeIndices.get(target);
+            }
+        }
+
+        // Populate the state array with initial states.
+        Object[] states = new Object[numNodes];
+        for (i = 0; i < numNodes; i++) {
+            states[i] = initial.copy();
+        }
+
+        // A FIFO queue of node indices that we should process. Since a node is
+        // in the queue at most once, numNodes slots suffice.
+        int[] workList = new int[numNodes];
+        BitSet inWorkList = new BitSet(numNodes);
+        int head = 0;
+        int size = 0;
+
+        // Add initial node to the worklist.
+        Node initNode = graph.getDummyInitialNode();
+        int initIndex = nodeIndices.get(initNode);
+        workList[0] = initIndex;
+        inWorkList.set(initIndex);
+        size = 1;
+        ((StateSet) states[initIndex]).setInitial(initNode);
+        StateSet scratch = initial.copy();
+
+        // See runChecker for a description of this fixpoint loop.
+        while (size > 0) {
+            int index = workList[head];
+            head = (head + 1) % numNodes;
+            size--;
+            inWorkList.clear(index);
+            StateSet current = (StateSet) states[index];
+
+            for (int targetIndex : adjacent[index]) {
+                Node target = (Node) nodes[targetIndex];
+                StateSet oldTargetStates = (StateSet) states[targetIndex];
+                StateSet updatesToTargetStates = copyForTransition(current,
+                        scratch);
+                updatesToTargetStates.transition(target);
+
+                // Evaluate isSubset _before_ the merge.
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+                if (earlyExit && oldTargetStates.isFail()
+                        && target.isTerminal()) {
+                    return toStatesMap(nodes, states);
+                }
+
+                if (!isSubset && !inWorkList.get(targetIndex)) {
+                    workList[(head + size) % numNodes] = targetIndex;
+                    size++;
+                    inWorkList.set(targetIndex);
+                }
+            }
+        }
+
+        return toStatesMap(nodes, states);
+    }
+
+    /**
+     * Converts the index-based node and state arrays of runDenseChecker to the
+     * map returned by runChecker.
+     */
+    @SuppressWarnings("unchecked")
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> toStatesMap(
+            Object[] nodes, Object[] states) {
+        Map<Node, StateSet> statesMap = new LinkedHashMap<Node, StateSet>(
+                nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            statesMap.put((Node) nodes[i], (StateSet) states[i]);
+        }
+        return statesMap;
+    }
+
+    /**
+     * Returns a copy of current to which a transition may be applied. Bitset
+     * state sets are written into scratch, which is reused across edges,
+     * instead of allocating a fresh copy for every edge.
+     */
+    @SuppressWarnings("unchecked")
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> StateSet copyForTransition(
+            StateSet current, StateSet scratch) {
+        if (scratch instanceof FsmStateSet) {
+            ((FsmStateSet<Node>) scratch)
+                    .copyFrom((FsmStateSet<Node>) current);
+            return scratch;
+        }
+        return current.copy();
+    }
+
+    /**
+     * Runs either runChecker or runDenseChecker, depending on the
+     * denseModelChecking option.
+     */
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runSelectedChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            boolean earlyExit) {
+        if (AbstractMain.getInstance().options.denseModelChecking) {
+            return runDenseChecker(initial, graph, earlyExit);
+        }
+        return runChecker(initial, graph, earlyExit);
+    }
+
     // Helper which invokes runChecker given an fsm state set, and process the
     // resulting states into a summary failure-indicating BitSet.
     protected static <T extends INode<T>> BitSet whichFail(
             FsmStateSet<T> initial, IGraph<T> graph) {
-        Map<T, FsmStateSet<T>> states = runChecker(initial, graph, false);
+        Map<T, FsmStateSet<T>> states = runSelectedChecker(initial, graph,
+                false);
         BitSet result = new BitSet();
         for (Entry<T, FsmStateSet<T>> entry : states.entrySet()) {
             if (entry.getKey().isTerminal()) {
@@ -237,8 +391,8 @@ public class FsmModelChecker {
         // Return the shortest path, ending on a final node, which causes the
         // invariant to fail.
         HistoryNode<Node> shortestPath = null;
-        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
+        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runSelectedChecker(
+                stateset, graph, true).entrySet();
         for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
             TracingStateSet<Node> stateSet = e.getValue();
             Node node = e.getKey();
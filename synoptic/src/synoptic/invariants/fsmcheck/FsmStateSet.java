@@ -1,8 +1,7 @@
 package synoptic.invariants.fsmcheck;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -10,8 +9,8 @@ import java.util.Map;
 
 import synoptic.invariants.BinaryInvariant;
 import synoptic.model.event.EventType;
+import synoptic.model.event.EventTypeRegistry;
 import synoptic.model.interfaces.INode;
-import synoptic.util.InternalSynopticException;
 
 /**
  * <p>
@@ -78,8 +77,18 @@ public abstract class FsmStateSet<T extends INode<T>> implements
      *   "c" -> 011
      * }
      * </pre>
+     * 
+     * Each mapping is an array indexed by the event type ids (see
+     * EventType.getId()), with null for the event types that do not appear in
+     * the mapping.
      */
-    protected List<Map<EventType, BitSet>> invariantsMap;
+    protected List<BitSet[]> invariantsMap;
+
+    /**
+     * A temporary BitSet used by isSubset and by the subclass transitions, so
+     * that these do not allocate. Allocated on first use, never copied.
+     */
+    private BitSet scratch;
 
     /**
      * Initializes the bitsets, and assigns the input mapping, based on the
@@ -93,26 +102,41 @@ public abstract class FsmStateSet<T extends INode<T>> implements
             sets.add(new BitSet());
         }
 
-        invariantsMap = new ArrayList<Map<EventType, BitSet>>(2);
-        Map<EventType, BitSet> amap = new LinkedHashMap<EventType, BitSet>();
-        Map<EventType, BitSet> bmap = new LinkedHashMap<EventType, BitSet>();
+        int maxId = -1;
+        for (BinaryInvariant inv : invariants) {
+            maxId = Math.max(maxId, inv.getFirst().getId());
+            maxId = Math.max(maxId, inv.getSecond().getId());
+        }
+
+        invariantsMap = new ArrayList<BitSet[]>(2);
+        BitSet[] amap = new BitSet[maxId + 1];
+        BitSet[] bmap = new BitSet[maxId + 1];
         invariantsMap.add(amap);
         invariantsMap.add(bmap);
         for (int i = 0; i < invariants.size(); i++) {
-            EventType first = invariants.get(i).getFirst();
-            EventType second = invariants.get(i).getSecond();
-            BitSet aset = amap.get(first);
-            BitSet bset = bmap.get(second);
-            if (aset == null) {
-                aset = new BitSet();
-                amap.put(first, aset);
+            int first = invariants.get(i).getFirst().getId();
+            int second = invariants.get(i).getSecond().getId();
+            if (amap[first] == null) {
+                amap[first] = new BitSet();
             }
-            if (bset == null) {
-                bset = new BitSet();
-                bmap.put(second, bset);
+            if (bmap[second] == null) {
+                bmap[second] = new BitSet();
             }
-            aset.set(i);
-            bset.set(i);
+            amap[first].set(i);
+            bmap[second].set(i);
+        }
+    }
+
+    /**
+     * Copy constructor used by the copy() implementations of subclasses. The
+     * state vectors are cloned, while the (immutable) input mapping is shared.
+     */
+    protected FsmStateSet(FsmStateSet<T> other) {
+        this.count = other.count;
+        this.invariantsMap = other.invariantsMap;
+        sets = new ArrayList<BitSet>(other.sets.size());
+        for (BitSet set : other.sets) {
+            sets.add((BitSet) set.clone());
         }
     }
 
@@ -162,11 +186,10 @@ public abstract class FsmStateSet<T extends INode<T>> implements
             return false;
         }
         assert other.invariantsMap == invariantsMap;
+        BitSet s = scratch();
         for (int j = 0; j < sets.size(); j++) {
-            BitSet thisSet = sets.get(j);
-            BitSet s = (BitSet) thisSet.clone();
-            s.and(other.sets.get(j));
-            s.xor(thisSet); // (intersection != this) == 0 for subset
+            s.or(sets.get(j));
+            s.andNot(other.sets.get(j)); // (this & !other) == 0 for subset
             if (!s.isEmpty()) {
                 return false;
             }
@@ -175,43 +198,39 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     }
 
     /**
-     * Clones this set of states, using reflection to ascertain the actual type
-     * to construct.
-     * 
-     * @see java.lang.Object#clone()
+     * Clones this set of states. Each subclass returns an instance of its own
+     * type, constructed with FsmStateSet(FsmStateSet).
      */
     @Override
-    @SuppressWarnings("unchecked")
-    public FsmStateSet<T> copy() {
-        FsmStateSet<T> result;
+    public abstract FsmStateSet<T> copy();
 
-        Constructor<?> cons = null;
-        for (Constructor<?> c : this.getClass().getConstructors()) {
-            Class<?>[] params = c.getParameterTypes();
-            if (params.length == 1 && params[0].toString().equals("int")) {
-                cons = c;
-            }
-        }
-        try {
-            result = (FsmStateSet<T>) cons.newInstance(sets.size());
-        } catch (IllegalArgumentException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InstantiationException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (IllegalAccessException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InvocationTargetException e) {
-            throw InternalSynopticException.wrap(e);
+    /**
+     * Overwrites the states of this set with those of other, which must be of
+     * the same type and track the same invariants. Unlike copy(), this reuses
+     * the existing state vectors, so a single scratch state set can stand in
+     * for the many short-lived copies made during model checking.
+     */
+    public void copyFrom(FsmStateSet<T> other) {
+        assert other.getClass() == getClass();
+        assert other.invariantsMap == invariantsMap;
+        for (int i = 0; i < sets.size(); i++) {
+            BitSet set = sets.get(i);
+            set.clear();
+            set.or(other.sets.get(i));
         }
+    }
 
-        result.count = count;
-        ArrayList<BitSet> newSets = new ArrayList<BitSet>();
-        for (int i = 0; i < sets.size(); i++) {
-            newSets.add((BitSet) sets.get(i).clone());
+    /**
+     * Returns an empty BitSet owned by this state set, for use as a temporary.
+     * The contents are discarded by the next call.
+     */
+    protected BitSet scratch() {
+        if (scratch == null) {
+            scratch = new BitSet(count);
+        } else {
+            scratch.clear();
         }
-        result.sets = newSets;
-        result.invariantsMap = invariantsMap;
-        return result;
+        return scratch;
     }
 
     @SuppressWarnings("unchecked")
@@ -234,9 +253,18 @@ public abstract class FsmStateSet<T extends INode<T>> implements
                 return false;
             }
         } else {
-            if (!this.invariantsMap.equals(other.invariantsMap)) {
+            if (other.invariantsMap == null) {
+                return false;
+            }
+            if (this.invariantsMap.size() != other.invariantsMap.size()) {
                 return false;
             }
+            for (int i = 0; i < this.invariantsMap.size(); i++) {
+                if (!Arrays.equals(this.invariantsMap.get(i),
+                        other.invariantsMap.get(i))) {
+                    return false;
+                }
+            }
         }
 
         if (this.count != other.count) {
@@ -256,7 +284,7 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     }
 
     public BitSet getInputInvariantsDependencies(int mappingIndex, T input) {
-        BitSet result = invariantsMap.get(mappingIndex).get(input.getEType());
+        BitSet result = getMapping(mappingIndex, input.getEType());
         if (result == null) {
             return new BitSet();
         }
@@ -264,14 +292,26 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     }
 
     public BitSet getInputCopy(int ix, T input) {
-        EventType label = input.getEType();
-        BitSet result = invariantsMap.get(ix).get(label);
+        BitSet result = getMapping(ix, input.getEType());
         if (result == null) {
             return new BitSet();
         }
         return (BitSet) result.clone();
     }
 
+    /**
+     * Returns the BitSet that mapping ix associates with eType, or null if
+     * there is none.
+     */
+    private BitSet getMapping(int ix, EventType eType) {
+        BitSet[] mapping = invariantsMap.get(ix);
+        int id = eType.getId();
+        if (id >= mapping.length) {
+            return null;
+        }
+        return mapping[id];
+    }
+
     /**
      * Helper to perform nor, for (neither = input[0] nor input[1]) A B result 0
      * 0 1 0 1 0 1 0 0 1 1 0
@@ -293,7 +333,18 @@ public abstract class FsmStateSet<T extends INode<T>> implements
 
     @Override
     public String toString() {
-        return "Invariants: " + invariantsMap.toString() + ", states: "
+        List<Map<EventType, BitSet>> mappings;
+        mappings = new ArrayList<Map<EventType, BitSet>>(invariantsMap.size());
+        for (BitSet[] mapping : invariantsMap) {
+            Map<EventType, BitSet> map = new LinkedHashMap<EventType, BitSet>();
+            for (int id = 0; id < mapping.length; id++) {
+                if (mapping[id] != null) {
+                    map.put(EventTypeRegistry.getEventType(id), mapping[id]);
+                }
+            }
+            mappings.add(map);
+        }
+        return "Invariants: " + mappings.toString() + ", states: "
                 + sets.toString();
     }
 }
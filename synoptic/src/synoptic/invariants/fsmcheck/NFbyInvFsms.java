@@ -30,6 +30,15 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    private NFbyInvFsms(NFbyInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public NFbyInvFsms<T> copy() {
+        return new NFbyInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
         return !sets.get(2).isEmpty();
@@ -61,7 +70,6 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
          * = s1 & !isA s2 = (s1 & isA) | (s2 & !isB) s3 = s3 | (s2 & isB)
          */
 
-        // isA is cloned so that it can be mutated.
         BitSet isA = getInputInvariantsDependencies(0, input);
         BitSet isB = getInputInvariantsDependencies(1, input);
         BitSet s1 = sets.get(0);
@@ -70,11 +78,13 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
         // var = expression in terms of original values
 
-        BitSet t = (BitSet) s2.clone();
+        BitSet t = scratch();
+        t.or(s2);
         t.and(isB); // t = s2 & isB
         s3.or(t); // s3 = s3 | (s2 & isB)
 
-        t = (BitSet) s1.clone();
+        t.clear();
+        t.or(s1);
         t.and(isA); // t = s1 & isA
         s2.andNot(isB); // s2 = s2 & !isB
         s2.or(t); // s2 = (s1 & isA) | (s2 & !isB)
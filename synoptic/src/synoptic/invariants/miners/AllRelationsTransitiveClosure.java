@@ -1,22 +1,32 @@
 package synoptic.invariants.miners;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Set;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
+import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.TraceGraph;
 
 /**
  * This class keeps a set of transitive closures for an IGraph, one transitive
- * closure per relation in the IGraph.
+ * closure per relation in the IGraph. With the bitSetTransitiveClosure option,
+ * the closures are BitSetTransitiveClosures.
  */
 public class AllRelationsTransitiveClosure {
     private final LinkedHashMap<String, TransitiveClosure> tcs = new LinkedHashMap<String, TransitiveClosure>();
 
     public AllRelationsTransitiveClosure(TraceGraph<?> g) {
+        boolean bitSets = AbstractMain.getInstance().options.bitSetTransitiveClosure;
         for (String relation : g.getRelations()) {
-            tcs.put(relation, g.getTransitiveClosure(relation));
+            if (bitSets) {
+                tcs.put(relation, new BitSetTransitiveClosure(g,
+                        Collections.singleton(relation)));
+            } else {
+                tcs.put(relation, g.getTransitiveClosure(relation));
+            }
         }
     }
 
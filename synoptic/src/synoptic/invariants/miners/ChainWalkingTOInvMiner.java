@@ -1,10 +1,15 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -12,6 +17,7 @@ import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.AbstractMain;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
@@ -84,6 +90,11 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
      * NOTE2: This code also mines invariants of the form "INITIAL AFby x", i.e.
      * "eventually x" invariants.
      * </p>
+     * <p>
+     * NOTE3: With the miningThreads option, the traces are split into shards
+     * that are walked and counted on separate threads. The counts of the
+     * shards are merged before the invariants are extracted.
+     * </p>
      * 
      * @param g
      *            a chain trace graph of nodes of type LogEvent
@@ -99,128 +110,76 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         // types. See:
         // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
 
-        // Stores generated RelationPaths
-        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
-
-        // Tracks event counts globally -- across all traces.
-        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
-
-        /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
-         */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
-        for (Trace trace : g.getTraces()) {
-
-            if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
-                IRelationPath relationPath = trace.getBiRelationalPath(
-                        relation, Event.defTimeRelationStr);
-                relationPaths.add(relationPath);
-            } else {
-                Set<IRelationPath> subgraphs = trace
-                        .getSingleRelationPaths(relation);
-                if (relation.equals(Event.defTimeRelationStr)
-                        && subgraphs.size() != 1) {
-                    throw new IllegalStateException(
-                            "Multiple relation subraphs for ordering relation graph");
-                }
-                relationPaths.addAll(subgraphs);
-            }
-
+        List<Trace> traces = g.getTraces();
+        int numShards = Math.max(1, Math.min(
+                AbstractMain.getInstance().options.miningThreads,
+                traces.size()));
+
+        // Split the traces into contiguous shards, each of which is walked
+        // and counted independently (on a separate thread, if there are
+        // several shards).
+        final List<WalkCounts> shards = new ArrayList<WalkCounts>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            shards.add(new WalkCounts(traces.subList(traces.size() * i
+                    / numShards, traces.size() * (i + 1) / numShards),
+                    relation, multipleRelations));
         }
 
-        for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
-            Map<EventType, Integer> relationPathEventCounts = relationPath
-                    .getEventCounts();
-            for (EventType eventType : relationPathEventCounts.keySet()) {
-                int count = relationPathEventCounts.get(eventType);
-
-                if (gEventCnts.containsKey(eventType)) {
-                    count += gEventCnts.get(eventType);
-                }
-
-                gEventCnts.put(eventType, count);
-            }
+        ExecutorService executor = null;
+        if (numShards > 1) {
+            executor = Executors.newFixedThreadPool(numShards);
         }
-
-        // Tracks followed-by counts.
-        Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks precedence counts.
-        Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks interrupted-by counts.
-        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
-
-        // Initialize the event-type contents of the maps that persist
-        // across traces (global counts maps).
-        for (EventType e : eTypes) {
-            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
-            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
-            gFollowedByCnts.put(e, mapF);
-            gPrecedesCnts.put(e, mapP);
-            for (EventType e2 : eTypes) {
-                mapF.put(e2, 0);
-                mapP.put(e2, 0);
+        try {
+            List<Callable<Void>> walkTasks = new ArrayList<Callable<Void>>();
+            for (final WalkCounts shard : shards) {
+                walkTasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        shard.walk();
+                        return null;
+                    }
+                });
             }
-        }
-
-        // Tracks which events were observed across all RelationPaths.
-        Set<EventType> AlwaysFollowsINITIALSet = null;
-
-        /*
-         * Iterates over each RelationPath in the graph and aggregates the
-         * individual Occurrences, Follows, and Precedes counts.
-         */
-        for (IRelationPath relationPath : relationPaths) {
-
-            /*
-             * Adds the Precedes count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathPrecedesCounts = relationPath
-                    .getPrecedesCounts();
-            addCounts(relationPathPrecedesCounts, gPrecedesCnts);
-
-            /*
-             * Adds the FollowedBy count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathFollowedByCounts = relationPath
-                    .getFollowedByCounts();
-            addCounts(relationPathFollowedByCounts, gFollowedByCnts);
+            ShardTasks.runAll(executor, walkTasks);
 
             /*
-             * Updates the graph global InterruptedBy counts with the
-             * RelationPath counts
+             * Build the set of all event types in the RelationPaths. The pair
+             * counts of all shards are kept over this alphabet, so that they
+             * can be merged.
              */
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts = relationPath
-                    .getPossibleInterrupts();
-            intersectInterrupts(relationPathPossibleInterrupts,
-                    gPossibleInterrupts);
+            final Set<EventType> eTypes = new LinkedHashSet<EventType>();
+            for (WalkCounts shard : shards) {
+                eTypes.addAll(shard.eTypes);
+            }
 
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this RelationPath.
-            Set<EventType> relationPathSeen = relationPath.getSeen();
-            if (AlwaysFollowsINITIALSet == null) {
-                // This is the first RelationPath we are processing.
-                AlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        relationPathSeen);
-            } else {
-                AlwaysFollowsINITIALSet.retainAll(relationPathSeen);
+            List<Callable<Void>> countTasks = new ArrayList<Callable<Void>>();
+            for (final WalkCounts shard : shards) {
+                countTasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        shard.countPairs(eTypes);
+                        return null;
+                    }
+                });
             }
+            ShardTasks.runAll(executor, countTasks);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
 
-            // At this point, we've completed all counts computation for the
-            // current RelationPath.
+        // Reduce the counts of the shards, in the order of the traces.
+        WalkCounts counts = shards.get(0);
+        for (int i = 1; i < shards.size(); i++) {
+            counts.merge(shards.get(i));
         }
 
         return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts,
-                gPossibleInterrupts, null, AlwaysFollowsINITIALSet,
-                multipleRelations, supportCount));
+                relation, counts.eventCnts, counts.followedByCnts,
+                counts.precedesCnts, counts.possibleInterrupts, null,
+                counts.alwaysFollowsINITIALSet, multipleRelations,
+                supportCount));
     }
 
     /**
@@ -236,31 +195,127 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
                 gPossibleInterrupts.get(et).retainAll(
                         relationPathPossibleInterrupts.get(et));
             } else {
-                gPossibleInterrupts.put(et,
-                        relationPathPossibleInterrupts.get(et));
+                // Copy the set, which the RelationPath owns.
+                gPossibleInterrupts.put(et, new HashSet<EventType>(
+                        relationPathPossibleInterrupts.get(et)));
             }
         }
     }
 
     /**
-     * Adds the values from src into dst where the input maps have the form
-     * XCounts[a][b] = count
-     * 
-     * @param src
-     * @param dst
+     * The counts of a shard of the traces, which can be merged with the counts
+     * of other shards. A shard is counted in two passes: walk() walks the
+     * RelationPaths of the traces and counts the events, and then
+     * countPairs() aggregates the pair counts of the paths over the alphabet
+     * of all shards.
      */
-    private static void addCounts(Map<EventType, Map<EventType, Integer>> src,
-            Map<EventType, Map<EventType, Integer>> dst) {
+    private static class WalkCounts {
+        private final List<Trace> traces;
+        private final String relation;
+        private final boolean multipleRelations;
 
-        for (EventType a : src.keySet()) {
-            Map<EventType, Integer> srcBValues = src.get(a);
-            Map<EventType, Integer> dstBValues = dst.get(a);
-            for (EventType b : srcBValues.keySet()) {
-                int count = srcBValues.get(b);
-                if (dstBValues.containsKey(b)) {
-                    count += dstBValues.get(b);
+        // Stores generated RelationPaths
+        private final List<IRelationPath> relationPaths = new ArrayList<IRelationPath>();
+
+        // The event types seen in the shard.
+        private final Set<EventType> eTypes = new LinkedHashSet<EventType>();
+        // Tracks event counts across the traces of the shard.
+        private final Map<EventType, Integer> eventCnts = new LinkedHashMap<EventType, Integer>();
+        // Tracks followed-by counts, and precedence counts. Unless the
+        // alphabet is huge, these are dense matrices.
+        private EventTypePairCounts followedByCnts;
+        private EventTypePairCounts precedesCnts;
+        // Tracks interrupted-by counts.
+        private final Map<EventType, Set<EventType>> possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+        // Tracks which events were observed across all RelationPaths, or null
+        // if the shard has no RelationPaths.
+        private Set<EventType> alwaysFollowsINITIALSet = null;
+
+        public WalkCounts(List<Trace> traces, String relation,
+                boolean multipleRelations) {
+            this.traces = traces;
+            this.relation = relation;
+            this.multipleRelations = multipleRelations;
+        }
+
+        /**
+         * Generates and walks the RelationPaths of the traces, and counts up
+         * the total counts of instances for each event type.
+         */
+        public void walk() {
+            for (Trace trace : traces) {
+                if (multipleRelations
+                        && !relation.equals(Event.defTimeRelationStr)) {
+                    IRelationPath relationPath = trace.getBiRelationalPath(
+                            relation, Event.defTimeRelationStr);
+                    relationPaths.add(relationPath);
+                } else {
+                    Set<IRelationPath> subgraphs = trace
+                            .getSingleRelationPaths(relation);
+                    if (relation.equals(Event.defTimeRelationStr)
+                            && subgraphs.size() != 1) {
+                        throw new IllegalStateException(
+                                "Multiple relation subraphs for ordering relation graph");
+                    }
+                    relationPaths.addAll(subgraphs);
                 }
-                dstBValues.put(b, count);
+            }
+
+            for (IRelationPath relationPath : relationPaths) {
+                eTypes.addAll(relationPath.getSeen());
+                addEventCounts(relationPath.getEventCounts());
+            }
+        }
+
+        /**
+         * Iterates over each RelationPath in the shard and aggregates the
+         * individual Follows, Precedes, and InterruptedBy counts, using
+         * pair counts over the passed alphabet.
+         */
+        public void countPairs(Set<EventType> alphabet) {
+            followedByCnts = EventTypePairCounts.create(alphabet);
+            precedesCnts = EventTypePairCounts.create(alphabet);
+
+            for (IRelationPath relationPath : relationPaths) {
+                relationPath.addPrecedesCounts(precedesCnts);
+                relationPath.addFollowedByCounts(followedByCnts);
+                intersectInterrupts(relationPath.getPossibleInterrupts(),
+                        possibleInterrupts);
+                retainAlwaysFollowsINITIAL(relationPath.getSeen());
+            }
+        }
+
+        /**
+         * Adds the counts of other, a later shard, to the counts of this
+         * shard.
+         */
+        public void merge(WalkCounts other) {
+            addEventCounts(other.eventCnts);
+            followedByCnts.addAll(other.followedByCnts);
+            precedesCnts.addAll(other.precedesCnts);
+            intersectInterrupts(other.possibleInterrupts, possibleInterrupts);
+            if (other.alwaysFollowsINITIALSet != null) {
+                retainAlwaysFollowsINITIAL(other.alwaysFollowsINITIALSet);
+            }
+        }
+
+        private void addEventCounts(Map<EventType, Integer> counts) {
+            for (Map.Entry<EventType, Integer> entry : counts.entrySet()) {
+                Integer count = eventCnts.get(entry.getKey());
+                eventCnts.put(entry.getKey(), count == null ? entry.getValue()
+                        : count + entry.getValue());
+            }
+        }
+
+        /**
+         * Update the AlwaysFollowsINITIALSet set of events by intersecting it
+         * with the passed events.
+         */
+        private void retainAlwaysFollowsINITIAL(Set<EventType> seen) {
+            if (alwaysFollowsINITIALSet == null) {
+                alwaysFollowsINITIALSet = new LinkedHashSet<EventType>(seen);
+            } else {
+                alwaysFollowsINITIALSet.retainAll(seen);
             }
         }
     }
@@ -46,6 +46,10 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
      * #P(a->b)  = gPrecedesCnts[b][a]
      * </pre>
      * 
+     * The pair counts are read through EventTypePairCounts, so that walkers
+     * can accumulate them in dense matrices. Maps of counts can be passed
+     * through EventTypePairCounts.wrap().
+     * 
      * @param relation
      * @param gEventCnts
      * @param gFollowedByCnts
@@ -55,8 +59,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
      */
     protected Set<ITemporalInvariant> extractPathInvariantsFromWalkCounts(
             String relation, Map<EventType, Integer> gEventCnts,
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
-            Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
+            EventTypePairCounts gFollowedByCnts,
+            EventTypePairCounts gPrecedesCnts,
             Map<EventType, Set<EventType>> gPossibleInterrupts,
             Map<EventType, Set<EventType>> gEventCoOccurrences,
             Set<EventType> AlwaysFollowsINITIALSet, boolean multipleRelations,
@@ -203,9 +207,9 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     }
 
     protected boolean alwaysPrecedes(Map<EventType, Integer> gEventCnts,
-            Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
-            EventType e1, EventType e2) {
-        if (gPrecedesCnts.get(e1).get(e2).equals(gEventCnts.get(e2))) {
+            EventTypePairCounts gPrecedesCnts, EventType e1, EventType e2) {
+        Integer e2Cnt = gEventCnts.get(e2);
+        if (e2Cnt != null && gPrecedesCnts.get(e1, e2) == e2Cnt) {
             // #_P(label1->label2) == #label2 therefore label1
             // AP label2
             return true;
@@ -213,10 +217,9 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return false;
     }
 
-    protected boolean neverFollowedBy(
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
+    protected boolean neverFollowedBy(EventTypePairCounts gFollowedByCnts,
             EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2) == 0) {
+        if (gFollowedByCnts.get(e1, e2) == 0) {
             // label1 was never followed by label2, therefore label1
             // NFby label2 (i.e. #_F(label1->label2) == 0)
             return true;
@@ -225,9 +228,9 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     }
 
     protected boolean alwaysFollowedBy(Map<EventType, Integer> gEventCnts,
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
-            EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2).equals(gEventCnts.get(e1))) {
+            EventTypePairCounts gFollowedByCnts, EventType e1, EventType e2) {
+        Integer e1Cnt = gEventCnts.get(e1);
+        if (e1Cnt != null && gFollowedByCnts.get(e1, e2) == e1Cnt) {
             // #_F(label1->label2) == #label1 therefore label1
             // AFby label2
             return true;
@@ -236,11 +239,11 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     }
 
     protected boolean alwaysConcurrentWith(
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
+            EventTypePairCounts gFollowedByCnts,
             Map<EventType, Set<EventType>> gEventCoOccurrences, EventType e1,
             EventType e2) {
-        int e1_fby_e2 = gFollowedByCnts.get(e1).get(e2);
-        int e2_fby_e1 = gFollowedByCnts.get(e2).get(e1);
+        int e1_fby_e2 = gFollowedByCnts.get(e1, e2);
+        int e2_fby_e1 = gFollowedByCnts.get(e2, e1);
 
         if (e1_fby_e2 == 0 && e2_fby_e1 == 0) {
             // That is, e1 NFby e2 && e2 NFby e1 means that e1 and e2
@@ -257,13 +260,13 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     }
 
     protected boolean neverConcurrentWith(Map<EventType, Integer> gEventCnts,
-            Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
+            EventTypePairCounts gPrecedesCnts,
+            EventTypePairCounts gFollowedByCnts,
             Map<EventType, Set<EventType>> gEventCoOccurrences,
             Map<EventType, Map<EventType, Integer>> gEventTypesOrderedBalances,
             EventType e1, EventType e2) {
-        int e1_fby_e2 = gFollowedByCnts.get(e1).get(e2);
-        int e2_fby_e1 = gFollowedByCnts.get(e2).get(e1);
+        int e1_fby_e2 = gFollowedByCnts.get(e1, e2);
+        int e2_fby_e1 = gFollowedByCnts.get(e2, e1);
 
         if (e1_fby_e2 != 0 || e2_fby_e1 != 0) {
             // e1 was ordered with e2 or e2 was ordered with e1 at
@@ -299,8 +302,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     protected Set<ITemporalInvariant> extractConcurrencyInvariantsFromWalkCounts(
             boolean mineNeverConcurrentWith, String relation,
             Map<EventType, Integer> gEventCnts,
-            Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
-            Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
+            EventTypePairCounts gPrecedesCnts,
+            EventTypePairCounts gFollowedByCnts,
             Map<EventType, Set<EventType>> gEventCoOccurrences,
             Map<EventType, Map<EventType, Integer>> gEventTypesOrderedBalances) {
 
@@ -461,15 +461,19 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
         }
 
         // Extract the AFby, NFby, AP invariants based on counts.
+        EventTypePairCounts followedByCnts = EventTypePairCounts
+                .wrap(gFollowedByCnts);
+        EventTypePairCounts precedesCnts = EventTypePairCounts
+                .wrap(gPrecedesCnts);
         Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
+                relation, gEventCnts, followedByCnts, precedesCnts, null,
                 gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
 
         if (mineConcurrencyInvariants) {
             // Extract the concurrency invariants based on counts.
             Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
                     mineNeverConcurrentWith, relation, gEventCnts,
-                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
+                    precedesCnts, followedByCnts, gEventCoOccurrences,
                     gEventTypesOrderedBalances);
             // Merge the two sets.
             pathInvs.addAll(concurInvs);
@@ -0,0 +1,204 @@
+package synoptic.invariants.miners;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import synoptic.model.event.EventType;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Maintains a count for each ordered pair of event types, such as the
+ * followed-by and precedes counts of the counting invariant miners. Counts of
+ * pairs that were never added are 0. <br/>
+ * <br/>
+ * For a known alphabet of at most maxDenseEventTypes event types, the counts
+ * are kept in a dense matrix indexed by event type ids (see EventType.getId()),
+ * which avoids the boxing and hashing of nested maps. Larger alphabets, and
+ * counts that were computed as nested maps, use a map-backed implementation.
+ */
+public abstract class EventTypePairCounts {
+    /**
+     * The largest alphabet for which create() returns a dense matrix. A dense
+     * matrix for this many event types takes 16MB.
+     */
+    public static final int maxDenseEventTypes = 2048;
+
+    /**
+     * Returns new, zeroed, counts for pairs of types from eTypes.
+     */
+    public static EventTypePairCounts create(Collection<EventType> eTypes) {
+        return create(eTypes, maxDenseEventTypes);
+    }
+
+    /**
+     * Returns new, zeroed, counts for pairs of types from eTypes, which are
+     * kept in a dense matrix if there are at most maxDense types.
+     */
+    public static EventTypePairCounts create(Collection<EventType> eTypes,
+            int maxDense) {
+        if (eTypes.size() <= maxDense) {
+            return new DenseCounts(eTypes);
+        }
+        return new SparseCounts(
+                new LinkedHashMap<EventType, Map<EventType, Integer>>());
+    }
+
+    /**
+     * Returns counts that are backed by the passed map, where
+     * counts[a][b] = count. Changes to the returned counts write through to
+     * the map.
+     */
+    public static EventTypePairCounts wrap(
+            Map<EventType, Map<EventType, Integer>> counts) {
+        return new SparseCounts(counts);
+    }
+
+    /**
+     * Returns the count of the pair (a, b).
+     */
+    public abstract int get(EventType a, EventType b);
+
+    /**
+     * Adds count to the count of the pair (a, b).
+     */
+    public abstract void add(EventType a, EventType b, int count);
+
+    /**
+     * Adds the values from counts, which has the form counts[a][b] = count.
+     */
+    public void addAll(Map<EventType, Map<EventType, Integer>> counts) {
+        for (Map.Entry<EventType, Map<EventType, Integer>> aEntry : counts
+                .entrySet()) {
+            EventType a = aEntry.getKey();
+            for (Map.Entry<EventType, Integer> bEntry : aEntry.getValue()
+                    .entrySet()) {
+                add(a, bEntry.getKey(), bEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of other, which must have been created in the same way
+     * as these counts (by create() with the same alphabet, or by wrap()).
+     */
+    public abstract void addAll(EventTypePairCounts other);
+
+    /**
+     * Keeps the counts in a flat n*n matrix, where n is the size of the
+     * alphabet. Event type ids are mapped to rows/columns through an array,
+     * since ids are assigned across all logs parsed by the process and need
+     * not be contiguous for a single alphabet.
+     */
+    private static class DenseCounts extends EventTypePairCounts {
+        private final int[] indexOfId;
+        private final int n;
+        private final int[] counts;
+
+        public DenseCounts(Collection<EventType> eTypes) {
+            int maxId = -1;
+            for (EventType e : eTypes) {
+                maxId = Math.max(maxId, e.getId());
+            }
+            indexOfId = new int[maxId + 1];
+            for (int i = 0; i < indexOfId.length; i++) {
+                indexOfId[i] = -1;
+            }
+            int index = 0;
+            for (EventType e : eTypes) {
+                if (indexOfId[e.getId()] == -1) {
+                    indexOfId[e.getId()] = index++;
+                }
+            }
+            n = index;
+            counts = new int[n * n];
+        }
+
+        private int indexOf(EventType e) {
+            int id = e.getId();
+            if (id >= indexOfId.length) {
+                return -1;
+            }
+            return indexOfId[id];
+        }
+
+        @Override
+        public int get(EventType a, EventType b) {
+            int i = indexOf(a);
+            int j = indexOf(b);
+            if (i == -1 || j == -1) {
+                return 0;
+            }
+            return counts[i * n + j];
+        }
+
+        @Override
+        public void add(EventType a, EventType b, int count) {
+            int i = indexOf(a);
+            int j = indexOf(b);
+            if (i == -1 || j == -1) {
+                throw new InternalSynopticException("Event type pair (" + a
+                        + ", " + b + ") is not in the counted alphabet.");
+            }
+            counts[i * n + j] += count;
+        }
+
+        @Override
+        public void addAll(EventTypePairCounts other) {
+            if (!(other instanceof DenseCounts)) {
+                throw new InternalSynopticException(
+                        "Cannot add sparse counts to dense counts.");
+            }
+            DenseCounts dOther = (DenseCounts) other;
+            assert Arrays.equals(indexOfId, dOther.indexOfId);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += dOther.counts[i];
+            }
+        }
+    }
+
+    /**
+     * Keeps the counts in nested maps.
+     */
+    private static class SparseCounts extends EventTypePairCounts {
+        private final Map<EventType, Map<EventType, Integer>> counts;
+
+        public SparseCounts(Map<EventType, Map<EventType, Integer>> counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        public int get(EventType a, EventType b) {
+            Map<EventType, Integer> bValues = counts.get(a);
+            if (bValues == null) {
+                return 0;
+            }
+            Integer count = bValues.get(b);
+            if (count == null) {
+                return 0;
+            }
+            return count;
+        }
+
+        @Override
+        public void add(EventType a, EventType b, int count) {
+            Map<EventType, Integer> bValues = counts.get(a);
+            if (bValues == null) {
+                bValues = new LinkedHashMap<EventType, Integer>();
+                counts.put(a, bValues);
+            }
+            Integer prev = bValues.get(b);
+            bValues.put(b, prev == null ? count : prev + count);
+        }
+
+        @Override
+        public void addAll(EventTypePairCounts other) {
+            if (!(other instanceof SparseCounts)) {
+                throw new InternalSynopticException(
+                        "Cannot add dense counts to sparse counts.");
+            }
+            addAll(((SparseCounts) other).counts);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Runs the per-shard tasks of the miners that split the traces of a graph into
+ * shards, which are mined in parallel.
+ */
+final class ShardTasks {
+    private ShardTasks() {
+        // Not instantiable.
+    }
+
+    /**
+     * Runs tasks on executor and waits for all of them to complete, or runs
+     * them on the calling thread if executor is null. Returns the results of
+     * the tasks, in the order of the tasks. An exception thrown by a task is
+     * rethrown as is if it is a RuntimeException, and wrapped in an
+     * InternalSynopticException otherwise.
+     */
+    static <T> List<T> runAll(ExecutorService executor, List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            if (executor == null) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw InternalSynopticException.wrap(e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+}
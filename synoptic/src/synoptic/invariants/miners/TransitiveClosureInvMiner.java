@@ -1,5 +1,8 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -8,7 +11,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
@@ -39,7 +46,12 @@ import synoptic.util.Pair;
  * EventNode of type "b", then a AlwaysFollowedBy b is an invariant of the
  * TraceGraph. <br />
  * This miner mines AFby, AP and NFby invariants, but - in contrast to
- * {@link ChainWalkingTOInvMiner} - no IntrBy invariants.
+ * {@link ChainWalkingTOInvMiner} - no IntrBy invariants. <br />
+ * Since events of different traces are never reachable from each other, with
+ * the shardedTransitiveClosure option the miner instead computes a (bitset)
+ * closure for each trace, summarizes the orderings of each trace, and merges
+ * these summaries. The traces are split into miningThreads shards, which are
+ * mined in parallel.
  */
 public class TransitiveClosureInvMiner extends InvariantMiner implements
         IPOInvariantMiner, ITOInvariantMiner {
@@ -93,6 +105,16 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
 
         // Compute the over-approximated set of invariants for the input graph.
         try {
+            if (main.options.shardedTransitiveClosure) {
+                overapproximatedInvariantsSet = new LinkedHashSet<ITemporalInvariant>();
+                for (String relation : g.getRelations()) {
+                    overapproximatedInvariantsSet
+                            .addAll(extractInvariantsFromTraceTCs(g, relation,
+                                    mineConcurrencyInvariants,
+                                    main.options.miningThreads));
+                }
+                return new TemporalInvariantSet(overapproximatedInvariantsSet);
+            }
 
             TimedTask itc = PerformanceMetrics.createTask(
                     "invariants_transitive_closure", false);
@@ -158,6 +180,19 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             return (!neverFollowedBy && !alwaysFollowedBy && !alwaysPrecedes
                     && !alwaysOrdered && !neverOrdered);
         }
+
+        /**
+         * Merges the summary of other traces into this summary. Every property
+         * of a summary must hold for each instance of e1, so the summary of a
+         * set of traces holds exactly if it holds in each of its subsets.
+         */
+        public void merge(EventOrderingSummary other) {
+            neverFollowedBy &= other.neverFollowedBy;
+            alwaysFollowedBy &= other.alwaysFollowedBy;
+            alwaysPrecedes &= other.alwaysPrecedes;
+            alwaysOrdered &= other.alwaysOrdered;
+            neverOrdered &= other.neverOrdered;
+        }
     }
 
     /**
@@ -257,11 +292,167 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         // This maintains the mapping from event type to a map of trace ids ->
         // list of event instances in the trace. This is used to check
         // reachability only between event instances that are in the same trace.
+        Map<EventType, Map<Integer, List<EventNode>>> etypeToTraceIdToENode = groupByTypeAndTrace(g
+                .getNodes());
+
+        // Derive the ordering summary between each instance of e1 and every
+        // instance of e2, for every pair of event types (e1,e2).
+        Map<Pair<EventType, EventType>, EventOrderingSummary> orderings = new LinkedHashMap<Pair<EventType, EventType>, EventOrderingSummary>();
+        for (Entry<EventType, Map<Integer, List<EventNode>>> e1Entry : etypeToTraceIdToENode
+                .entrySet()) {
+            for (Entry<EventType, Map<Integer, List<EventNode>>> e2Entry : etypeToTraceIdToENode
+                    .entrySet()) {
+                orderings.put(
+                        new Pair<EventType, EventType>(e1Entry.getKey(),
+                                e2Entry.getKey()),
+                        summarizeOrderings(e1Entry.getValue(),
+                                e2Entry.getValue(), tc));
+            }
+        }
+
+        return extractInvariantsFromOrderings(etypeToTraceIdToENode,
+                g.getNumTraces(), orderings, relation,
+                mineConcurrencyInvariants);
+    }
+
+    /**
+     * Extract an over-approximated set of invariants of the graph {@code g}
+     * from the transitive closure of each trace, rather than from a
+     * transitive closure of the entire graph. The orderings of each trace are
+     * summarized separately and then merged. The traces are split into
+     * numShards contiguous shards, which are mined on separate threads if
+     * there are several.
+     * 
+     * @param g
+     *            the graph over LogEvent
+     * @param relation
+     *            the relation to consider for the invariants
+     * @param numShards
+     *            the number of shards to split the traces into
+     * @return the over-approximated set of invariants
+     */
+    private Set<ITemporalInvariant> extractInvariantsFromTraceTCs(
+            TraceGraph<?> g, final String relation,
+            boolean mineConcurrencyInvariants, int numShards) {
+        final Map<EventType, Map<Integer, List<EventNode>>> etypeToTraceIdToENode = groupByTypeAndTrace(g
+                .getNodes());
+
+        // Group the (non-special) nodes by trace.
+        Map<Integer, List<EventNode>> traceIdToENodes = new LinkedHashMap<Integer, List<EventNode>>();
+        for (EventNode node : g.getNodes()) {
+            if (node.getEType().isSpecialEventType()) {
+                continue;
+            }
+            List<EventNode> trace = traceIdToENodes.get(node.getTraceID());
+            if (trace == null) {
+                trace = new ArrayList<EventNode>();
+                traceIdToENodes.put(node.getTraceID(), trace);
+            }
+            trace.add(node);
+        }
+        final List<List<EventNode>> traces = new ArrayList<List<EventNode>>(
+                traceIdToENodes.values());
+
+        numShards = Math.max(1, Math.min(numShards, traces.size()));
+        List<Callable<Map<Pair<EventType, EventType>, EventOrderingSummary>>> shardTasks = new ArrayList<Callable<Map<Pair<EventType, EventType>, EventOrderingSummary>>>();
+        for (int i = 0; i < numShards; i++) {
+            final List<List<EventNode>> shard = traces.subList(traces.size()
+                    * i / numShards, traces.size() * (i + 1) / numShards);
+            shardTasks
+                    .add(new Callable<Map<Pair<EventType, EventType>, EventOrderingSummary>>() {
+                        @Override
+                        public Map<Pair<EventType, EventType>, EventOrderingSummary> call() {
+                            return summarizeTraceOrderings(shard,
+                                    etypeToTraceIdToENode.keySet(), relation);
+                        }
+                    });
+        }
+
+        ExecutorService executor = null;
+        if (numShards > 1) {
+            executor = Executors.newFixedThreadPool(numShards);
+        }
+        List<Map<Pair<EventType, EventType>, EventOrderingSummary>> shardsOrderings;
+        try {
+            shardsOrderings = ShardTasks.runAll(executor, shardTasks);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        // Merge the summaries of the shards, in the order of the traces.
+        Map<Pair<EventType, EventType>, EventOrderingSummary> orderings = new LinkedHashMap<Pair<EventType, EventType>, EventOrderingSummary>();
+        for (Map<Pair<EventType, EventType>, EventOrderingSummary> shardOrderings : shardsOrderings) {
+            mergeOrderings(orderings, shardOrderings);
+        }
+
+        return extractInvariantsFromOrderings(etypeToTraceIdToENode,
+                g.getNumTraces(), orderings, relation,
+                mineConcurrencyInvariants);
+    }
+
+    /**
+     * Summarizes the orderings of the event types in each of the traces, using
+     * a transitive closure of the trace, and merges these summaries. Returns
+     * the merged summary of each pair (e1,e2) where e1 occurs in one of the
+     * traces and e2 is in eTypes.
+     */
+    private Map<Pair<EventType, EventType>, EventOrderingSummary> summarizeTraceOrderings(
+            List<List<EventNode>> traces, Set<EventType> eTypes,
+            String relation) {
+        Map<Pair<EventType, EventType>, EventOrderingSummary> orderings = new LinkedHashMap<Pair<EventType, EventType>, EventOrderingSummary>();
+        Map<Integer, List<EventNode>> noNodes = Collections.emptyMap();
+        for (List<EventNode> trace : traces) {
+            TransitiveClosure tc = new BitSetTransitiveClosure(trace,
+                    Collections.singleton(relation));
+            Map<EventType, Map<Integer, List<EventNode>>> traceNodes = groupByTypeAndTrace(trace);
+
+            Map<Pair<EventType, EventType>, EventOrderingSummary> traceOrderings = new LinkedHashMap<Pair<EventType, EventType>, EventOrderingSummary>();
+            for (Entry<EventType, Map<Integer, List<EventNode>>> e1Entry : traceNodes
+                    .entrySet()) {
+                for (EventType e2 : eTypes) {
+                    Map<Integer, List<EventNode>> e2Nodes = traceNodes.get(e2);
+                    traceOrderings.put(
+                            new Pair<EventType, EventType>(e1Entry.getKey(),
+                                    e2),
+                            summarizeOrderings(e1Entry.getValue(),
+                                    e2Nodes == null ? noNodes : e2Nodes, tc));
+                }
+            }
+            mergeOrderings(orderings, traceOrderings);
+        }
+        return orderings;
+    }
+
+    /**
+     * Merges the ordering summaries in from into into.
+     */
+    private static void mergeOrderings(
+            Map<Pair<EventType, EventType>, EventOrderingSummary> into,
+            Map<Pair<EventType, EventType>, EventOrderingSummary> from) {
+        for (Entry<Pair<EventType, EventType>, EventOrderingSummary> entry : from
+                .entrySet()) {
+            EventOrderingSummary order = into.get(entry.getKey());
+            if (order == null) {
+                into.put(entry.getKey(), entry.getValue());
+            } else {
+                order.merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Returns the mapping from event type to a map of trace ids -> list of
+     * event instances in the trace, for the (non-special) nodes.
+     */
+    private static Map<EventType, Map<Integer, List<EventNode>>> groupByTypeAndTrace(
+            Collection<EventNode> nodes) {
         Map<EventType, Map<Integer, List<EventNode>>> etypeToTraceIdToENode = new LinkedHashMap<EventType, Map<Integer, List<EventNode>>>();
 
         // Initialize the partitions map: each unique label maps to a list of
         // nodes with that label.
-        for (EventNode node : g.getNodes()) {
+        for (EventNode node : nodes) {
             if (node.getEType().isSpecialEventType()) {
                 /**
                  * The inclusion of INITIAL and TERMINAL states in the graphs
@@ -308,13 +499,33 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             }
             list.add(node);
         }
+        return etypeToTraceIdToENode;
+    }
 
+    /**
+     * Derives the over-approximated set of invariants from the ordering
+     * summaries of every pair of event types (e1,e2).
+     * 
+     * @param etypeToTraceIdToENode
+     *            the event instances of each type, by trace
+     * @param numTraces
+     *            the number of traces in the graph
+     * @param orderings
+     *            the ordering summary of each pair of event types
+     * @param relation
+     *            the relation to consider for the invariants
+     * @return the over-approximated set of invariants
+     */
+    private Set<ITemporalInvariant> extractInvariantsFromOrderings(
+            Map<EventType, Map<Integer, List<EventNode>>> etypeToTraceIdToENode,
+            int numTraces,
+            Map<Pair<EventType, EventType>, EventOrderingSummary> orderings,
+            String relation, boolean mineConcurrencyInvariants) {
         Set<ITemporalInvariant> pathInvs = new LinkedHashSet<ITemporalInvariant>();
         Set<ITemporalInvariant> neverConcurInvs = new LinkedHashSet<ITemporalInvariant>();
         Set<ITemporalInvariant> alwaysConcurInvs = new LinkedHashSet<ITemporalInvariant>();
 
         Set<Pair<EventType, EventType>> observedPairs = new LinkedHashSet<Pair<EventType, EventType>>();
-        int numTraces = g.getNumTraces();
         for (Entry<EventType, Map<Integer, List<EventNode>>> e1Entry : etypeToTraceIdToENode
                 .entrySet()) {
             EventType e1 = e1Entry.getKey();
@@ -343,13 +554,13 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
                 observedPairs.add(new Pair<EventType, EventType>(e1, e2));
 
                 // ///////////////////////////////
-                // Derive the ordering summary between each instance of e1 and
-                // every instance of e2.
-                EventOrderingSummary E1orderE2 = summarizeOrderings(
-                        e1Entry.getValue(), e2Entry.getValue(), tc);
-                // Do same for e2,e1.
-                EventOrderingSummary E2orderE1 = summarizeOrderings(
-                        e2Entry.getValue(), e1Entry.getValue(), tc);
+                // The ordering summary between each instance of e1 and every
+                // instance of e2.
+                EventOrderingSummary E1orderE2 = orderings
+                        .get(new Pair<EventType, EventType>(e1, e2));
+                // Same for e2,e1.
+                EventOrderingSummary E2orderE1 = orderings
+                        .get(new Pair<EventType, EventType>(e2, e1));
                 // ///////////////////////////////
 
                 // Whether or not never ordered invariant was added --
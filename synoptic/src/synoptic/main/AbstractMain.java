@@ -426,13 +426,12 @@ public abstract class AbstractMain {
         long startTime = loggerInfoStart("Parsing input files..");
 
         List<EventNode> parsedEvents = new ArrayList<EventNode>();
-        for (String fileArg : logFilenames) {
-            logger.fine("\tprocessing fileArg: " + fileArg);
-            File[] files = getFiles(fileArg);
-            if (files.length == 0) {
-                throw new ParseException(
-                        "The set of input files is empty. Please specify a set of existing files to parse.");
-            }
+        List<File> files = getAllFiles(logFilenames);
+        int numThreads = getInstance().options.parsingThreads;
+        if (numThreads > 1 && files.size() > 1) {
+            logger.fine("\tcalling parseTraceFilesInParallel with " + files.size() + " files");
+            parsedEvents.addAll(parser.parseTraceFilesInParallel(files, numThreads));
+        } else {
             for (File file : files) {
                 logger.fine("\tcalling parseTraceFile with file: " + file.getAbsolutePath());
                 parsedEvents.addAll(parser.parseTraceFile(file, -1));
@@ -443,6 +442,46 @@ public abstract class AbstractMain {
         return parsedEvents;
     }
 
+    /**
+     * Parses all the log filenames directly into a chains trace graph, without
+     * first accumulating a list of all the parsed events. The log must be
+     * totally ordered.
+     * 
+     * @param parser
+     * @param logFilenames
+     * @return
+     * @throws Exception
+     */
+    static public ChainsTraceGraph parseEventsIntoChainsTraceGraph(TraceParser parser, List<String> logFilenames)
+            throws Exception {
+        long startTime = loggerInfoStart("Parsing input files into the trace graph..");
+        ChainsTraceGraph traceGraph = new ChainsTraceGraph();
+        parser.parseTraceFilesIntoGraph(getAllFiles(logFilenames), traceGraph);
+        loggerInfoEnd("Parsing took ", startTime);
+        return traceGraph;
+    }
+
+    /**
+     * Expands each of the log filename arguments (which may contain wildcards)
+     * and returns the resulting list of files.
+     * 
+     * @throws ParseException
+     *             if some argument does not match any files
+     */
+    private static List<File> getAllFiles(List<String> logFilenames) throws Exception {
+        List<File> allFiles = new ArrayList<File>();
+        for (String fileArg : logFilenames) {
+            logger.fine("\tprocessing fileArg: " + fileArg);
+            File[] files = getFiles(fileArg);
+            if (files.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            allFiles.addAll(Arrays.asList(files));
+        }
+        return allFiles;
+    }
+
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser, List<EventNode> parsedEvents)
             throws ParseException {
         long startTime = loggerInfoStart("Generating inter-event temporal relation...");
@@ -542,9 +581,16 @@ public abstract class AbstractMain {
     public PartitionGraph createInitialPartitionGraph() throws Exception {
         TraceParser parser = new TraceParser(options.regExps, AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
-        List<EventNode> parsedEvents;
+        // Totally ordered logs may be parsed directly into the trace graph.
+        boolean streaming = options.streamingParse && parser.logTimeTypeIsTotallyOrdered();
+        List<EventNode> parsedEvents = null;
+        ChainsTraceGraph traceGraph = null;
         try {
-            parsedEvents = parseEvents(parser, AbstractOptions.plumeOpts.logFilenames);
+            if (streaming) {
+                traceGraph = parseEventsIntoChainsTraceGraph(parser, AbstractOptions.plumeOpts.logFilenames);
+            } else {
+                parsedEvents = parseEvents(parser, AbstractOptions.plumeOpts.logFilenames);
+            }
         } catch (ParseException e) {
             logger.severe("Caught ParseException -- unable to continue, exiting. Try cmd line option:\n\t"
                     + AbstractOptions.plumeOpts.getOptDesc("help"));
@@ -566,13 +612,15 @@ public abstract class AbstractMain {
             return null;
         }
 
-        if (parsedEvents.size() == 0) {
+        if (streaming ? traceGraph.getNumTraces() == 0 : parsedEvents.size() == 0) {
             logger.severe("Did not parse any events from the input log files. Stopping.");
             return null;
         }
 
         // //////////////////
-        ChainsTraceGraph traceGraph = genChainsTraceGraph(parser, parsedEvents);
+        if (!streaming) {
+            traceGraph = genChainsTraceGraph(parser, parsedEvents);
+        }
         // //////////////////
 
         // Parsing information can be garbage-collected.
@@ -869,5 +917,8 @@ public abstract class AbstractMain {
 
             logger.info("Exporting in LTS format took " + (System.currentTimeMillis() - startTime) + "ms");
         }
+
+        // Wait for any png images that are still being generated.
+        GraphExporter.waitForImageExports();
     }
 }
@@ -234,6 +234,55 @@ public class AbstractOptions {
     static final String noRefinementStr = "Do not perform refinement";
     public boolean noRefinement = false;
 
+    // ////////////////////////////
+    // Performance Options
+    // ////////////////////////////
+
+    static final String incrementalRefinementStr = "During refinement, only re-check invariants whose counter-examples pass through partitions split in the previous round";
+    public boolean incrementalRefinement = false;
+
+    static final String modelCheckingThreadsStr = "Number of threads used to model check invariants in parallel (1 disables parallel checking)";
+    public int modelCheckingThreads = 1;
+
+    static final String denseModelCheckingStr = "Model check using dense integer node indices and array-based state storage";
+    public boolean denseModelChecking = false;
+
+    static final String streamingParseStr = "Parse totally ordered logs into the trace graph one partition at a time";
+    public boolean streamingParse = false;
+
+    static final String parsingThreadsStr = "Number of threads used to parse input log files in parallel (1 disables parallel parsing)";
+    public int parsingThreads = 1;
+
+    static final String mappedLogReadingStr = "Read log files through memory-mapped windows instead of a Reader";
+    public boolean mappedLogReading = false;
+
+    static final String miningThreadsStr = "Number of threads used to mine invariants from traces in parallel (1 disables parallel mining)";
+    public int miningThreads = 1;
+
+    static final String incrementalCoarseningStr = "During coarsening, try only k-equivalent partition pairs from a persistent work queue, instead of restarting after each merge";
+    public boolean incrementalCoarsening = false;
+
+    static final String splitEvaluationThreadsStr = "Number of threads used to evaluate candidate splits in parallel on copy-on-write views of the partition graph (1 disables parallel evaluation)";
+    public int splitEvaluationThreads = 1;
+
+    static final String bitSetTransitiveClosureStr = "Compute transitive closures as per-trace bitsets over dense node ids";
+    public boolean bitSetTransitiveClosure = false;
+
+    static final String shardedTransitiveClosureStr = "Mine transitive closure invariants from per-trace closures";
+    public boolean shardedTransitiveClosure = false;
+
+    static final String columnarTimeDeltasStr = "Keep transition time deltas as columns of primitive values";
+    public boolean columnarTimeDeltas = false;
+
+    static final String streamingJsonExportStr = "Write the JSON model export incrementally";
+    public boolean streamingJsonExport = false;
+
+    static final String javaGraphRendererStr = "Render png images of exported graphs in-process, without the dot command";
+    public boolean javaGraphRenderer = false;
+
+    static final String asyncImageExportStr = "Generate png images of exported graphs on a background thread";
+    public boolean asyncImageExport = false;
+
     /**
      * Prints help for all option groups, including unpublicized ones.
      */
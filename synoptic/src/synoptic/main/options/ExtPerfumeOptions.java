@@ -450,6 +450,140 @@ public class ExtPerfumeOptions extends Options {
     public boolean noRefinement = false;
     // end option group "Debugging Options"
 
+    // //////////////////////////////////////////////////
+    @OptionGroup(value = "Performance Options", unpublicized = true)
+    /**
+     * Re-check only those invariants during refinement whose previous
+     * counter-example paths traverse a partition that was split in the last
+     * refinement round. Counter-examples over untouched partitions are reused.
+     */
+    @Option(AbstractOptions.incrementalRefinementStr)
+    public boolean incrementalRefinement = false;
+
+    /**
+     * The number of worker threads used to find counter-examples for a set of
+     * invariants. Each invariant is checked independently, and the results are
+     * merged in the order of the invariant set, so the output does not depend
+     * on this value.
+     */
+    @Option(AbstractOptions.modelCheckingThreadsStr)
+    public int modelCheckingThreads = 1;
+
+    /**
+     * Use the dense variant of the FSM model checker, which indexes graph
+     * nodes with integers and keeps per-node states and the worklist in
+     * arrays, rather than in hashed collections.
+     */
+    @Option(AbstractOptions.denseModelCheckingStr)
+    public boolean denseModelChecking = false;
+
+    /**
+     * Whether to parse totally ordered logs directly into the trace graph,
+     * adding each partition (trace) to the graph as soon as it is complete,
+     * instead of first accumulating all of the parsed events in memory.
+     */
+    @Option(AbstractOptions.streamingParseStr)
+    public boolean streamingParse = false;
+
+    /**
+     * Number of threads used to parse the input log files. Files are parsed
+     * independently and the results are merged in file order, so the parsed
+     * traces and their IDs do not depend on this value. 1 disables parallel
+     * parsing.
+     */
+    @Option(AbstractOptions.parsingThreadsStr)
+    public int parsingThreads = 1;
+
+    /**
+     * Whether to read the input log files through memory-mapped windows of the
+     * files, instead of through a Reader. When non-matching lines are ignored
+     * and every regular expression starts with literal text, lines that do not
+     * start with such text are skipped without being decoded. Only used with
+     * ASCII-compatible default charsets (such as UTF-8).
+     */
+    @Option(AbstractOptions.mappedLogReadingStr)
+    public boolean mappedLogReading = false;
+
+    /**
+     * Number of threads used by the chain walking invariant miner to walk the
+     * traces in parallel. Each thread counts a shard of the traces, and the
+     * counts are merged before the invariants are extracted. Setting this to 1
+     * disables parallel mining.
+     */
+    @Option(AbstractOptions.miningThreadsStr)
+    public int miningThreads = 1;
+
+    /**
+     * Whether to coarsen the model with a work queue of partitions whose
+     * k-equivalent merge candidates remain to be tried. After a merge is
+     * accepted, only the partitions whose k-tail signatures changed are queued
+     * again, instead of restarting the search over all pairs of partitions.
+     */
+    @Option(AbstractOptions.incrementalCoarseningStr)
+    public boolean incrementalCoarsening = false;
+
+    /**
+     * Number of threads used to evaluate candidate splits in parallel on
+     * copy-on-write views of the partition graph (1 disables parallel
+     * evaluation)
+     */
+    @Option(AbstractOptions.splitEvaluationThreadsStr)
+    public int splitEvaluationThreads = 1;
+
+    /**
+     * Whether to compute the transitive closures used for invariant mining as
+     * per-trace bitsets over dense event ids, built in reverse topological
+     * order, instead of as maps of node sets. This reduces the memory
+     * footprint of the closures for large traces.
+     */
+    @Option(AbstractOptions.bitSetTransitiveClosureStr)
+    public boolean bitSetTransitiveClosure = false;
+
+    /**
+     * Whether the transitive closure invariant miner computes a separate
+     * (bitset) closure for each trace and merges the orderings mined from each
+     * trace, instead of computing a closure of the entire trace graph. Traces
+     * are mined on miningThreads threads.
+     */
+    @Option(AbstractOptions.shardedTransitiveClosureStr)
+    public boolean shardedTransitiveClosure = false;
+
+    /**
+     * Whether the time delta series of transitions keep totally ordered deltas
+     * as columns of primitive long or double values, instead of as lists of
+     * resource objects. This takes a fraction of the memory for
+     * performance-annotated logs; decimal deltas are then held at double
+     * precision.
+     */
+    @Option(AbstractOptions.columnarTimeDeltasStr)
+    public boolean columnarTimeDeltas = false;
+
+    /**
+     * Whether the JSON export of the final model writes the log, partitions,
+     * and invariants to the file as it traverses the model, rather than first
+     * building the entire JSON object in memory. Both produce the same output.
+     */
+    @Option(AbstractOptions.streamingJsonExportStr)
+    public boolean streamingJsonExport = false;
+
+    /**
+     * Render png images of exported dot files with a built-in layered layout
+     * (see LayeredGraphLayout), instead of with the GraphViz dot command. This
+     * works on hosts without GraphViz, and avoids starting a dot process per
+     * exported graph.
+     */
+    @Option(AbstractOptions.javaGraphRendererStr)
+    public boolean javaGraphRenderer = false;
+
+    /**
+     * Generate png images of exported dot files on a background thread, so
+     * that exporting graphs (e.g., with --dumpIntermediateStages) does not
+     * wait for the images.
+     */
+    @Option(AbstractOptions.asyncImageExportStr)
+    public boolean asyncImageExport = false;
+    // end option group "Performance Options"
+
     /** One line synopsis of usage */
     public static final String usageString = "extended perfume [options] <logfiles-to-analyze>";
 
@@ -486,7 +620,8 @@ public class ExtPerfumeOptions extends Options {
     public void printLongHelp() {
         System.out.println("Usage: " + getUsageString());
         System.out.println(plumeOptions.usage("General Options", "Execution Options", "Parser Options", "Input Options",
-                "Output Options", "Verbosity Options", "Debugging Options"));
+                "Output Options", "Verbosity Options", "Debugging Options",
+                "Performance Options"));
     }
 
     @Override
@@ -581,6 +716,24 @@ public class ExtPerfumeOptions extends Options {
         absOpts.performExtraChecks = performExtraChecks;
         absOpts.noRefinement = noRefinement;
 
+        // Performance Options
+
+        absOpts.incrementalRefinement = incrementalRefinement;
+        absOpts.modelCheckingThreads = modelCheckingThreads;
+        absOpts.denseModelChecking = denseModelChecking;
+        absOpts.streamingParse = streamingParse;
+        absOpts.parsingThreads = parsingThreads;
+        absOpts.mappedLogReading = mappedLogReading;
+        absOpts.miningThreads = miningThreads;
+        absOpts.incrementalCoarsening = incrementalCoarsening;
+        absOpts.splitEvaluationThreads = splitEvaluationThreads;
+        absOpts.bitSetTransitiveClosure = bitSetTransitiveClosure;
+        absOpts.shardedTransitiveClosure = shardedTransitiveClosure;
+        absOpts.columnarTimeDeltas = columnarTimeDeltas;
+        absOpts.streamingJsonExport = streamingJsonExport;
+        absOpts.javaGraphRenderer = javaGraphRenderer;
+        absOpts.asyncImageExport = asyncImageExport;
+
         // Set this as the definitive plume options object in AbstractMain and
         // AbstractOptions
         AbstractMain.plumeOpts = this;
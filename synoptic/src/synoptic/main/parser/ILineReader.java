@@ -0,0 +1,25 @@
+package synoptic.main.parser;
+
+import java.io.IOException;
+
+/**
+ * A source of log lines for the TraceParser.
+ */
+interface ILineReader {
+    /**
+     * Returns the next line, without the line terminator, or null if the end
+     * of the input has been reached.
+     */
+    String readLine() throws IOException;
+
+    /**
+     * Returns the number of the line last returned by readLine, starting from
+     * 1. Lines that the reader skipped are counted as well.
+     */
+    int getLineNumber();
+
+    /**
+     * Releases the underlying input.
+     */
+    void close() throws IOException;
+}
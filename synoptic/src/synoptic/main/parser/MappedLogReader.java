@@ -0,0 +1,209 @@
+package synoptic.main.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * <p>
+ * Reads the lines of a log file through memory-mapped windows of the file,
+ * instead of through a Reader. Line boundaries ('\n', '\r', or "\r\n", as with
+ * BufferedReader.readLine) are found by scanning the mapped bytes, so only
+ * ASCII-compatible charsets are supported (see isSupported). At most one
+ * window of windowSize bytes is mapped at a time, which allows reading files
+ * larger than 2GB.
+ * </p>
+ * <p>
+ * The reader may be given a list of line prefixes, in which case lines that do
+ * not start with any of the prefixes are skipped without being decoded.
+ * </p>
+ */
+public class MappedLogReader implements ILineReader {
+    /**
+     * The default size of the mapped windows of the file, in bytes.
+     */
+    public static final int defaultWindowSize = 64 * 1024 * 1024;
+
+    private final FileInputStream stream;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Charset charset;
+    private final int windowSize;
+
+    // The encoded prefixes of the lines to return, or null to return all
+    // lines.
+    private final byte[][] prefixes;
+
+    // The currently mapped window, and its offset in the file.
+    private MappedByteBuffer window = null;
+    private long windowStart = 0;
+
+    // The file offset of the first byte that has not been read yet.
+    private long pos = 0;
+
+    private int lineNumber = 0;
+
+    // Holds the bytes of lines that are decoded.
+    private byte[] lineBytes = new byte[256];
+
+    /**
+     * Opens file for reading with the default window size.
+     * 
+     * @param file
+     *            The log file to read.
+     * @param charset
+     *            The charset of file, for which isSupported must be true.
+     * @param prefixes
+     *            The prefixes of the lines to return, or null to return all
+     *            lines.
+     */
+    public MappedLogReader(File file, Charset charset, List<String> prefixes)
+            throws IOException {
+        this(file, charset, prefixes, defaultWindowSize);
+    }
+
+    /**
+     * Opens file for reading, mapping windows of windowSize bytes at a time.
+     */
+    public MappedLogReader(File file, Charset charset, List<String> prefixes,
+            int windowSize) throws IOException {
+        assert isSupported(charset);
+        assert windowSize > 0;
+
+        this.stream = new FileInputStream(file);
+        this.channel = stream.getChannel();
+        this.fileSize = channel.size();
+        this.charset = charset;
+        this.windowSize = windowSize;
+
+        if (prefixes == null) {
+            this.prefixes = null;
+        } else {
+            this.prefixes = new byte[prefixes.size()][];
+            for (int i = 0; i < prefixes.size(); i++) {
+                this.prefixes[i] = prefixes.get(i).getBytes(charset);
+            }
+        }
+    }
+
+    /**
+     * Returns whether logs in charset can be read with a MappedLogReader. This
+     * is the case for charsets in which '\n' and '\r' are single bytes that
+     * never occur within the encoding of another character.
+     */
+    public static boolean isSupported(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-")
+                || name.startsWith("windows-125");
+    }
+
+    @Override
+    public String readLine() throws IOException {
+        while (pos < fileSize) {
+            long lineStart = pos;
+            long lineEnd = lineStart;
+            byte b = 0;
+            while (lineEnd < fileSize) {
+                b = byteAt(lineEnd);
+                if (b == '\n' || b == '\r') {
+                    break;
+                }
+                lineEnd++;
+            }
+            lineNumber++;
+
+            // Move past the line terminator.
+            pos = lineEnd;
+            if (lineEnd < fileSize) {
+                pos++;
+                if (b == '\r' && pos < fileSize && byteAt(pos) == '\n') {
+                    pos++;
+                }
+            }
+
+            if (lineEnd - lineStart > Integer.MAX_VALUE) {
+                throw new IOException("Line " + lineNumber
+                        + " is too long to read");
+            }
+            int length = (int) (lineEnd - lineStart);
+            if (prefixes == null || hasPrefix(lineStart, length)) {
+                return decode(lineStart, length);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+        stream.close();
+    }
+
+    /**
+     * Returns the byte at the passed file offset, mapping the window that
+     * starts at offset if the current window does not contain it.
+     */
+    private byte byteAt(long offset) throws IOException {
+        if (window == null || offset < windowStart
+                || offset >= windowStart + window.limit()) {
+            long size = Math.min(windowSize, fileSize - offset);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            windowStart = offset;
+        }
+        return window.get((int) (offset - windowStart));
+    }
+
+    /**
+     * Returns whether the line of length bytes at lineStart starts with one of
+     * the prefixes.
+     */
+    private boolean hasPrefix(long lineStart, int length) throws IOException {
+        for (byte[] prefix : prefixes) {
+            if (prefix.length > length) {
+                continue;
+            }
+            int i = 0;
+            while (i < prefix.length && byteAt(lineStart + i) == prefix[i]) {
+                i++;
+            }
+            if (i == prefix.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the line of length bytes at lineStart.
+     */
+    private String decode(long lineStart, int length) throws IOException {
+        if (lineBytes.length < length) {
+            lineBytes = new byte[Math.max(length, 2 * lineBytes.length)];
+        }
+        if (lineStart >= windowStart
+                && lineStart + length <= windowStart + window.limit()) {
+            // The line lies within the current window. The cast keeps the
+            // call linked to Buffer.position(int), which ByteBuffer overrides
+            // covariantly only from Java 9 on.
+            ((Buffer) window).position((int) (lineStart - windowStart));
+            window.get(lineBytes, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                lineBytes[i] = byteAt(lineStart + i);
+            }
+        }
+        return new String(lineBytes, 0, length, charset);
+    }
+}
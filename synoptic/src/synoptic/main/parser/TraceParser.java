@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +20,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -63,6 +69,10 @@ public class TraceParser {
     private static int nextTraceID;
     private final Map<String, Integer> partitionNameToTraceID;
 
+    // Whether this parser parses a single file of a parallel parse. Such a
+    // parser numbers its partitions locally, without touching nextTraceID.
+    private final boolean isWorker;
+
     private NamedSubstitution filter;
 
     // Partitioning based on filter expressions -- maps a unique partition
@@ -72,6 +82,17 @@ public class TraceParser {
     // EventNode -> Relation associated with this event node.
     Map<EventNode, Set<Relation>> allEventRelations = new HashMap<EventNode, Set<Relation>>();
 
+    // Per-line scratch collections used by parseLine. None of these escape a
+    // call to parseLine, so they are cleared and reused for every line.
+    private final Map<String, String> eventStringArgs = new LinkedHashMap<String, String>();
+    private final Set<String> relationValues = new HashSet<String>();
+    private final Set<Relation> eventRelations = new HashSet<Relation>();
+
+    // The relation that every parsed event participates in. Relations are
+    // immutable, so a single instance is shared.
+    private static final Relation timeRelation = new Relation(
+            "time-relation", Event.defTimeRelationStr, false);
+
     // Patterns used to pre-process regular expressions
     private static final Pattern matchEscapedSeparator = Pattern
             .compile("\\\\;\\\\;");
@@ -152,6 +173,28 @@ public class TraceParser {
         filter = new NamedSubstitution("");
         nextTraceID = 0;
         partitionNameToTraceID = new LinkedHashMap<String, Integer>();
+        isWorker = false;
+    }
+
+    /**
+     * Returns a parser for one of the files of a parallel parse. The parser
+     * shares the (read-only) configuration of parent, but keeps its own
+     * partitions. Unlike the other constructors, this does not reset the trace
+     * IDs.
+     */
+    private TraceParser(TraceParser parent) {
+        parsers = parent.parsers;
+        constantFields = parent.constantFields;
+        incrementors = parent.incrementors;
+        filter = parent.filter;
+        partitionNameToTraceID = new LinkedHashMap<String, Integer>();
+        selectedTimeGroup = parent.selectedTimeGroup;
+        parsePIDs = parent.parsePIDs;
+        if (parent.dateFormatter != null) {
+            // SimpleDateFormat is not thread-safe.
+            dateFormatter = (SimpleDateFormat) parent.dateFormatter.clone();
+        }
+        isWorker = true;
     }
 
     /**
@@ -602,9 +645,7 @@ public class TraceParser {
         String fileName = "";
         try {
             fileName = file.getAbsolutePath();
-            FileInputStream fstream = new FileInputStream(file);
-            InputStreamReader fileReader = new InputStreamReader(fstream);
-            return parseTrace(fileReader, fileName, linesToRead);
+            return parseTrace(openLogFile(file), fileName, linesToRead);
         } catch (IOException e) {
             String error = "Error while attempting to read log file ["
                     + fileName + "]: " + e.getMessage();
@@ -613,6 +654,92 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Parses the trace files into a list of log events, parsing up to
+     * numThreads files at once. Each file is parsed by a separate worker
+     * parser, and the workers' partitions are then merged in file order. The
+     * result (including the partitions and their trace IDs) is therefore the
+     * same as that of calling parseTraceFile on each of the files in turn.
+     * 
+     * @param files
+     *            Files to read and then parse.
+     * @param numThreads
+     *            The maximum number of files to parse at once.
+     * @return The parsed log events, in file order.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseTraceFilesInParallel(List<File> files,
+            int numThreads) throws ParseException, InternalSynopticException {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<TraceParser> workers = new ArrayList<TraceParser>(files.size());
+        List<Future<ArrayList<EventNode>>> futures = new ArrayList<Future<ArrayList<EventNode>>>(
+                files.size());
+        ArrayList<EventNode> results = new ArrayList<EventNode>();
+        try {
+            for (final File file : files) {
+                final TraceParser worker = new TraceParser(this);
+                workers.add(worker);
+                futures.add(executor
+                        .submit(new Callable<ArrayList<EventNode>>() {
+                            @Override
+                            public ArrayList<EventNode> call()
+                                    throws ParseException {
+                                return worker.parseTraceFile(file, -1);
+                            }
+                        }));
+            }
+
+            for (int i = 0; i < files.size(); i++) {
+                results.addAll(futures.get(i).get());
+                mergePartitions(workers.get(i));
+            }
+        } catch (InterruptedException e) {
+            throw InternalSynopticException.wrap(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw InternalSynopticException.wrap(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Partitions may span files, so the vector times are processed again
+        // over the merged partitions.
+        processVectorTimes();
+        return results;
+    }
+
+    /**
+     * Adds the partitions of a worker parser to the partitions of this parser,
+     * assigning trace IDs to partitions that are new to this parser.
+     */
+    private void mergePartitions(TraceParser worker) {
+        for (Map.Entry<String, ArrayList<EventNode>> entry : worker.partitions
+                .entrySet()) {
+            String pName = entry.getKey();
+            ArrayList<EventNode> events = partitions.get(pName);
+            if (events == null) {
+                events = new ArrayList<EventNode>();
+                partitions.put(pName, events);
+                partitionNameToTraceID.put(pName, nextTraceID);
+                nextTraceID++;
+            }
+            int traceID = partitionNameToTraceID.get(pName);
+            for (EventNode eventNode : entry.getValue()) {
+                eventNode.setTraceID(traceID);
+            }
+            events.addAll(entry.getValue());
+        }
+        allEventRelations.putAll(worker.allEventRelations);
+    }
+
     /**
      * Parses a string containing a log into a list of log events.
      * 
@@ -639,7 +766,8 @@ public class TraceParser {
         }
         StringReader stringReader = new StringReader(trace);
         try {
-            return parseTrace(stringReader, traceName, linesToRead);
+            return parseTrace(new BufferedLineReader(stringReader), traceName,
+                    linesToRead);
         } catch (IOException e) {
             String error = "Error while reading string [" + traceName + "]: "
                     + e.getMessage();
@@ -649,9 +777,9 @@ public class TraceParser {
     }
 
     /**
-     * Parses strings generated by traceReader as event instances.
+     * Parses lines generated by lineReader as event instances.
      * 
-     * @param traceReader
+     * @param lineReader
      *            reader generated lines to parse.
      * @param linesToRead
      *            Bound on the number of lines to read. Negatives indicate
@@ -664,18 +792,10 @@ public class TraceParser {
      * @throws InternalSynopticException
      *             when Synoptic code is the problem
      */
-    private ArrayList<EventNode> parseTrace(Reader traceReader,
+    private ArrayList<EventNode> parseTrace(ILineReader lineReader,
             String traceName, int linesToRead) throws ParseException,
             IOException, InternalSynopticException {
-        BufferedReader br = new BufferedReader(traceReader);
-
-        // Initialize incrementor context.
-        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
-        for (Map<String, Boolean> incs : incrementors) {
-            for (String incField : incs.keySet()) {
-                context.put(incField, 0);
-            }
-        }
+        Map<String, Integer> context = newIncrementorContext();
 
         ArrayList<EventNode> results = new ArrayList<EventNode>();
         String strLine = null;
@@ -687,20 +807,19 @@ public class TraceParser {
 
         lastTime = null;
 
-        int lineNum = 0;
         // Process each line in sequence.
-        while ((strLine = br.readLine()) != null) {
+        while ((strLine = lineReader.readLine()) != null) {
             if (results.size() == linesToRead) {
                 break;
             }
-            lineNum++;
+            int lineNum = lineReader.getLineNumber();
             EventNode node = parseLine(strLine, tName, context, lineNum);
             if (node == null) {
                 continue;
             }
             results.add(node);
         }
-        br.close();
+        lineReader.close();
         // TODO: this is a hacky solution, should refactor the parseTrace and
         // parseLine methods so that State is separated from EventNode.
         // At this point, each node in results either represents an event or
@@ -709,6 +828,23 @@ public class TraceParser {
             mergeStatesWithEventNodes(results);
         }
 
+        processVectorTimes();
+
+        logger.info("Successfully parsed " + partitions.size()
+                + " traces, containing a total of " + results.size()
+                + " events from [" + tName + "]");
+        return results;
+    }
+
+    /**
+     * For VTIME logs, infers the process ID of each parsed event if these are
+     * not parsed explicitly, and otherwise checks that the events of each
+     * process within a partition are totally ordered.
+     * 
+     * @throws ParseException
+     *             if the vector times are inconsistent with the process IDs
+     */
+    private void processVectorTimes() throws ParseException {
         if (selectedTimeGroup.equals("VTIME") && !parsePIDs) {
             // Infer the PID (process ID) corresponding to each of the parsed
             // events, if PIDs were not parsed explicitly from the trace.
@@ -803,11 +939,201 @@ public class TraceParser {
                 }
             }
         }
+    }
 
-        logger.info("Successfully parsed " + partitions.size()
-                + " traces, containing a total of " + results.size()
-                + " events from [" + tName + "]");
-        return results;
+    /**
+     * Parses the passed totally ordered trace files directly into graph. Unlike
+     * parseTraceFile, this does not accumulate all of the parsed events before
+     * the graph is built. Instead, each partition is added to the graph (with
+     * ChainsTraceGraph.addTrace) and dropped by the parser as soon as it is
+     * known to be complete, which bounds the memory used by the parser to the
+     * partitions that are still open. A partition is complete:
+     * <ul>
+     * <li>when the partitions separator matches, if partitions are determined
+     * by the file name and the separator (the default), or</li>
+     * <li>at the end of its file, if partitions are determined by the file
+     * name.</li>
+     * </ul>
+     * Otherwise, the partitions are added to the graph once all the files have
+     * been parsed. Logs with state (the STATE group) are not supported.
+     * 
+     * @param files
+     *            Files to read and then parse, in order.
+     * @param graph
+     *            The graph to which the parsed traces are added.
+     * @return The number of parsed events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem, or when the
+     *             log is not totally ordered
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public int parseTraceFilesIntoGraph(List<File> files,
+            ChainsTraceGraph graph) throws ParseException,
+            InternalSynopticException {
+        if (!logTimeTypeIsTotallyOrdered()) {
+            String error = "Only totally ordered logs can be parsed into a graph incrementally.";
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+
+        boolean partitionsPerFile = AbstractOptions.partitionRegExp
+                .equals("\\k<FILE>") && filter.references("FILE");
+        boolean partitionsPerSeparator = partitionsPerFile
+                && filter.references("SEPCOUNT");
+
+        int numEvents = 0;
+        for (File file : files) {
+            String fileName = file.getAbsolutePath();
+            try {
+                ILineReader lineReader = openLogFile(file);
+                Map<String, Integer> context = newIncrementorContext();
+                String tName = fileName;
+                if (AbstractMain.getInstance().options.internCommonStrings) {
+                    tName = tName.intern();
+                }
+                lastTime = null;
+
+                String strLine;
+                while ((strLine = lineReader.readLine()) != null) {
+                    int lineNum = lineReader.getLineNumber();
+                    Integer sepCount = context.get("SEPCOUNT");
+                    EventNode node = parseLine(strLine, tName, context,
+                            lineNum);
+                    if (node != null) {
+                        if (node.getPostEventState() != null) {
+                            lineReader.close();
+                            String error = buildLineErrorLocString(strLine,
+                                    tName, lineNum)
+                                    + " Logs with state cannot be parsed into a graph incrementally.";
+                            logger.severe(error);
+                            throw new ParseException(error);
+                        }
+                        numEvents++;
+                    } else if (partitionsPerSeparator
+                            && !context.get("SEPCOUNT").equals(sepCount)) {
+                        addCompletePartitions(graph);
+                    }
+                }
+                lineReader.close();
+            } catch (IOException e) {
+                String error = "Error while attempting to read log file ["
+                        + fileName + "]: " + e.getMessage();
+                logger.severe(error);
+                throw new ParseException(error);
+            }
+
+            if (partitionsPerFile) {
+                addCompletePartitions(graph);
+            }
+        }
+        addCompletePartitions(graph);
+
+        logger.info("Successfully parsed " + graph.getNumTraces()
+                + " traces, containing a total of " + numEvents
+                + " events from " + files.size() + " files");
+        return numEvents;
+    }
+
+    /**
+     * Adds all the partitions parsed so far to graph as traces, and then
+     * drops them (and their relations) from the parser.
+     */
+    private void addCompletePartitions(ChainsTraceGraph graph)
+            throws ParseException {
+        for (ArrayList<EventNode> events : partitions.values()) {
+            for (EventNode event : events) {
+                graph.add(event);
+            }
+            graph.addTrace(events, allEventRelations);
+            for (EventNode event : events) {
+                allEventRelations.remove(event);
+            }
+        }
+        partitions.clear();
+    }
+
+    /**
+     * Opens file for reading its lines, through a MappedLogReader if the
+     * mappedLogReading option is set and the default charset allows it.
+     */
+    private ILineReader openLogFile(File file) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        if (AbstractMain.getInstance().options.mappedLogReading
+                && MappedLogReader.isSupported(charset)) {
+            return new MappedLogReader(file, charset, getLinePrefixes());
+        }
+        return new BufferedLineReader(new InputStreamReader(
+                new FileInputStream(file)));
+    }
+
+    /**
+     * Returns the literal prefixes of the regular expressions, if lines that do
+     * not start with any of these can be skipped without being parsed. This is
+     * the case when non-matching lines are ignored, and every regular
+     * expression starts with a literal. Otherwise, returns null.
+     */
+    private List<String> getLinePrefixes() {
+        AbstractMain main = AbstractMain.getInstance();
+        if (!main.options.ignoreNonMatchingLines
+                || main.options.recoverFromParseErrors) {
+            return null;
+        }
+
+        List<String> prefixes = new ArrayList<String>(parsers.size());
+        for (NamedPattern parser : parsers) {
+            String prefix = parser.literalPrefix();
+            if (prefix.isEmpty()) {
+                return null;
+            }
+            prefixes.add(prefix);
+        }
+        return prefixes;
+    }
+
+    /**
+     * An ILineReader over a BufferedReader.
+     */
+    private static class BufferedLineReader implements ILineReader {
+        private final BufferedReader reader;
+        private int lineNumber = 0;
+
+        public BufferedLineReader(Reader reader) {
+            this.reader = new BufferedReader(reader);
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = reader.readLine();
+            if (line != null) {
+                lineNumber++;
+            }
+            return line;
+        }
+
+        @Override
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Returns a new incrementor context, which maps every incrementor field to
+     * 0.
+     */
+    private Map<String, Integer> newIncrementorContext() {
+        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
+        for (Map<String, Boolean> incs : incrementors) {
+            for (String incField : incs.keySet()) {
+                context.put(incField, 0);
+            }
+        }
+        return context;
     }
 
     /**
@@ -902,9 +1228,7 @@ public class TraceParser {
                 continue;
             }
 
-            @SuppressWarnings("unchecked")
-            Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
-                    .get(i).clone();
+            Map<String, NamedSubstitution> cs = constantFields.get(i);
             Map<String, String> matched = matcher.toMatchResult().namedGroups();
 
             // Perform pre-increments.
@@ -984,6 +1308,10 @@ public class TraceParser {
                 event = new Event(eType, line, fileName, lineNum);
             } else {
                 eType = new StringEventType(eTypeLabel);
+                // Intern the type now, so that miners and checkers find its id
+                // cached. (A DistEventType may still be modified, so it is
+                // interned on first use instead.)
+                eType.getId();
                 event = new Event(eType, line, fileName, lineNum);
             }
 
@@ -991,8 +1319,8 @@ public class TraceParser {
              * Tag event nodes with relation fields. This is gross, is there a
              * nicer way to represent a state machine?
              */
-            Set<String> relationValues = new HashSet<String>();
-            Set<Relation> eventRelations = new HashSet<Relation>();
+            relationValues.clear();
+            eventRelations.clear();
             for (String key : matched.keySet()) {
                 if (key.startsWith(relationGroup)) {
                     String relationString = matched.get(key);
@@ -1115,8 +1443,7 @@ public class TraceParser {
                 }
             }
 
-            Map<String, String> eventStringArgs = new LinkedHashMap<String, String>();
-
+            eventStringArgs.clear();
             for (Map.Entry<String, String> group : matched.entrySet()) {
                 String name = group.getKey();
                 if (!name.equals("TYPE") && !name.equals("TIME")) {
@@ -1155,8 +1482,6 @@ public class TraceParser {
             }
             event.setTime(nextTime);
 
-            Relation timeRelation = new Relation("time-relation",
-                    Event.defTimeRelationStr, false);
             eventRelations.add(timeRelation);
 
             String partitionName = filter.substitute(eventStringArgs);
@@ -1192,7 +1517,6 @@ public class TraceParser {
                 relations.addAll(eventRelations);
             }
 
-            eventStringArgs = null;
             return eventNode;
         }
 
@@ -1260,8 +1584,14 @@ public class TraceParser {
 
             // This is the first time this partition has been observed,
             // assign it a trace ID and add it to the map of traceIDs
-            partitionNameToTraceID.put(pName, nextTraceID);
-            nextTraceID++;
+            if (isWorker) {
+                // The final trace ID is assigned by mergePartitions.
+                partitionNameToTraceID.put(pName,
+                        partitionNameToTraceID.size());
+            } else {
+                partitionNameToTraceID.put(pName, nextTraceID);
+                nextTraceID++;
+            }
         }
         eventNode.setTraceID(partitionNameToTraceID.get(pName));
 
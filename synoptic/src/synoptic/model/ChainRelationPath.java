@@ -1,13 +1,16 @@
 package synoptic.model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.invariants.miners.EventTypePairCounts;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IRelationPath;
@@ -29,21 +32,28 @@ public class ChainRelationPath implements IRelationPath {
      */
     private boolean counted;
 
-    /** The set of nodes seen prior to some point in the trace. */
-    private Set<EventType> seen;
-    /** Maintains the current event count in the path. */
-    private Map<EventType, Integer> eventCounts;
+    /*
+     * The counts are kept in arrays that are indexed by the position of an
+     * event type in eTypes, which lists the event types of the path in the
+     * order in which they first appear. The pair counts are n*n matrices,
+     * where n is the number of event types in the path, so that the
+     * O(length * n) counting loop does not box or hash.
+     */
+
+    /** The event types of the path, in order of first appearance. */
+    private EventType[] eTypes;
+    /** eventCounts[i] = the number of eTypes[i] events in the path. */
+    private int[] eventCounts;
     /**
-     * Maintains the current FollowedBy count for the path.
-     * followedByCounts[a][b] = count iff the number of a's that appeared before
-     * this b is count.
+     * followedByCounts[a * n + b] = count iff the number of a's that appeared
+     * before the last b is count, and 0 if no a appeared before a b.
      */
-    private Map<EventType, Map<EventType, Integer>> followedByCounts;
+    private int[] followedByCounts;
     /**
-     * Maintains the current precedes count for the path. precedesCounts[a][b] =
-     * count iff the number of b's that appeared after this a is count.
+     * precedesCounts[a * n + b] = count iff the number of b's that appeared
+     * after an a is count.
      */
-    private Map<EventType, Map<EventType, Integer>> precedesCounts;
+    private int[] precedesCounts;
 
     /**
      * Maintains for every event type the types that interrupts it across every
@@ -65,27 +75,17 @@ public class ChainRelationPath implements IRelationPath {
         this.eFinal = eFinal;
         this.relation = relation;
         this.counted = false;
-        this.seen = new HashSet<EventType>();
-        this.eventCounts = new LinkedHashMap<EventType, Integer>();
-        this.followedByCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        this.precedesCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
         this.possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
     }
 
     /**
      * Assumes tracegraph is already constructed. Walks over the tracegraph that
-     * eNode is part of to populate seen, eventcounts, followedByCounts,
-     * precedesCounts and possibleInterrupts. Throws an error if a node has
-     * multiple transitions for a single relation (i.e., not a totally ordered
-     * relation path).
+     * eNode is part of to collect the event types of the path, in order.
+     * Throws an error if a node has multiple transitions for a single relation
+     * (i.e., not a totally ordered relation path).
      */
-    private void count() {
-        if (counted) {
-            return;
-        }
-
-        // Used for IntrBy, which needs to record order
-        LinkedList<EventType> history = new LinkedList<EventType>();
+    private List<EventType> walk() {
+        List<EventType> path = new ArrayList<EventType>();
 
         Set<String> relationSet = new HashSet<String>();
         relationSet.add(relation);
@@ -117,59 +117,92 @@ public class ChainRelationPath implements IRelationPath {
                                         relationSet).size());
             }
 
-            // The current event is 'b', and all prior events are 'a' --
-            // this notation indicates that an 'a' always occur prior to a
-            // 'b' in the path.
-            EventType b = curNode.getEType();
-
-            // Update the precedes counts based on the a events that
-            // preceded the current b event in this path.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
-                if (!precedesCounts.containsKey(a)) {
-                    precedesCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
-                }
+            path.add(curNode.getEType());
 
-                bValues = precedesCounts.get(a);
+            // Move on to the next node in the trace.
+            List<? extends ITransition<EventNode>> searchTransitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
 
-                if (!bValues.containsKey(b)) {
-                    bValues.put(b, 0);
-                }
+            if (curNode.equals(eFinal)) {
+                break;
+            }
 
-                bValues.put(b, bValues.get(b) + 1);
+            curNode = searchTransitions.get(0).getTarget();
 
-            }
+            transitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
 
-            // Update the followed by counts for this path: the number of a
-            // FollowedBy b at this point in this trace is exactly the
-            // number of a's that we've seen so far.
-            for (EventType a : seen) {
-                Map<EventType, Integer> bValues;
+        }
+        return path;
+    }
 
-                if (!followedByCounts.containsKey(a)) {
-                    followedByCounts.put(a,
-                            new LinkedHashMap<EventType, Integer>());
-                }
+    /**
+     * Populates eTypes, eventCounts, followedByCounts, precedesCounts and
+     * possibleInterrupts from the path.
+     */
+    private void count() {
+        if (counted) {
+            return;
+        }
+
+        List<EventType> path = walk();
+
+        // Map the event type ids to indices into the count arrays, in the
+        // order in which the event types first appear.
+        int maxId = -1;
+        for (EventType e : path) {
+            maxId = Math.max(maxId, e.getId());
+        }
+        int[] indexOfId = new int[maxId + 1];
+        Arrays.fill(indexOfId, -1);
+        List<EventType> typesList = new ArrayList<EventType>();
+        int[] indices = new int[path.size()];
+        for (int p = 0; p < indices.length; p++) {
+            EventType e = path.get(p);
+            if (indexOfId[e.getId()] == -1) {
+                indexOfId[e.getId()] = typesList.size();
+                typesList.add(e);
+            }
+            indices[p] = indexOfId[e.getId()];
+        }
+
+        int n = typesList.size();
+        eTypes = typesList.toArray(new EventType[n]);
+        eventCounts = new int[n];
+        followedByCounts = new int[n * n];
+        precedesCounts = new int[n * n];
+        // The position of the last occurrence of each event type.
+        int[] lastPosition = new int[n];
+        // The event types with the indices 0..numSeen-1 have been seen prior
+        // to the current event.
+        int numSeen = 0;
+
+        for (int p = 0; p < indices.length; p++) {
+            // The current event is 'b', and all prior events are 'a' --
+            // this notation indicates that an 'a' always occur prior to a
+            // 'b' in the path.
+            int b = indices[p];
 
-                bValues = followedByCounts.get(a);
+            for (int a = 0; a < numSeen; a++) {
+                // Update the precedes counts based on the a events that
+                // preceded the current b event in this path.
+                precedesCounts[a * n + b]++;
 
-                bValues.put(b, eventCounts.get(a));
+                // Update the followed by counts for this path: the number of
+                // a FollowedBy b at this point in this trace is exactly the
+                // number of a's that we've seen so far.
+                followedByCounts[a * n + b] = eventCounts[a];
             }
 
             // For the InterruptedBy invariant, event type b must have occurred
             // at least once beforehand
-            if (eventCounts.get(b) != null) {
+            if (eventCounts[b] > 0) {
                 Set<EventType> typesInBetween = new HashSet<EventType>();
 
                 // All event types in between b and the last occurrence of b are
                 // possible IntrBy invariants
-                for (EventType a : history) {
-                    if (a.equals(b)) {
-                        break;
-                    }
-
-                    typesInBetween.add(a);
+                for (int q = lastPosition[b] + 1; q < p; q++) {
+                    typesInBetween.add(eTypes[indices[q]]);
                 }
 
                 // The recently found typesInBetween get intersected with the
@@ -177,38 +210,20 @@ public class ChainRelationPath implements IRelationPath {
                 // there are only Interrupted by invariants which hold for all
                 // pairs of b.
 
-                if (!possibleInterrupts.containsKey(b)) {
-                    possibleInterrupts.put(b, new HashSet<EventType>(
-                            typesInBetween));
+                if (!possibleInterrupts.containsKey(eTypes[b])) {
+                    possibleInterrupts.put(eTypes[b], typesInBetween);
                 } else {
-                    possibleInterrupts.get(b).retainAll(typesInBetween);
+                    possibleInterrupts.get(eTypes[b]).retainAll(typesInBetween);
                 }
-            }
-
-            seen.add(b);
-
-            history.addFirst(b);
-
-            // Update the trace event counts.
-            if (!eventCounts.containsKey(b)) {
-                eventCounts.put(b, 1);
             } else {
-                eventCounts.put(b, eventCounts.get(b) + 1);
-            }
-
-            // Move on to the next node in the trace.
-            List<? extends ITransition<EventNode>> searchTransitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
-            if (curNode.equals(eFinal)) {
-                break;
+                // Indices are assigned in order of first appearance.
+                assert b == numSeen;
+                numSeen++;
             }
 
-            curNode = searchTransitions.get(0).getTarget();
-
-            transitions = curNode
-                    .getTransitionsWithIntersectingRelations(relationSet);
-
+            // Update the trace event counts.
+            eventCounts[b]++;
+            lastPosition[b] = p;
         }
 
         counted = true;
@@ -216,32 +231,49 @@ public class ChainRelationPath implements IRelationPath {
 
     public Set<EventType> getSeen() {
         count();
-        return Collections.unmodifiableSet(seen);
+        return Collections.unmodifiableSet(new LinkedHashSet<EventType>(Arrays
+                .asList(eTypes)));
     }
 
     public Map<EventType, Integer> getEventCounts() {
         count();
-        return Collections.unmodifiableMap(eventCounts);
+        Map<EventType, Integer> ret = new LinkedHashMap<EventType, Integer>();
+        for (int i = 0; i < eTypes.length; i++) {
+            ret.put(eTypes[i], eventCounts[i]);
+        }
+        return Collections.unmodifiableMap(ret);
     }
 
     /**
      * Map<a, Map<b, count>> iff the number of a's that appeared before this b
-     * is count.
+     * is count. The map is built from the dense counts on each call, so the
+     * miners use addFollowedByCounts instead.
      */
     public Map<EventType, Map<EventType, Integer>> getFollowedByCounts() {
         count();
         // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(followedByCounts);
+        return Collections.unmodifiableMap(toMap(followedByCounts));
     }
 
     /**
      * Map<a, Map<b, count>> iff the number of b's that appeared after this a is
-     * count.
+     * count. The map is built from the dense counts on each call, so the
+     * miners use addPrecedesCounts instead.
      */
     public Map<EventType, Map<EventType, Integer>> getPrecedesCounts() {
         count();
         // TODO: Make the return type deeply unmodifiable
-        return Collections.unmodifiableMap(precedesCounts);
+        return Collections.unmodifiableMap(toMap(precedesCounts));
+    }
+
+    public void addFollowedByCounts(EventTypePairCounts counts) {
+        count();
+        addTo(followedByCounts, counts);
+    }
+
+    public void addPrecedesCounts(EventTypePairCounts counts) {
+        count();
+        addTo(precedesCounts, counts);
     }
 
     /**
@@ -253,6 +285,31 @@ public class ChainRelationPath implements IRelationPath {
         return Collections.unmodifiableMap(possibleInterrupts);
     }
 
+    /**
+     * Adds the non-zero entries of the pair counts matrix to counts.
+     */
+    private void addTo(int[] matrix, EventTypePairCounts counts) {
+        int n = eTypes.length;
+        for (int a = 0; a < n; a++) {
+            for (int b = 0; b < n; b++) {
+                int count = matrix[a * n + b];
+                if (count != 0) {
+                    counts.add(eTypes[a], eTypes[b], count);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the non-zero entries of the pair counts matrix, as
+     * Map<a, Map<b, count>>.
+     */
+    private Map<EventType, Map<EventType, Integer>> toMap(int[] matrix) {
+        Map<EventType, Map<EventType, Integer>> ret = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        addTo(matrix, EventTypePairCounts.wrap(ret));
+        return ret;
+    }
+
     public EventNode getFirstNode() {
         return this.eNode;
     }
@@ -10,10 +10,12 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import daikonizer.DaikonInvariants;
 
 import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.main.AbstractMain;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.INode;
@@ -62,6 +64,41 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * Cached successor partitions and transitions of this partition, or null
+     * if they have not been computed since the last change that could affect
+     * them. The transitions are only cached once the successors are. NOTE: the
+     * caches are not synchronized, and filling them also modifies the
+     * transitionCacheDependents of the successors. So partitions may only be
+     * read concurrently once the caches that the readers use are filled, e.g.,
+     * through PartitionGraph.cacheAllAdjacentNodes().
+     */
+    private Set<Partition> cachedSuccessors = null;
+    private List<Transition<Partition>> cachedTransitions = null;
+
+    /**
+     * The partitions whose cached successors include this partition. Their
+     * caches must be dropped when events leave this partition, since the
+     * events' predecessors then have a transition to a different partition.
+     */
+    private final Set<Partition> transitionCacheDependents = new LinkedHashSet<Partition>();
+
+    /**
+     * Whether lookups of cached successors and transitions are counted, for
+     * benchmarking. Off by default, so that the lookups (which may be
+     * concurrent) do not write shared counters.
+     */
+    private static boolean countTransitionCacheLookups = false;
+
+    /**
+     * Counts the lookups of cached successors and transitions that hit and
+     * missed the cache, across all partitions, since the last call to
+     * recordTransitionCacheMetrics(). Only maintained while
+     * countTransitionCacheLookups is set.
+     */
+    private static final AtomicLong transitionCacheHits = new AtomicLong();
+    private static final AtomicLong transitionCacheMisses = new AtomicLong();
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -85,6 +122,25 @@ public class Partition implements INode<Partition> {
         cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
     }
 
+    /**
+     * Creates a partition that contains eNodes without becoming their parent,
+     * so that the partitions the event nodes belong to remain unchanged. Such a
+     * partition stands in for a partition that a split would create (see
+     * PartitionGraphOverlay). Its transitions are not meaningful, and must be
+     * obtained from the overlay instead.
+     * 
+     * @param eNodes
+     * @param eType
+     *            the event type of eNodes
+     */
+    Partition(Set<EventNode> eNodes, EventType eType) {
+        assert eNodes.size() > 0;
+        events = new LinkedHashSet<EventNode>(eNodes);
+        this.eType = eType;
+        initialized = true;
+        cachedTransitionsWithInvs = new ArrayList<Transition<Partition>>();
+    }
+
     public void initialize(EventNode eNode) {
         eType = eNode.getEType();
         initialized = true;
@@ -103,7 +159,9 @@ public class Partition implements INode<Partition> {
         }
 
         events.addAll(eNodes);
+        clearTransitionCache();
         for (final EventNode e : eNodes) {
+            leaveParent(e);
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
             // same event type.
@@ -123,6 +181,8 @@ public class Partition implements INode<Partition> {
         } else {
             assert eType.equals(eNode.getEType());
         }
+        clearTransitionCache();
+        leaveParent(eNode);
         eNode.setParent(this);
         events.add(eNode);
     }
@@ -143,6 +203,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeEventNodes(Set<EventNode> eventNodes) {
         events.removeAll(eventNodes);
+        invalidateTransitionCache();
         assert events.size() > 0;
     }
 
@@ -151,6 +212,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeAllEventNodes() {
         events.clear();
+        invalidateTransitionCache();
         initialized = false;
     }
 
@@ -323,7 +385,12 @@ public class Partition implements INode<Partition> {
     public List<? extends ITransition<Partition>> getWeightedTransitions() {
         assert initialized;
 
-        List<? extends ITransition<Partition>> transitions = getAllTransitions();
+        // The cached transitions may be shared by other callers (and threads),
+        // so the probabilities and counts are set on copies.
+        List<Transition<Partition>> transitions = new ArrayList<Transition<Partition>>();
+        for (Transition<Partition> tr : getCachedTransitions()) {
+            transitions.add(new Transition<Partition>(tr));
+        }
 
         // TODO: Cache whether or not the fractions/counts have already been set
         // on the transitions.
@@ -513,10 +580,30 @@ public class Partition implements INode<Partition> {
         }
     }
 
+    /**
+     * Returns the transitions to all successor partitions. The transitions are
+     * cached until the partition, or one of its successors, loses events (see
+     * invalidateTransitionCache), and the returned list is a copy that may be
+     * modified. The transitions themselves are shared with later calls, and
+     * must not be modified (getWeightedTransitions returns copies).
+     */
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
-        Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
+        return new ArrayList<Transition<Partition>>(getCachedTransitions());
+    }
+
+    /**
+     * Returns the cached transitions to all successor partitions, computing
+     * and caching them first if necessary.
+     */
+    private List<Transition<Partition>> getCachedTransitions() {
+        if (cachedTransitions != null) {
+            countTransitionCacheLookup(true);
+            return cachedTransitions;
+        }
+        countTransitionCacheLookup(false);
+
+        Map<Partition, Transition<Partition>> transitions = new LinkedHashMap<Partition, Transition<Partition>>();
 
         for (EventNode e : events) {
             for (ITransition<EventNode> tr : e.getAllTransitions()) {
@@ -542,21 +629,140 @@ public class Partition implements INode<Partition> {
             }
         }
 
-        // Return final list of transitions
-        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
+        // Cache the transitions, whose targets are exactly the successors.
+        cacheSuccessors(transitions.keySet());
+        cachedTransitions = new ArrayList<Transition<Partition>>(
                 transitions.values());
-        return ret;
+        return cachedTransitions;
     }
 
+    /**
+     * Returns the partitions that contain a successor of an event in this
+     * partition. The successors are cached like the transitions (see
+     * getAllTransitions), and the returned set is a copy that may be modified.
+     */
     @Override
     public Set<Partition> getAllSuccessors() {
+        return new LinkedHashSet<Partition>(getCachedSuccessors());
+    }
+
+    /**
+     * Returns the cached successors of this partition, computing and caching
+     * them first if necessary. The returned set is the cache itself, and must
+     * not be modified.
+     */
+    Set<Partition> getCachedSuccessors() {
+        if (cachedSuccessors != null) {
+            countTransitionCacheLookup(true);
+            return cachedSuccessors;
+        }
+        countTransitionCacheLookup(false);
+
         Set<Partition> successors = new LinkedHashSet<Partition>();
         for (EventNode e : events) {
             for (EventNode eSucc : e.getAllSuccessors()) {
                 successors.add(eSucc.getParent());
             }
         }
-        return successors;
+        cacheSuccessors(successors);
+        return cachedSuccessors;
+    }
+
+    /**
+     * Returns whether the successors of this partition are cached.
+     */
+    boolean successorsCached() {
+        return cachedSuccessors != null;
+    }
+
+    /**
+     * Caches successors as the successors of this partition, and registers
+     * this partition as a dependent of each of them.
+     */
+    private void cacheSuccessors(Set<Partition> successors) {
+        if (cachedSuccessors != null) {
+            return;
+        }
+        cachedSuccessors = new LinkedHashSet<Partition>(successors);
+        for (Partition succ : cachedSuccessors) {
+            succ.transitionCacheDependents.add(this);
+        }
+    }
+
+    /**
+     * Drops the cached successors and transitions of this partition.
+     */
+    private void clearTransitionCache() {
+        if (cachedSuccessors == null) {
+            return;
+        }
+        for (Partition succ : cachedSuccessors) {
+            succ.transitionCacheDependents.remove(this);
+        }
+        cachedSuccessors = null;
+        cachedTransitions = null;
+    }
+
+    /**
+     * Drops the cached successors and transitions of this partition and of
+     * all partitions with a cached transition to this partition. Must be
+     * called whenever events leave this partition.
+     */
+    private void invalidateTransitionCache() {
+        clearTransitionCache();
+        for (Partition dependent : new ArrayList<Partition>(
+                transitionCacheDependents)) {
+            dependent.clearTransitionCache();
+        }
+        assert transitionCacheDependents.isEmpty();
+    }
+
+    /**
+     * Invalidates the caches that depend on e being in its current parent
+     * partition, before e is moved to this partition.
+     */
+    private void leaveParent(EventNode e) {
+        Partition parent = e.getParent();
+        if (parent != null && parent != this) {
+            parent.invalidateTransitionCache();
+        }
+    }
+
+    /**
+     * Sets whether the lookups of cached successors and transitions are
+     * counted (see recordTransitionCacheMetrics).
+     */
+    public static void setCountTransitionCacheLookups(boolean count) {
+        countTransitionCacheLookups = count;
+    }
+
+    private static void countTransitionCacheLookup(boolean hit) {
+        if (countTransitionCacheLookups) {
+            (hit ? transitionCacheHits : transitionCacheMisses)
+                    .incrementAndGet();
+        }
+    }
+
+    /**
+     * Records the number of cache hits and misses of getAllTransitions and
+     * getAllSuccessors since the last call, and the resulting hit rate (in
+     * percent), with PerformanceMetrics. The counts are then reset. Does
+     * nothing unless the lookups are counted.
+     */
+    public static void recordTransitionCacheMetrics() {
+        if (!countTransitionCacheLookups) {
+            return;
+        }
+        long hits = transitionCacheHits.getAndSet(0);
+        long misses = transitionCacheMisses.getAndSet(0);
+        PerformanceMetrics.get().record("partitionTransitionCacheHits", hits);
+        PerformanceMetrics.get().record("partitionTransitionCacheMisses",
+                misses);
+        if (hits + misses > 0) {
+            PerformanceMetrics.get().record(
+                    "partitionTransitionCacheHitPercent",
+                    (100 * hits) / (hits + misses));
+        }
     }
 
     // TODO: this code is very similar to getAllTransitions(), refactor it.
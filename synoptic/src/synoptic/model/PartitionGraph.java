@@ -59,9 +59,6 @@ public class PartitionGraph implements IGraph<Partition> {
     /** Holds all relations known to exist in this graph. */
     private final Set<String> relations = new LinkedHashSet<String>();
 
-    /** A cache of inter-partition transitions. */
-    private final LinkedHashMap<Partition, Set<Partition>> transitionCache = new LinkedHashMap<Partition, Set<Partition>>();
-
     /** An ordered list of all partition splits applied to the graph so far. */
     private final LinkedList<PartitionMultiSplit> appliedSplits = new LinkedList<PartitionMultiSplit>();
 
@@ -153,21 +150,42 @@ public class PartitionGraph implements IGraph<Partition> {
     }
 
     /**
-     * Returns a set of partitions that are adjacent to pNode. Uses the internal
-     * transitionCache for speed.
+     * Returns a set of partitions that are adjacent to pNode. Uses the
+     * successors cache of pNode for speed, so the returned set must not be
+     * modified.
      * 
      * @param pNode
      * @return set of adjacent partitions to pNode
      */
     @Override
     public Set<Partition> getAdjacentNodes(Partition pNode) {
-        if (transitionCache.containsKey(pNode)) {
-            return transitionCache.get(pNode);
+        return pNode.getCachedSuccessors();
+    }
+
+    /**
+     * Caches the adjacent nodes of all partitions. Filling the caches modifies
+     * the graph and its partitions, so this must be called before the graph
+     * is read by several threads (e.g., by concurrent model checkers), which
+     * then only read the caches. Any modification of the graph invalidates
+     * (parts of) the caches.
+     */
+    public void cacheAllAdjacentNodes() {
+        for (Partition p : partitions) {
+            getAdjacentNodes(p);
         }
+    }
 
-        Set<Partition> adjPartitions = pNode.getAllSuccessors();
-        transitionCache.put(pNode, adjPartitions);
-        return adjPartitions;
+    /**
+     * Returns whether the adjacent nodes of all partitions are cached (see
+     * cacheAllAdjacentNodes).
+     */
+    public boolean allAdjacentNodesCached() {
+        for (Partition p : partitions) {
+            if (!p.successorsCached()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -194,8 +212,6 @@ public class PartitionGraph implements IGraph<Partition> {
         for (Set<EventNode> eNodes : prepartitions.values()) {
             partitions.add(new Partition(eNodes));
         }
-
-        transitionCache.clear();
     }
 
     private void partitionByIndexSetsAndLabels(Collection<EventNode> events,
@@ -306,7 +322,6 @@ public class PartitionGraph implements IGraph<Partition> {
             partitions.add(partition);
             seenENodes.add(e);
         }
-        transitionCache.clear();
     }
 
     @Override
@@ -365,36 +380,6 @@ public class PartitionGraph implements IGraph<Partition> {
             relations.addAll(m.getNodeRelations());
         }
         partitions.add(node);
-
-        clearNodeAdjacentsCache(node);
-    }
-
-    public void mergeAdjacentsCache(Partition from, Partition to) {
-        for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
-                .entrySet().iterator(); pIter.hasNext();) {
-            Set<Partition> parts = pIter.next().getValue();
-            if (parts.contains(from)) {
-                parts.remove(from);
-                parts.add(to);
-            }
-        }
-    }
-
-    public void clearNodeAdjacentsCache(Partition node) {
-        transitionCache.remove(node);
-        // System.out.println("Cache size: " + transitionCache.size());
-        for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
-                .entrySet().iterator(); pIter.hasNext();) {
-            if (pIter.next().getValue().contains(node)) {
-                // System.out.println("cache rm");
-                pIter.remove();
-            }
-        }
-        // System.out.println("Cache' size: " + transitionCache.size());
-    }
-
-    public void removeFromCache(Partition node) {
-        transitionCache.remove(node);
     }
 
     public void removePartition(Partition node) {
@@ -429,75 +414,39 @@ public class PartitionGraph implements IGraph<Partition> {
      * @return traces Set<List<Partition>> containing the synthetic traces
      */
     public Set<List<Partition>> getSyntheticTraces() {
-        Set<List<Partition>> traces = getAllTraces();
-        traces.removeAll(getInitialLogTraces());
+        Set<List<Partition>> initialTraces = getInitialLogTraces();
+        Set<List<Partition>> traces = new HashSet<List<Partition>>();
+        for (List<Partition> trace : enumerateAllTraces()) {
+            if (!initialTraces.contains(trace)) {
+                traces.add(trace);
+            }
+        }
         return traces;
     }
 
     /**
      * Traverses the partition graph and returns a set of all possible traces.
+     * A trace may pass through a cycle, but after a partition is repeated the
+     * trace continues to a partition that it has not yet visited. For large
+     * graphs, use enumerateAllTraces() instead, which enumerates the traces
+     * lazily and can count them before enumerating them.
      * 
      * @return
      */
     public Set<List<Partition>> getAllTraces() {
-        // This will contain all the traces
         Set<List<Partition>> allTraces = new HashSet<List<Partition>>();
-        // Constructs the set of all traces
-        recursivelyAddTracesToSet(dummyInitialNode.getParent(), allTraces,
-                new ArrayList<Partition>());
+        for (List<Partition> trace : enumerateAllTraces()) {
+            allTraces.add(trace);
+        }
         return allTraces;
     }
 
     /**
-     * Helper method for {@code getAllTraces}. Recursively finds all possible
-     * paths from the partition graph and adds them to a set.
-     * 
-     * <pre>
-     * TODO: This will calculate any subset of nodes multiple times if the topmost
-     * node of said subset has multiple parent nodes. A cache should be used for
-     * these nodes to make this process more efficient.
-     * 
-     * TODO: Return a set rather than alter a pointer.
-     * 
-     * TODO: Make a proper cycle-checking algorithm.
-     * </pre>
-     * 
-     * @param pNode
-     *            The current node
-     * @param allTraces
-     *            The pointer to the set of all paths.
-     * @param prefixTrace
-     *            The path of all preceding nodes.
-     * @see findAllTraces
+     * Returns a lazy enumeration of the traces that getAllTraces() returns.
+     * The graph must not be modified while the enumeration is in use.
      */
-    private void recursivelyAddTracesToSet(Partition pNode,
-            Set<List<Partition>> allTraces, List<Partition> prefixTrace) {
-        Set<Partition> adjPartitions = getAdjacentNodes(pNode);
-        // Check to see if the path has had a single cycle.
-        boolean isCyclic = prefixTrace.contains(pNode);
-        // Add the node to the prefix.
-        prefixTrace.add(pNode);
-        // If the node is terminal, then we have a path and it can
-        // be added to the set.
-        if (pNode.isTerminal()) {
-            List<Partition> trace = new ArrayList<Partition>();
-            trace.addAll(prefixTrace);
-            allTraces.add(trace);
-            return;
-        }
-
-        // Process all adjacent nodes.
-        for (Partition adjPNode : adjPartitions) {
-            // Negation of:
-            // "If there has been a cycle and the next
-            // node is one that has been encountered."
-            if (!isCyclic || !prefixTrace.contains(adjPNode)) {
-                recursivelyAddTracesToSet(adjPNode, allTraces, prefixTrace);
-                // Remove anything on the end after returning from the call
-                // stack.
-                prefixTrace.remove(prefixTrace.size() - 1);
-            }
-        }
+    public PartitionTraceEnumerator enumerateAllTraces() {
+        return new PartitionTraceEnumerator(this);
     }
 
     /**
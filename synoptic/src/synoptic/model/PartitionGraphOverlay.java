@@ -0,0 +1,167 @@
+package synoptic.model;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.model.interfaces.IGraph;
+
+/**
+ * A copy-on-write view of a PartitionGraph as it would be after applying a
+ * PartitionMultiSplit, without modifying the graph. This allows a split to be
+ * evaluated (e.g., by model checking the view) without the apply/rewind cycle
+ * on the shared graph, and therefore allows several candidate splits to be
+ * evaluated concurrently. <br/>
+ * <br/>
+ * The view shares all unaffected state with the base graph: it holds its own
+ * adjacent nodes only for the split partition, the partitions that the split
+ * would create, and the partitions with a transition into the split
+ * partition. The partitions that the split would create are stand-ins that
+ * do not become the parents of their events, so they must only be navigated
+ * through the view.
+ *
+ * <pre>
+ * NOTE: The base graph must not be modified while the view is in use. An
+ * overlay is not thread-safe, but several overlays of the same base graph may
+ * be used concurrently, provided that the adjacent nodes of all partitions in
+ * the base graph have been cached (by PartitionGraph.cacheAllAdjacentNodes)
+ * beforehand, so that the base graph is only read.
+ * </pre>
+ */
+public class PartitionGraphOverlay implements IGraph<Partition> {
+    private final PartitionGraph base;
+
+    /** The partition being split. */
+    private final Partition splitPartition;
+
+    /** The events that remain in splitPartition after the split. */
+    private final Set<EventNode> retainedEvents;
+
+    /** The partitions that the split would create. */
+    private final Set<Partition> newPartitions;
+
+    /** Maps each event that the split moves to its new (stand-in) partition. */
+    private final Map<EventNode, Partition> newParents;
+
+    /** The nodes of the view, computed on first use. */
+    private Set<Partition> nodes = null;
+
+    /** Adjacent nodes that differ from, or are not cached by, the base. */
+    private final Map<Partition, Set<Partition>> adjacentNodes;
+
+    /**
+     * Creates a view of base after applying split, which must be a valid split
+     * of a partition in base.
+     */
+    public PartitionGraphOverlay(PartitionGraph base, PartitionMultiSplit split) {
+        assert split.isValid();
+        this.base = base;
+        this.splitPartition = split.getPartition();
+        this.newPartitions = new LinkedHashSet<Partition>();
+        this.newParents = new HashMap<EventNode, Partition>();
+        this.adjacentNodes = new HashMap<Partition, Set<Partition>>();
+
+        // As in PartitionMultiSplit.commit(), the first set of events remains
+        // in the split partition.
+        List<Set<EventNode>> partitioning = split.getPartitioning();
+        this.retainedEvents = partitioning.get(0);
+        for (Set<EventNode> events : partitioning.subList(1,
+                partitioning.size())) {
+            Partition newPartition = new Partition(events,
+                    splitPartition.getEType());
+            newPartitions.add(newPartition);
+            for (EventNode e : events) {
+                newParents.put(e, newPartition);
+            }
+        }
+    }
+
+    /**
+     * Returns the partitions that the split would create.
+     */
+    public Set<Partition> getNewPartitions() {
+        return newPartitions;
+    }
+
+    /**
+     * Returns the partition that contains event e in this view.
+     */
+    public Partition getParent(EventNode e) {
+        Partition parent = newParents.get(e);
+        if (parent == null) {
+            return e.getParent();
+        }
+        return parent;
+    }
+
+    @Override
+    public Set<Partition> getNodes() {
+        if (nodes == null) {
+            // A split adds the new partitions after the existing ones.
+            nodes = new LinkedHashSet<Partition>(base.getNodes());
+            nodes.addAll(newPartitions);
+        }
+        return nodes;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        // A split does not change the events of the graph, nor their
+        // relations.
+        return base.getRelations();
+    }
+
+    @Override
+    public Partition getDummyInitialNode() {
+        return base.getDummyInitialNode();
+    }
+
+    @Override
+    public Set<Partition> getAdjacentNodes(Partition pNode) {
+        Set<Partition> adjPartitions = adjacentNodes.get(pNode);
+        if (adjPartitions != null) {
+            return adjPartitions;
+        }
+
+        if (pNode == splitPartition) {
+            adjPartitions = getSuccessors(retainedEvents);
+        } else if (newPartitions.contains(pNode)) {
+            adjPartitions = getSuccessors(pNode.getEventNodes());
+        } else {
+            Set<Partition> baseAdjPartitions = base.getAdjacentNodes(pNode);
+            if (!baseAdjPartitions.contains(splitPartition)) {
+                // The transitions of pNode are unaffected by the split, so the
+                // view shares them with the base.
+                return baseAdjPartitions;
+            }
+            adjPartitions = getSuccessors(pNode.getEventNodes());
+        }
+        adjacentNodes.put(pNode, adjPartitions);
+        return adjPartitions;
+    }
+
+    /**
+     * Returns the partitions in this view that contain a successor of one of
+     * the events.
+     */
+    private Set<Partition> getSuccessors(Set<EventNode> events) {
+        Set<Partition> successors = new LinkedHashSet<Partition>();
+        for (EventNode e : events) {
+            for (EventNode eSucc : e.getAllSuccessors()) {
+                successors.add(getParent(eSucc));
+            }
+        }
+        return successors;
+    }
+
+    /**
+     * A view cannot be modified.
+     */
+    @Override
+    public void add(Partition node) {
+        throw new UnsupportedOperationException();
+    }
+}
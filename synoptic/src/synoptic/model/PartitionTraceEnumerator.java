@@ -0,0 +1,264 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import synoptic.algorithms.StronglyConnectedComponents;
+
+/**
+ * Enumerates the traces of a PartitionGraph -- the paths from the initial
+ * partition to a terminal partition -- lazily, one path at a time, instead of
+ * materializing all of them. A path may pass through a partition more than
+ * once, but after a partition is repeated the path must continue to a
+ * partition that it has not yet visited, which bounds the number of paths
+ * through a cycle. <br/>
+ * <br/>
+ * On construction the enumerator finds the strongly connected components of
+ * the graph, and from them: the partitions that can reach a terminal
+ * partition at all (other partitions are never entered), and the partitions
+ * from which no cycle is reachable. The paths from such a partition do not
+ * depend on the path that led to it, so the number of paths from each of them
+ * is memoized. This allows countTraces() to count the traces through the
+ * acyclic parts of the graph without walking them, so callers can bound the
+ * work of an enumeration before starting it. <br/>
+ * <br/>
+ * The graph must not be modified while the enumerator is in use.
+ */
+public class PartitionTraceEnumerator implements Iterable<List<Partition>> {
+    private final PartitionGraph pGraph;
+
+    /** The partitions from which a terminal partition is reachable. */
+    private final Set<Partition> live = new HashSet<Partition>();
+
+    /**
+     * The number of paths to a terminal partition from each live partition
+     * from which no cycle is reachable, saturated at Long.MAX_VALUE.
+     */
+    private final Map<Partition, Long> acyclicPathCounts = new HashMap<Partition, Long>();
+
+    public PartitionTraceEnumerator(PartitionGraph pGraph) {
+        this.pGraph = pGraph;
+
+        // The SCCs are found in reverse topological order, so the SCCs that
+        // are reachable from an SCC are processed before it.
+        StronglyConnectedComponents<Partition> sccs = new StronglyConnectedComponents<Partition>(
+                pGraph);
+        for (Set<Partition> scc : sccs) {
+            boolean sccLive = false;
+            boolean acyclic = scc.size() == 1;
+            for (Partition p : scc) {
+                if (p.isTerminal()) {
+                    sccLive = true;
+                }
+                for (Partition adj : pGraph.getAdjacentNodes(p)) {
+                    if (scc.contains(adj)) {
+                        // A transition within the SCC (or a self-loop).
+                        acyclic = false;
+                    } else if (live.contains(adj)) {
+                        sccLive = true;
+                        if (!acyclicPathCounts.containsKey(adj)) {
+                            acyclic = false;
+                        }
+                    }
+                }
+            }
+            if (!sccLive) {
+                continue;
+            }
+            live.addAll(scc);
+            if (acyclic) {
+                Partition p = scc.iterator().next();
+                long count = p.isTerminal() ? 1 : 0;
+                for (Partition adj : pGraph.getAdjacentNodes(p)) {
+                    Long adjCount = acyclicPathCounts.get(adj);
+                    if (adjCount != null) {
+                        count = saturatedAdd(count, adjCount);
+                    }
+                }
+                acyclicPathCounts.put(p, count);
+            }
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * Returns the number of traces that the enumerator yields, or limit if
+     * there are at least limit traces. Only the parts of the graph from which
+     * a cycle is reachable are walked, and the walk stops once limit traces
+     * have been counted.
+     */
+    public long countTraces(long limit) {
+        Partition initial = pGraph.getDummyInitialNode();
+        if (!live.contains(initial)) {
+            return 0;
+        }
+        Long initialCount = acyclicPathCounts.get(initial);
+        if (initialCount != null) {
+            return Math.min(initialCount, limit);
+        }
+
+        long count = 0;
+        Walk walk = new Walk();
+        walk.enter(initial);
+        while (!walk.isDone()) {
+            Partition next = walk.nextAdjacent();
+            if (next == null) {
+                walk.leave();
+                continue;
+            }
+            Long nextCount = acyclicPathCounts.get(next);
+            if (nextCount == null) {
+                walk.enter(next);
+                continue;
+            }
+            count = saturatedAdd(count, nextCount);
+            if (count >= limit) {
+                return limit;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns an iterator over the traces of the graph. Each trace is a new
+     * list, which the caller may keep.
+     */
+    @Override
+    public Iterator<List<Partition>> iterator() {
+        return new TraceIterator();
+    }
+
+    /**
+     * A depth-first walk of the paths from the initial partition, which
+     * tracks the partitions on the current path.
+     */
+    private class Walk {
+        final List<Partition> path = new ArrayList<Partition>();
+
+        /** The number of times that each partition is on the path. */
+        final Map<Partition, Integer> onPath = new HashMap<Partition, Integer>();
+
+        /** The adjacent partitions left to visit, for each node on the path. */
+        final List<Iterator<Partition>> adjacents = new ArrayList<Iterator<Partition>>();
+
+        /** Whether each node on the path was already on the path before it. */
+        final List<Boolean> repeated = new ArrayList<Boolean>();
+
+        boolean isDone() {
+            return path.isEmpty();
+        }
+
+        void enter(Partition p) {
+            Integer n = onPath.get(p);
+            repeated.add(n != null);
+            onPath.put(p, n == null ? 1 : n + 1);
+            path.add(p);
+            if (p.isTerminal()) {
+                // A path ends at the first terminal partition.
+                adjacents.add(Collections.<Partition> emptyIterator());
+            } else {
+                adjacents.add(pGraph.getAdjacentNodes(p).iterator());
+            }
+        }
+
+        void leave() {
+            int last = path.size() - 1;
+            Partition p = path.remove(last);
+            adjacents.remove(last);
+            repeated.remove(last);
+            int n = onPath.get(p);
+            if (n == 1) {
+                onPath.remove(p);
+            } else {
+                onPath.put(p, n - 1);
+            }
+        }
+
+        /**
+         * Returns the next partition to extend the path with from its last
+         * node, or null if there is none left.
+         */
+        Partition nextAdjacent() {
+            int last = path.size() - 1;
+            Iterator<Partition> adjIter = adjacents.get(last);
+            boolean lastRepeated = repeated.get(last);
+            while (adjIter.hasNext()) {
+                Partition adj = adjIter.next();
+                if (!live.contains(adj)) {
+                    continue;
+                }
+                // After a repeated node, the path must continue to a new node.
+                if (lastRepeated && onPath.containsKey(adj)) {
+                    continue;
+                }
+                return adj;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Yields the paths of a Walk that end at a terminal partition.
+     */
+    private class TraceIterator implements Iterator<List<Partition>> {
+        private final Walk walk = new Walk();
+        private List<Partition> nextTrace = null;
+
+        public TraceIterator() {
+            Partition initial = pGraph.getDummyInitialNode();
+            if (live.contains(initial)) {
+                walk.enter(initial);
+            }
+        }
+
+        /**
+         * Walks to the next terminal partition, and sets nextTrace to the path
+         * to it, unless the walk is done.
+         */
+        private void advance() {
+            while (nextTrace == null && !walk.isDone()) {
+                Partition next = walk.nextAdjacent();
+                if (next == null) {
+                    walk.leave();
+                    continue;
+                }
+                walk.enter(next);
+                if (next.isTerminal()) {
+                    nextTrace = new ArrayList<Partition>(walk.path);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            advance();
+            return nextTrace != null;
+        }
+
+        @Override
+        public List<Partition> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<Partition> trace = nextTrace;
+            nextTrace = null;
+            return trace;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
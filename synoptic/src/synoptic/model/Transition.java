@@ -3,6 +3,7 @@ package synoptic.model;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.resource.AbstractResource;
@@ -69,6 +70,23 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
         this.relations.add(relation);
     }
 
+    /**
+     * Create a copy of a transition, which has its own labels, so that setting
+     * a label on the copy does not affect copyFrom. The relations and the
+     * label values (e.g., the time delta series) are shared with copyFrom.
+     * 
+     * @param copyFrom
+     *            the transition to copy
+     */
+    public Transition(Transition<NodeType> copyFrom) {
+        assert copyFrom != null;
+
+        this.source = copyFrom.source;
+        this.target = copyFrom.target;
+        this.relations = copyFrom.relations;
+        this.labels = new TransitionLabelsMap(copyFrom.labels);
+    }
+
     // //////////////////////////////////////////////////////////////////////
 
     @Override
@@ -186,7 +204,8 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
     private void createSeriesIfEmpty() {
         if (this.labels.getTimeDeltaSeries() == null) {
             this.labels.setLabel(TransitionLabelType.TIME_DELTA_SERIES_LABEL,
-                    new ResourceSeries<AbstractResource>());
+                    new ResourceSeries<AbstractResource>("", AbstractMain
+                            .getInstance().options.columnarTimeDeltas));
         }
     }
 
@@ -20,6 +20,15 @@ public class TransitionLabelsMap implements Comparable<TransitionLabelsMap> {
         labels = new LinkedHashMap<TransitionLabelType, Object>();
     }
 
+    /**
+     * Creates a map with the labels of copyFrom. The label values themselves
+     * are shared with copyFrom, not copied.
+     */
+    public TransitionLabelsMap(TransitionLabelsMap copyFrom) {
+        labels = new LinkedHashMap<TransitionLabelType, Object>(
+                copyFrom.labels);
+    }
+
     /**
      * Returns the value for a particular label type. If none exist, then
      * returns null.
@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.invariants.miners.EventTypePairCounts;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IRelationPath;
@@ -324,6 +325,18 @@ public class TransitiveRelationPath implements IRelationPath {
         return Collections.unmodifiableMap(precedesCounts);
     }
 
+    @Override
+    public void addFollowedByCounts(EventTypePairCounts counts) {
+        count();
+        counts.addAll(followedByCounts);
+    }
+
+    @Override
+    public void addPrecedesCounts(EventTypePairCounts counts) {
+        count();
+        counts.addAll(precedesCounts);
+    }
+
     /**
      * Map<a, Set<b>> iff a gets interrupted by b.
      */
@@ -87,6 +87,7 @@ public class DistEventType extends EventType implements IDistEventType {
      * @return
      */
     public String interpretEType(List<ChannelId> channelIds) {
+        checkNotInterned();
         if (channelIds == null)
             return "Empty set of channelIds";
         if (channelId != null)
@@ -321,6 +322,7 @@ public class DistEventType extends EventType implements IDistEventType {
     }
 
     public String setProcessName(String pName) {
+        checkNotInterned();
         return processName = pName;
     }
 
@@ -29,6 +29,13 @@ public abstract class EventType implements Comparable<EventType> {
      */
     protected final boolean isTerminalEventType;
 
+    /**
+     * The token of the id of this event type in the EventTypeRegistry, or null
+     * if this instance has not been interned yet. Holding on to the token keeps
+     * the id assigned.
+     */
+    private EventTypeRegistry.IdToken idToken = null;
+
     /**
      * Instantiates a new EventType that can be an INITIAL, a TERMINAL, or
      * neither. It cannot be both an INITIAL and a TERMINAL.
@@ -61,6 +68,36 @@ public abstract class EventType implements Comparable<EventType> {
      */
     public abstract String getETypeLabel();
 
+    /**
+     * Returns the dense id of this event type, which is shared by all equal
+     * event types (see EventTypeRegistry). Once this has been called, the
+     * instance must not be modified.
+     */
+    public int getId() {
+        if (idToken == null) {
+            idToken = EventTypeRegistry.intern(this);
+        }
+        return idToken.id;
+    }
+
+    /**
+     * Returns whether this instance has been assigned an id.
+     */
+    protected boolean isInterned() {
+        return idToken != null;
+    }
+
+    /**
+     * Throws an IllegalStateException if this instance has been assigned an
+     * id, and must therefore not be modified.
+     */
+    protected void checkNotInterned() {
+        if (isInterned()) {
+            throw new IllegalStateException(
+                    "Cannot modify an interned event type: " + this);
+        }
+    }
+
     // //////////////////////
     // These methods implement basic functionality for the two
     // boolean base data members:
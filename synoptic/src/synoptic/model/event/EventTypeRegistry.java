@@ -0,0 +1,142 @@
+package synoptic.model.event;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Interns event types by assigning each distinct (according to equals) event
+ * type a dense int id: the first distinct type gets id 0, the next one id 1,
+ * and so on. This allows miners and checkers to keep per-type information in
+ * arrays indexed by EventType.getId(), instead of in hashed maps.
+ *
+ * <pre>
+ * NOTE: The registry only holds weak references to event types, so it does
+ * not keep the event types of earlier runs (e.g., of earlier synopticgwt
+ * sessions) alive. Every interned EventType instance holds on to the IdToken of
+ * its id, and the token holds on to the event type that the registry uses as
+ * a key. An id is therefore released only once no equal event type is
+ * reachable, after which it may be assigned to a new event type. Interned event
+ * types are used as map keys, and must therefore not be modified. All methods
+ * are thread-safe, since event types may be interned by several parsing
+ * threads.
+ * </pre>
+ */
+public final class EventTypeRegistry {
+
+    /**
+     * The id of a distinct event type, which is shared by all the interned
+     * instances that are equal to the key.
+     */
+    static final class IdToken {
+        final int id;
+        final EventType key;
+
+        IdToken(int id, EventType key) {
+            this.id = id;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A weak reference to the token of an id, which is enqueued once no
+     * interned event type holds on to the token.
+     */
+    private static final class TokenRef extends WeakReference<IdToken> {
+        final int id;
+
+        TokenRef(IdToken token, ReferenceQueue<IdToken> queue) {
+            super(token, queue);
+            this.id = token.id;
+        }
+    }
+
+    private static final Map<EventType, TokenRef> tokens =
+            new WeakHashMap<EventType, TokenRef>();
+    // The token reference of each id, or null for released ids.
+    private static final List<TokenRef> tokensById = new ArrayList<TokenRef>();
+    // Released ids, which are assigned before new ids.
+    private static final List<Integer> freeIds = new ArrayList<Integer>();
+    private static final ReferenceQueue<IdToken> released =
+            new ReferenceQueue<IdToken>();
+
+    private EventTypeRegistry() {
+        // Only static methods.
+    }
+
+    /**
+     * Returns the id token of eType, assigning it an unused id if no equal
+     * event type is interned.
+     */
+    static synchronized IdToken intern(EventType eType) {
+        releaseIds();
+        TokenRef ref = tokens.get(eType);
+        IdToken token = (ref == null) ? null : ref.get();
+        if (token == null) {
+            int id;
+            if (freeIds.isEmpty()) {
+                id = tokensById.size();
+                tokensById.add(null);
+            } else {
+                id = freeIds.remove(freeIds.size() - 1);
+            }
+            token = new IdToken(id, eType);
+            ref = new TokenRef(token, released);
+            // Remove a stale entry first, since put keeps the existing key,
+            // which is about to be collected.
+            tokens.remove(eType);
+            tokens.put(eType, ref);
+            tokensById.set(id, ref);
+        }
+        return token;
+    }
+
+    /**
+     * Returns the event type that was first interned with id, or null if id
+     * is not assigned.
+     */
+    public static synchronized EventType getEventType(int id) {
+        TokenRef ref = tokensById.get(id);
+        IdToken token = (ref == null) ? null : ref.get();
+        return (token == null) ? null : token.key;
+    }
+
+    /**
+     * Returns a bound on the assigned ids: all ids are smaller than this
+     * number, which is therefore a sufficient size for arrays indexed by id.
+     */
+    public static synchronized int size() {
+        return tokensById.size();
+    }
+
+    /**
+     * Releases id as the registry does once the garbage collector has
+     * collected the token of id, so that tests can check the release path
+     * without depending on the collector. Used by tests. Must only be called
+     * once no event type with this id is used any more.
+     */
+    public static synchronized void releaseForTesting(int id) {
+        TokenRef ref = tokensById.get(id);
+        assert ref != null;
+        ref.clear();
+        ref.enqueue();
+        releaseIds();
+    }
+
+    /**
+     * Releases the ids whose tokens are no longer held by any event type.
+     */
+    private static void releaseIds() {
+        Reference<? extends IdToken> ref;
+        while ((ref = released.poll()) != null) {
+            int id = ((TokenRef) ref).id;
+            assert tokensById.get(id) == ref;
+            tokensById.set(id, null);
+            freeIds.add(id);
+        }
+    }
+}
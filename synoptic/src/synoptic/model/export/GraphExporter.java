@@ -17,6 +17,13 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import synoptic.main.AbstractMain;
@@ -39,6 +46,7 @@ import daikonizer.DaikonInvariants;
  * Currently supports:
  * - GraphViz dot file format
  * - GML file format
+ * - png images of dot files (with dot, or with GraphImageWriter)
  * </pre>
  */
 public class GraphExporter {
@@ -72,13 +80,111 @@ public class GraphExporter {
     }
 
     /**
-     * Converts a dot file as a png image file using dot. The png file will be
-     * created in the same place as the dot file.
+     * The thread on which png images are generated when
+     * options.asyncImageExport is set. The thread is not a daemon, so that the
+     * JVM does not exit before the queued images are generated, but it stops
+     * once it has been idle for a second.
+     */
+    private static ThreadPoolExecutor imageExporter = null;
+
+    /** The queued and running image generation tasks. */
+    private static final List<Future<?>> pendingImageExports = new ArrayList<Future<?>>();
+
+    private static synchronized ExecutorService getImageExporter() {
+        if (imageExporter == null) {
+            imageExporter = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "GraphExporter-images");
+                        }
+                    });
+            imageExporter.allowCoreThreadTimeOut(true);
+        }
+        return imageExporter;
+    }
+
+    /**
+     * Converts a dot file as a png image file. The png file will be created in
+     * the same place as the dot file. The image is generated by the dot
+     * command, or by GraphImageWriter if options.javaGraphRenderer is set.
+     * If options.asyncImageExport is set, the image is generated on a
+     * background thread (see waitForImageExports()), so the dot file must not
+     * be overwritten until then.
      * 
      * @param dotFile
      *            dot file filename
      */
-    public static void generatePngFileFromDotFile(String fileName) {
+    public static void generatePngFileFromDotFile(final String fileName) {
+        final boolean javaRenderer = AbstractMain.getInstance().options.javaGraphRenderer;
+        if (!AbstractMain.getInstance().options.asyncImageExport) {
+            generatePngFile(fileName, javaRenderer);
+            return;
+        }
+        Future<?> f = getImageExporter().submit(new Runnable() {
+            @Override
+            public void run() {
+                generatePngFile(fileName, javaRenderer);
+            }
+        });
+        synchronized (pendingImageExports) {
+            pendingImageExports.add(f);
+        }
+    }
+
+    /**
+     * Waits until all of the png images queued by generatePngFileFromDotFile()
+     * have been generated.
+     */
+    public static void waitForImageExports() {
+        List<Future<?>> pending;
+        synchronized (pendingImageExports) {
+            pending = new ArrayList<Future<?>>(pendingImageExports);
+            pendingImageExports.clear();
+        }
+        for (Future<?> f : pending) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                logger.severe("Waiting for image export interrupted: " + e.getMessage());
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw InternalSynopticException.wrap(e);
+            }
+        }
+    }
+
+    private static void generatePngFile(String fileName, boolean javaRenderer) {
+        if (javaRenderer) {
+            renderPngFile(fileName);
+        } else {
+            runDot(fileName);
+        }
+    }
+
+    /**
+     * Renders a dot file as a png image using LayeredGraphLayout and
+     * GraphImageWriter.
+     */
+    private static void renderPngFile(String fileName) {
+        String pngFileName = fileName + ".png";
+        logger.info("Exporting graph to: " + pngFileName);
+        try {
+            LayeredGraphLayout layout = LayeredGraphLayout.readDotFile(fileName);
+            GraphImageWriter.writePngFile(layout, pngFileName);
+        } catch (IOException e) {
+            logger.severe("Could not render '" + fileName + "' as a png image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Converts a dot file as a png image file using dot.
+     */
+    private static void runDot(String fileName) {
         File dotFile = new File(fileName);
 
         String dotCommand = getDotCommand();
@@ -0,0 +1,263 @@
+package synoptic.model.export;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import synoptic.model.export.LayeredGraphLayout.Edge;
+import synoptic.model.export.LayeredGraphLayout.Node;
+
+/**
+ * Draws a LayeredGraphLayout as an SVG document or a PNG image, without the
+ * GraphViz dot command. The drawing imitates dot's default style: black
+ * outlines and text on a white background, with the shapes that
+ * DotExportFormatter uses for initial (box) and terminal (diamond) nodes.
+ */
+public class GraphImageWriter {
+    /** The size of the label font. */
+    static final int fontSize = 12;
+
+    /**
+     * The maximum width or height of a PNG image, in pixels. Larger drawings
+     * are scaled down to fit.
+     */
+    static final int maxImageSize = 8000;
+
+    private GraphImageWriter() {
+        // Only static methods.
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // SVG
+
+    /**
+     * Writes the layout as an SVG document to a file.
+     */
+    public static void writeSvgFile(LayeredGraphLayout layout, String fileName)
+            throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(fileName));
+        try {
+            writeSvg(layout, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the layout as an SVG document to writer.
+     */
+    public static void writeSvg(LayeredGraphLayout layout, Writer writer)
+            throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""
+                + num(layout.getWidth()) + "\" height=\""
+                + num(layout.getHeight()) + "\" viewBox=\"0 0 "
+                + num(layout.getWidth()) + " " + num(layout.getHeight())
+                + "\">\n");
+        writer.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+        writer.write("<g font-family=\"sans-serif\" font-size=\"" + fontSize
+                + "\" stroke=\"black\" fill=\"none\">\n");
+
+        for (Node n : layout.getNodes()) {
+            writer.write(svgShape(n));
+            writeSvgText(writer, n.label, n.x, n.y, "middle");
+        }
+
+        for (Edge e : layout.getEdges()) {
+            double[] p = e.path;
+            writer.write("<path d=\"M" + num(p[0]) + "," + num(p[1]) + " C");
+            for (int i = 2; i < p.length; i += 2) {
+                writer.write(" " + num(p[i]) + "," + num(p[i + 1]));
+            }
+            writer.write("\"/>\n");
+            double[] a = e.arrowhead;
+            writer.write("<polygon fill=\"black\" points=\"" + num(a[0]) + ","
+                    + num(a[1]) + " " + num(a[2]) + "," + num(a[3]) + " "
+                    + num(a[4]) + "," + num(a[5]) + "\"/>\n");
+            if (e.label != null && !e.label.isEmpty()) {
+                writeSvgText(writer, e.label, e.labelX, e.labelY, "start");
+            }
+        }
+
+        writer.write("</g>\n</svg>\n");
+    }
+
+    private static String svgShape(Node n) {
+        if (n.shape.equals("box")) {
+            return "<rect x=\"" + num(n.x - n.width / 2) + "\" y=\""
+                    + num(n.y - n.height / 2) + "\" width=\"" + num(n.width)
+                    + "\" height=\"" + num(n.height) + "\"/>\n";
+        }
+        if (n.shape.equals("diamond")) {
+            return "<polygon points=\"" + num(n.x) + ","
+                    + num(n.y - n.height / 2) + " " + num(n.x + n.width / 2)
+                    + "," + num(n.y) + " " + num(n.x) + ","
+                    + num(n.y + n.height / 2) + " " + num(n.x - n.width / 2)
+                    + "," + num(n.y) + "\"/>\n";
+        }
+        return "<ellipse cx=\"" + num(n.x) + "\" cy=\"" + num(n.y)
+                + "\" rx=\"" + num(n.width / 2) + "\" ry=\""
+                + num(n.height / 2) + "\"/>\n";
+    }
+
+    /**
+     * Writes the lines of text, vertically centered on y.
+     */
+    private static void writeSvgText(Writer writer, String text, double x,
+            double y, String anchor) throws IOException {
+        List<String> lines = LayeredGraphLayout.getLabelLines(text);
+        double baseline = y - (lines.size() - 1)
+                * LayeredGraphLayout.lineHeight / 2 + fontSize / 3.0;
+        for (String line : lines) {
+            writer.write("<text x=\"" + num(x) + "\" y=\"" + num(baseline)
+                    + "\" text-anchor=\"" + anchor
+                    + "\" stroke=\"none\" fill=\"black\">" + escapeXml(line)
+                    + "</text>\n");
+            baseline += LayeredGraphLayout.lineHeight;
+        }
+    }
+
+    private static String num(double d) {
+        return String.format(Locale.US, "%.1f", d);
+    }
+
+    static String escapeXml(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // PNG
+
+    /**
+     * Draws the layout into a PNG image file.
+     */
+    public static void writePngFile(LayeredGraphLayout layout, String fileName)
+            throws IOException {
+        double scale = Math.min(1.0,
+                maxImageSize / Math.max(layout.getWidth(), layout.getHeight()));
+        int width = Math.max(1, (int) Math.ceil(layout.getWidth() * scale));
+        int height = Math.max(1, (int) Math.ceil(layout.getHeight() * scale));
+
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.scale(scale, scale);
+            g.setColor(Color.BLACK);
+            g.setStroke(new BasicStroke(1));
+            g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, fontSize));
+
+            for (Node n : layout.getNodes()) {
+                g.draw(awtShape(n));
+                drawText(g, n.label, n.x, n.y, true);
+            }
+
+            for (Edge e : layout.getEdges()) {
+                double[] p = e.path;
+                Path2D.Double path = new Path2D.Double();
+                path.moveTo(p[0], p[1]);
+                for (int i = 2; i < p.length; i += 6) {
+                    path.curveTo(p[i], p[i + 1], p[i + 2], p[i + 3],
+                            p[i + 4], p[i + 5]);
+                }
+                g.draw(path);
+
+                double[] a = e.arrowhead;
+                Path2D.Double arrowhead = new Path2D.Double();
+                arrowhead.moveTo(a[0], a[1]);
+                arrowhead.lineTo(a[2], a[3]);
+                arrowhead.lineTo(a[4], a[5]);
+                arrowhead.closePath();
+                g.fill(arrowhead);
+
+                if (e.label != null && !e.label.isEmpty()) {
+                    drawText(g, e.label, e.labelX, e.labelY, false);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+
+        if (!ImageIO.write(image, "png", new File(fileName))) {
+            throw new IOException("No PNG image writer is available.");
+        }
+    }
+
+    private static Shape awtShape(Node n) {
+        double left = n.x - n.width / 2;
+        double top = n.y - n.height / 2;
+        if (n.shape.equals("box")) {
+            return new Rectangle2D.Double(left, top, n.width, n.height);
+        }
+        if (n.shape.equals("diamond")) {
+            Path2D.Double diamond = new Path2D.Double();
+            diamond.moveTo(n.x, top);
+            diamond.lineTo(left + n.width, n.y);
+            diamond.lineTo(n.x, top + n.height);
+            diamond.lineTo(left, n.y);
+            diamond.closePath();
+            return diamond;
+        }
+        return new Ellipse2D.Double(left, top, n.width, n.height);
+    }
+
+    /**
+     * Draws the lines of text, vertically centered on y, and either
+     * horizontally centered on x or starting at x.
+     */
+    private static void drawText(Graphics2D g, String text, double x, double y,
+            boolean center) {
+        FontMetrics metrics = g.getFontMetrics();
+        List<String> lines = LayeredGraphLayout.getLabelLines(text);
+        double baseline = y - (lines.size() - 1)
+                * LayeredGraphLayout.lineHeight / 2 + fontSize / 3.0;
+        for (String line : lines) {
+            double left = center ? x - metrics.stringWidth(line) / 2.0 : x;
+            g.drawString(line, (float) left, (float) baseline);
+            baseline += LayeredGraphLayout.lineHeight;
+        }
+    }
+}
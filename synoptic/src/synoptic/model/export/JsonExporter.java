@@ -1,8 +1,12 @@
 package synoptic.model.export;
 
+import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -15,6 +19,7 @@ import org.json.simple.JSONValue;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.main.AbstractMain;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
@@ -25,7 +30,11 @@ import synoptic.model.interfaces.INode;
 /**
  * Outputs a partition graph as a JSON object. Uses the JSON-simple library,
  * licensed under Apache 2.0 (the same license as Synoptic and its
- * sub-projects), available at https://code.google.com/p/json-simple/.
+ * sub-projects), available at https://code.google.com/p/json-simple/. <br/>
+ * <br/>
+ * With the streamingJsonExport option, the JSON object is written to the file
+ * as the graph is traversed, rather than built as nested maps and lists and
+ * then written. Both produce the same output.
  */
 public class JsonExporter {
 
@@ -66,6 +75,21 @@ public class JsonExporter {
         assert graph instanceof PartitionGraph;
         PartitionGraph pGraph = (PartitionGraph) graph;
 
+        if (AbstractMain.getInstance().options.streamingJsonExport) {
+            try {
+                Writer output = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(baseFilename + ".json")));
+                try {
+                    writeJsonObject(pGraph, output);
+                } finally {
+                    output.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
         // EvBasedGraph evGraph = new EvBasedGraph(pGraph);
         // System.out.println("evGraph:\n" + evGraph);
 
@@ -285,4 +309,208 @@ public class JsonExporter {
 
         return invariantsList;
     }
+
+    // //////////////////////////////////////////////////////////////////////
+    // Streaming export. The following methods write the same JSON as the
+    // make*JSON methods above, in the format of JSONValue.writeJSONString
+    // (without whitespace), but write each value as soon as it is visited.
+    // //////////////////////////////////////////////////////////////////////
+
+    /**
+     * Writes the JSON object representation of pGraph to out, without
+     * building the object in memory.
+     */
+    public static void writeJsonObject(PartitionGraph pGraph, Writer out)
+            throws IOException {
+        // The event instance of each event, which is recorded while writing
+        // the log and used while writing the partitions
+        Map<EventNode, EventInstance> eventInstances = new HashMap<EventNode, EventInstance>();
+
+        out.write('{');
+        writeKey("log", true, out);
+        writeLogJSON(pGraph, eventInstances, out);
+        writeKey("partitions", false, out);
+        writePartitionsJSON(pGraph, eventInstances, out);
+        writeKey("invariants", false, out);
+        writeInvariantsJSON(pGraph, out);
+        out.write('}');
+        out.flush();
+    }
+
+    /**
+     * Writes the key of an object member, preceded by a separator unless it
+     * is the first member of the object.
+     */
+    private static void writeKey(String key, boolean first, Writer out)
+            throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        out.write('\"');
+        out.write(JSONValue.escape(key));
+        out.write("\":");
+    }
+
+    /**
+     * Writes the object member key:value, where value is a JSON-simple value.
+     */
+    private static void writeMember(String key, Object value, boolean first,
+            Writer out) throws IOException {
+        writeKey(key, first, out);
+        JSONValue.writeJSONString(value, out);
+    }
+
+    /**
+     * Writes the 'log' of the JSON object, as makeLogJSON, and records the
+     * event instance of each event in eventInstances.
+     */
+    private static void writeLogJSON(PartitionGraph pGraph,
+            Map<EventNode, EventInstance> eventInstances, Writer out)
+            throws IOException {
+        // Get the INITIAL partition, which will be used to retrieve all traces
+        // and their events
+        Partition initialPart = null;
+        for (Partition part : pGraph.getNodes()) {
+            if (part.isInitial()) {
+                initialPart = part;
+                break;
+            }
+        }
+
+        // There must have been an INITIAL partition found
+        assert initialPart != null;
+        if (initialPart == null) {
+            JSONValue.writeJSONString(null, out);
+            return;
+        }
+
+        out.write('[');
+        int traceID = 0;
+        for (EventNode startingEvent : initialPart.getEventNodes().iterator()
+                .next().getAllSuccessors()) {
+            if (traceID > 0) {
+                out.write(',');
+            }
+            out.write('{');
+            writeMember("traceID", traceID, true, out);
+            writeKey("events", false, out);
+            out.write('[');
+
+            int eventIndexWithinTrace = 0;
+            for (EventNode event = startingEvent; !event.isTerminal(); event = event
+                    .getAllSuccessors().iterator().next()) {
+                if (eventIndexWithinTrace > 0) {
+                    out.write(',');
+                }
+                out.write('{');
+                writeMember("eventIndex", eventIndexWithinTrace, true, out);
+                EventType evType = event.getEType();
+                writeMember("eventType", evType.toString(), false, out);
+                writeMember("logLine", event.getLineNum(), false, out);
+                if (!evType.isSpecialEventType()) {
+                    writeMember("timestamp", event.getTime(), false, out);
+                }
+                out.write('}');
+
+                eventInstances.put(event, new EventInstance(traceID,
+                        eventIndexWithinTrace++));
+            }
+
+            out.write("]}");
+            traceID++;
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes the 'partitions' of the JSON object, as makePartitionsJSON.
+     */
+    private static void writePartitionsJSON(PartitionGraph pGraph,
+            Map<EventNode, EventInstance> eventInstances, Writer out)
+            throws IOException {
+        out.write('[');
+        boolean firstPartition = true;
+        for (Partition partition : pGraph.getNodes()) {
+            EventType evType = partition.getEType();
+            // As in makePartitionsJSON, partitions of INITIAL and TERMINAL
+            // events are omitted.
+            if (evType.isSpecialEventType()
+                    && !partition.getEventNodes().isEmpty()) {
+                continue;
+            }
+            if (!firstPartition) {
+                out.write(',');
+            }
+            firstPartition = false;
+
+            out.write('{');
+            writeMember("eventType", evType.toString(), true, out);
+            writeKey("events", false, out);
+            out.write('[');
+            boolean firstEvent = true;
+            for (EventNode event : partition.getEventNodes()) {
+                if (!firstEvent) {
+                    out.write(',');
+                }
+                firstEvent = false;
+                EventInstance evInstance = eventInstances.get(event);
+                out.write('{');
+                writeMember("traceID", evInstance.traceID, true, out);
+                writeMember("eventIndex", evInstance.eventIndexWithinTrace,
+                        false, out);
+                out.write('}');
+            }
+            out.write("]}");
+        }
+        out.write(']');
+    }
+
+    /**
+     * Writes the 'invariants' of the JSON object, as makeInvariantsJSON.
+     */
+    private static void writeInvariantsJSON(PartitionGraph pGraph, Writer out)
+            throws IOException {
+        out.write('[');
+        boolean firstInvariant = true;
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            if (!firstInvariant) {
+                out.write(',');
+            }
+            firstInvariant = false;
+
+            out.write('{');
+            writeMember("invariantType", inv.getLongName(), true, out);
+
+            // As in makeInvariantsJSON, an invariant with a single (repeated)
+            // predicate lists it twice.
+            writeKey("predicates", false, out);
+            out.write('[');
+            boolean firstPredicate = true;
+            String predicate = null;
+            for (EventType evType : inv.getPredicates()) {
+                if (!firstPredicate) {
+                    out.write(',');
+                }
+                predicate = evType.toString();
+                JSONValue.writeJSONString(predicate, out);
+                firstPredicate = false;
+            }
+            if (inv.getPredicates().size() == 1) {
+                out.write(',');
+                JSONValue.writeJSONString(predicate, out);
+            }
+            out.write(']');
+
+            if (inv instanceof TempConstrainedInvariant) {
+                TempConstrainedInvariant<?> constInv = (TempConstrainedInvariant<?>) inv;
+                writeKey("constraints", false, out);
+                out.write('[');
+                JSONValue.writeJSONString(constInv.getConstraint().toString(),
+                        out);
+                out.write(']');
+            }
+            out.write('}');
+        }
+        out.write(']');
+    }
 }
@@ -0,0 +1,699 @@
+package synoptic.model.export;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A simple layered (Sugiyama-style) layout of a directed graph, used to render
+ * exported graphs without the GraphViz dot command (see GraphImageWriter).
+ * Nodes are assigned to layers top to bottom, so that most edges point down:
+ * <ol>
+ * <li>cycles are broken by reversing the back edges of a depth-first
+ * search,</li>
+ * <li>each node is placed in the layer after the deepest of its predecessors
+ * (longest-path layering),</li>
+ * <li>the nodes within each layer are ordered to reduce crossings, by sorting
+ * them by the mean position of their neighbors in the adjacent layer (the
+ * barycenter heuristic), alternately sweeping down and up.</li>
+ * </ol>
+ * An edge that spans several layers passes through a dummy node in each layer
+ * in between, which is ordered along with the other nodes of the layer, so
+ * that the edge is routed between (rather than through) the nodes. Edges are
+ * drawn as straight lines through their dummy nodes, except that edges
+ * reversed between adjacent layers and self-loops are curved to one side.
+ * Edge labels are placed between the layers. Unlike dot, the layout does not
+ * make room for the labels, and sizes the nodes by an estimated (rather than
+ * the actual) width of their labels. <br/>
+ * <br/>
+ * A layout can be read from a dot file written by DotExportFormatter, which
+ * only uses the label and shape attributes.
+ */
+public class LayeredGraphLayout {
+    /** The estimated width of a character of a label. */
+    public static final double charWidth = 7;
+
+    /** The height of a line of a label. */
+    public static final double lineHeight = 14;
+
+    /** The horizontal space between nodes in a layer. */
+    static final double nodeSep = 30;
+
+    /** The vertical space between layers. */
+    static final double layerSep = 50;
+
+    /** The space around the drawing. */
+    static final double margin = 10;
+
+    /** The number of (down and up) barycenter sweeps. */
+    static final int numOrderingSweeps = 4;
+
+    /** The length of an arrowhead. */
+    static final double arrowLength = 9;
+
+    /** The width of the dummy nodes of edges that span several layers. */
+    static final double dummyWidth = 10;
+
+    /**
+     * A node, with its label and shape ("ellipse", "box", or "diamond"). The
+     * coordinates are of its center.
+     */
+    public static class Node {
+        public final String label;
+        public final String shape;
+        public double x;
+        public double y;
+        public double width;
+        public double height;
+        int layer = 0;
+        int position = 0;
+        boolean hasSelfLoop = false;
+
+        /** Whether this is a dummy node of an edge, which is not drawn. */
+        boolean dummy = false;
+
+        Node(String label, String shape) {
+            this.label = label;
+            this.shape = shape;
+            List<String> lines = getLabelLines(label);
+            int maxLength = 0;
+            for (String line : lines) {
+                maxLength = Math.max(maxLength, line.length());
+            }
+            width = Math.max(54, maxLength * charWidth + 2 * charWidth);
+            height = Math.max(36, lines.size() * lineHeight + lineHeight);
+            if (shape.equals("diamond")) {
+                width *= 1.5;
+                height *= 1.5;
+            }
+        }
+
+        /**
+         * Returns the point at which the ray from the center of the node in
+         * direction (dx, dy) leaves the node's shape.
+         */
+        double[] getBoundaryPoint(double dx, double dy) {
+            double a = width / 2;
+            double b = height / 2;
+            double t;
+            if (dx == 0 && dy == 0) {
+                return new double[] { x, y };
+            } else if (shape.equals("box")) {
+                t = Math.min(dx == 0 ? Double.MAX_VALUE : a / Math.abs(dx),
+                        dy == 0 ? Double.MAX_VALUE : b / Math.abs(dy));
+            } else if (shape.equals("diamond")) {
+                t = 1 / (Math.abs(dx) / a + Math.abs(dy) / b);
+            } else {
+                t = 1 / Math.sqrt((dx / a) * (dx / a) + (dy / b) * (dy / b));
+            }
+            return new double[] { x + t * dx, y + t * dy };
+        }
+    }
+
+    /**
+     * An edge, with its label (or null). The path of the edge is a sequence of
+     * cubic curves: it holds the start point, followed by the two control
+     * points and the end point of each curve. The arrowhead holds the three
+     * corners of the arrowhead at the end of the path.
+     */
+    public static class Edge {
+        public final Node source;
+        public final Node target;
+        public final String label;
+        public double[] path;
+        public final double[] arrowhead = new double[6];
+        public double labelX;
+        public double labelY;
+
+        /** Whether the edge points up, against the layering. */
+        boolean reversed = false;
+
+        /**
+         * The nodes that the edge passes through, from its upper to its lower
+         * end, including any dummy nodes.
+         */
+        final List<Node> chain = new ArrayList<Node>();
+
+        Edge(Node source, Node target, String label) {
+            this.source = source;
+            this.target = target;
+            this.label = label;
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+    private final List<Edge> edges = new ArrayList<Edge>();
+    private final List<List<Node>> layers = new ArrayList<List<Node>>();
+    private double width = 0;
+    private double height = 0;
+    private boolean laidOut = false;
+
+    /**
+     * Adds a node with the given id. Shape is one of "ellipse", "box", and
+     * "diamond"; any other shape is drawn as an ellipse.
+     */
+    public void addNode(String id, String label, String shape) {
+        if (!shape.equals("box") && !shape.equals("diamond")) {
+            shape = "ellipse";
+        }
+        nodes.put(id, new Node(label, shape));
+        laidOut = false;
+    }
+
+    /**
+     * Adds an edge between the nodes with the given ids, which are added (with
+     * their id as label) if they do not exist. The label may be null.
+     */
+    public void addEdge(String sourceId, String targetId, String label) {
+        for (String id : new String[] { sourceId, targetId }) {
+            if (!nodes.containsKey(id)) {
+                addNode(id, id, "ellipse");
+            }
+        }
+        edges.add(new Edge(nodes.get(sourceId), nodes.get(targetId), label));
+        laidOut = false;
+    }
+
+    public List<Node> getNodes() {
+        layout();
+        return new ArrayList<Node>(nodes.values());
+    }
+
+    public List<Edge> getEdges() {
+        layout();
+        return Collections.unmodifiableList(edges);
+    }
+
+    /** Returns the width of the drawing. */
+    public double getWidth() {
+        layout();
+        return width;
+    }
+
+    /** Returns the height of the drawing. */
+    public double getHeight() {
+        layout();
+        return height;
+    }
+
+    /** Returns the number of layers of the layout. */
+    public int getNumLayers() {
+        layout();
+        return layers.size();
+    }
+
+    /** Returns the layer of the node with the given id, counting from 0. */
+    public int getLayer(String id) {
+        layout();
+        return nodes.get(id).layer;
+    }
+
+    /**
+     * Splits a label into its lines.
+     */
+    public static List<String> getLabelLines(String label) {
+        List<String> lines = new ArrayList<String>();
+        for (String line : label.split("\n", -1)) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Layout
+
+    /**
+     * Lays out the graph, unless it has been laid out since it was modified.
+     */
+    private void layout() {
+        if (laidOut) {
+            return;
+        }
+        List<Node> order = reverseBackEdges();
+        assignLayers(order);
+        insertDummyNodes();
+        orderLayers();
+        assignCoordinates();
+        for (Edge e : edges) {
+            routeEdge(e);
+            // Widen the drawing to fit the label.
+            if (e.label != null) {
+                for (String line : getLabelLines(e.label)) {
+                    width = Math.max(width, e.labelX + line.length()
+                            * charWidth + margin);
+                }
+            }
+        }
+        laidOut = true;
+    }
+
+    /**
+     * Reverses the back edges of a depth-first search (started from the nodes
+     * in the order in which they were added), which makes the graph acyclic,
+     * not counting self-loops. Returns the nodes in a topological order of
+     * the acyclic graph.
+     */
+    private List<Node> reverseBackEdges() {
+        Map<Node, List<Edge>> outEdges = new HashMap<Node, List<Edge>>();
+        for (Node n : nodes.values()) {
+            outEdges.put(n, new ArrayList<Edge>());
+            n.hasSelfLoop = false;
+        }
+        for (Edge e : edges) {
+            e.reversed = false;
+            if (e.source == e.target) {
+                e.source.hasSelfLoop = true;
+            } else {
+                outEdges.get(e.source).add(e);
+            }
+        }
+
+        // An iterative DFS: the stack holds each node on the current path,
+        // along with the index of its next out-edge to visit.
+        List<Node> postOrder = new ArrayList<Node>();
+        Set<Node> visited = new HashSet<Node>();
+        Set<Node> onPath = new HashSet<Node>();
+        List<Node> stack = new ArrayList<Node>();
+        List<Integer> nextEdge = new ArrayList<Integer>();
+        for (Node root : nodes.values()) {
+            if (visited.contains(root)) {
+                continue;
+            }
+            visited.add(root);
+            onPath.add(root);
+            stack.add(root);
+            nextEdge.add(0);
+            while (!stack.isEmpty()) {
+                int top = stack.size() - 1;
+                Node n = stack.get(top);
+                int i = nextEdge.get(top);
+                List<Edge> out = outEdges.get(n);
+                if (i == out.size()) {
+                    stack.remove(top);
+                    nextEdge.remove(top);
+                    onPath.remove(n);
+                    postOrder.add(n);
+                    continue;
+                }
+                nextEdge.set(top, i + 1);
+                Edge e = out.get(i);
+                if (onPath.contains(e.target)) {
+                    e.reversed = true;
+                } else if (!visited.contains(e.target)) {
+                    visited.add(e.target);
+                    onPath.add(e.target);
+                    stack.add(e.target);
+                    nextEdge.add(0);
+                }
+            }
+        }
+        Collections.reverse(postOrder);
+        return postOrder;
+    }
+
+    /**
+     * Places each node in the layer after the deepest of its predecessors
+     * (with back edges reversed), processing the nodes in topological order.
+     */
+    private void assignLayers(List<Node> order) {
+        Map<Node, List<Node>> predecessors = new HashMap<Node, List<Node>>();
+        for (Node n : order) {
+            predecessors.put(n, new ArrayList<Node>());
+        }
+        for (Edge e : edges) {
+            if (e.source == e.target) {
+                continue;
+            }
+            if (e.reversed) {
+                predecessors.get(e.source).add(e.target);
+            } else {
+                predecessors.get(e.target).add(e.source);
+            }
+        }
+
+        layers.clear();
+        for (Node n : order) {
+            n.layer = 0;
+            for (Node pred : predecessors.get(n)) {
+                n.layer = Math.max(n.layer, pred.layer + 1);
+            }
+            while (layers.size() <= n.layer) {
+                layers.add(new ArrayList<Node>());
+            }
+            layers.get(n.layer).add(n);
+        }
+        for (List<Node> layer : layers) {
+            updatePositions(layer);
+        }
+    }
+
+    private static void updatePositions(List<Node> layer) {
+        for (int i = 0; i < layer.size(); i++) {
+            layer.get(i).position = i;
+        }
+    }
+
+    /**
+     * Sets the chain of each edge, adding a dummy node to each layer between
+     * the ends of an edge that spans several layers.
+     */
+    private void insertDummyNodes() {
+        for (Edge e : edges) {
+            e.chain.clear();
+            if (e.source == e.target) {
+                continue;
+            }
+            Node upper = e.reversed ? e.target : e.source;
+            Node lower = e.reversed ? e.source : e.target;
+            e.chain.add(upper);
+            for (int l = upper.layer + 1; l < lower.layer; l++) {
+                Node dummy = new Node("", "ellipse");
+                dummy.dummy = true;
+                dummy.width = dummyWidth;
+                dummy.height = 0;
+                dummy.layer = l;
+                dummy.position = layers.get(l).size();
+                layers.get(l).add(dummy);
+                e.chain.add(dummy);
+            }
+            e.chain.add(lower);
+        }
+    }
+
+    /**
+     * Orders the nodes in each layer by the barycenter heuristic, sweeping
+     * down (ordering by neighbors in the layer above) and then up (ordering
+     * by neighbors in the layer below).
+     */
+    private void orderLayers() {
+        Map<Node, List<Node>> neighbors = new HashMap<Node, List<Node>>();
+        for (List<Node> layer : layers) {
+            for (Node n : layer) {
+                neighbors.put(n, new ArrayList<Node>());
+            }
+        }
+        for (Edge e : edges) {
+            for (int i = 0; i + 1 < e.chain.size(); i++) {
+                neighbors.get(e.chain.get(i)).add(e.chain.get(i + 1));
+                neighbors.get(e.chain.get(i + 1)).add(e.chain.get(i));
+            }
+        }
+
+        for (int sweep = 0; sweep < numOrderingSweeps; sweep++) {
+            boolean down = sweep % 2 == 0;
+            if (down) {
+                for (int l = 1; l < layers.size(); l++) {
+                    orderByBarycenter(layers.get(l), l - 1, neighbors);
+                }
+            } else {
+                for (int l = layers.size() - 2; l >= 0; l--) {
+                    orderByBarycenter(layers.get(l), l + 1, neighbors);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts layer by the mean position of the neighbors of each node in the
+     * given adjacent layer. A node without such neighbors keeps its position.
+     * The sort is stable, so nodes with equal barycenters keep their order.
+     */
+    private static void orderByBarycenter(List<Node> layer, int adjacentLayer,
+            Map<Node, List<Node>> neighbors) {
+        final Map<Node, Double> barycenters = new HashMap<Node, Double>();
+        for (Node n : layer) {
+            double sum = 0;
+            int count = 0;
+            for (Node adj : neighbors.get(n)) {
+                if (adj.layer == adjacentLayer) {
+                    sum += adj.position;
+                    count++;
+                }
+            }
+            barycenters.put(n, count == 0 ? n.position : sum / count);
+        }
+        Collections.sort(layer, new Comparator<Node>() {
+            @Override
+            public int compare(Node a, Node b) {
+                return Double.compare(barycenters.get(a), barycenters.get(b));
+            }
+        });
+        updatePositions(layer);
+    }
+
+    /**
+     * Places the layers top to bottom, and the nodes of each layer left to
+     * right, centering each layer on the widest layer.
+     */
+    private void assignCoordinates() {
+        List<Double> layerWidths = new ArrayList<Double>();
+        double maxLayerWidth = 0;
+        for (List<Node> layer : layers) {
+            double layerWidth = 0;
+            for (Node n : layer) {
+                layerWidth += getExtent(n) + (layerWidth == 0 ? 0 : nodeSep);
+            }
+            layerWidths.add(layerWidth);
+            maxLayerWidth = Math.max(maxLayerWidth, layerWidth);
+        }
+
+        double top = margin;
+        for (int l = 0; l < layers.size(); l++) {
+            List<Node> layer = layers.get(l);
+            double layerHeight = 0;
+            for (Node n : layer) {
+                layerHeight = Math.max(layerHeight, n.height);
+            }
+            double left = margin + (maxLayerWidth - layerWidths.get(l)) / 2;
+            for (Node n : layer) {
+                n.x = left + n.width / 2;
+                n.y = top + layerHeight / 2;
+                left += getExtent(n) + nodeSep;
+            }
+            top += layerHeight + layerSep;
+        }
+        width = maxLayerWidth + 2 * margin;
+        height = layers.isEmpty() ? 2 * margin : top - layerSep + margin;
+    }
+
+    /**
+     * Returns the horizontal space taken by a node, including its self-loop.
+     */
+    private static double getExtent(Node n) {
+        return n.width + (n.hasSelfLoop ? n.height : 0);
+    }
+
+    /**
+     * Computes the path, arrowhead, and label position of an edge.
+     */
+    private static void routeEdge(Edge e) {
+        // The points of the path, as a start point followed by (control
+        // point, control point, end point) triples.
+        List<double[]> points = new ArrayList<double[]>();
+        Node s = e.source;
+        if (e.chain.isEmpty()) {
+            // A loop on the right side of the node.
+            double right = s.x + s.width / 2 * 0.7;
+            double[] start = { right, s.y - s.height / 2 * 0.7 };
+            double[] end = { right, s.y + s.height / 2 * 0.7 };
+            points.add(start);
+            points.add(new double[] { start[0] + s.height,
+                    start[1] - s.height / 2 });
+            points.add(new double[] { end[0] + s.height,
+                    end[1] + s.height / 2 });
+            points.add(end);
+        } else if (e.reversed && e.chain.size() == 2) {
+            // A curve through a point to the side of the straight line, so
+            // that the edge does not overlap with an edge in the other
+            // direction.
+            Node t = e.target;
+            double dx = t.x - s.x;
+            double dy = t.y - s.y;
+            double length = Math.sqrt(dx * dx + dy * dy);
+            double offset = Math.max(20, length / 4);
+            double[] mid = { (s.x + t.x) / 2 - dy / length * offset,
+                    (s.y + t.y) / 2 + dx / length * offset };
+            double[] start = s.getBoundaryPoint(mid[0] - s.x, mid[1] - s.y);
+            double[] end = t.getBoundaryPoint(mid[0] - t.x, mid[1] - t.y);
+            // The cubic curve equivalent to the quadratic curve through mid.
+            points.add(start);
+            points.add(new double[] { start[0] + 2.0 / 3 * (mid[0] - start[0]),
+                    start[1] + 2.0 / 3 * (mid[1] - start[1]) });
+            points.add(new double[] { end[0] + 2.0 / 3 * (mid[0] - end[0]),
+                    end[1] + 2.0 / 3 * (mid[1] - end[1]) });
+            points.add(end);
+        } else {
+            // Straight lines through the dummy nodes, from the source to the
+            // target.
+            List<Node> chain = new ArrayList<Node>(e.chain);
+            if (e.reversed) {
+                Collections.reverse(chain);
+            }
+            Node first = chain.get(0);
+            Node second = chain.get(1);
+            Node beforeLast = chain.get(chain.size() - 2);
+            Node last = chain.get(chain.size() - 1);
+            double[] prev = first.getBoundaryPoint(second.x - first.x,
+                    second.y - first.y);
+            points.add(prev);
+            for (int i = 1; i < chain.size(); i++) {
+                double[] next;
+                if (i == chain.size() - 1) {
+                    next = last.getBoundaryPoint(beforeLast.x - last.x,
+                            beforeLast.y - last.y);
+                } else {
+                    next = new double[] { chain.get(i).x, chain.get(i).y };
+                }
+                points.add(prev);
+                points.add(next);
+                points.add(next);
+                prev = next;
+            }
+        }
+        e.path = new double[2 * points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            e.path[2 * i] = points.get(i)[0];
+            e.path[2 * i + 1] = points.get(i)[1];
+        }
+
+        // The arrowhead points along the tangent at the end of the path.
+        double[] end = points.get(points.size() - 1);
+        double[] control = points.get(points.size() - 2);
+        double dx = end[0] - control[0];
+        double dy = end[1] - control[1];
+        if (dx == 0 && dy == 0) {
+            double[] start = points.get(points.size() - 4);
+            dx = end[0] - start[0];
+            dy = end[1] - start[1];
+        }
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) {
+            dx = 0;
+            dy = 1;
+            length = 1;
+        }
+        double ux = dx / length;
+        double uy = dy / length;
+        double baseX = end[0] - ux * arrowLength;
+        double baseY = end[1] - uy * arrowLength;
+        double halfWidth = arrowLength / 2.5;
+        double[] arrowhead = { end[0], end[1], baseX - uy * halfWidth,
+                baseY + ux * halfWidth, baseX + uy * halfWidth,
+                baseY - ux * halfWidth };
+        System.arraycopy(arrowhead, 0, e.arrowhead, 0, arrowhead.length);
+
+        // The label is next to the midpoint of the first curve, which lies
+        // between the layers of its ends.
+        double[] p = e.path;
+        e.labelX = (p[0] + 3 * p[2] + 3 * p[4] + p[6]) / 8 + 4;
+        e.labelY = (p[1] + 3 * p[3] + 3 * p[5] + p[7]) / 8;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Reading dot files
+
+    private static final Pattern nodePattern = Pattern
+            .compile("^\\s*(\\w+)\\s*\\[(.*)\\]\\s*;?\\s*$");
+    private static final Pattern edgePattern = Pattern
+            .compile("^\\s*(\\w+)\\s*->\\s*(\\w+)\\s*"
+                    + "(?:\\[(.*)\\])?\\s*;?\\s*$");
+
+    /**
+     * Reads a graph from a dot file in the format written by
+     * DotExportFormatter: one node or edge statement per line, with the
+     * label and shape attributes. Other lines are ignored.
+     */
+    public static LayeredGraphLayout readDotFile(String fileName)
+            throws IOException {
+        LayeredGraphLayout layout = new LayeredGraphLayout();
+        BufferedReader reader = new BufferedReader(new FileReader(fileName));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = edgePattern.matcher(line);
+                if (m.matches()) {
+                    Map<String, String> attrs = parseAttributes(m.group(3));
+                    layout.addEdge(m.group(1), m.group(2), attrs.get("label"));
+                    continue;
+                }
+                m = nodePattern.matcher(line);
+                if (m.matches()) {
+                    Map<String, String> attrs = parseAttributes(m.group(2));
+                    String label = attrs.get("label");
+                    String shape = attrs.get("shape");
+                    layout.addNode(m.group(1), label == null ? m.group(1)
+                            : label, shape == null ? "ellipse" : shape);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return layout;
+    }
+
+    /**
+     * Parses a comma-separated list of key=value attributes, where a value is
+     * either a bare word or a quoted string with the escapes of
+     * GraphExportFormatter.quote().
+     */
+    static Map<String, String> parseAttributes(String attrs) {
+        Map<String, String> result = new HashMap<String, String>();
+        if (attrs == null) {
+            return result;
+        }
+        int i = 0;
+        int n = attrs.length();
+        while (i < n) {
+            int eq = attrs.indexOf('=', i);
+            if (eq < 0) {
+                break;
+            }
+            String key = attrs.substring(i, eq).trim();
+            i = eq + 1;
+            while (i < n && attrs.charAt(i) == ' ') {
+                i++;
+            }
+            StringBuilder value = new StringBuilder();
+            if (i < n && attrs.charAt(i) == '"') {
+                i++;
+                while (i < n && attrs.charAt(i) != '"') {
+                    char c = attrs.charAt(i);
+                    if (c == '\\' && i + 1 < n) {
+                        i++;
+                        c = attrs.charAt(i);
+                        value.append(c == 'n' ? '\n' : c);
+                    } else {
+                        value.append(c);
+                    }
+                    i++;
+                }
+                // Skip the closing quote.
+                i++;
+            } else {
+                while (i < n && attrs.charAt(i) != ',') {
+                    value.append(attrs.charAt(i));
+                    i++;
+                }
+                value = new StringBuilder(value.toString().trim());
+            }
+            result.put(key, value.toString());
+            // Skip the separating comma.
+            while (i < n
+                    && (attrs.charAt(i) == ',' || attrs.charAt(i) == ' ')) {
+                i++;
+            }
+        }
+        return result;
+    }
+}
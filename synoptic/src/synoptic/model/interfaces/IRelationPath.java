@@ -3,6 +3,7 @@ package synoptic.model.interfaces;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.invariants.miners.EventTypePairCounts;
 import synoptic.model.EventNode;
 import synoptic.model.event.EventType;
 
@@ -28,6 +29,17 @@ public interface IRelationPath {
      */
     public Map<EventType, Map<EventType, Integer>> getPrecedesCounts();
 
+    /**
+     * Adds the followed-by counts of this path (see getFollowedByCounts) to
+     * counts.
+     */
+    public void addFollowedByCounts(EventTypePairCounts counts);
+
+    /**
+     * Adds the precedes counts of this path (see getPrecedesCounts) to counts.
+     */
+    public void addPrecedesCounts(EventTypePairCounts counts);
+
     /**
      * Map<a, Set<b>> iff a gets interrupted by b.
      */
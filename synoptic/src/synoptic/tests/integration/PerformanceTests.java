@@ -1,7 +1,9 @@
 package synoptic.tests.integration;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -10,6 +12,12 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
@@ -61,6 +69,7 @@ public class PerformanceTests extends SynopticTest {
                 + traceType + "\n\ttotalEvents " + totalEvents
                 + "\n\tnumPartitions " + numPartitions + "\n\tnumEventTypes "
                 + numEventTypes + "\n\twithInvariants " + withInvariants
+                + "\n\tuseFSMChecker " + useFSMChecker
                 + "\n\t==> TIME: " + msTime + "ms (averaged over "
                 + numIterations + " iterations)\n");
     }
@@ -141,6 +150,44 @@ public class PerformanceTests extends SynopticTest {
         reportTime(delta);
     }
 
+    /**
+     * Times checking the AFby, AP, and NFby invariants of the initial partition
+     * graph, either all at once with the bitset checker (useFSMChecker), or one
+     * at a time with the tracing checker.
+     */
+    @Test
+    public void modelCheckerPerfTest() throws Exception {
+        long total_delta = 0;
+        for (int iter = 0; iter < numIterations; iter++) {
+            TraceParser parser = genParser();
+
+            String[] traces = partitionTrace(structure1Trace());
+            PartitionGraph g = genInitialPartitionGraph(traces, parser,
+                    new ChainWalkingTOInvMiner(), false);
+
+            List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+            for (ITemporalInvariant inv : g.getInvariants()) {
+                if (inv instanceof AlwaysFollowedInvariant
+                        || inv instanceof AlwaysPrecedesInvariant
+                        || inv instanceof NeverFollowedInvariant) {
+                    invs.add((BinaryInvariant) inv);
+                }
+            }
+
+            long startTime = System.currentTimeMillis();
+            if (useFSMChecker) {
+                FsmModelChecker.runBitSetChecker(invs, g);
+            } else {
+                for (BinaryInvariant inv : invs) {
+                    FsmModelChecker.getCounterExample(inv, g);
+                }
+            }
+            total_delta += System.currentTimeMillis() - startTime;
+        }
+        long delta = total_delta / numIterations;
+        reportTime(delta);
+    }
+
     public void trivialGkTailPerfTest() throws Exception {
         long total_delta = 0;
         System.out.print("Trivial GK Tail Test");
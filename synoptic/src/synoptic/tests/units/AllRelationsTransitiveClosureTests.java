@@ -4,14 +4,19 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.invariants.miners.AllRelationsTransitiveClosure;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
@@ -124,4 +129,70 @@ public class AllRelationsTransitiveClosureTests extends SynopticTest {
 
         assertTrue(r.equals(tcs.getRelations()));
     }
+
+    /**
+     * Tests that the bitset closures equal the map-based closures of a chain
+     * that alternates between relations.
+     */
+    @Test
+    public void bitSetClosureTest() {
+        a.addTransition(new Transition<EventNode>(a, b, "followed by"));
+        b.addTransition(new Transition<EventNode>(b, c, "pow"));
+        c.addTransition(new Transition<EventNode>(c, d, "followed by"));
+
+        g.add(a);
+        g.add(b);
+        g.add(c);
+        g.add(d);
+
+        g.tagInitial(a, "followed by");
+        g.tagTerminal(d, "followed by");
+
+        AbstractMain.getInstance().options.bitSetTransitiveClosure = true;
+        AllRelationsTransitiveClosure tcs = new AllRelationsTransitiveClosure(g);
+        assertTrue(tcs.get("followed by") instanceof BitSetTransitiveClosure);
+
+        TransitiveClosure tc = g.getTransitiveClosure("followed by");
+        assertTrue(tc.isEqual(tcs.get("followed by")));
+        assertTrue(tcs.get("followed by").isEqual(tc));
+
+        TransitiveClosure tc2 = g.getTransitiveClosure("pow");
+        assertTrue(tc2.isEqual(tcs.get("pow")));
+        assertTrue(tcs.get("pow").isEqual(tc2));
+
+        assertTrue(tcs.isReachable(a, b, "followed by"));
+        assertTrue(tcs.isReachable(c, d, "followed by"));
+        assertFalse(tcs.isReachable(a, d, "followed by"));
+        assertTrue(tcs.isReachable(b, c, "pow"));
+        assertFalse(tcs.isReachable(a, c, "pow"));
+    }
+
+    /**
+     * Tests that the bitset closure of a partially ordered log equals the
+     * map-based closure, and does not relate events of different traces.
+     */
+    @Test
+    public void bitSetClosurePOTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        String[] events = new String[] { "1,0 0 a", "2,0 0 b", "1,1 1 c",
+                "0,1 1 d", "--", "1,0 0 a", "0,1 1 b", "2,2 0 c" };
+        DAGsTraceGraph dag = genDAGsTraceGraph(events, parser);
+
+        String relation = dag.getRelations().iterator().next();
+        TransitiveClosure tc = dag.getTransitiveClosure(relation);
+        BitSetTransitiveClosure bitSetTC = new BitSetTransitiveClosure(dag,
+                Collections.singleton(relation));
+
+        assertTrue(tc.isEqual(bitSetTC));
+        assertTrue(bitSetTC.isEqual(tc));
+        for (EventNode m : dag.getNodes()) {
+            for (EventNode n : dag.getNodes()) {
+                if (m.getTraceID() != n.getTraceID()) {
+                    assertFalse(bitSetTC.isReachable(m, n));
+                }
+            }
+        }
+    }
 }
@@ -1,8 +1,13 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -10,6 +15,7 @@ import synoptic.algorithms.Bisimulation;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -134,6 +140,138 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Tests that incremental refinement, which re-checks only the invariants
+     * whose counter-examples pass through split partitions, produces a graph
+     * that satisfies all the invariants. With performExtraChecks enabled each
+     * incremental round is also cross-checked against a full recomputation of
+     * the counter-examples.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void incrementalRefinementTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "y", "x", "z", "d", "--",
+                "c", "x", "z", "y", "b", "--", "a", "x", "x", "y", "b" };
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.incrementalRefinement = true;
+        main.options.performExtraChecks = true;
+
+        PartitionGraph pGraph = genInitialPartitionGraph(traceStrArray,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        assertNull(pGraph.getInvariants().getAllCounterExamples(pGraph));
+    }
+
+    /**
+     * Tests that incremental coarsening, which merges k-equivalent partitions
+     * without restarting the search after each merge, produces a graph that
+     * satisfies all the invariants, and is as small as the graph produced by
+     * the restarting coarsening.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void incrementalCoarseningTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "y", "x", "z", "d", "--",
+                "c", "x", "z", "y", "b", "--", "a", "x", "x", "y", "b" };
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.performExtraChecks = true;
+
+        int[] numNodes = new int[2];
+        for (int i = 0; i < 2; i++) {
+            main.options.incrementalCoarsening = (i == 1);
+            PartitionGraph pGraph = genInitialPartitionGraph(traceStrArray,
+                    genDefParser(), new ChainWalkingTOInvMiner(), false);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            int numRefined = pGraph.getNodes().size();
+            Bisimulation.mergePartitions(pGraph);
+
+            assertNull(pGraph.getInvariants().getAllCounterExamples(pGraph));
+            assertTrue(pGraph.getNodes().size() <= numRefined);
+            numNodes[i] = pGraph.getNodes().size();
+        }
+        assertEquals(numNodes[0], numNodes[1]);
+    }
+
+    /**
+     * Tests that evaluating candidate splits in parallel, on overlays of the
+     * partition graph, produces a graph that satisfies all the invariants. With
+     * performExtraChecks enabled each split found on an overlay is also
+     * re-evaluated on the graph itself.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelSplitEvaluationTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "y", "x", "z", "d", "--",
+                "c", "x", "z", "y", "b", "--", "a", "x", "x", "y", "b" };
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.splitEvaluationThreads = 4;
+        main.options.performExtraChecks = true;
+
+        PartitionGraph pGraph = genInitialPartitionGraph(traceStrArray,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        assertNull(pGraph.getInvariants().getAllCounterExamples(pGraph));
+    }
+
+    /**
+     * Tests that refinement with several split evaluation threads produces the
+     * same model as refinement with a single thread.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelSplitEvaluationSameModelTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "y", "x", "z", "d", "--",
+                "c", "x", "z", "y", "b", "--", "a", "x", "x", "y", "b", "--",
+                "c", "y", "y", "z", "d", "--", "a", "z", "x", "b", "--", "c",
+                "z", "z", "y", "x", "d" };
+
+        for (long seed = 0; seed < 20; seed++) {
+            Set<Set<String>> sequential = refineWithThreads(traceStrArray,
+                    1, seed);
+            Set<Set<String>> parallel = refineWithThreads(traceStrArray, 4,
+                    seed);
+            assertEquals(sequential, parallel);
+        }
+    }
+
+    /**
+     * Refines the initial partition graph of the trace with the passed number
+     * of split evaluation threads and the passed random seed, and returns the
+     * partitions of the refined graph as sets of event positions.
+     */
+    private Set<Set<String>> refineWithThreads(String[] traceStrArray,
+            int numThreads, long seed) throws Exception {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.splitEvaluationThreads = numThreads;
+        PartitionGraph pGraph = genInitialPartitionGraph(traceStrArray,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        main.random = new Random(seed);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        Set<Set<String>> partitions = new HashSet<Set<String>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<String> events = new HashSet<String>();
+            for (EventNode e : p.getEventNodes()) {
+                events.add(e.getTraceID() + ":" + e.getLineNum());
+            }
+            partitions.add(events);
+        }
+        return partitions;
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
@@ -17,6 +17,7 @@ import java.util.Set;
 import org.junit.Test;
 
 import synoptic.algorithms.TransitiveClosure;
+import synoptic.invariants.miners.EventTypePairCounts;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.model.ChainsTraceGraph;
@@ -24,6 +25,9 @@ import synoptic.model.EventNode;
 import synoptic.model.Relation;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.IRelationPath;
 import synoptic.tests.SynopticTest;
 import synoptic.util.resource.ITotalResource;
 
@@ -283,4 +287,54 @@ public class ChainsTraceGraphTests extends SynopticTest {
                     .equals(events.get(2)));
         }
     }
+
+    /**
+     * Tests the event, followed-by, precedes, and interrupted-by counts of the
+     * relation path of a trace.
+     */
+    @Test
+    public void relationPathCountsTest() throws Exception {
+        ChainsTraceGraph graph = genInitialLinearGraph(new String[] { "a",
+                "b", "a", "c", "a" });
+        Set<IRelationPath> paths = graph.getTraces().get(0)
+                .getSingleRelationPaths(Event.defTimeRelationStr);
+        assertEquals(1, paths.size());
+        IRelationPath path = paths.iterator().next();
+
+        StringEventType eA = new StringEventType("a");
+        StringEventType eB = new StringEventType("b");
+        StringEventType eC = new StringEventType("c");
+
+        assertEquals(3, path.getSeen().size());
+        assertEquals(3, (int) path.getEventCounts().get(eA));
+        assertEquals(1, (int) path.getEventCounts().get(eB));
+
+        // The number of a's before the last b, c, and a.
+        Map<EventType, Map<EventType, Integer>> followedBy = path
+                .getFollowedByCounts();
+        assertEquals(1, (int) followedBy.get(eA).get(eB));
+        assertEquals(2, (int) followedBy.get(eA).get(eC));
+        assertEquals(2, (int) followedBy.get(eA).get(eA));
+        assertFalse(followedBy.get(eC).containsKey(eB));
+
+        // The number of a's after the first b, c, and a.
+        Map<EventType, Map<EventType, Integer>> precedes = path
+                .getPrecedesCounts();
+        assertEquals(2, (int) precedes.get(eB).get(eA));
+        assertEquals(1, (int) precedes.get(eC).get(eA));
+        assertEquals(2, (int) precedes.get(eA).get(eA));
+
+        // The dense counts agree with the maps.
+        EventTypePairCounts counts = EventTypePairCounts.create(path
+                .getSeen());
+        path.addPrecedesCounts(counts);
+        assertEquals(2, counts.get(eA, eA));
+        assertEquals(2, counts.get(eB, eA));
+        assertEquals(0, counts.get(eC, eB));
+
+        // b and then c interrupt the a's, and nothing interrupts all of them.
+        assertTrue(path.getPossibleInterrupts().get(eA).isEmpty());
+        assertFalse(path.getPossibleInterrupts().containsKey(eB));
+    }
 }
+
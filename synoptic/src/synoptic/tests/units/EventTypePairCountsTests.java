@@ -0,0 +1,92 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import synoptic.invariants.miners.EventTypePairCounts;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.tests.SynopticTest;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Tests the dense and the map-backed EventTypePairCounts.
+ */
+public class EventTypePairCountsTests extends SynopticTest {
+    EventType a = new StringEventType("a");
+    EventType b = new StringEventType("b");
+    EventType c = new StringEventType("c");
+    List<EventType> eTypes = Arrays.asList(a, b, c);
+
+    /**
+     * Adds the same counts to counts, and checks the resulting counts.
+     */
+    private void checkCounts(EventTypePairCounts counts) {
+        for (EventType e1 : eTypes) {
+            for (EventType e2 : eTypes) {
+                assertEquals(0, counts.get(e1, e2));
+            }
+        }
+
+        Map<EventType, Map<EventType, Integer>> pathCounts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        Map<EventType, Integer> aValues = new LinkedHashMap<EventType, Integer>();
+        aValues.put(b, 2);
+        aValues.put(c, 1);
+        pathCounts.put(a, aValues);
+
+        counts.add(a, b, 1);
+        counts.add(c, a, 3);
+        counts.addAll(pathCounts);
+        counts.addAll(pathCounts);
+
+        assertEquals(5, counts.get(a, b));
+        assertEquals(2, counts.get(a, c));
+        assertEquals(3, counts.get(c, a));
+        assertEquals(0, counts.get(b, a));
+        assertEquals(0, counts.get(a, a));
+        // Types outside of the alphabet are never counted.
+        assertEquals(0, counts.get(a, new StringEventType("d")));
+    }
+
+    /**
+     * Tests the counts for an alphabet that is kept in a dense matrix.
+     */
+    @Test
+    public void denseCountsTest() {
+        checkCounts(EventTypePairCounts.create(eTypes));
+    }
+
+    /**
+     * Tests the counts for an alphabet that is too large for a dense matrix.
+     */
+    @Test
+    public void sparseCountsTest() {
+        checkCounts(EventTypePairCounts.create(eTypes, 2));
+    }
+
+    /**
+     * Tests counts that write through to a map.
+     */
+    @Test
+    public void wrappedCountsTest() {
+        Map<EventType, Map<EventType, Integer>> map = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+        EventTypePairCounts counts = EventTypePairCounts.wrap(map);
+        checkCounts(counts);
+        assertEquals(3, (int) map.get(c).get(a));
+    }
+
+    /**
+     * Dense counts cannot count types outside of their alphabet.
+     */
+    @Test(expected = InternalSynopticException.class)
+    public void denseCountsUnknownTypeTest() {
+        EventTypePairCounts counts = EventTypePairCounts.create(eTypes);
+        counts.add(a, new StringEventType("d"), 1);
+    }
+}
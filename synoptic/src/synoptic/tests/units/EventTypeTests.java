@@ -1,11 +1,13 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
 import synoptic.model.event.DistEventType;
+import synoptic.model.event.EventTypeRegistry;
 import synoptic.model.event.StringEventType;
 import synoptic.tests.SynopticTest;
 
@@ -175,4 +177,63 @@ public class EventTypeTests extends SynopticTest {
         assertTrue(e1.compareTo(e2) == 0);
         assertTrue(e2.compareTo(e1) == 0);
     }
+
+    /**
+     * Tests that equal event types share an id, that different event types
+     * have different ids, and that ids map back to the event types.
+     */
+    @Test
+    public void eventTypeIdsTest() {
+        StringEventType a1 = new StringEventType("a");
+        StringEventType a2 = new StringEventType("a");
+        StringEventType b = new StringEventType("b");
+        DistEventType aDist = new DistEventType("a", "0");
+        StringEventType init = StringEventType.newInitialStringEventType();
+
+        assertEquals(a1.getId(), a2.getId());
+        assertFalse(a1.getId() == b.getId());
+        assertFalse(a1.getId() == aDist.getId());
+        assertFalse(a1.getId() == init.getId());
+        assertEquals(init.getId(),
+                StringEventType.newInitialStringEventType().getId());
+
+        assertEquals(a1, EventTypeRegistry.getEventType(a2.getId()));
+        assertEquals(aDist, EventTypeRegistry.getEventType(aDist.getId()));
+        assertTrue(b.getId() < EventTypeRegistry.size());
+    }
+
+    /**
+     * Tests that an event type cannot be modified once it has an id.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void modifyInternedEventTypeTest() {
+        DistEventType e = new DistEventType("a", "0");
+        e.getId();
+        e.setProcessName("1");
+    }
+
+    /**
+     * Tests that the id of an event type is released once no equal event type
+     * is reachable, and that it is kept while one is. The collection of the
+     * released event type is simulated, since the JVM does not guarantee it.
+     */
+    @Test
+    public void eventTypeIdsReleasedTest() {
+        StringEventType kept = new StringEventType("kept-type");
+        int keptId = kept.getId();
+        int id = new StringEventType("released-type").getId();
+        assertEquals(new StringEventType("released-type"),
+                EventTypeRegistry.getEventType(id));
+
+        EventTypeRegistry.releaseForTesting(id);
+        assertTrue(EventTypeRegistry.getEventType(id) == null);
+
+        // An equal event type is interned anew.
+        StringEventType released = new StringEventType("released-type");
+        assertEquals(released,
+                EventTypeRegistry.getEventType(released.getId()));
+
+        assertEquals(kept, EventTypeRegistry.getEventType(keptId));
+        assertEquals(keptId, new StringEventType("kept-type").getId());
+    }
 }
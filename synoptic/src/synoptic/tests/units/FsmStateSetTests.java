@@ -1,22 +1,31 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.fsmcheck.AFbyInvFsms;
 import synoptic.invariants.fsmcheck.APInvFsms;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.fsmcheck.FsmStateSet;
 import synoptic.invariants.fsmcheck.NFbyInvFsms;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
@@ -469,4 +478,71 @@ public class FsmStateSetTests extends SynopticTest {
 
         // TODO: test multiple simultaneous AP machines
     }
+
+    /**
+     * Checks that copy() and copyFrom() produce independent state sets of the
+     * same type as the original.
+     */
+    @Test
+    public void copyTest() {
+        List<BinaryInvariant> invs = new LinkedList<BinaryInvariant>();
+        invs.add(new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr));
+
+        List<FsmStateSet<EventNode>> fs;
+        fs = new ArrayList<FsmStateSet<EventNode>>();
+        fs.add(new AFbyInvFsms<EventNode>(invs));
+        fs.add(new APInvFsms<EventNode>(invs));
+        fs.add(new NFbyInvFsms<EventNode>(invs));
+
+        for (FsmStateSet<EventNode> f1 : fs) {
+            f1.setInitial(msgZ);
+
+            FsmStateSet<EventNode> f2 = f1.copy();
+            assertEquals(f1.getClass(), f2.getClass());
+            assertTrue(f1.equals(f2));
+
+            // Transitioning the copy does not affect the original.
+            f2.transition(msgA);
+            assertTrue(!f1.equals(f2));
+
+            // copyFrom overwrites f2 with the states of f1.
+            f2.copyFrom(f1);
+            assertTrue(f1.equals(f2));
+            f2.transition(msgA);
+            assertTrue(!f1.equals(f2));
+        }
+    }
+
+    /**
+     * Checks that the bitset checker finds exactly those invariants for which
+     * the tracing checker finds a counter-example.
+     */
+    @Test
+    public void runBitSetCheckerTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "a", "c", "d", "--", "d", "a", "c" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        Set<BinaryInvariant> expected = new LinkedHashSet<BinaryInvariant>();
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            if (inv instanceof AlwaysFollowedInvariant
+                    || inv instanceof AlwaysPrecedesInvariant
+                    || inv instanceof NeverFollowedInvariant) {
+                BinaryInvariant bInv = (BinaryInvariant) inv;
+                invs.add(bInv);
+                if (FsmModelChecker.<Partition> getCounterExample(bInv,
+                        pGraph) != null) {
+                    expected.add(bInv);
+                }
+            }
+        }
+
+        List<BinaryInvariant> failed = FsmModelChecker.runBitSetChecker(invs,
+                pGraph);
+        assertTrue(!expected.isEmpty());
+        assertEquals(expected, new LinkedHashSet<BinaryInvariant>(failed));
+    }
 }
@@ -0,0 +1,75 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ConstrainedInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.JsonExporter;
+import synoptic.tests.PynopticTest;
+
+/**
+ * Tests for the JSON export of a partition graph.
+ */
+public class JsonExporterTests extends PynopticTest {
+
+    private static String readFile(String filename) throws IOException {
+        StringBuilder contents = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(filename));
+        try {
+            char[] buf = new char[4096];
+            for (int n = reader.read(buf); n != -1; n = reader.read(buf)) {
+                contents.append(buf, 0, n);
+            }
+        } finally {
+            reader.close();
+        }
+        return contents.toString();
+    }
+
+    /**
+     * Checks that the streaming export writes exactly the same JSON as the
+     * export that builds the JSON object in memory.
+     */
+    @Test
+    public void streamingExportTest() throws Exception {
+        String[] events = new String[] { "a 1", "b 3", "c 4", "--", "a 2",
+                "b 7", "c 8", "--", "a 0", "c 5", "b 6", "c 9" };
+        ChainsTraceGraph inputGraph = (ChainsTraceGraph) genChainsTraceGraph(
+                events, genITimeParser());
+        TemporalInvariantSet invs = new ChainWalkingTOInvMiner()
+                .computeInvariants(inputGraph, false, false);
+        invs = new ConstrainedInvMiner().computeInvariants(inputGraph, false,
+                invs);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invs);
+
+        new File(testOutputDir).mkdirs();
+        String baseFilename = testOutputDir + testName.getMethodName();
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.streamingJsonExport = false;
+        JsonExporter.exportJsonObject(baseFilename + "-map", pGraph);
+        main.options.streamingJsonExport = true;
+        JsonExporter.exportJsonObject(baseFilename + "-stream", pGraph);
+
+        String mapJson = readFile(baseFilename + "-map.json");
+        String streamJson = readFile(baseFilename + "-stream.json");
+        assertTrue(mapJson.contains("\"constraints\""));
+        assertNotNull(JSONValue.parse(streamJson));
+        assertEquals(mapJson, streamJson);
+    }
+}
@@ -10,12 +10,15 @@ import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.KTailSignatureCache;
 import synoptic.algorithms.KTails;
+import synoptic.algorithms.graphops.PartitionMultiMerge;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
@@ -91,6 +94,50 @@ public class KTailsTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 6);
     }
 
+    /**
+     * Tests that the signatures that a KTailSignatureCache retains after a
+     * merge are those that the merge did not change.
+     * 
+     * @throws ParseException
+     * @throws InternalSynopticException
+     */
+    @Test
+    public void signatureCacheMergeTest() throws InternalSynopticException,
+            ParseException {
+        int k = 2;
+        PartitionGraph pGraph = new PartitionGraph(makeSimpleGraph(), false,
+                null);
+        KTailSignatureCache cache = new KTailSignatureCache(k);
+        List<Partition> aPartitions = new ArrayList<Partition>();
+        for (Partition p : pGraph.getNodes()) {
+            cache.getSignature(p);
+            if (p.getEType().toString().equals("a")) {
+                aPartitions.add(p);
+            }
+        }
+        assertTrue(aPartitions.size() == 3);
+
+        PartitionMultiMerge merge = new PartitionMultiMerge(aPartitions.get(0),
+                new ArrayList<Partition>(aPartitions.subList(1, 3)));
+        pGraph.apply(merge);
+        cache.merged(merge);
+
+        // INITIAL reaches the merged partition, so its signature changed.
+        assertFalse(cache.isCached(pGraph.getDummyInitialNode()));
+        assertFalse(cache.isCached(aPartitions.get(0)));
+
+        int numCached = 0;
+        for (Partition p : pGraph.getNodes()) {
+            if (cache.isCached(p)) {
+                numCached++;
+            }
+            assertTrue(cache.getSignature(p).equals(
+                    new KTailSignatureCache(k).getSignature(p)));
+        }
+        // The b and TERMINAL partitions do not reach the merged partition.
+        assertTrue(numCached == 3);
+    }
+
     /**
      * Returns a simple trace graph with three short chains.
      * 
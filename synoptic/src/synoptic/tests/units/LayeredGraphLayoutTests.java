@@ -0,0 +1,140 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.StringWriter;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.GraphExporter;
+import synoptic.model.export.GraphImageWriter;
+import synoptic.model.export.LayeredGraphLayout;
+import synoptic.model.export.LayeredGraphLayout.Edge;
+import synoptic.model.export.LayeredGraphLayout.Node;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for rendering exported graphs without the dot command.
+ */
+public class LayeredGraphLayoutTests extends SynopticTest {
+
+    /**
+     * Checks that a cycle is broken by reversing its back edge, and that the
+     * nodes are layered along the remaining edges.
+     */
+    @Test
+    public void layeringTest() {
+        LayeredGraphLayout layout = new LayeredGraphLayout();
+        layout.addNode("0", "INITIAL", "box");
+        layout.addNode("1", "a", "ellipse");
+        layout.addNode("2", "b", "ellipse");
+        layout.addNode("3", "TERMINAL", "diamond");
+        layout.addEdge("0", "1", null);
+        layout.addEdge("1", "2", "P: 1.00");
+        layout.addEdge("2", "1", null);
+        layout.addEdge("2", "2", null);
+        layout.addEdge("0", "3", null);
+        layout.addEdge("2", "3", null);
+
+        assertEquals(4, layout.getNumLayers());
+        assertEquals(0, layout.getLayer("0"));
+        assertEquals(1, layout.getLayer("1"));
+        assertEquals(2, layout.getLayer("2"));
+        assertEquals(3, layout.getLayer("3"));
+
+        // All nodes are inside the drawing, and the layers do not overlap.
+        for (Node n : layout.getNodes()) {
+            assertTrue(n.x - n.width / 2 >= 0);
+            assertTrue(n.x + n.width / 2 <= layout.getWidth());
+            assertTrue(n.y - n.height / 2 >= 0);
+            assertTrue(n.y + n.height / 2 <= layout.getHeight());
+        }
+        for (Edge e : layout.getEdges()) {
+            if (e.source != e.target && e.target.y > e.source.y) {
+                // A downward edge ends at the top half of its target.
+                assertTrue(e.path[e.path.length - 1] <= e.target.y);
+            }
+        }
+    }
+
+    /**
+     * Checks that a dot file written by GraphExporter is read back with all
+     * of its nodes and edges, and can be written as SVG and PNG.
+     */
+    @Test
+    public void readDotFileTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "\"q\"" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+        new File(testOutputDir).mkdirs();
+        String dotFile = testOutputDir + testName.getMethodName() + ".dot";
+        GraphExporter.exportGraph(dotFile, pGraph, true, false);
+
+        LayeredGraphLayout layout = LayeredGraphLayout.readDotFile(dotFile);
+        assertEquals(pGraph.getNodes().size(), layout.getNodes().size());
+        int numTransitions = 0;
+        for (Partition p : pGraph.getNodes()) {
+            numTransitions += p.getAllTransitions().size();
+        }
+        assertEquals(numTransitions, layout.getEdges().size());
+
+        boolean quotedLabel = false;
+        for (Node n : layout.getNodes()) {
+            quotedLabel |= n.label.equals("\"q\"");
+        }
+        assertTrue(quotedLabel);
+
+        StringWriter svg = new StringWriter();
+        GraphImageWriter.writeSvg(layout, svg);
+        assertTrue(svg.toString().contains("&quot;q&quot;"));
+        assertTrue(svg.toString().trim().endsWith("</svg>"));
+
+        String pngFile = dotFile + ".png";
+        GraphImageWriter.writePngFile(layout, pngFile);
+        BufferedImage image = ImageIO.read(new File(pngFile));
+        assertEquals((int) Math.ceil(layout.getWidth()), image.getWidth());
+        assertEquals((int) Math.ceil(layout.getHeight()), image.getHeight());
+    }
+
+    /**
+     * Checks that waitForImageExports() waits for the png images that are
+     * generated in the background.
+     */
+    @Test
+    public void asyncImageExportTest() throws Exception {
+        String[] events = new String[] { "a", "b", "--", "a", "c" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.javaGraphRenderer = true;
+        main.options.asyncImageExport = true;
+
+        new File(testOutputDir).mkdirs();
+        File[] pngFiles = new File[3];
+        for (int i = 0; i < pngFiles.length; i++) {
+            String dotFile = testOutputDir + testName.getMethodName() + i
+                    + ".dot";
+            pngFiles[i] = new File(dotFile + ".png");
+            pngFiles[i].delete();
+            GraphExporter.exportGraph(dotFile, pGraph, false, false);
+            GraphExporter.generatePngFileFromDotFile(dotFile);
+        }
+        GraphExporter.waitForImageExports();
+        for (File pngFile : pngFiles) {
+            assertTrue(pngFile.exists());
+            assertTrue(ImageIO.read(pngFile).getWidth() > 0);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.main.parser.MappedLogReader;
+import synoptic.tests.SynopticTest;
+import synoptic.util.matching.NamedPattern;
+
+/**
+ * Tests for the MappedLogReader, and for NamedPattern.literalPrefix, which
+ * provides the line prefixes the reader filters on.
+ */
+public class MappedLogReaderTests extends SynopticTest {
+    private static final Charset utf8 = Charset.forName("UTF-8");
+
+    /**
+     * Writes contents to a file named after the current test, and returns the
+     * file.
+     */
+    private File writeLogFile(String contents) throws IOException {
+        File file = new File(testOutputDir + testName.getMethodName() + ".log");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(contents.getBytes(utf8));
+        out.close();
+        return file;
+    }
+
+    /**
+     * Reads all lines of file, each followed by its line number.
+     */
+    private List<String> readLines(File file, List<String> prefixes,
+            int windowSize) throws IOException {
+        MappedLogReader reader = new MappedLogReader(file, utf8, prefixes,
+                windowSize);
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line + "@" + reader.getLineNumber());
+        }
+        assertNull(reader.readLine());
+        reader.close();
+        return lines;
+    }
+
+    /**
+     * Checks that all line terminators that BufferedReader recognizes are
+     * handled, including empty lines and a missing final terminator, for
+     * window sizes that split lines and terminators across windows.
+     */
+    @Test
+    public void readLinesTest() throws IOException {
+        File file = writeLogFile("a\nbb\r\nccc\r\rd\u00e9\n\ne");
+        List<String> expected = Arrays.asList("a@1", "bb@2", "ccc@3", "@4",
+                "d\u00e9@5", "@6", "e@7");
+        for (int windowSize : new int[] { 1, 2, 3, 5, 1024 }) {
+            assertEquals(expected, readLines(file, null, windowSize));
+        }
+    }
+
+    /**
+     * Checks that an empty file has no lines.
+     */
+    @Test
+    public void readEmptyFileTest() throws IOException {
+        File file = writeLogFile("");
+        assertTrue(readLines(file, null, 1024).isEmpty());
+    }
+
+    /**
+     * Checks that lines without one of the prefixes are skipped, but still
+     * counted in the line numbers.
+     */
+    @Test
+    public void skipLinesTest() throws IOException {
+        File file = writeLogFile("send x\nnoise\nrecv y\r\n\nse\nsend\n");
+        List<String> prefixes = Arrays.asList("send", "recv");
+        List<String> expected = Arrays.asList("send x@1", "recv y@3", "send@6");
+        for (int windowSize : new int[] { 1, 4, 1024 }) {
+            assertEquals(expected, readLines(file, prefixes, windowSize));
+        }
+    }
+
+    /**
+     * Checks the literal prefixes of several regular expressions.
+     */
+    @Test
+    public void literalPrefixTest() throws Exception {
+        assertEquals("send ",
+                NamedPattern.compile("send (?<TYPE>.*)").literalPrefix());
+        assertEquals("ab", NamedPattern.compile("^ab\\d+").literalPrefix());
+        assertEquals("a.", NamedPattern.compile("a\\.b?").literalPrefix());
+        assertEquals("ab", NamedPattern.compile("ab+c").literalPrefix());
+        assertEquals("", NamedPattern.compile("(?<TYPE>.*)").literalPrefix());
+        assertEquals("", NamedPattern.compile("a|b").literalPrefix());
+        assertEquals("", NamedPattern.compile("(?i)abc").literalPrefix());
+        assertEquals("", NamedPattern.compile("a*b").literalPrefix());
+    }
+}
@@ -1,5 +1,6 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -21,6 +22,7 @@ import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -207,6 +209,48 @@ public class ModelCheckersTests extends SynopticTest {
         testCExamplePath(pGraph, inv, cExampleExists, expectedPath);
     }
 
+    /**
+     * Tests that the dense model checker finds the same counter-examples as the
+     * generic one, for all invariants mined from a log whose initial partition
+     * graph contains cycles.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void denseCheckerTest() throws Exception {
+        String[] events = new String[] { "x", "a", "b", "x", "a", "y", "w",
+                "--", "x", "a", "y", "w", "--", "y", "a", "x", "b", "--", "w",
+                "a", "b", "a" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new TransitiveClosureInvMiner(), false);
+
+        // Check against an invariant set with a violation of every invariant
+        // type.
+        TemporalInvariantSet invs = new TemporalInvariantSet(pGraph
+                .getInvariants().getSet());
+        invs.add(new AlwaysFollowedInvariant("a", "b",
+                Event.defTimeRelationStr));
+        invs.add(new NeverFollowedInvariant("x", "x",
+                Event.defTimeRelationStr));
+        invs.add(new AlwaysPrecedesInvariant("y", "w",
+                Event.defTimeRelationStr));
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.denseModelChecking = false;
+        List<CExamplePath<Partition>> paths = invs
+                .getAllCounterExamples(pGraph);
+        main.options.denseModelChecking = true;
+        List<CExamplePath<Partition>> densePaths = invs
+                .getAllCounterExamples(pGraph);
+
+        assertTrue(paths.size() >= 3);
+        assertEquals(paths.size(), densePaths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            assertEquals(paths.get(i).invariant, densePaths.get(i).invariant);
+            assertEquals(paths.get(i).path, densePaths.get(i).path);
+        }
+    }
+
     // //////////////////////////// AFby:
 
     /**
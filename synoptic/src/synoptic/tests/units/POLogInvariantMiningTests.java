@@ -22,6 +22,7 @@ import synoptic.invariants.concurrency.NeverConcurrentInvariant;
 import synoptic.invariants.miners.DAGWalkingPOInvMiner;
 import synoptic.invariants.miners.IPOInvariantMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.DAGsTraceGraph;
@@ -500,6 +501,36 @@ public class POLogInvariantMiningTests extends SynopticTest {
         }
     }
 
+    /**
+     * Tests that the transitive closure miner mines the same invariants from
+     * per-trace closures, on one or several threads, as from a closure of the
+     * entire graph.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void shardedTransitiveClosureTest() throws Exception {
+        TraceParser parser = newTraceParser();
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                ticketReservationTrace, "ticket-reservation-example", -1);
+        DAGsTraceGraph inputGraph = parser
+                .generateDirectPORelation(parsedEvents);
+        TransitiveClosureInvMiner tcMiner = new TransitiveClosureInvMiner();
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.shardedTransitiveClosure = false;
+        TemporalInvariantSet globalInvs = tcMiner.computeInvariants(inputGraph);
+
+        main.options.shardedTransitiveClosure = true;
+        main.options.miningThreads = 1;
+        TemporalInvariantSet traceInvs = tcMiner.computeInvariants(inputGraph);
+        assertTrue(globalInvs.sameInvariants(traceInvs));
+
+        main.options.miningThreads = 3;
+        traceInvs = tcMiner.computeInvariants(inputGraph);
+        assertTrue(globalInvs.sameInvariants(traceInvs));
+    }
+
     /**
      * Tests a randomly generated trace.
      * 
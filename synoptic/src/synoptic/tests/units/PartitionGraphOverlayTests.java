@@ -0,0 +1,108 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.graphops.PartitionMultiSplit;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.PartitionGraphOverlay;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.IGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that a PartitionGraphOverlay presents the same graph as applying its
+ * split to the underlying PartitionGraph, without modifying that graph.
+ */
+public class PartitionGraphOverlayTests extends SynopticTest {
+
+    /**
+     * Returns the graph g as a map from the events of each node to the events
+     * of its adjacent nodes. The events of a node are given by nodeEvents, or
+     * by the node itself if it is not in nodeEvents.
+     */
+    private static Map<Set<EventNode>, Set<Set<EventNode>>> getEventGraph(
+            IGraph<Partition> g, Map<Partition, Set<EventNode>> nodeEvents) {
+        Map<Set<EventNode>, Set<Set<EventNode>>> eventGraph = new LinkedHashMap<Set<EventNode>, Set<Set<EventNode>>>();
+        for (Partition p : g.getNodes()) {
+            Set<Set<EventNode>> adjacent = new LinkedHashSet<Set<EventNode>>();
+            for (Partition adj : g.getAdjacentNodes(p)) {
+                adjacent.add(getEvents(adj, nodeEvents));
+            }
+            eventGraph.put(getEvents(p, nodeEvents), adjacent);
+        }
+        return eventGraph;
+    }
+
+    private static Set<EventNode> getEvents(Partition p,
+            Map<Partition, Set<EventNode>> nodeEvents) {
+        if (nodeEvents.containsKey(p)) {
+            return nodeEvents.get(p);
+        }
+        return new LinkedHashSet<EventNode>(p.getEventNodes());
+    }
+
+    private static Partition getNodeByName(PartitionGraph g, EventType eType) {
+        for (Partition p : g.getNodes()) {
+            if (p.getEType().equals(eType)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the overlay of a split has the nodes and transitions of the
+     * graph after the split is applied.
+     */
+    @Test
+    public void overlayMatchesAppliedSplitTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "--", "b", "x",
+                "z", "--", "a", "x", "z", "--", "b", "y" };
+        PartitionGraph pGraph = genInitialPartitionGraph(traceStrArray,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        int numNodes = pGraph.getNodes().size();
+
+        Partition xPartition = getNodeByName(pGraph, new StringEventType("x"));
+        assertEquals(3, xPartition.size());
+        PartitionSplit split = new PartitionSplit(xPartition);
+        split.addEventToSplit(xPartition.getEventNodes().iterator().next());
+        PartitionMultiSplit splitOp = new PartitionMultiSplit(split);
+
+        PartitionGraphOverlay overlay = new PartitionGraphOverlay(pGraph,
+                splitOp);
+        assertEquals(numNodes + 1, overlay.getNodes().size());
+        assertEquals(1, overlay.getNewPartitions().size());
+
+        // In the overlay, the split partition only retains the events that
+        // are not split away.
+        Map<Partition, Set<EventNode>> nodeEvents = new LinkedHashMap<Partition, Set<EventNode>>();
+        nodeEvents.put(xPartition, new LinkedHashSet<EventNode>(splitOp
+                .getPartitioning().get(0)));
+        Map<Set<EventNode>, Set<Set<EventNode>>> overlayGraph = getEventGraph(
+                overlay, nodeEvents);
+
+        // Creating and navigating the overlay does not modify the graph.
+        assertEquals(numNodes, pGraph.getNodes().size());
+        assertEquals(3, xPartition.size());
+        for (EventNode e : xPartition.getEventNodes()) {
+            assertTrue(e.getParent() == xPartition);
+        }
+
+        pGraph.apply(splitOp);
+        assertEquals(getEventGraph(pGraph,
+                new LinkedHashMap<Partition, Set<EventNode>>()), overlayGraph);
+    }
+}
@@ -1,10 +1,13 @@
 package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -12,6 +15,7 @@ import java.util.Set;
 import org.junit.Test;
 
 import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
@@ -25,6 +29,7 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -91,6 +96,120 @@ public class PartitionGraphTests extends SynopticTest {
 
     // TODO: Test the multi-split operation.
 
+    /**
+     * Checks that the cached successors and transitions of every partition in
+     * pGraph agree with the events the partitions contain.
+     */
+    private static void checkTransitionCaches(PartitionGraph pGraph) {
+        for (Partition p : pGraph.getNodes()) {
+            Set<Partition> successors = new HashSet<Partition>();
+            for (EventNode e : p.getEventNodes()) {
+                for (EventNode eSucc : e.getAllSuccessors()) {
+                    successors.add(eSucc.getParent());
+                }
+            }
+            assertEquals(successors, p.getAllSuccessors());
+
+            Set<Partition> targets = new HashSet<Partition>();
+            for (ITransition<Partition> t : p.getAllTransitions()) {
+                assertTrue(t.getSource() == p);
+                targets.add(t.getTarget());
+            }
+            assertEquals(successors, targets);
+        }
+    }
+
+    /**
+     * Checks that the cached transitions of partitions are invalidated by
+     * splits and merges, including those of the partitions with transitions
+     * into the split or merged partitions.
+     */
+    @Test
+    public void transitionCacheInvalidationTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "b", "d",
+                "--", "c", "b", "d" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        checkTransitionCaches(pGraph);
+
+        Partition bPartition = getNodeByName(pGraph, new StringEventType("b"));
+        Partition aPartition = getNodeByName(pGraph, new StringEventType("a"));
+        assertEquals(1, aPartition.getAllSuccessors().size());
+
+        // Split away the b that follows the second a.
+        PartitionSplit split = new PartitionSplit(bPartition);
+        Iterator<EventNode> bEvents = bPartition.getEventNodes().iterator();
+        bEvents.next();
+        split.addEventToSplit(bEvents.next());
+        IOperation rewind = pGraph.apply(split);
+        checkTransitionCaches(pGraph);
+        assertEquals(2, aPartition.getAllSuccessors().size());
+
+        // Merging the split partitions restores the original transitions.
+        pGraph.apply(rewind);
+        checkTransitionCaches(pGraph);
+        assertEquals(1, aPartition.getAllSuccessors().size());
+
+        // Split again, with a multi split.
+        PartitionMultiSplit multiSplit = new PartitionMultiSplit(split);
+        pGraph.apply(multiSplit);
+        checkTransitionCaches(pGraph);
+        assertEquals(2, aPartition.getAllSuccessors().size());
+    }
+
+    /**
+     * Checks that the weighted transitions of a partition are copies, so that
+     * their probabilities and counts are not set on the cached transitions.
+     */
+    @Test
+    public void weightedTransitionsAreCopiesTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "b", "d",
+                "--", "c", "b", "d" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        Partition bPartition = getNodeByName(pGraph, new StringEventType("b"));
+
+        List<? extends ITransition<Partition>> weighted = bPartition
+                .getWeightedTransitions();
+        assertEquals(2, weighted.size());
+        for (ITransition<Partition> t : weighted) {
+            int expected = t.getTarget().getEType()
+                    .equals(new StringEventType("d")) ? 2 : 1;
+            assertEquals(Integer.valueOf(expected), t.getCount());
+            t.setCount(42);
+        }
+
+        for (ITransition<Partition> t : bPartition.getAllTransitions()) {
+            assertNull(t.getCount());
+            assertNull(t.getProbability());
+        }
+        for (ITransition<Partition> t : bPartition.getWeightedTransitions()) {
+            assertTrue(t.getCount() != 42);
+        }
+    }
+
+    /**
+     * Checks that cacheAllAdjacentNodes caches the adjacent nodes of all
+     * partitions, and that a split invalidates some of them.
+     */
+    @Test
+    public void cacheAllAdjacentNodesTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "b", "d" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        assertFalse(pGraph.allAdjacentNodesCached());
+        pGraph.cacheAllAdjacentNodes();
+        assertTrue(pGraph.allAdjacentNodesCached());
+
+        Partition bPartition = getNodeByName(pGraph, new StringEventType("b"));
+        PartitionSplit split = new PartitionSplit(bPartition);
+        Iterator<EventNode> bEvents = bPartition.getEventNodes().iterator();
+        bEvents.next();
+        split.addEventToSplit(bEvents.next());
+        pGraph.apply(split);
+        assertFalse(pGraph.allAdjacentNodesCached());
+    }
+
     // TODO: Test merge operation as a primary operation (not as a rewind).
 
     private <T extends INode<T>> T getNodeByName(IGraph<T> g, EventType nodeName) {
@@ -250,4 +369,59 @@ public class PartitionGraphTests extends SynopticTest {
         assertEquals("There should be exactly one trace",
                 paths.keySet().size(), 1);
     }
+
+    /**
+     * Returns all traces of pGraph by exhaustive recursion: after a partition
+     * is repeated, a trace must continue to a partition that it has not yet
+     * visited.
+     */
+    private static void addAllTraces(PartitionGraph pGraph, Partition pNode,
+            Set<List<Partition>> allTraces, List<Partition> prefixTrace) {
+        boolean isCyclic = prefixTrace.contains(pNode);
+        prefixTrace.add(pNode);
+        if (pNode.isTerminal()) {
+            allTraces.add(new ArrayList<Partition>(prefixTrace));
+        } else {
+            for (Partition adjPNode : pGraph.getAdjacentNodes(pNode)) {
+                if (!isCyclic || !prefixTrace.contains(adjPNode)) {
+                    addAllTraces(pGraph, adjPNode, allTraces, prefixTrace);
+                }
+            }
+        }
+        prefixTrace.remove(prefixTrace.size() - 1);
+    }
+
+    /**
+     * Checks that the lazy enumeration of the traces of a graph, with and
+     * without cycles, yields each trace of the graph exactly once, and that
+     * the traces are counted correctly before enumerating them.
+     */
+    @Test
+    public void enumerateAllTracesTest() throws Exception {
+        String[][] logs = new String[][] {
+                { "a", "b", "c", "--", "a", "c", "--", "b", "c" },
+                { "a", "b", "a", "b", "c", "--", "a", "c", "a", "--", "b",
+                        "a", "c", "d", "b" } };
+        for (String[] log : logs) {
+            PartitionGraph pGraph = genInitialPartitionGraph(log,
+                    genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+            Set<List<Partition>> expected = new HashSet<List<Partition>>();
+            addAllTraces(pGraph, pGraph.getDummyInitialNode(), expected,
+                    new ArrayList<Partition>());
+            assertTrue(expected.size() > 1);
+
+            List<List<Partition>> traces = new ArrayList<List<Partition>>();
+            for (List<Partition> trace : pGraph.enumerateAllTraces()) {
+                traces.add(trace);
+            }
+            assertEquals(expected.size(), traces.size());
+            assertEquals(expected, new HashSet<List<Partition>>(traces));
+            assertEquals(expected, pGraph.getAllTraces());
+
+            assertEquals(expected.size(), pGraph.enumerateAllTraces()
+                    .countTraces(Long.MAX_VALUE));
+            assertEquals(1, pGraph.enumerateAllTraces().countTraces(1));
+        }
+    }
 }
@@ -2,14 +2,20 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import synoptic.tests.SynopticTest;
+import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.DTotalResource;
 import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
 import synoptic.util.resource.ResourceSeries;
 import synoptic.util.resource.WrongResourceTypeException;
 
@@ -254,4 +260,59 @@ public class ResourceSeriesTests extends SynopticTest {
 
         assertEquals(new ITotalResource(5, "key"), resources.computeMax());
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks that a columnar series of values has the same statistics as a
+     * series that keeps the values in a list.
+     */
+    private static void checkColumnarSeries(AbstractResource[] values) {
+        ResourceSeries<AbstractResource> list = new ResourceSeries<AbstractResource>(
+                "key");
+        ResourceSeries<AbstractResource> columnar = new ResourceSeries<AbstractResource>(
+                "key", true);
+        for (AbstractResource r : values) {
+            list.addDelta(r);
+            columnar.addDelta(r);
+        }
+
+        assertEquals(list.computeMode(), columnar.computeMode());
+        assertEquals(list.computeMin(), columnar.computeMin());
+        assertEquals(list.computeMax(), columnar.computeMax());
+        assertEquals(list.computeMean(), columnar.computeMean());
+        assertEquals(list.computeMed(), columnar.computeMed());
+        assertEquals(list.computeMedian(), columnar.computeMedian());
+        assertEquals(list.getAllDeltas(), columnar.getAllDeltas());
+        assertEquals(0, list.compareTo(columnar));
+        assertEquals(0, columnar.compareTo(list));
+    }
+
+    @Test
+    public void columnarSeriesTest() {
+        Random random = new Random(0);
+        int n = 64;
+        AbstractResource[] ints = new AbstractResource[n];
+        AbstractResource[] longs = new AbstractResource[n];
+        AbstractResource[] doubles = new AbstractResource[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = new ITotalResource(random.nextInt(20) - 5, "key");
+            longs[i] = new LTotalResource(random.nextInt(20) * 10000000000L,
+                    "key");
+            doubles[i] = new DTotalResource(random.nextInt(2000) / 100 + "."
+                    + random.nextInt(100), "key");
+        }
+        checkColumnarSeries(ints);
+        checkColumnarSeries(longs);
+        checkColumnarSeries(doubles);
+
+        // A resource of a different type moves the column to a list.
+        ResourceSeries<AbstractResource> columnar = new ResourceSeries<AbstractResource>(
+                "key", true);
+        for (AbstractResource r : ints) {
+            columnar.addDelta(r);
+        }
+        columnar.addDelta(longs[0]);
+        AbstractResource[] mixed = Arrays.copyOf(ints, n + 1);
+        mixed[n] = longs[0];
+        assertEquals(Arrays.asList(mixed), columnar.getAllDeltas());
+    }
+}
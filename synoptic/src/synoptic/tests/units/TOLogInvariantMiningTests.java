@@ -467,4 +467,27 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         }
         assertTrue(cExamples == null);
     }
+
+    /**
+     * Tests that mining invariants from shards of the traces on multiple
+     * threads mines the same invariants as mining them on a single thread.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelMiningTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        String[] log = genRandomLog(eventTypes);
+        ChainsTraceGraph inputGraph = genInitialLinearGraph(log);
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.miningThreads = 1;
+        TemporalInvariantSet seqInvs = miner.computeInvariants(inputGraph,
+                false, false);
+        main.options.miningThreads = 3;
+        TemporalInvariantSet parInvs = miner.computeInvariants(inputGraph,
+                false, false);
+
+        assertTrue(seqInvs.sameInvariants(parInvs));
+    }
 }
@@ -1,13 +1,21 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.List;
+
 import org.junit.Test;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.CExamplePath;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
 import synoptic.model.event.Event;
 import synoptic.tests.SynopticTest;
 
@@ -52,4 +60,35 @@ public class TemporalInvariantSetTests extends SynopticTest {
         assertFalse(s2.sameInvariants(s1));
     }
 
+    /**
+     * Tests that checking invariants on multiple threads finds the same
+     * counter-examples, in the same order, as checking them sequentially.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testParallelCounterExamples() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "a", "c", "d", "--", "d", "a", "c" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        TemporalInvariantSet invs = pGraph.getInvariants();
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.modelCheckingThreads = 1;
+        List<CExamplePath<Partition>> seqPaths = invs
+                .getAllCounterExamples(pGraph);
+
+        main.options.modelCheckingThreads = 4;
+        List<CExamplePath<Partition>> parPaths = invs
+                .getAllCounterExamples(pGraph);
+
+        assertTrue(seqPaths != null && seqPaths.size() > 1);
+        assertEquals(seqPaths.size(), parPaths.size());
+        for (int i = 0; i < seqPaths.size(); i++) {
+            assertEquals(seqPaths.get(i).invariant, parPaths.get(i).invariant);
+            assertEquals(seqPaths.get(i).path, parPaths.get(i).path);
+        }
+    }
+
 }
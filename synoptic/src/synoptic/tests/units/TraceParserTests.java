@@ -6,6 +6,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -1487,4 +1490,107 @@ public class TraceParserTests extends SynopticTest {
 
         AbstractOptions.inputDelta = false;
     }
+
+    /**
+     * Returns the event types along each of the traces in graph, as strings.
+     */
+    private static List<String> getTraceLabels(ChainsTraceGraph graph) {
+        List<String> traces = new ArrayList<String>();
+        for (EventNode node : graph.getDummyInitialNode().getAllSuccessors()) {
+            StringBuilder trace = new StringBuilder();
+            while (!node.isTerminal()) {
+                trace.append(node.getEType().toString() + " ");
+                node = node.getAllSuccessors().iterator().next();
+            }
+            traces.add(trace.toString());
+        }
+        return traces;
+    }
+
+    /**
+     * Writes each of the logs to a file in the test output directory, and
+     * returns the files.
+     */
+    private List<File> writeLogFiles(String[] logs) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < logs.length; i++) {
+            File file = new File(testOutputDir + testName.getMethodName() + i
+                    + ".txt");
+            FileWriter writer = new FileWriter(file);
+            writer.write(logs[i]);
+            writer.close();
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Checks that parsing files directly into a graph produces the same traces
+     * as parsing the files into a list of events and then generating the
+     * graph.
+     */
+    @Test
+    public void parseTraceFilesIntoGraphTest() throws ParseException,
+            IOException {
+        String[] logs = { "a\nb\n--\nb\nc\nc\n",
+                "c\n--\na\n--\nd\nb\n" };
+        List<File> files = writeLogFiles(logs);
+
+        List<EventNode> events = new ArrayList<EventNode>();
+        parser.setPartitionsMap(AbstractOptions.partitionRegExpDefault);
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        for (File file : files) {
+            events.addAll(parser.parseTraceFile(file, -1));
+        }
+        ChainsTraceGraph expected = parser.generateDirectTORelation(events);
+
+        parser = new TraceParser();
+        parser.setPartitionsMap(AbstractOptions.partitionRegExpDefault);
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        ChainsTraceGraph graph = new ChainsTraceGraph();
+        assertEquals(events.size(),
+                parser.parseTraceFilesIntoGraph(files, graph));
+
+        assertEquals(5, graph.getNumTraces());
+        assertEquals(expected.getNodes().size(), graph.getNodes().size());
+        assertEquals(getTraceLabels(expected), getTraceLabels(graph));
+    }
+
+    /**
+     * Checks that parsing files in parallel produces the same events, trace
+     * IDs, and traces as parsing the files one after another, including when
+     * partitions span several files.
+     */
+    @Test
+    public void parseTraceFilesInParallelTest() throws ParseException,
+            IOException {
+        String[] logs = { "p1 a\np2 b\np1 c\n", "p3 a\np1 d\np2 e\n",
+                "p4 f\np3 g\n" };
+        List<File> files = writeLogFiles(logs);
+
+        parser.addRegex("^(?<PART>\\w+) (?<TYPE>\\w+)$");
+        parser.setPartitionsMap("\\k<PART>");
+        List<EventNode> expected = new ArrayList<EventNode>();
+        for (File file : files) {
+            expected.addAll(parser.parseTraceFile(file, -1));
+        }
+        List<String> expectedTraces = getTraceLabels(parser
+                .generateDirectTORelation(expected));
+
+        parser = new TraceParser();
+        parser.addRegex("^(?<PART>\\w+) (?<TYPE>\\w+)$");
+        parser.setPartitionsMap("\\k<PART>");
+        List<EventNode> events = parser.parseTraceFilesInParallel(files, 3);
+
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(expected.get(i).getEType(), events.get(i).getEType());
+            assertEquals(expected.get(i).getTraceID(), events.get(i)
+                    .getTraceID());
+        }
+        assertEquals(expectedTraces,
+                getTraceLabels(parser.generateDirectTORelation(events)));
+    }
 }
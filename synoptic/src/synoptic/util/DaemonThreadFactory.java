@@ -0,0 +1,30 @@
+package synoptic.util;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates named daemon threads, which do not prevent the JVM from exiting.
+ * Used for the worker pools that check invariants and evaluate splits in
+ * parallel. Each such pool is created for a single check, and is shut down
+ * once the check ends.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+    private final String namePrefix;
+    private int numCreated = 0;
+
+    /**
+     * @param namePrefix
+     *            the prefix of the thread names, which is followed by the
+     *            index of the thread in the pool
+     */
+    public DaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, namePrefix + numCreated++);
+        t.setDaemon(true);
+        return t;
+    }
+}
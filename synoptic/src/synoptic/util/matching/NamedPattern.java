@@ -69,6 +69,49 @@ public class NamedPattern {
         return namedPattern;
     }
 
+    /**
+     * Returns a string that every input matched by this pattern must start
+     * with. The prefix consists of the literal characters at the start of the
+     * pattern, and is empty if the pattern does not start with a literal (or
+     * if the pattern contains an alternation, which is not analyzed).
+     */
+    public String literalPrefix() {
+        String p = pattern.pattern();
+        StringBuilder prefix = new StringBuilder();
+        if (pattern.flags() != 0 || p.indexOf('|') != -1) {
+            return "";
+        }
+
+        int i = p.startsWith("^") ? 1 : 0;
+        while (i < p.length()) {
+            char c = p.charAt(i);
+            int next = i + 1;
+            if (c == '\\') {
+                // Escaped punctuation is a literal, while an escaped letter or
+                // digit is a character class, back-reference, or quote.
+                if (next == p.length()
+                        || Character.isLetterOrDigit(p.charAt(next))) {
+                    break;
+                }
+                c = p.charAt(next);
+                next++;
+            } else if (".[]{}()*+?^$".indexOf(c) != -1) {
+                break;
+            }
+
+            // A quantifier that allows zero occurrences makes c optional.
+            if (next < p.length() && "?*{".indexOf(p.charAt(next)) != -1) {
+                break;
+            }
+            prefix.append(c);
+            if (next < p.length() && p.charAt(next) == '+') {
+                break;
+            }
+            i = next;
+        }
+        return prefix.toString();
+    }
+
     public List<String> groupNames() {
         return groupNames;
     }
@@ -34,6 +34,19 @@ public class NamedSubstitution {
         }
     }
 
+    /**
+     * Returns true if this substitution contains a back-reference to the group
+     * with the passed name.
+     */
+    public boolean references(String name) {
+        for (int i = 1; i < contents.size(); i += 2) {
+            if (contents.get(i).equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public String substitute(Map<String, String> smap) {
         StringBuilder result = new StringBuilder();
         for (int i = 1; i < contents.size(); i += 2) {
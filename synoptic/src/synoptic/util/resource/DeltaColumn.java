@@ -0,0 +1,199 @@
+package synoptic.util.resource;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores a series of totally ordered resources with a single key as a column
+ * of primitive values, instead of as resource objects: ITotalResource and
+ * LTotalResource values are kept as longs, and DTotalResource values as
+ * doubles. A resource is only created when it is returned. <br/>
+ * <br/>
+ * Arithmetic (see ResourceSeries) is done by the resources themselves, so the
+ * column behaves exactly like a list of the resources, except that
+ * DTotalResource values are held at double precision.
+ */
+class DeltaColumn {
+    /** The kinds of resources that a column can hold. */
+    enum Kind {
+        INT, LONG, DOUBLE
+    }
+
+    private final Kind kind;
+    private final String key;
+
+    /** The values of an INT or LONG column. */
+    private long[] longs;
+
+    /** The values of a DOUBLE column. */
+    private double[] doubles;
+
+    private int size = 0;
+
+    private DeltaColumn(Kind kind, String key) {
+        this.kind = kind;
+        this.key = key;
+        if (kind == Kind.DOUBLE) {
+            doubles = new double[4];
+        } else {
+            longs = new long[4];
+        }
+    }
+
+    /**
+     * Returns the kind of column that can hold r, or null if r cannot be held
+     * in a column.
+     */
+    static Kind kindOf(AbstractResource r) {
+        if (r instanceof ITotalResource) {
+            return Kind.INT;
+        }
+        if (r instanceof LTotalResource) {
+            return Kind.LONG;
+        }
+        if (r instanceof DTotalResource) {
+            return Kind.DOUBLE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns an empty column for resources like r, or null if r cannot be
+     * held in a column.
+     */
+    static DeltaColumn create(AbstractResource r) {
+        Kind kind = kindOf(r);
+        if (kind == null) {
+            return null;
+        }
+        return new DeltaColumn(kind, r.getKey());
+    }
+
+    /**
+     * Returns whether r can be added to this column.
+     */
+    boolean accepts(AbstractResource r) {
+        return kindOf(r) == kind && r.getKey().equals(key);
+    }
+
+    void add(AbstractResource r) {
+        assert accepts(r);
+        if (kind == Kind.DOUBLE) {
+            if (size == doubles.length) {
+                doubles = Arrays.copyOf(doubles, size * 2);
+            }
+            // Adding 0.0 turns -0.0 into 0.0, which BigDecimal does not
+            // distinguish.
+            doubles[size++] = ((DTotalResource) r).getValue() + 0.0;
+        } else {
+            if (size == longs.length) {
+                longs = Arrays.copyOf(longs, size * 2);
+            }
+            longs[size++] = kind == Kind.INT ? ((ITotalResource) r).value
+                    : ((LTotalResource) r).value;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value at index i, as a resource.
+     */
+    AbstractResource get(int i) {
+        assert i < size;
+        switch (kind) {
+        case INT:
+            return new ITotalResource((int) longs[i], key);
+        case LONG:
+            return new LTotalResource(longs[i], key);
+        default:
+            return new DTotalResource(BigDecimal.valueOf(doubles[i]), key);
+        }
+    }
+
+    /**
+     * Sorts the column in-place, in the order of the resources.
+     */
+    void sort() {
+        if (kind == Kind.DOUBLE) {
+            Arrays.sort(doubles, 0, size);
+        } else {
+            Arrays.sort(longs, 0, size);
+        }
+    }
+
+    /**
+     * Returns the index of the minimum (or maximum) value, or -1 if the column
+     * is empty. Of several equal values, returns the first.
+     */
+    int indexOfMinMax(boolean findMax) {
+        if (size == 0) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 1; i < size; i++) {
+            int cmp = kind == Kind.DOUBLE ? Double.compare(doubles[i],
+                    doubles[index]) : Long.compare(longs[i], longs[index]);
+            if (findMax ? cmp > 0 : cmp < 0) {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first value to reach the highest count of
+     * equal values, or -1 if the column is empty.
+     */
+    int indexOfMode() {
+        Map<Object, Integer> counts = new HashMap<Object, Integer>();
+        int index = -1;
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            Object value = kind == Kind.DOUBLE ? (Object) doubles[i]
+                    : (Object) longs[i];
+            Integer count = counts.get(value);
+            count = count == null ? 1 : count + 1;
+            if (count > max) {
+                index = i;
+                max = count;
+            }
+            counts.put(value, count);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the sum of the values, as a resource: the sum of INT values
+     * overflows like the sum of ITotalResources.
+     */
+    AbstractResource sum() {
+        switch (kind) {
+        case INT: {
+            int sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += (int) longs[i];
+            }
+            return new ITotalResource(sum, key);
+        }
+        case LONG: {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += longs[i];
+            }
+            return new LTotalResource(sum, key);
+        }
+        default: {
+            BigDecimal sum = BigDecimal.ZERO;
+            for (int i = 0; i < size; i++) {
+                sum = sum.add(BigDecimal.valueOf(doubles[i]));
+            }
+            return new DTotalResource(sum, key);
+        }
+        }
+    }
+}
@@ -9,7 +9,14 @@ import java.util.Map;
 
 /**
  * Encapsulates a list of resource instances of the same type as identified by
- * the key that extend AbstractResource.
+ * the key that extend AbstractResource. <br/>
+ * <br/>
+ * A columnar series keeps totally ordered resources (ITotalResource,
+ * LTotalResource, and DTotalResource) as a column of primitive values rather
+ * than as resource objects, which takes a fraction of the memory. Statistics
+ * are the same as for a list of the resources, except that DTotalResource
+ * values are held at double precision. Other resources, or resources of
+ * different types, are kept in a list.
  */
 public class ResourceSeries<ResourceType extends AbstractResource> implements
         Comparable<ResourceSeries<ResourceType>> {
@@ -17,16 +24,32 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
     boolean isSorted;
     private final String key;
 
+    /** Whether the resources should be kept in a column, if possible. */
+    private final boolean columnar;
+
+    /**
+     * The column of resources of a columnar series, or null if the resources
+     * are kept in the resources list.
+     */
+    private DeltaColumn column = null;
+
     public ResourceSeries() {
-        resources = new ArrayList<ResourceType>();
-        isSorted = true;
-        key = "";
+        this("");
     }
 
     public ResourceSeries(String key) {
+        this(key, false);
+    }
+
+    /**
+     * Creates a series with key, which keeps its resources in a column of
+     * primitive values if columnar is true and the resources allow it.
+     */
+    public ResourceSeries(String key, boolean columnar) {
         resources = new ArrayList<ResourceType>();
         isSorted = true;
         this.key = key;
+        this.columnar = columnar;
     }
 
     /**
@@ -34,20 +57,45 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     private void sort() {
         if (!isSorted) {
-            Collections.sort(resources);
+            if (column != null) {
+                column.sort();
+            } else {
+                Collections.sort(resources);
+            }
             isSorted = true;
         }
     }
 
+    /**
+     * Returns the number of resources in the series.
+     */
+    private int size() {
+        return column != null ? column.size() : resources.size();
+    }
+
+    /**
+     * Returns the resource at index i of the series.
+     */
+    @SuppressWarnings("unchecked")
+    private ResourceType get(int i) {
+        if (column != null) {
+            return (ResourceType) column.get(i);
+        }
+        return resources.get(i);
+    }
+
     /**
      * @return mode delta resource for transition, null if transition has zero
      *         delta resources.
      */
     public ResourceType computeMode() {
 
-        if (this.resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
+        if (column != null) {
+            return get(column.indexOfMode());
+        }
 
         Map<ResourceType, Integer> counts = new HashMap<ResourceType, Integer>();
         ResourceType mostCommon = null;
@@ -78,23 +126,22 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     @SuppressWarnings("unchecked")
     public ResourceType computeMedian() {
-        if (this.resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
 
         // Sort the list.
         sort();
 
-        int middle = resources.size() / 2;
-        if (resources.size() % 2 == 1) {
+        int middle = size() / 2;
+        if (size() % 2 == 1) {
             // Odd length.
-            return resources.get(middle);
+            return get(middle);
         }
         // Event length.
         // TODO: make this a safe cast by having incrBy return a more concrete
         // time than AbstractResource.
-        return (ResourceType) resources.get(middle - 1)
-                .incrBy(resources.get(middle)).divBy(2);
+        return (ResourceType) get(middle - 1).incrBy(get(middle)).divBy(2);
     }
 
     /**
@@ -103,9 +150,12 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     @SuppressWarnings("unchecked")
     public ResourceType computeMean() {
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
+        if (column != null) {
+            return (ResourceType) column.sum().divBy(column.size());
+        }
 
         // Create a zero valued starting point.
         ResourceType initial = (ResourceType) resources.get(0)
@@ -141,25 +191,25 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
     @SuppressWarnings("unchecked")
     public ResourceType computeMed() {
         // Check for empty or size-one resource series
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
-        } else if (resources.size() == 1) {
-            return resources.get(0);
+        } else if (size() == 1) {
+            return get(0);
         }
 
         // Median position if odd, or lower median position if even
-        int medianPos = (resources.size() - 1) / 2;
+        int medianPos = (size() - 1) / 2;
 
         // Resources size is even, so calculate and return median
-        if (resources.size() % 2 == 0) {
-            ResourceType lowMedian = resources.get(medianPos);
-            ResourceType highMedian = resources.get(medianPos + 1);
+        if (size() % 2 == 0) {
+            ResourceType lowMedian = get(medianPos);
+            ResourceType highMedian = get(medianPos + 1);
             return (ResourceType) lowMedian.incrBy(highMedian).divBy(2);
         }
 
         // Resources size is odd, so just return median
         {
-            return resources.get(medianPos);
+            return get(medianPos);
         }
     }
 
@@ -170,9 +220,12 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
      */
     private ResourceType computeMinMax(boolean findMax) {
         // Check for empty resource series
-        if (resources.isEmpty()) {
+        if (size() == 0) {
             return null;
         }
+        if (column != null) {
+            return get(column.indexOfMinMax(findMax));
+        }
 
         // Start the running min/max resource with the first resource delta
         ResourceType minMaxResource = resources.get(0);
@@ -209,8 +262,20 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
         if (!r.key.equals(key)) {
             throw new WrongResourceTypeException(key, r);
         }
-        resources.add(r);
         isSorted = false;
+        if (columnar && column == null && resources.isEmpty()) {
+            column = DeltaColumn.create(r);
+        }
+        if (column != null) {
+            if (column.accepts(r)) {
+                column.add(r);
+                return;
+            }
+            // The column cannot hold r, so move its resources to the list.
+            resources = getAllDeltas();
+            column = null;
+        }
+        resources.add(r);
     }
 
     /**
@@ -226,10 +291,27 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
                 throw new WrongResourceTypeException(key, delta);
             }
         }
+        if (columnar) {
+            for (ResourceType delta : deltas) {
+                addDelta(delta);
+            }
+            return;
+        }
         resources.addAll(deltas);
     }
 
+    /**
+     * Returns the resources of the series. For a columnar series, this is a
+     * new list of the resources.
+     */
     public List<ResourceType> getAllDeltas() {
+        if (column != null) {
+            List<ResourceType> deltas = new ArrayList<ResourceType>(size());
+            for (int i = 0; i < size(); i++) {
+                deltas.add(get(i));
+            }
+            return deltas;
+        }
         return resources;
     }
 
@@ -243,18 +325,16 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
 
         sort();
         o.sort();
-        cmp = ((Integer) resources.size()).compareTo(o.resources.size());
+        cmp = ((Integer) size()).compareTo(o.size());
         if (cmp != 0) {
             return cmp;
         }
 
-        int i = 0;
-        for (AbstractResource r : resources) {
-            cmp = r.compareTo(o.resources.get(i));
+        for (int i = 0; i < size(); i++) {
+            cmp = get(i).compareTo(o.get(i));
             if (cmp != 0) {
                 return cmp;
             }
-            i += 1;
         }
         return 0;
     }